@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import org.totalgrid.reef.client.service.proto.Measurements.{ DetailQual, Quality, MeasurementBatch, Measurement }
+import org.totalgrid.reef.client.service.proto.Model.{ ReefUUID, Point }
+import org.totalgrid.reef.client.service.proto.Processing._
+
+/**
+ * measurements, points and trigger configurations shared by the benchmarks. The trigger set mirrors a
+ * typical analog point: a range check that strips the value and raises events plus a scaling transform.
+ */
+object BenchmarkFixtures {
+
+  def pointName(i: Int) = "Substation.Line" + (i / 10) + ".Point" + i
+
+  def makePoint(name: String) = Point.newBuilder.setName(name).setUuid(ReefUUID.newBuilder.setValue(name)).build
+
+  def points(count: Int) = (0 until count).map { i => makePoint(pointName(i)) }.toList
+
+  private val nominal = Quality.newBuilder.setDetailQual(DetailQual.newBuilder).build
+
+  def makeAnalog(name: String, value: Double, time: Long) = {
+    Measurement.newBuilder
+      .setName(name)
+      .setPointUuid(ReefUUID.newBuilder.setValue(name))
+      .setType(Measurement.Type.DOUBLE)
+      .setDoubleVal(value)
+      .setQuality(nominal)
+      .setUnit("raw")
+      .setTime(time)
+      .setSystemTime(time)
+      .build
+  }
+
+  /**
+   * one measurement per point, every seventh value is below the range check so some triggers fire
+   */
+  def makeBatch(count: Int, time: Long) = {
+    val b = MeasurementBatch.newBuilder.setWallTime(time)
+    (0 until count).foreach { i => b.addMeas(makeAnalog(pointName(i), if (i % 7 == 0) -5.0 else 5.0 + i, time)) }
+    b.build
+  }
+
+  /**
+   * a slowly changing series, like the data the historian encoders see for a single point
+   */
+  def makeSeries(name: String, count: Int) = {
+    (0 until count).map { i => makeAnalog(name, 100.0 + (i % 20) * 0.25, 1000000L + i * 1000) }.toList
+  }
+
+  def triggerSet(name: String) = {
+    TriggerSet.newBuilder
+      .setPoint(Point.newBuilder.setName(name))
+      .addTriggers(Trigger.newBuilder
+        .setTriggerName("rlclow")
+        .setStopProcessingWhen(ActivationType.HIGH)
+        .setUnit("raw")
+        .setAnalogLimit(AnalogLimit.newBuilder.setLowerLimit(0).setDeadband(5))
+        .addActions(Action.newBuilder.setActionName("strip").setType(ActivationType.HIGH).setStripValue(true))
+        .addActions(Action.newBuilder.setActionName("qual").setType(ActivationType.HIGH)
+          .setQualityAnnotation(Quality.newBuilder.setValidity(Quality.Validity.QUESTIONABLE)))
+        .addActions(Action.newBuilder.setActionName("eventrise").setType(ActivationType.RISING)
+          .setEvent(EventGeneration.newBuilder.setEventType("event01")))
+        .addActions(Action.newBuilder.setActionName("eventfall").setType(ActivationType.FALLING)
+          .setEvent(EventGeneration.newBuilder.setEventType("event02"))))
+      .addTriggers(Trigger.newBuilder
+        .setTriggerName("trans")
+        .setUnit("raw")
+        .addActions(Action.newBuilder.setActionName("linear").setType(ActivationType.HIGH)
+          .setLinearTransform(LinearTransform.newBuilder.setScale(10).setOffset(50000)))
+        .addActions(Action.newBuilder.setActionName("unit").setType(ActivationType.HIGH).setSetUnit("V")))
+      .build
+  }
+}
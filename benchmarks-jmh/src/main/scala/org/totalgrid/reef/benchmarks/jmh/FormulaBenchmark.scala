@@ -0,0 +1,61 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+
+import org.totalgrid.reef.calc.lib.eval._
+
+/**
+ * evaluating calculation formulas, the interpreted expression tree against the compiled formula
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class FormulaBenchmark {
+
+  @Param(Array("A * B + C", "(A + B + C) / 3 - MAX(A, B)", "SUM(R) / 4 + AVERAGE(R)"))
+  var formula: String = _
+
+  var interpreted: PreparedExpression = _
+  var compiled: Formula = _
+
+  val inputs = new VariableSource {
+    private val values = Map[String, OperationValue](
+      "A" -> NumericConst(5.5),
+      "B" -> NumericConst(2.0),
+      "C" -> LongConst(12),
+      "R" -> ValueRange((0 until 100).map { i => NumericConst(i * 0.5) }.toList))
+
+    def forName(name: String) = values(name)
+  }
+
+  @Setup
+  def setup() {
+    val expr = OperationParser.parseFormula(formula)
+    interpreted = expr.prepare(BasicOperations.getSource)
+    compiled = Formula(expr, BasicOperations.getSource)
+  }
+
+  @Benchmark
+  def interpret(): OperationValue = interpreted.evaluate(inputs)
+
+  @Benchmark
+  def compiledFormula(): OperationValue = compiled.evaluate(inputs)
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.profile.GCProfiler
+import org.openjdk.jmh.results.format.ResultFormatType
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.{ TimeValue, OptionsBuilder }
+
+/**
+ * Entry point for the micro benchmarks, runs without a broker or database. The module is only part of the
+ * build with the jmh profile (mvn -Pjmh install):
+ *
+ *   java -jar benchmarks-jmh/target/reef-benchmarks.jar
+ *
+ * With no arguments every benchmark runs in throughput and sample time mode (which reports the latency
+ * percentiles) with the gc profiler on to report the allocation rate per operation, results are also
+ * written to jmh-result.json so runs can be compared. Any arguments are handed to the standard JMH
+ * command line instead, e.g. "TopicMatching -p bindings=10000 -prof gc".
+ */
+object HotPathBenchmarks {
+
+  def main(args: Array[String]) {
+    if (!args.isEmpty) org.openjdk.jmh.Main.main(args)
+    else {
+      val options = new OptionsBuilder()
+        .include(getClass.getPackage.getName + ".*")
+        .mode(Mode.Throughput)
+        .mode(Mode.SampleTime)
+        .addProfiler(classOf[GCProfiler])
+        .warmupIterations(5)
+        .warmupTime(TimeValue.seconds(1))
+        .measurementIterations(5)
+        .measurementTime(TimeValue.seconds(1))
+        .forks(1)
+        .resultFormat(ResultFormatType.JSON)
+        .result("jmh-result.json")
+        .build
+
+      new Runner(options).run()
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import java.io.OutputStream
+import java.util.concurrent.TimeUnit
+import java.util.zip.GZIPOutputStream
+import org.openjdk.jmh.annotations._
+import scala.util.control.NoStackTrace
+import scala.collection.JavaConversions._
+
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+import org.totalgrid.reef.httpbridge.formatters.{ RawProtoFormatter, JsonFormatter, SimpleFormatter }
+
+/**
+ * the formatters behind the http bridge list responses (ApiServlet MULTI results, rest GETs and
+ * subscription polls) for large measurement results. firstByte stops at the first byte that reaches
+ * the servlet stream so it shows how long a client waits before the response starts. Run with
+ * "-prof gc" to see the allocation per response (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class HttpBridgeFormatterBenchmark {
+  import BenchmarkFixtures._
+  import HttpBridgeFormatterBenchmark._
+
+  @Param(Array("100", "10000"))
+  var resultSize: Int = _
+
+  @Param(Array("json", "proto"))
+  var format: String = _
+
+  var results: List[Measurement] = _
+  var formatter: SimpleFormatter = _
+
+  @Setup
+  def setup() {
+    results = makeBatch(resultSize, System.currentTimeMillis).getMeasList.toList
+    formatter = if (format == "json") new JsonFormatter else new RawProtoFormatter
+  }
+
+  @Benchmark
+  def fullResponse(): Long = {
+    val stream = new CountingOutputStream
+    formatter.output(stream, results)
+    stream.count
+  }
+
+  @Benchmark
+  def gzipResponse(): Long = {
+    val stream = new CountingOutputStream
+    val gzip = new GZIPOutputStream(stream)
+    formatter.output(gzip, results)
+    gzip.finish()
+    stream.count
+  }
+
+  @Benchmark
+  def firstByte(): Boolean = {
+    try {
+      formatter.output(FirstByteOutputStream, results)
+      false
+    } catch {
+      case FirstByteWritten => true
+    }
+  }
+}
+
+object HttpBridgeFormatterBenchmark {
+
+  class CountingOutputStream extends OutputStream {
+    var count = 0L
+    def write(b: Int) { count += 1 }
+    override def write(b: Array[Byte], off: Int, len: Int) { count += len }
+  }
+
+  object FirstByteWritten extends RuntimeException with NoStackTrace
+
+  object FirstByteOutputStream extends OutputStream {
+    def write(b: Int) { throw FirstByteWritten }
+    override def write(b: Array[Byte], off: Int, len: Int) { if (len > 0) throw FirstByteWritten }
+  }
+}
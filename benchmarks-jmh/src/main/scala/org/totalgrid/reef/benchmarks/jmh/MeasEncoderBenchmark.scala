@@ -0,0 +1,63 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+import org.totalgrid.reef.measurementstore.encoders.{ JavaZipping, SimpleMeasEncoder }
+
+/**
+ * delta encoding (and compression) of a block of historical measurements for a single point
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class MeasEncoderBenchmark {
+  import BenchmarkFixtures._
+
+  @Param(Array("10", "1000"))
+  var seriesLength: Int = _
+
+  val encoder = new SimpleMeasEncoder
+  val zipping = new SimpleMeasEncoder with JavaZipping
+
+  var series: List[Measurement] = _
+  var encoded: Array[Byte] = _
+  var zipped: Array[Byte] = _
+
+  @Setup
+  def setup() {
+    series = makeSeries(pointName(0), seriesLength)
+    encoded = encoder.encode(series)
+    zipped = zipping.encode(series)
+  }
+
+  @Benchmark
+  def encode(): Array[Byte] = encoder.encode(series)
+
+  @Benchmark
+  def decode(): Seq[Measurement] = encoder.decode(encoded).toList
+
+  @Benchmark
+  def encodeZipped(): Array[Byte] = zipping.encode(series)
+
+  @Benchmark
+  def decodeZipped(): Seq[Measurement] = zipping.decode(zipped).toList
+}
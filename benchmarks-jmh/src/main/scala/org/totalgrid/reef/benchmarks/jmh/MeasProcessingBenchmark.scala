@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+
+import org.totalgrid.reef.client.service.proto.Measurements.{ MeasurementBatch, Measurement }
+import org.totalgrid.reef.client.service.proto.Events
+import org.totalgrid.reef.measproc.MeasProcObjectCaches
+import org.totalgrid.reef.measproc.pipeline.MeasProcessingPipeline
+import org.totalgrid.reef.measproc.processing.{ TriggerProcessingFactory, TriggerProcessor }
+import org.totalgrid.reef.persistence.InMemoryObjectCache
+import org.totalgrid.reef.jmx.{ MetricsContainer, Metrics }
+
+/**
+ * a whole batch through the measurement processor: whitelist, overrides, triggers and the output cache
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class MeasProcessingBenchmark {
+  import BenchmarkFixtures._
+
+  @Param(Array("1", "100", "1000"))
+  var batchSize: Int = _
+
+  var pipeline: MeasProcessingPipeline = _
+  var batch: MeasurementBatch = _
+  var published = 0
+
+  @Setup
+  def setup() {
+    val caches = MeasProcObjectCaches(new InMemoryObjectCache[Measurement], new InMemoryObjectCache[Measurement], new InMemoryObjectCache[Boolean])
+    val pointList = points(batchSize)
+    pipeline = new MeasProcessingPipeline(caches, { ms => published += ms.size }, { es => }, pointList, "benchmark")
+    pointList.foreach { p => pipeline.triggerProc.add(triggerSet(p.getName)) }
+    batch = makeBatch(batchSize, System.currentTimeMillis)
+  }
+
+  @TearDown
+  def teardown() {
+    pipeline.close()
+  }
+
+  @Benchmark
+  def process(): Int = {
+    pipeline.process(batch)
+    published
+  }
+}
+
+/**
+ * just the trigger evaluation for a single measurement
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class TriggerProcessorBenchmark {
+  import BenchmarkFixtures._
+
+  var processor: TriggerProcessor = _
+  var outputs = 0
+  var normal: Measurement = _
+  var outOfRange: Measurement = _
+
+  @Setup
+  def setup() {
+    val factory = new TriggerProcessingFactory({ e: Events.Event.Builder => outputs += 1 }, new InMemoryObjectCache[Measurement])
+    processor = new TriggerProcessor({ m => outputs += 1 }, factory, new InMemoryObjectCache[Boolean], Metrics(MetricsContainer()))
+    processor.add(triggerSet(pointName(0)))
+    normal = makeAnalog(pointName(0), 12.5, System.currentTimeMillis)
+    outOfRange = makeAnalog(pointName(0), -12.5, System.currentTimeMillis)
+  }
+
+  @Benchmark
+  def nominal(): Int = {
+    processor.process(normal)
+    outputs
+  }
+
+  /**
+   * alternates in and out of range so the rising and falling event actions run
+   */
+  @Benchmark
+  def transitions(): Int = {
+    processor.process(outOfRange)
+    processor.process(normal)
+    outputs
+  }
+}
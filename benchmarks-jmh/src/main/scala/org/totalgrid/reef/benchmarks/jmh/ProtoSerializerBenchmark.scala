@@ -0,0 +1,56 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import com.google.protobuf.ByteString
+
+import org.totalgrid.reef.client.service.proto.Measurements.MeasurementBatch
+import org.totalgrid.reef.services.framework.ProtoSerializer
+
+/**
+ * the conversions the services use to put measurement batches on and off the wire
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class ProtoSerializerBenchmark {
+  import BenchmarkFixtures._
+
+  @Param(Array("1", "100", "1000"))
+  var batchSize: Int = _
+
+  var batch: MeasurementBatch = _
+  var bytes: Array[Byte] = _
+
+  @Setup
+  def setup() {
+    batch = makeBatch(batchSize, System.currentTimeMillis)
+    bytes = ProtoSerializer.convertProtoToBytes(batch)
+  }
+
+  @Benchmark
+  def toBytes(): Array[Byte] = ProtoSerializer.convertProtoToBytes(batch)
+
+  @Benchmark
+  def toByteString(): ByteString = ProtoSerializer.convertProtoToByteString(batch)
+
+  @Benchmark
+  def parse(): MeasurementBatch = MeasurementBatch.parseFrom(bytes)
+}
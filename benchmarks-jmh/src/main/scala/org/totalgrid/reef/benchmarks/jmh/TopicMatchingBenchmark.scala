@@ -0,0 +1,82 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.jmh
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+
+import org.totalgrid.reef.broker.TopicMatcher
+import org.totalgrid.reef.broker.memory.MemoryBrokerState
+
+/**
+ * routing a measurement key against the bindings of many subscribers, the per binding regex check the
+ * memory broker started with against the trie (with and without the key cache) it uses now
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class TopicMatchingBenchmark {
+
+  @Param(Array("100", "10000"))
+  var bindings: Int = _
+
+  var bindingKeys: Array[String] = _
+  var trie: TopicMatcher[Int] = _
+  var cached: TopicMatcher[Int] = _
+
+  var routingKeys: Array[String] = _
+  var next = 0
+
+  @Setup
+  def setup() {
+    // mostly single point subscriptions with some wildcards, like a set of HMI screens
+    bindingKeys = (0 until bindings).map { i =>
+      i % 50 match {
+        case 0 => "measurement.Substation" + (i % 20) + ".*"
+        case 1 => "measurement.#"
+        case 2 => "measurement.Sub*.Line" + (i % 100)
+        case _ => "measurement.Substation" + (i % 20) + ".Line" + (i % 1000)
+      }
+    }.toArray
+    trie = new TopicMatcher[Int]
+    cached = new TopicMatcher[Int](1000)
+    bindingKeys.zipWithIndex.foreach {
+      case (key, i) =>
+        trie.bind(key, i)
+        cached.bind(key, i)
+    }
+    routingKeys = (0 until 1000).map { i => "measurement.Substation" + (i % 20) + ".Line" + i }.toArray
+  }
+
+  private def nextKey() = {
+    next = (next + 1) % routingKeys.length
+    routingKeys(next)
+  }
+
+  @Benchmark
+  def linearScan(): Int = {
+    val key = nextKey()
+    bindingKeys.count(MemoryBrokerState.matches(key, _))
+  }
+
+  @Benchmark
+  def topicTrie(): Int = trie.matches(nextKey()).size
+
+  @Benchmark
+  def topicTrieCached(): Int = cached.matches(nextKey()).size
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks.broker
+
+import java.io.PrintStream
+import java.util.concurrent.{ TimeUnit, CountDownLatch }
+import org.totalgrid.reef.benchmarks._
+import org.totalgrid.reef.client.Client
+import org.totalgrid.reef.broker.{ BrokerMessage, BrokerMessageConsumer, BrokerConnectionFactory }
+import org.totalgrid.reef.util.Timing.Stopwatch
+
+/**
+ * publishes measurement style traffic (one binding per point) through each broker implementation
+ * to compare raw broker throughput without any services in the way. Doesn't need a running node,
+ * the client is ignored.
+ *
+ * @param brokers named broker implementations to compare
+ * @param bindings number of queues, each bound to a single point key like a point subscription
+ * @param publishers number of threads publishing concurrently
+ * @param messages total number of messages published per run
+ */
+class BrokerFanoutBenchmark(brokers: List[(String, BrokerConnectionFactory)], bindings: Int, publishers: Int, messages: Int) extends BenchmarkTest {
+
+  case class BrokerFanoutReading(implementation: String, time: Long, rate: Double) extends BenchmarkReading {
+    def csvName = "brokerFanout"
+
+    def testParameterNames = List("implementation", "bindings", "publishers", "messages")
+    def testParameters = List(implementation, bindings, publishers, messages)
+
+    def testOutputNames = List("time", "messagesPerSecond")
+    def testOutputs = List(time, rate)
+  }
+
+  def runTest(client: Client, stream: Option[PrintStream]) = run(stream)
+
+  def run(stream: Option[PrintStream]): List[BenchmarkReading] = {
+    brokers.map {
+      case (name, factory) =>
+        stream.foreach { _.println("Publishing " + messages + " messages to " + bindings + " bindings with " + publishers + " publishers on " + name) }
+        val time = publishAll(factory)
+        BrokerFanoutReading(name, time, messages * 1000.0 / math.max(time, 1))
+    }
+  }
+
+  private def publishAll(factory: BrokerConnectionFactory): Long = {
+    val conn = factory.connect
+    try {
+      val exchange = "benchmark.fanout"
+      conn.declareExchange(exchange)
+
+      val delivered = new CountDownLatch(messages)
+      val consumer = new BrokerMessageConsumer {
+        def onMessage(msg: BrokerMessage) = delivered.countDown()
+      }
+      (0 until bindings).foreach { i =>
+        val sub = conn.listen()
+        conn.bindQueue(sub.getQueue, exchange, "point" + i)
+        sub.start(consumer)
+      }
+
+      val payload = new Array[Byte](100)
+      val perPublisher = messages / publishers
+      val threads = (0 until publishers).map { p =>
+        val count = if (p == publishers - 1) messages - perPublisher * (publishers - 1) else perPublisher
+        new Thread(new Runnable {
+          def run() {
+            (0 until count).foreach { i => conn.publish(exchange, "point" + ((p + i * publishers) % bindings), payload) }
+          }
+        })
+      }
+
+      val stopwatch = Stopwatch.start
+      threads.foreach { _.start() }
+      threads.foreach { _.join() }
+      if (!delivered.await(5, TimeUnit.MINUTES)) throw new FailedBenchmarkException("Only " + (messages - delivered.getCount) + " of " + messages + " messages delivered")
+      stopwatch.elapsed
+    } finally {
+      conn.disconnect()
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.benchmarks
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{ BeforeAndAfterAll, FunSuite }
+import net.agileautomata.executor4s._
+import org.totalgrid.reef.benchmarks.broker.BrokerFanoutBenchmark
+import org.totalgrid.reef.broker.memory.{ ConcurrentMemoryBrokerConnectionFactory, MemoryBrokerConnectionFactory }
+
+@RunWith(classOf[JUnitRunner])
+class MemoryBrokerBenchmarkTest extends FunSuite with BeforeAndAfterAll {
+
+  var readings = List.empty[BenchmarkReading]
+
+  val exe = Executors.newResizingThreadPool(5.minutes)
+
+  override def afterAll() {
+    exe.terminate()
+    val results = readings.groupBy(_.csvName)
+    BenchmarkUtilities.writeHistogramCsvFiles(Histogram.getHistograms(results), "target/benchmarkrun/memoryBroker")
+    BenchmarkUtilities.writeCsvFiles(results, "target/benchmarkrun/memoryBroker-")
+  }
+
+  def brokers = List(
+    "immutable" -> new MemoryBrokerConnectionFactory(exe),
+    "concurrent" -> new ConcurrentMemoryBrokerConnectionFactory(exe))
+
+  List(1, 4).foreach { publishers =>
+    List(100, 10000).foreach { bindings =>
+      test("Memory broker fanout with " + bindings + " bindings and " + publishers + " publishers") {
+        readings :::= new BrokerFanoutBenchmark(brokers, bindings, publishers, 20000).run(Some(Console.out))
+      }
+    }
+  }
+}
@@ -50,6 +50,12 @@ trait BrokerConnection {
 
   def publish(exchange: String, key: String, bytes: Array[Byte], replyTo: Option[BrokerDestination] = None): Unit
 
+  /**
+   * Blocks until every message published on this connection has been accepted by the broker. Only
+   * connections that pipeline their publishes need to do any work here.
+   */
+  def flush(): Unit = {}
+
   /**
    * Listen to a named, non-exclusive system queue (competing consumer)
    */
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.broker
+
+/**
+ * thread safe set of topic bindings for key based dispatch. Lookups read an immutable snapshot of
+ * the bindings without locking, changes to the bindings are serialized and swap in a new snapshot.
+ *
+ * @param cacheSize number of routing keys whose matches are remembered, the least recently used
+ *                  keys are dropped first. Any change to the bindings clears the cache. 0 disables caching.
+ */
+class TopicMatcher[A](cacheSize: Int = 0) {
+
+  private class Snapshot(val trie: TopicTrie[A]) {
+    private val cache = if (cacheSize > 0) Some(new LruCache[String, Set[A]](cacheSize)) else None
+
+    def matches(routingKey: String): Set[A] = cache match {
+      case None => trie.matches(routingKey)
+      case Some(c) => c.getOrElseUpdate(routingKey, trie.matches(routingKey))
+    }
+  }
+
+  @volatile private var snapshot = new Snapshot(TopicTrie.empty[A])
+
+  def bind(bindingKey: String, value: A): Unit = synchronized {
+    snapshot = new Snapshot(snapshot.trie.bind(bindingKey, value))
+  }
+
+  def unbind(bindingKey: String, value: A): Unit = synchronized {
+    snapshot = new Snapshot(snapshot.trie.unbind(bindingKey, value))
+  }
+
+  def isEmpty = snapshot.trie.isEmpty
+
+  def matches(routingKey: String): Set[A] = snapshot.matches(routingKey)
+}
+
+/**
+ * minimal synchronized LRU map built on LinkedHashMap's access ordering
+ */
+class LruCache[K, V](maxEntries: Int) {
+
+  private val map = new java.util.LinkedHashMap[K, V](16, 0.75f, true) {
+    override protected def removeEldestEntry(eldest: java.util.Map.Entry[K, V]) = this.size() > maxEntries
+  }
+
+  def getOrElseUpdate(key: K, fun: => V): V = {
+    Option(map.synchronized(map.get(key))) getOrElse {
+      // computed outside the lock, two threads missing on the same key will both compute it
+      val value = fun
+      map.synchronized(map.put(key, value))
+      value
+    }
+  }
+
+  def size = map.synchronized(map.size)
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.broker
+
+import java.util.regex.Pattern
+import scala.collection.mutable
+
+object TopicTrie {
+
+  def empty[A]: TopicTrie[A] = new TopicTrie[A](Node.empty[A])
+
+  /**
+   * binding keys are stored segment by segment up to the first segment containing a '#', after
+   * that the rest of the routing key doesn't matter so the value is stored as a "hash" value on
+   * the node where the prefix ends.
+   */
+  private def bindingPath(bindingKey: String): (Array[String], Boolean) = {
+    val segments = bindingKey.split('.')
+    (segments.takeWhile(!_.contains("#")), bindingKey.contains("#"))
+  }
+
+  /**
+   * pattern for a binding segment containing '*'. Everything other than '*' is matched literally,
+   * None means the segment matches anything.
+   */
+  def segmentPattern(segment: String): Option[Pattern] = {
+    if (segment == "*") None
+    else Some(Pattern.compile(segment.split("\\*", -1).map(Pattern.quote(_)).mkString(".*")))
+  }
+
+  /**
+   * compares a single binding segment to a routing key segment, characters other than '*' in the
+   * binding segment are compared literally
+   */
+  def segmentMatches(bindingSegment: String, routingSegment: String): Boolean = {
+    if (!bindingSegment.contains("*")) bindingSegment == routingSegment
+    else segmentPattern(bindingSegment).map(_.matcher(routingSegment).matches) getOrElse true
+  }
+
+  private[broker] case class Glob[A](segment: String, pattern: Option[Pattern], node: Node[A]) {
+    def matches(s: String) = pattern.map(_.matcher(s).matches) getOrElse true
+  }
+
+  private[broker] object Node {
+    def empty[A] = Node[A](Map.empty[String, Node[A]], Nil, Set.empty[A], Set.empty[A])
+  }
+
+  private[broker] case class Node[A](literals: Map[String, Node[A]], globs: List[Glob[A]], exact: Set[A], hash: Set[A]) {
+
+    def isEmpty = literals.isEmpty && globs.isEmpty && exact.isEmpty && hash.isEmpty
+
+    def update(path: Array[String], index: Int, isHash: Boolean)(fun: Set[A] => Set[A]): Node[A] = {
+      if (index == path.length) {
+        if (isHash) this.copy(hash = fun(hash))
+        else this.copy(exact = fun(exact))
+      } else {
+        val segment = path(index)
+        if (segment.contains("*")) {
+          val existing = globs.find(_.segment == segment)
+          val child = existing.map(_.node).getOrElse(Node.empty[A]).update(path, index + 1, isHash)(fun)
+          val others = globs.filterNot(_.segment == segment)
+          if (child.isEmpty) this.copy(globs = others)
+          else {
+            val pattern = existing.map(_.pattern) getOrElse segmentPattern(segment)
+            this.copy(globs = Glob(segment, pattern, child) :: others)
+          }
+        } else {
+          val child = literals.get(segment).getOrElse(Node.empty[A]).update(path, index + 1, isHash)(fun)
+          if (child.isEmpty) this.copy(literals = literals - segment)
+          else this.copy(literals = literals + (segment -> child))
+        }
+      }
+    }
+
+    def collect(key: Array[String], index: Int, results: mutable.Set[A]) {
+      if (index == key.length) {
+        results ++= exact
+        // a key shorter than the prefix of a '#' binding still matches it, only the segments
+        // both keys have are compared
+        collectHashes(results)
+      } else {
+        results ++= hash
+        val segment = key(index)
+        literals.get(segment).foreach(_.collect(key, index + 1, results))
+        globs.foreach { g => if (g.matches(segment)) g.node.collect(key, index + 1, results) }
+      }
+    }
+
+    private def collectHashes(results: mutable.Set[A]) {
+      results ++= hash
+      literals.values.foreach(_.collectHashes(results))
+      globs.foreach(_.node.collectHashes(results))
+    }
+
+  }
+}
+
+/**
+ * immutable trie of topic exchange bindings, each binding key is split into its dot separated
+ * segments once when it is bound so matching a routing key only visits the branches that could
+ * match rather than every binding.
+ *
+ * Matching rules (same as the reference memory broker):
+ *  - segments are compared one by one, without a '#' the keys must have the same number of segments
+ *  - '*' in a binding segment matches any run of characters in that segment, so "*" matches any segment
+ *  - every other character is compared literally, segments are never treated as regular expressions
+ *  - the first binding segment containing '#' matches the rest of the routing key, a routing key that
+ *    runs out before the '#' is reached still matches as long as the segments it has match
+ */
+class TopicTrie[A] private (root: TopicTrie.Node[A]) {
+
+  import TopicTrie._
+
+  def bind(bindingKey: String, value: A): TopicTrie[A] = {
+    val (path, isHash) = bindingPath(bindingKey)
+    new TopicTrie(root.update(path, 0, isHash)(_ + value))
+  }
+
+  def unbind(bindingKey: String, value: A): TopicTrie[A] = {
+    val (path, isHash) = bindingPath(bindingKey)
+    new TopicTrie(root.update(path, 0, isHash)(_ - value))
+  }
+
+  def isEmpty = root.isEmpty
+
+  /**
+   * @return each value with a binding that matches the routing key, once per value even if
+   *         multiple bindings match.
+   */
+  def matches(routingKey: String): Set[A] = {
+    val results = mutable.HashSet.empty[A]
+    root.collect(routingKey.split('.'), 0, results)
+    results.toSet
+  }
+}
@@ -37,7 +37,9 @@ class BasicCalculationFactory(
     operations: OperationSource,
     metricsSource: CalculationMetricsSource,
     output: OutputPublisher,
-    timeSource: TimeSource) extends CalculationFactory with Logging {
+    timeSource: TimeSource,
+    sharedInputs: Option[SharedInputEngine] = None,
+    workers: Option[CalculationWorkers] = None) extends CalculationFactory with Logging {
 
   import BasicCalculationFactory._
 
@@ -61,8 +63,8 @@ class BasicCalculationFactory(
 
     val metrics = metricsSource.getCalcMetrics(settings.components.measSettings.name)
 
-    // get a new client (strand) for each calculation
-    val client = rootClient.spawn()
+    // get a new client (strand) for each calculation, shared input calculations are all evaluated on the engine
+    val client = if (sharedInputs.isDefined) rootClient else rootClient.spawn()
     val services = client.getService(classOf[AllScadaService])
 
     val currentMeasurement = services.getMeasurementByName(settings.components.measSettings.name).await
@@ -78,20 +80,30 @@ class BasicCalculationFactory(
       settings = settings.copy(components = settings.components.copy(formula = accumulatedFormula))
     }
 
-    val inputDataManager = new MeasInputManager(services, timeSource)
+    // shared input calculations stay on the engine strand so they keep their dependency ordering
+    val shard = if (sharedInputs.isDefined) None else workers.map(_.shardFor(settings.components.measSettings.name))
 
-    val evaluator = new CalculationEvaluator(inputDataManager, output, settings.components, metrics)
+    // sharded evaluations run on the shard strand while measurements arrive on the client strand
+    val inputDataManager = sharedInputs.map(_.manager(settings.components.measSettings.name)).getOrElse {
+      new MeasInputManager(services, timeSource, shard.isDefined)
+    }
+
+    val publisher = sharedInputs.map(_.publisher(output)).getOrElse(output)
+
+    val evaluator = new CalculationEvaluator(inputDataManager, publisher, settings.components, metrics)
 
     val (eventedTrigger, initiatingTrigger) = settings.triggerStrategy match {
       case ev: EventedTriggerStrategy => (Some(ev), None)
       case in: InitiatingTriggerStrategy => (None, Some(in))
     }
 
-    settings.triggerStrategy.setEvaluationFunction(evaluator.attempt)
+    val attempt: () => Unit = evaluator.attempt
+    settings.triggerStrategy.setEvaluationFunction(shard.map(_.evaluation(attempt)).getOrElse(attempt))
 
     inputDataManager.initialize(currentMeasurement, settings.inputs, eventedTrigger)
 
-    initiatingTrigger.foreach(_.start(client.getInternal.getExecutor))
+    val triggerExecutor = shard.map(_.strand).orElse(sharedInputs.map(_.executor)).getOrElse(client.getInternal.getExecutor)
+    initiatingTrigger.foreach(_.start(triggerExecutor))
 
     new MultiCancelable(List(Some(inputDataManager), initiatingTrigger).flatten)
   }
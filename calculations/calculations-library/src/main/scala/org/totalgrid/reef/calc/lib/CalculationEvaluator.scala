@@ -65,9 +65,9 @@ class CalculationEvaluator(
 
   }
 
-  def attemptCalculation(inputs: Map[String, List[Measurement]]): Measurement = {
+  def attemptCalculation(inputs: Map[String, Seq[Measurement]]): Measurement = {
     import components._
-    val source = MappedVariableSource(inputs)
+    val source = new MeasurementVariableSource(inputs)
 
     val result = formula.evaluate(source)
 
@@ -31,10 +31,21 @@ class CalculationMetrics(metrics: Metrics) {
   val evalTime = metrics.timer("Time")
 }
 
+class ShardMetrics(metrics: Metrics) {
+
+  val queueDepth = metrics.gauge("QueueDepth")
+
+  val queueDelay = metrics.average("QueueDelay")
+
+  val evalTime = metrics.timer("EvalTime")
+}
+
 class CalculationMetricsSource(source: MetricsSource, shared: Boolean = false) {
 
   private lazy val sharedSink = new CalculationMetrics(source.metrics("all"))
 
   def getCalcMetrics(calcName: String) = if (shared) sharedSink else new CalculationMetrics(source.metrics(calcName))
 
+  def getShardMetrics(shard: Int) = new ShardMetrics(source.metrics("shard" + shard))
+
 }
\ No newline at end of file
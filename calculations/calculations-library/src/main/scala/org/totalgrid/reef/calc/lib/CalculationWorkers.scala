@@ -0,0 +1,61 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib
+
+import java.util.concurrent.atomic.{ AtomicBoolean, AtomicInteger }
+import net.agileautomata.executor4s.{ Executor, Strand }
+import org.totalgrid.reef.util.Timing
+
+/**
+ * Spreads calculation evaluation across a fixed number of strands on a shared executor. A calculation is
+ * always evaluated on the shard picked by its output point so its own evaluations stay in order, while
+ * calculations on different shards evaluate in parallel.
+ */
+class CalculationWorkers(exe: Executor, shards: Int, metricsSource: CalculationMetricsSource) {
+
+  private val workers = (0 until math.max(shards, 1)).map { i =>
+    new CalculationShard(Strand(exe), metricsSource.getShardMetrics(i))
+  }.toArray
+
+  def shardFor(outputName: String): CalculationShard = workers((outputName.hashCode & Int.MaxValue) % workers.length)
+}
+
+class CalculationShard(val strand: Strand, metrics: ShardMetrics) {
+
+  private val depth = new AtomicInteger(0)
+
+  /**
+   * wraps an evaluation function so it runs on this shard. Triggers that arrive while an evaluation is
+   * already queued are folded into it, it will see the newest inputs when it runs anyway.
+   */
+  def evaluation(attempt: () => Unit): () => Unit = {
+    val queued = new AtomicBoolean(false)
+    () =>
+      if (queued.compareAndSet(false, true)) {
+        val stopwatch = Timing.Stopwatch.start
+        metrics.queueDepth(depth.incrementAndGet())
+        strand.execute {
+          queued.set(false)
+          metrics.queueDepth(depth.decrementAndGet())
+          metrics.queueDelay(stopwatch.elapsed.toInt)
+          metrics.evalTime(attempt())
+        }
+      }
+  }
+}
@@ -37,7 +37,7 @@ trait MeasBucket {
 trait InputBucket extends MeasBucket {
   def variable: String
 
-  def getSnapshot: Option[List[Measurement]]
+  def getSnapshot: Option[Seq[Measurement]]
 
   def getMeasRequest: MeasRequest
 }
@@ -73,50 +73,49 @@ object InputBucket {
     InputConfig(pointName, bucket)
   }
 
+  /**
+   * holds the measurements newer than from (relative to now), up to limit of them
+   */
   class FromRangeBucket(timeSource: TimeSource, val variable: String, from: Long, limit: Int, minimum: Int = 1) extends InputBucket {
 
     def getMeasRequest = MultiSince(from, limit)
 
-    private val queue = new mutable.Queue[Measurement]()
+    private val ring = new MeasRing(limit)
 
     protected def prune() {
       val horizon = timeSource.now + from
-      while (queue.headOption.map { _.getTime <= horizon }.getOrElse(false)) {
-        queue.dequeue()
-      }
-
-      while (queue.size > limit) {
-        queue.dequeue()
+      while (ring.size > 0 && ring.oldestTime <= horizon) {
+        ring.removeOldest()
       }
     }
 
     def onReceived(m: Measurement) = {
-      queue.enqueue(m)
+      ring.add(m)
       prune()
     }
 
     def getSnapshot = {
       // we may need to throw out old measurements before returning snapshot
       prune()
-      if (queue.size >= minimum) Some(queue.toList)
+      if (ring.size >= minimum) Some(ring.snapshot())
       else None
     }
   }
 
+  /**
+   * holds the most recent limit measurements
+   */
   class LimitRangeBucket(val variable: String, limit: Int, minimum: Int = 1) extends InputBucket {
 
     def getMeasRequest = MultiLimit(limit)
 
-    private val queue = new mutable.Queue[Measurement]()
+    private val ring = new MeasRing(limit)
 
     def onReceived(m: Measurement) {
-      queue.enqueue(m)
-      while (queue.size > limit) {
-        queue.dequeue()
-      }
+      ring.add(m)
     }
 
-    def getSnapshot = if (queue.size >= minimum) Some(queue.toList) else None
+    def getSnapshot = if (ring.size >= minimum) Some(ring.snapshot()) else None
   }
 
   class NoStorageBucket(val variable: String, limit: Int, minimum: Int = 1) extends InputBucket {
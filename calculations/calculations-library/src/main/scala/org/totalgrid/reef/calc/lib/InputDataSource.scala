@@ -21,5 +21,5 @@ package org.totalgrid.reef.calc.lib
 import org.totalgrid.reef.client.service.proto.Measurements.Measurement
 
 trait InputDataSource {
-  def getSnapshot: Option[Map[String, List[Measurement]]]
+  def getSnapshot: Option[Map[String, Seq[Measurement]]]
 }
@@ -19,5 +19,8 @@
 package org.totalgrid.reef.calc.lib
 
 import net.agileautomata.executor4s.Cancelable
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
 
-trait InputManager extends InputDataSource with Cancelable
+trait InputManager extends InputDataSource with Cancelable {
+  def initialize(outputMeasurement: Measurement, inputConfigs: List[InputConfig], trigger: Option[EventedTriggerStrategy])
+}
@@ -32,10 +32,10 @@ class MappedVariableSource(map: Map[String, OperationValue]) extends VariableSou
 object MappedVariableSource {
   import MeasurementConverter._
 
-  def apply(inputs: Map[String, List[Measurement]]): MappedVariableSource = {
+  def apply(inputs: Map[String, Seq[Measurement]]): MappedVariableSource = {
     val map = inputs.mapValues {
-      case List(single) => convertMeasurement(single)
-      case multi: List[Measurement] => ValueRange(multi.map(m => convertMeasurement(m)))
+      case Seq(single) => convertMeasurement(single)
+      case multi => ValueRange(multi.toList.map(m => convertMeasurement(m)))
     }
     new MappedVariableSource(map)
   }
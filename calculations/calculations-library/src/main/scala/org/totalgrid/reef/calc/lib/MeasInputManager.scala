@@ -24,14 +24,16 @@ import org.totalgrid.reef.client.service.proto.Measurements.Measurement
 
 object MeasInputManager {
   /**
-   * go through the list of buckets and return a map of tall the snapshot values iff they are all valid
+   * go through the list of buckets and return a map of tall the snapshot values iff they are all valid,
+   * when detach is set the windows are copied so they can be read after the caller releases its lock
    */
-  def getSnapshot(buckets: List[InputBucket]): Option[Map[String, List[Measurement]]] = {
+  def getSnapshot(buckets: List[InputBucket], detach: Boolean = false): Option[Map[String, Seq[Measurement]]] = {
     // we use foldLeft instead of map for efficiency so we can short circuit eval after first None
-    buckets.foldLeft[Option[Map[String, List[Measurement]]]](Some(Map.empty[String, List[Measurement]])) { (m, b) =>
+    buckets.foldLeft[Option[Map[String, Seq[Measurement]]]](Some(Map.empty[String, List[Measurement]])) { (m, b) =>
       m match {
         case Some(map) =>
           b.getSnapshot match {
+            case Some(window: MeasWindow) if detach => Some(map + (b.variable -> window.detached))
             case Some(data) => Some(map + (b.variable -> data))
             case None => None
           }
@@ -41,7 +43,11 @@ object MeasInputManager {
   }
 }
 
-class MeasInputManager(service: MeasurementService, timeSource: TimeSource) extends InputManager {
+/**
+ * detachWindows must be set when the calculation is evaluated on a different strand than the subscriptions
+ * deliver measurements on, otherwise the windows would be read while the buckets are being updated
+ */
+class MeasInputManager(service: MeasurementService, timeSource: TimeSource, detachWindows: Boolean = false) extends InputManager {
 
   private var buckets: List[InputBucket] = Nil
   private var subscriptions: List[Subscription[Measurement]] = Nil
@@ -83,8 +89,8 @@ class MeasInputManager(service: MeasurementService, timeSource: TimeSource) exte
     }
   }
 
-  def getSnapshot: Option[Map[String, List[Measurement]]] = mutex.synchronized {
-    MeasInputManager.getSnapshot(buckets)
+  def getSnapshot: Option[Map[String, Seq[Measurement]]] = mutex.synchronized {
+    MeasInputManager.getSnapshot(buckets, detachWindows)
   }
 
   def cancel() {
@@ -0,0 +1,366 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib
+
+import org.totalgrid.reef.client.service.proto.Measurements.{ Quality, Measurement }
+import java.util.ConcurrentModificationException
+
+/**
+ * growable ring of longs used as a deque, indexes are absolute so a value keeps its index until it is popped
+ */
+final class LongDeque(initialSize: Int = 16) {
+  private var ring = new Array[Long](initialSize)
+  private var head = 0L
+  private var tail = 0L
+
+  def size = (tail - head).toInt
+  def isEmpty = head == tail
+  def nonEmpty = head != tail
+
+  def front = ring((head % ring.length).toInt)
+  def back = ring(((tail - 1) % ring.length).toInt)
+
+  def pushBack(v: Long) {
+    if (size == ring.length) grow()
+    ring((tail % ring.length).toInt) = v
+    tail += 1
+  }
+
+  def popFront(): Long = {
+    val v = front
+    head += 1
+    v
+  }
+
+  def popBack(): Long = {
+    val v = back
+    tail -= 1
+    v
+  }
+
+  def clear() {
+    head = tail
+  }
+
+  def foreach(f: Long => Unit) {
+    var i = head
+    while (i < tail) {
+      f(ring((i % ring.length).toInt))
+      i += 1
+    }
+  }
+
+  private def grow() {
+    val bigger = new Array[Long](ring.length * 2)
+    var i = head
+    while (i < tail) {
+      bigger((i % bigger.length).toInt) = ring((i % ring.length).toInt)
+      i += 1
+    }
+    ring = bigger
+  }
+}
+
+object MeasRing {
+  val DOUBLE: Byte = 0
+  val INT: Byte = 1
+  val OTHER: Byte = 2
+}
+
+/**
+ * bounded window of measurements stored as primitive columns (time, value, kind, quality) alongside the
+ * original measurement. The running sum, integral (trapezoidal), min and max (monotonic deques) of the GOOD
+ * values are updated as measurements arrive and leave so reading an aggregate of the window is O(1)
+ * instead of folding over every value.
+ *
+ * Columns start small and grow up to capacity so a calculation that only ever sees a few values doesn't pay
+ * for its configured limit. Each measurement gets a sequence number, a slot is reused once the ring wraps
+ * around so snapshots check that the sequence numbers they read haven't been overwritten.
+ *
+ * Not thread safe, the buckets are only updated while holding the input manager lock. Snapshots read the ring
+ * lazily so they must either be used under that lock or detached first (see MeasWindow.detached).
+ */
+final class MeasRing(capacity: Int) extends WindowSource {
+  import MeasRing._
+
+  private var length = math.min(capacity, 16)
+  private var meas = new Array[Measurement](length)
+  private var times = new Array[Long](length)
+  private var values = new Array[Double](length)
+  private var kinds = new Array[Byte](length)
+  private var good = new Array[Boolean](length)
+
+  // sequence numbers of the oldest retained and next written measurement
+  private var head = 0L
+  private var tail = 0L
+  // slots older than this have been overwritten or weren't copied when the columns grew
+  private var validFrom = 0L
+
+  // aggregates over the GOOD measurements in the window
+  private val goodSeqs = new LongDeque()
+  private val maxDeque = new LongDeque()
+  private val minDeque = new LongDeque()
+  private val timeDeque = new LongDeque()
+  private var sum = 0.0
+  private var integral = 0.0
+  private var badCount = 0
+  private var nonNumericCount = 0
+  private var nonDoubleCount = 0
+  private var unorderedPairs = 0
+  private var removals = 0
+
+  def size = (tail - head).toInt
+
+  def oldestTime = times(slot(head))
+
+  def add(m: Measurement) {
+    if (capacity == 0) return
+    if (size == capacity) removeOldest()
+    if (size == length) grow()
+
+    val seq = tail
+    val s = slot(seq)
+    meas(s) = m
+    times(s) = m.getTime
+    kinds(s) = m.getType match {
+      case Measurement.Type.DOUBLE => DOUBLE
+      case Measurement.Type.INT => INT
+      case _ => OTHER
+    }
+    values(s) = kinds(s) match {
+      case DOUBLE => m.getDoubleVal
+      case INT => m.getIntVal.toDouble
+      case _ => 0.0
+    }
+    good(s) = m.getQuality.getValidity == Quality.Validity.GOOD
+    tail += 1
+    validFrom = math.max(validFrom, tail - length)
+
+    if (!good(s)) badCount += 1
+    else {
+      if (kinds(s) == OTHER) nonNumericCount += 1
+      if (kinds(s) != DOUBLE) nonDoubleCount += 1
+      sum += values(s)
+      if (goodSeqs.nonEmpty) addPair(goodSeqs.back, seq, 1)
+      goodSeqs.pushBack(seq)
+      if (kinds(s) != OTHER) {
+        while (maxDeque.nonEmpty && value(maxDeque.back) <= values(s)) maxDeque.popBack()
+        maxDeque.pushBack(seq)
+        while (minDeque.nonEmpty && value(minDeque.back) >= values(s)) minDeque.popBack()
+        minDeque.pushBack(seq)
+      }
+      while (timeDeque.nonEmpty && time(timeDeque.back) <= times(s)) timeDeque.popBack()
+      timeDeque.pushBack(seq)
+    }
+  }
+
+  def removeOldest() {
+    val seq = head
+    val s = slot(seq)
+    if (!good(s)) badCount -= 1
+    else {
+      if (kinds(s) == OTHER) nonNumericCount -= 1
+      if (kinds(s) != DOUBLE) nonDoubleCount -= 1
+      goodSeqs.popFront()
+      if (goodSeqs.nonEmpty) addPair(seq, goodSeqs.front, -1)
+      sum -= values(s)
+      if (maxDeque.nonEmpty && maxDeque.front == seq) maxDeque.popFront()
+      if (minDeque.nonEmpty && minDeque.front == seq) minDeque.popFront()
+      if (timeDeque.nonEmpty && timeDeque.front == seq) timeDeque.popFront()
+    }
+    head += 1
+
+    // running sums drift as values are added and removed, recompute them once per trip around the ring
+    removals += 1
+    if (removals >= length) recompute()
+  }
+
+  def clear() {
+    head = tail
+    goodSeqs.clear()
+    maxDeque.clear()
+    minDeque.clear()
+    timeDeque.clear()
+    badCount = 0
+    nonNumericCount = 0
+    nonDoubleCount = 0
+    unorderedPairs = 0
+    sum = 0.0
+    integral = 0.0
+  }
+
+  def snapshot(): MeasWindow = {
+    val goodCount = goodSeqs.size
+    val hasNumeric = maxDeque.nonEmpty
+    new MeasWindow(this, head, tail, false, WindowAggregates(
+      goodCount,
+      badCount,
+      nonNumericCount,
+      nonDoubleCount,
+      unorderedPairs,
+      sum,
+      integral,
+      if (hasNumeric) value(minDeque.front) else Double.NaN,
+      if (hasNumeric) value(maxDeque.front) else Double.NaN,
+      if (goodCount > 0) time(timeDeque.front) else 0L,
+      if (goodCount > 0) time(goodSeqs.front) else 0L,
+      if (goodCount > 0) value(goodSeqs.front) else 0.0,
+      if (goodCount > 0) time(goodSeqs.back) else 0L,
+      if (goodCount > 0) value(goodSeqs.back) else 0.0))
+  }
+
+  def get(seq: Long): Measurement = { check(seq); meas(slot(seq)) }
+  def isGood(seq: Long): Boolean = { check(seq); good(slot(seq)) }
+
+  private def check(seq: Long) {
+    if (seq < validFrom) throw new ConcurrentModificationException("Input window was overwritten while in use")
+  }
+
+  private def slot(seq: Long) = (seq % length).toInt
+  private def value(seq: Long) = values(slot(seq))
+  private def time(seq: Long) = times(slot(seq))
+
+  private def addPair(first: Long, second: Long, sign: Int) {
+    val dt = time(second) - time(first)
+    if (dt < 0) unorderedPairs += sign
+    else if (dt > 0) integral += sign * ((value(second) + value(first)) * dt) / 2
+  }
+
+  private def recompute() {
+    removals = 0
+    sum = 0.0
+    integral = 0.0
+    var previous = -1L
+    goodSeqs.foreach { seq =>
+      sum += value(seq)
+      if (previous >= 0) {
+        val dt = time(seq) - time(previous)
+        if (dt > 0) integral += ((value(seq) + value(previous)) * dt) / 2
+      }
+      previous = seq
+    }
+  }
+
+  private def grow() {
+    val bigger = math.min(length * 2, capacity)
+    val newMeas = new Array[Measurement](bigger)
+    val newTimes = new Array[Long](bigger)
+    val newValues = new Array[Double](bigger)
+    val newKinds = new Array[Byte](bigger)
+    val newGood = new Array[Boolean](bigger)
+    var seq = head
+    while (seq < tail) {
+      val from = slot(seq)
+      val to = (seq % bigger).toInt
+      newMeas(to) = meas(from)
+      newTimes(to) = times(from)
+      newValues(to) = values(from)
+      newKinds(to) = kinds(from)
+      newGood(to) = good(from)
+      seq += 1
+    }
+    meas = newMeas
+    times = newTimes
+    values = newValues
+    kinds = newKinds
+    good = newGood
+    length = bigger
+    validFrom = head
+  }
+}
+
+case class WindowAggregates(
+  goodCount: Int,
+  badCount: Int,
+  nonNumericCount: Int,
+  nonDoubleCount: Int,
+  unorderedPairs: Int,
+  sum: Double,
+  integral: Double,
+  min: Double,
+  max: Double,
+  maxTime: Long,
+  firstTime: Long,
+  firstValue: Double,
+  lastTime: Long,
+  lastValue: Double)
+
+/**
+ * measurements addressed by sequence number, either a live MeasRing or a copy detached from one
+ */
+private[lib] trait WindowSource {
+  def get(seq: Long): Measurement
+  def isGood(seq: Long): Boolean
+}
+
+private[lib] class DetachedWindowSource(head: Long, meas: Array[Measurement], good: Array[Boolean]) extends WindowSource {
+  def get(seq: Long) = meas((seq - head).toInt)
+  def isGood(seq: Long) = good((seq - head).toInt)
+}
+
+/**
+ * snapshot of a MeasRing, the aggregates are copied when the snapshot is taken and the measurements are
+ * read from the ring on demand. The measurements are only guaranteed to be readable until the ring has been
+ * updated capacity more times and only while the input manager lock is held; a window that is evaluated
+ * on another thread (sharded calculations) has to be detached while the lock is still held.
+ *
+ * When goodOnly is set the window only contains the GOOD measurements (which the aggregates always cover).
+ */
+class MeasWindow(ring: WindowSource, head: Long, tail: Long, val goodOnly: Boolean, val aggregates: WindowAggregates)
+    extends IndexedSeq[Measurement] {
+
+  private lazy val goodMeasurements = (head until tail).filter(ring.isGood(_)).map(ring.get(_))
+
+  def length = if (goodOnly) aggregates.goodCount else (tail - head).toInt
+
+  def apply(i: Int) = {
+    if (goodOnly) goodMeasurements(i)
+    else {
+      if (i < 0 || i >= length) throw new IndexOutOfBoundsException(i.toString)
+      ring.get(head + i)
+    }
+  }
+
+  def allGood = aggregates.badCount == 0
+
+  /**
+   * aggregates describe exactly the measurements in this window
+   */
+  def aggregated = goodOnly || allGood
+
+  def onlyGood: MeasWindow = if (aggregated) this else new MeasWindow(ring, head, tail, true, aggregates)
+
+  /**
+   * copies the measurements out of the ring so the window stays readable after the ring moves on
+   */
+  def detached: MeasWindow = ring match {
+    case d: DetachedWindowSource => this
+    case _ =>
+      val count = (tail - head).toInt
+      val meas = new Array[Measurement](count)
+      val good = new Array[Boolean](count)
+      var i = 0
+      while (i < count) {
+        meas(i) = ring.get(head + i)
+        good(i) = ring.isGood(head + i)
+        i += 1
+      }
+      new MeasWindow(new DetachedWindowSource(head, meas, good), head, tail, goodOnly, aggregates)
+  }
+}
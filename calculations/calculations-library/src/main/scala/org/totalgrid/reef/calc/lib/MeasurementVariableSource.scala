@@ -0,0 +1,80 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib
+
+import eval._
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+
+/**
+ * variable source that reads straight from the input snapshot, compiled formulas get the primitive values
+ * without converting each measurement to an OperationValue first.
+ */
+class MeasurementVariableSource(inputs: Map[String, Seq[Measurement]]) extends VariableSource {
+
+  def forName(name: String): OperationValue = {
+    inputs.get(name) match {
+      case Some(Seq(single)) => MeasurementConverter.convertMeasurement(single)
+      case Some(window: MeasWindow) if window.aggregated => new WindowRange(window)
+      case Some(multi) => ValueRange(multi.toList.map { MeasurementConverter.convertMeasurement(_) })
+      case None => throw new EvalException("Variable does not exist: " + name + " " + inputs.keys)
+    }
+  }
+
+  override def fillScalars(scalars: ScalarInputs): Boolean = {
+    val names = scalars.names
+    var i = 0
+    while (i < names.length) {
+      inputs.get(names(i)) match {
+        case Some(Seq(m)) =>
+          if (m.getType == Measurement.Type.DOUBLE) scalars.setDouble(i, m.getDoubleVal)
+          else if (m.getType == Measurement.Type.INT) scalars.setLong(i, m.getIntVal)
+          else if (m.getType == Measurement.Type.BOOL) scalars.setBoolean(i, m.getBoolVal)
+          else return false
+        case _ => return false
+      }
+      i += 1
+    }
+    true
+  }
+}
+
+/**
+ * exposes the running aggregates of a window to the operations, the values are only converted if an
+ * operation needs them
+ */
+class WindowRange(window: MeasWindow) extends AggregatedRange {
+  private val aggregates = window.aggregates
+
+  override lazy val toList = window.toList.map { MeasurementConverter.convertMeasurement(_) }
+
+  def count = aggregates.goodCount
+  def numeric = aggregates.nonNumericCount == 0
+  def allDoubles = aggregates.nonDoubleCount == 0
+  def ordered = aggregates.unorderedPairs == 0
+
+  def sum = aggregates.sum
+  def min = aggregates.min
+  def max = aggregates.max
+  def integral = aggregates.integral
+
+  def firstTime = aggregates.firstTime
+  def firstValue = aggregates.firstValue
+  def lastTime = aggregates.lastTime
+  def lastValue = aggregates.lastValue
+}
@@ -22,7 +22,7 @@ import org.totalgrid.reef.client.service.proto.Calculations.InputQuality
 import org.totalgrid.reef.client.service.proto.Measurements.{ Quality, Measurement }
 
 trait QualityInputStrategy {
-  def checkInputs(inputs: Map[String, List[Measurement]]): Option[Map[String, List[Measurement]]]
+  def checkInputs(inputs: Map[String, Seq[Measurement]]): Option[Map[String, Seq[Measurement]]]
 }
 
 object QualityInputStrategy {
@@ -33,9 +33,15 @@ object QualityInputStrategy {
     case _ => throw new Exception("Unknown quality input strategy")
   }
 
+  // windows count their bad measurements as they arrive
+  private def allGood(meases: Seq[Measurement]) = meases match {
+    case window: MeasWindow => window.allGood
+    case _ => meases.forall(m => m.getQuality.getValidity == Quality.Validity.GOOD)
+  }
+
   class WhenAllOk extends QualityInputStrategy {
-    def checkInputs(inputs: Map[String, List[Measurement]]): Option[Map[String, List[Measurement]]] = {
-      if (inputs.values.forall(_.forall(m => m.getQuality.getValidity == Quality.Validity.GOOD))) {
+    def checkInputs(inputs: Map[String, Seq[Measurement]]): Option[Map[String, Seq[Measurement]]] = {
+      if (inputs.values.forall(allGood(_))) {
         Some(inputs)
       } else {
         None
@@ -44,8 +50,11 @@ object QualityInputStrategy {
   }
 
   class FilterOutBad extends QualityInputStrategy {
-    def checkInputs(inputs: Map[String, List[Measurement]]): Option[Map[String, List[Measurement]]] = {
-      Some(inputs.mapValues { _.filter(_.getQuality.getValidity == Quality.Validity.GOOD) })
+    def checkInputs(inputs: Map[String, Seq[Measurement]]): Option[Map[String, Seq[Measurement]]] = {
+      Some(inputs.map {
+        case (name, window: MeasWindow) => (name, window.onlyGood)
+        case (name, meases) => (name, meases.filter(_.getQuality.getValidity == Quality.Validity.GOOD))
+      })
     }
   }
 }
@@ -23,7 +23,7 @@ import org.totalgrid.reef.client.service.proto.Measurements.{ DetailQual, Qualit
 import org.totalgrid.reef.client.service.proto.OptionalProtos._
 
 trait QualityOutputStrategy {
-  def getQuality(inputs: Map[String, List[Measurement]]): Quality
+  def getQuality(inputs: Map[String, Seq[Measurement]]): Quality
 }
 
 object QualityOutputStrategy {
@@ -35,13 +35,13 @@ object QualityOutputStrategy {
   }
 
   class AlwaysOk extends QualityOutputStrategy {
-    def getQuality(inputs: Map[String, List[Measurement]]): Quality = {
+    def getQuality(inputs: Map[String, Seq[Measurement]]): Quality = {
       Quality.newBuilder().setValidity(Quality.Validity.GOOD).setSource(Quality.Source.PROCESS).build()
     }
   }
 
   class WorstQuality extends QualityOutputStrategy {
-    def getQuality(inputs: Map[String, List[Measurement]]): Quality = {
+    def getQuality(inputs: Map[String, Seq[Measurement]]): Quality = {
       inputs.values.flatten.map(_.getQuality).reduceLeft((l, r) => merge(l, r))
     }
 
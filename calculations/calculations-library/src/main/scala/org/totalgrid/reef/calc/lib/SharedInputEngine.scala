@@ -0,0 +1,339 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib
+
+import scala.collection.mutable
+import net.agileautomata.executor4s.{ Executor, Cancelable }
+import com.weiglewilczek.slf4s.Logging
+import org.totalgrid.reef.client.sapi.rpc.MeasurementService
+import org.totalgrid.reef.client.{ Subscription, SubscriptionEvent, SubscriptionEventAcceptor }
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+
+/**
+ * Shares the input subscriptions of every calculation on a calculator node. Instead of each calculation
+ * subscribing to (and fetching history for) each of its inputs, the inputs of all calculations added
+ * together are collected into a single subscribeToMeasurementsByNames call, each distinct history request
+ * is only made once and incoming measurements are fanned out to the interested buckets through an
+ * in-memory point index.
+ *
+ * Measurements are handled in batches on the executor, which must be a strand. Every calculation triggered
+ * by a batch is evaluated once, in dependency order, so a calculation that uses the output of another
+ * calculation on this node sees the newly published value during the same pass rather than after it has
+ * round tripped through the broker.
+ *
+ * Points stay in the shared subscription until the engine is canceled, removing a calculation only drops
+ * it from the index.
+ */
+class SharedInputEngine(service: MeasurementService, val executor: Executor, timeSource: TimeSource)
+    extends Cancelable with Logging {
+
+  private class Input(val calc: SharedInputManager, val point: String, val bucket: InputBucket) {
+    // newest value fed in during setup, subscription events it already covers are dropped
+    var initial = Option.empty[Measurement]
+
+    def accepts(m: Measurement) = initial match {
+      case Some(i) if m.getTime < i.getTime || m == i => false
+      case Some(_) =>
+        initial = None
+        true
+      case None => true
+    }
+  }
+
+  private class SharedInputManager(val outputName: String) extends InputManager {
+    var inputs = List.empty[Input]
+    var trigger = Option.empty[EventedTriggerStrategy]
+    var rank = 0
+    var queued = false
+    var canceled = false
+    var lastUpdate = Option.empty[Measurement]
+
+    def initialize(outputMeasurement: Measurement, inputConfigs: List[InputConfig], trigger: Option[EventedTriggerStrategy]) {
+      register(this, outputMeasurement, inputConfigs, trigger)
+    }
+
+    def getSnapshot: Option[Map[String, Seq[Measurement]]] = mutex.synchronized {
+      MeasInputManager.getSnapshot(inputs.map(_.bucket))
+    }
+
+    def cancel() = unregister(this)
+  }
+
+  // lowest rank (fewest upstream calculations) comes out of the queue first
+  private val rankOrdering = new Ordering[SharedInputManager] {
+    def compare(a: SharedInputManager, b: SharedInputManager) = b.rank - a.rank
+  }
+
+  private val mutex = new Object
+
+  private var byPoint = Map.empty[String, List[Input]]
+  private var byOutput = Map.empty[String, SharedInputManager]
+  private var ranksDirty = false
+
+  private var subscribedPoints = Set.empty[String]
+  private var subscriptions = List.empty[Subscription[Measurement]]
+  private var latest = Map.empty[String, Measurement]
+  private var localOutputs = Map.empty[String, Long]
+
+  private var pendingSetup = List.empty[(SharedInputManager, Measurement)]
+  private var setupScheduled = false
+  private val pending = new mutable.Queue[Measurement]
+  private var drainScheduled = false
+  private var canceled = false
+
+  // only touched on the executor
+  private var evaluating = Option.empty[mutable.PriorityQueue[SharedInputManager]]
+
+  /**
+   * input manager for a single calculation, the inputs are registered with the shared subscription
+   * when initialize is called.
+   */
+  def manager(outputName: String): InputManager = new SharedInputManager(outputName)
+
+  /**
+   * wraps the calculation output so values are also delivered straight to any calculations on this node
+   * that use them as inputs.
+   */
+  def publisher(output: OutputPublisher): OutputPublisher = new OutputPublisher {
+    def publish(m: Measurement) {
+      output.publish(m)
+      publishedLocally(m)
+    }
+  }
+
+  def cancel() {
+    val subs = mutex.synchronized {
+      canceled = true
+      pending.clear()
+      subscriptions
+    }
+    subs.foreach(_.cancel())
+  }
+
+  private def register(calc: SharedInputManager, outputMeasurement: Measurement, inputConfigs: List[InputConfig], trigger: Option[EventedTriggerStrategy]) = mutex.synchronized {
+    calc.inputs = inputConfigs.map { case InputConfig(point, bucket) => new Input(calc, point, bucket) }
+    calc.trigger = trigger
+    pendingSetup ::= ((calc, outputMeasurement))
+    // calculations added in the same callback all end up in one setup pass
+    if (!setupScheduled) {
+      setupScheduled = true
+      executor.execute(setup())
+    }
+  }
+
+  private def unregister(calc: SharedInputManager) = mutex.synchronized {
+    calc.canceled = true
+    pendingSetup = pendingSetup.filterNot(_._1 == calc)
+    if (byOutput.get(calc.outputName) == Some(calc)) byOutput -= calc.outputName
+    calc.inputs.foreach { input =>
+      byPoint.get(input.point).foreach { list =>
+        val remaining = list.filterNot(_ eq input)
+        byPoint = if (remaining.isEmpty) byPoint - input.point else byPoint + (input.point -> remaining)
+      }
+    }
+    ranksDirty = true
+  }
+
+  private def setup() {
+    val (added, newPoints) = mutex.synchronized {
+      setupScheduled = false
+      val added = pendingSetup.reverse
+      pendingSetup = Nil
+      val newPoints = added.flatMap(_._1.inputs.map(_.point)).distinct.filterNot(subscribedPoints.contains(_))
+      subscribedPoints ++= newPoints
+      (added, newPoints)
+    }
+
+    val subscription = if (newPoints.isEmpty) None else {
+      try {
+        val result = service.subscribeToMeasurementsByNames(newPoints).await
+        mutex.synchronized { result.getResult.foreach(m => latest += m.getName -> m) }
+        Some(result.getSubscription)
+      } catch {
+        case e: Exception =>
+          logger.error("Couldn't subscribe to calculation inputs: " + newPoints + " - " + e.getMessage, e)
+          mutex.synchronized { subscribedPoints --= newPoints }
+          None
+      }
+    }
+
+    // calculations that were configured identically share the same history request
+    val now = timeSource.now
+    val histories = mutable.Map.empty[(String, Option[Long], Int), List[Measurement]]
+    def history(point: String, since: Option[Long], limit: Int) = histories.getOrElseUpdate((point, since, limit), {
+      try {
+        since match {
+          case Some(time) => service.getMeasurementHistoryByName(point, time, limit).await
+          case None => service.getMeasurementHistoryByName(point, limit).await
+        }
+      } catch {
+        case e: Exception =>
+          logger.error("Couldn't get history for calculation input: " + point + " - " + e.getMessage, e)
+          Nil
+      }
+    })
+
+    val initialValues = added.map {
+      case (calc, outputMeasurement) =>
+        calc -> calc.inputs.map { input =>
+          input -> (input.bucket.getMeasRequest match {
+            case SingleLatest => Nil
+            case MultiSince(from, limit) => history(input.point, Some(now + from), limit)
+            case MultiLimit(count) => history(input.point, None, count)
+            case SincePublishing(count) => history(input.point, Some(outputMeasurement.getTime), count)
+          })
+        }
+    }
+
+    runPass { queue =>
+      val updated = initialValues.filterNot(_._1.canceled).map {
+        case (calc, inputs) =>
+          val lastValues = inputs.map {
+            case (input, values) =>
+              val initial = if (input.bucket.getMeasRequest == SingleLatest) latest.get(input.point).toList else values
+              initial.foreach(input.bucket.onReceived(_))
+              input.initial = initial.lastOption
+              byPoint += input.point -> (input :: byPoint.getOrElse(input.point, Nil))
+              initial.lastOption
+          }
+          byOutput += calc.outputName -> calc
+          calc -> lastValues.flatten.lastOption
+      }
+      // ranks have to be settled before anything goes into the queue
+      computeRanks()
+      updated.foreach { case (calc, last) => last.foreach(schedule(calc, _, queue)) }
+    }
+
+    subscription.foreach { sub =>
+      mutex.synchronized { subscriptions ::= sub }
+      sub.start(new SubscriptionEventAcceptor[Measurement] {
+        def onEvent(event: SubscriptionEvent[Measurement]) = onMeasurement(event.getValue)
+      })
+    }
+  }
+
+  private def onMeasurement(m: Measurement) = mutex.synchronized {
+    if (!canceled) {
+      latest += m.getName -> m
+      pending.enqueue(m)
+      if (!drainScheduled) {
+        drainScheduled = true
+        executor.execute(drain())
+      }
+    }
+  }
+
+  private def drain() {
+    runPass { queue =>
+      drainScheduled = false
+      if (ranksDirty) computeRanks()
+      val batch = pending.toList
+      pending.clear()
+      batch.foreach(deliver(_, queue, false))
+    }
+  }
+
+  private def publishedLocally(m: Measurement) = mutex.synchronized {
+    if (byPoint.contains(m.getName)) {
+      localOutputs += m.getName -> m.getTime
+      evaluating match {
+        case Some(queue) => deliver(m, queue, true)
+        // published outside of a pass (interval triggered), dependents are evaluated right away
+        case None => runPass { deliver(m, _, true) }
+      }
+    }
+  }
+
+  /**
+   * fills the queue (under the lock) and then evaluates the triggered calculations in rank order,
+   * calculations triggered by outputs published during the pass are added to the same queue.
+   */
+  private def runPass(fill: mutable.PriorityQueue[SharedInputManager] => Unit) {
+    val queue = new mutable.PriorityQueue[SharedInputManager]()(rankOrdering)
+    evaluating = Some(queue)
+    try {
+      mutex.synchronized { fill(queue) }
+      while (queue.nonEmpty) {
+        val calc = queue.dequeue()
+        calc.queued = false
+        if (!calc.canceled) {
+          try {
+            for (trigger <- calc.trigger; m <- calc.lastUpdate) trigger.handle(m)
+          } catch {
+            case e: Exception =>
+              logger.error("Error evaluating calculation for point: " + calc.outputName + " - " + e.getMessage, e)
+          }
+        }
+      }
+    } finally {
+      evaluating = None
+    }
+  }
+
+  private def deliver(m: Measurement, queue: mutable.PriorityQueue[SharedInputManager], local: Boolean) {
+    val name = m.getName
+    // the broker echo of a value we already delivered locally
+    val echo = !local && localOutputs.get(name).map(_ >= m.getTime).getOrElse(false)
+    if (!echo) {
+      byPoint.get(name).foreach {
+        _.foreach { input =>
+          if (input.accepts(m)) {
+            input.bucket.onReceived(m)
+            schedule(input.calc, m, queue)
+          }
+        }
+      }
+    }
+  }
+
+  private def schedule(calc: SharedInputManager, m: Measurement, queue: mutable.PriorityQueue[SharedInputManager]) {
+    if (calc.trigger.isDefined) {
+      // redundant triggers within a pass collapse into a single evaluation
+      calc.lastUpdate = Some(m)
+      if (!calc.queued) {
+        calc.queued = true
+        queue.enqueue(calc)
+      }
+    }
+  }
+
+  /**
+   * rank is the length of the longest chain of local calculations feeding into a calculation, evaluating
+   * in rank order means all of a calculations local inputs are up to date before it runs.
+   */
+  private def computeRanks() {
+    val visiting = mutable.Set.empty[SharedInputManager]
+    val done = mutable.Set.empty[SharedInputManager]
+    def rankOf(calc: SharedInputManager): Int = {
+      if (done.contains(calc)) calc.rank
+      // dependency cycle, break it here
+      else if (visiting.contains(calc)) 0
+      else {
+        visiting += calc
+        val producers = calc.inputs.flatMap(i => byOutput.get(i.point)).filterNot(_ eq calc)
+        calc.rank = if (producers.isEmpty) 0 else producers.map(rankOf(_)).max + 1
+        visiting -= calc
+        done += calc
+        calc.rank
+      }
+    }
+    byOutput.values.foreach(rankOf(_))
+    ranksDirty = false
+  }
+}
@@ -22,7 +22,7 @@ import org.totalgrid.reef.client.service.proto.Measurements.Measurement
 import org.totalgrid.reef.client.service.proto.Calculations.OutputTime
 
 trait TimeStrategy {
-  def getTime(inputs: Map[String, List[Measurement]]): Long
+  def getTime(inputs: Map[String, Seq[Measurement]]): Long
 }
 
 /*
@@ -42,9 +42,12 @@ object TimeStrategy {
   }
 
   class MostRecent extends TimeStrategy {
-    def getTime(inputs: Map[String, List[Measurement]]): Long = {
-      val time = inputs.values.flatten.map(_.getTime).foldLeft(0L) {
-        case (l, r) => if (l >= r) l else r
+    def getTime(inputs: Map[String, Seq[Measurement]]): Long = {
+      val time = inputs.values.foldLeft(0L) {
+        case (l, window: MeasWindow) if window.aggregated =>
+          val r = if (window.isEmpty) 0L else window.aggregates.maxTime
+          if (l >= r) l else r
+        case (l, meases) => meases.foldLeft(l) { (l, m) => if (l >= m.getTime) l else m.getTime }
       }
       if (time != 0) {
         time
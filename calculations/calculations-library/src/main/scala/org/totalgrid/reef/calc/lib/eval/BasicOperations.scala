@@ -42,10 +42,14 @@ object BasicOperations {
       (List("INTEGRATE"), () => new Integrate)))
   }
 
-  class Sum extends MultiNumericOperation {
+  class Sum extends MultiNumericOperation with AggregateOperation {
     def eval(args: List[Double]): Double = {
       args.foldLeft(0.0) { _ + _ }
     }
+
+    def apply(range: AggregatedRange) = {
+      if (range.numeric && range.count > 0) Some(NumericConst(range.sum)) else None
+    }
   }
 
   class Subtract extends PairNumericOperation {
@@ -66,13 +70,21 @@ object BasicOperations {
     def eval(l: Double, r: Double): Double = { math.pow(l, r) }
   }
 
-  class Average extends MultiNumericOperation {
+  class Average extends MultiNumericOperation with AggregateOperation {
     def eval(args: List[Double]): Double = {
       args.foldLeft(0.0) { _ + _ } / args.size
     }
+
+    def apply(range: AggregatedRange) = {
+      if (range.numeric && range.count > 0) Some(NumericConst(range.sum / range.count)) else None
+    }
   }
 
-  class Max extends MultiNumericOperation {
+  class Max extends MultiNumericOperation with AggregateOperation {
+    def apply(range: AggregatedRange) = {
+      if (range.numeric && range.count > 0) Some(NumericConst(range.max)) else None
+    }
+
     def eval(args: List[Double]): Double = {
       args.foldLeft(Option.empty[Double]) { (result, value) =>
         result match {
@@ -83,7 +95,11 @@ object BasicOperations {
     }
   }
 
-  class Min extends MultiNumericOperation {
+  class Min extends MultiNumericOperation with AggregateOperation {
+    def apply(range: AggregatedRange) = {
+      if (range.numeric && range.count > 0) Some(NumericConst(range.min)) else None
+    }
+
     def eval(args: List[Double]): Double = {
       args.foldLeft(Option.empty[Double]) { (result, value) =>
         result match {
@@ -128,7 +144,27 @@ object BasicOperations {
     }
   }
 
-  class Integrate extends AccumulatedNumericOperation {
+  class Integrate extends AccumulatedNumericOperation with AggregateOperation {
+
+    /**
+     * same as folding over the range: the area from the last value of the previous evaluation to the
+     * first value of the range plus the area under the range
+     */
+    def apply(range: AggregatedRange) = {
+      val usable = range.allDoubles && range.ordered && range.count > 0 &&
+        accumulatedValue.lastMeas.forall { _.time <= range.firstTime }
+      if (usable) {
+        val leading = accumulatedValue.lastMeas match {
+          case Some(NumericMeas(v, t)) =>
+            val time = range.firstTime - t
+            if (time > 0) ((range.firstValue + v) * time) / 2 else 0
+          case None => 0
+        }
+        accumulatedValue = AccumulatedValue(leading + range.integral, Some(NumericMeas(range.lastValue, range.lastTime)))
+        Some(NumericConst(accumulatedValue.value))
+      } else None
+    }
+
     def eval(initialValue: AccumulatedValue, args: List[NumericMeas]) = {
       args.foldLeft(initialValue.copy(value = 0)) {
         case (state, meas) =>
@@ -39,7 +39,7 @@ object Formula {
 
   class BasicFormulaEvaluator(expr: Expression, opSource: OperationSource) extends Formula {
 
-    private val prepared = expr.prepare(opSource)
+    private val prepared = FormulaCompiler.compile(expr.prepare(opSource))
 
     def evaluate(inputs: VariableSource): OperationValue = {
       prepared.evaluate(inputs)
@@ -0,0 +1,265 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib.eval
+
+import scala.util.control.ControlThrowable
+import scala.collection.mutable
+import OperationInterpreter._
+import BasicOperations._
+
+/**
+ * turns a prepared expression built from the basic scalar operations into a tree of closures that work
+ * on primitive doubles, longs and booleans. The interpreter builds lists and boxes every intermediate
+ * value, the compiled tree only allocates the final result.
+ *
+ * Only used when every variable is a single value, ranges (and any operation we don't know how to
+ * compile, like the stateful INTEGRATE) are left to the interpreter so the results and error messages
+ * are always the same as interpreting the expression.
+ */
+object FormulaCompiler {
+
+  /**
+   * @return a compiled version of the expression or the expression itself if it can't be compiled
+   */
+  def compile(expr: PreparedExpression): PreparedExpression = {
+    val slots = mutable.LinkedHashMap.empty[String, Int]
+    node(expr, slots) match {
+      case Some(d: DoubleNode) => new CompiledExpression(expr, slots.keys.toArray) {
+        def evaluate(in: ScalarInputs) = NumericConst(d(in))
+      }
+      case Some(l: LongNode) => new CompiledExpression(expr, slots.keys.toArray) {
+        def evaluate(in: ScalarInputs) = LongConst(l(in))
+      }
+      case Some(b: BooleanNode) => new CompiledExpression(expr, slots.keys.toArray) {
+        def evaluate(in: ScalarInputs) = BooleanConst(b(in))
+      }
+      // a lone variable is returned as is by the interpreter, there is nothing to gain
+      case _ => expr
+    }
+  }
+
+  /**
+   * thrown when a variable turns out to be the wrong type, the interpreter then produces the error
+   */
+  private object WrongType extends ControlThrowable
+
+  /**
+   * evaluates with the compiled tree when all the variables are single values and with the interpreter
+   * otherwise. The inputs are copied into a reused ScalarInputs so, like the stateful operations, a
+   * compiled expression belongs to a single calculation and mustn't be evaluated concurrently.
+   */
+  abstract class CompiledExpression(interpreted: PreparedExpression, names: Array[String]) extends PreparedExpression {
+    private val scalars = new ScalarInputs(names)
+
+    def evaluate(in: ScalarInputs): OperationValue
+
+    def evaluate(inputs: VariableSource): OperationValue = {
+      if (inputs.fillScalars(scalars)) {
+        try {
+          evaluate(scalars)
+        } catch {
+          case WrongType => interpreted.evaluate(inputs)
+        }
+      } else {
+        interpreted.evaluate(inputs)
+      }
+    }
+  }
+
+  sealed trait Node
+
+  abstract class DoubleNode extends Node {
+    def apply(in: ScalarInputs): Double
+  }
+
+  abstract class LongNode extends Node {
+    def apply(in: ScalarInputs): Long
+  }
+
+  abstract class BooleanNode extends Node {
+    def apply(in: ScalarInputs): Boolean
+  }
+
+  // the type of a variable is only known once the inputs arrive
+  case class VarNode(slot: Int) extends Node
+
+  private def node(expr: PreparedExpression, slots: mutable.Map[String, Int]): Option[Node] = expr match {
+    case ConstDouble(v) => Some(new DoubleNode { def apply(in: ScalarInputs) = v })
+    case ConstLong(v) => Some(new LongNode { def apply(in: ScalarInputs) = v })
+    case ConstBoolean(v) => Some(new BooleanNode { def apply(in: ScalarInputs) = v })
+    case Var(name) => Some(VarNode(slots.getOrElseUpdate(name, slots.size)))
+    case PreparedFun(op, args) => operation(op, args, slots)
+    case PreparedInfix(op, left, right) => operation(op, List(left, right), slots)
+    case _ => None
+  }
+
+  private def operation(op: Operation, args: List[PreparedExpression], slots: mutable.Map[String, Int]): Option[Node] = {
+    val compiledArgs = args.map { node(_, slots) }
+    if (compiledArgs.exists { _.isEmpty }) None
+    else {
+      val nodes = compiledArgs.flatten
+      // wrong arity or argument types are left to the interpreter to report
+      def numeric = sequence(nodes.map { asDouble(_) })
+      def boolean = sequence(nodes.map { asBoolean(_) })
+      def pair = if (nodes.size == 2) numeric.map { a => (a(0), a(1)) } else None
+      def single = if (nodes.size == 1) numeric.map { _(0) } else None
+      def singleBoolean = if (nodes.size == 1) boolean.map { _(0) } else None
+      def many = if (nodes.size > 0) numeric else None
+      def manyBoolean = if (nodes.size > 0) boolean else None
+
+      op match {
+        case _: Sum => many.map { sum(_) }
+        case _: Average => many.map { a =>
+          val s = sum(a)
+          val size = a.size
+          new DoubleNode { def apply(in: ScalarInputs) = s(in) / size }
+        }
+        case _: BasicOperations.Product => many.map { a =>
+          new DoubleNode {
+            def apply(in: ScalarInputs) = {
+              var result = a(0)(in)
+              var i = 1
+              while (i < a.length) {
+                result *= a(i)(in)
+                i += 1
+              }
+              result
+            }
+          }
+        }
+        case _: Max => many.map { a =>
+          new DoubleNode {
+            def apply(in: ScalarInputs) = {
+              var result = a(0)(in)
+              var i = 1
+              while (i < a.length) {
+                val v = a(i)(in)
+                result = if (result > v) result else v
+                i += 1
+              }
+              result
+            }
+          }
+        }
+        case _: Min => many.map { a =>
+          new DoubleNode {
+            def apply(in: ScalarInputs) = {
+              var result = a(0)(in)
+              var i = 1
+              while (i < a.length) {
+                val v = a(i)(in)
+                result = if (result < v) result else v
+                i += 1
+              }
+              result
+            }
+          }
+        }
+        case _: Subtract => pair.map { case (l, r) => new DoubleNode { def apply(in: ScalarInputs) = l(in) - r(in) } }
+        case _: Divide => pair.map { case (l, r) => new DoubleNode { def apply(in: ScalarInputs) = l(in) / r(in) } }
+        case _: Power => pair.map { case (l, r) => new DoubleNode { def apply(in: ScalarInputs) = math.pow(l(in), r(in)) } }
+        case _: Greater => pair.map { case (l, r) => new BooleanNode { def apply(in: ScalarInputs) = l(in) > r(in) } }
+        case _: Less => pair.map { case (l, r) => new BooleanNode { def apply(in: ScalarInputs) = l(in) < r(in) } }
+        case _: SquareRoot => single.map { v => new DoubleNode { def apply(in: ScalarInputs) = math.sqrt(v(in)) } }
+        case _: Not => singleBoolean.map { v => new BooleanNode { def apply(in: ScalarInputs) = !v(in) } }
+        // every argument is evaluated, like the interpreter, so a badly typed variable is always reported
+        case _: And => manyBoolean.map { a =>
+          new BooleanNode {
+            def apply(in: ScalarInputs) = {
+              var result = true
+              var i = 0
+              while (i < a.length) {
+                result = a(i)(in) && result
+                i += 1
+              }
+              result
+            }
+          }
+        }
+        case _: Or => manyBoolean.map { a =>
+          new BooleanNode {
+            def apply(in: ScalarInputs) = {
+              var result = false
+              var i = 0
+              while (i < a.length) {
+                result = a(i)(in) || result
+                i += 1
+              }
+              result
+            }
+          }
+        }
+        case _: Count => manyBoolean.map { a =>
+          new LongNode {
+            def apply(in: ScalarInputs) = {
+              var result = 0L
+              var i = 0
+              while (i < a.length) {
+                if (a(i)(in)) result += 1
+                i += 1
+              }
+              result
+            }
+          }
+        }
+        case _ => None
+      }
+    }
+  }
+
+  private def sum(a: Array[DoubleNode]) = new DoubleNode {
+    def apply(in: ScalarInputs) = {
+      var result = 0.0
+      var i = 0
+      while (i < a.length) {
+        result += a(i)(in)
+        i += 1
+      }
+      result
+    }
+  }
+
+  private def asDouble(n: Node): Option[DoubleNode] = n match {
+    case d: DoubleNode => Some(d)
+    case l: LongNode => Some(new DoubleNode { def apply(in: ScalarInputs) = l(in).toDouble })
+    case VarNode(slot) => Some(new DoubleNode {
+      def apply(in: ScalarInputs) = in.kinds(slot) match {
+        case ScalarInputs.DOUBLE => in.doubles(slot)
+        case ScalarInputs.LONG => in.longs(slot).toDouble
+        case _ => throw WrongType
+      }
+    })
+    case _: BooleanNode => None
+  }
+
+  private def asBoolean(n: Node): Option[BooleanNode] = n match {
+    case b: BooleanNode => Some(b)
+    case VarNode(slot) => Some(new BooleanNode {
+      def apply(in: ScalarInputs) = {
+        if (in.kinds(slot) != ScalarInputs.BOOLEAN) throw WrongType
+        in.booleans(slot)
+      }
+    })
+    case _ => None
+  }
+
+  private def sequence[A: ClassManifest](list: List[Option[A]]): Option[Array[A]] = {
+    if (list.exists { _.isEmpty }) None else Some(list.flatten.toArray)
+  }
+}
@@ -32,7 +32,14 @@ object OperationInterpreter {
 
   case class PreparedFun(operation: Operation, args: List[PreparedExpression]) extends PreparedExpression {
     def evaluate(inputs: VariableSource) = {
-      operation.apply(args.map(_.evaluate(inputs)).flatMap(_.toList))
+      args.map(_.evaluate(inputs)) match {
+        // a function of a single aggregated range (like AVERAGE(A)) can skip the values
+        case List(range: AggregatedRange) => operation match {
+          case agg: OperationPatterns.AggregateOperation => agg.apply(range).getOrElse(operation.apply(range.toList))
+          case _ => operation.apply(range.toList)
+        }
+        case values => operation.apply(values.flatMap(_.toList))
+      }
     }
   }
 
@@ -23,6 +23,14 @@ object OperationPatterns {
     protected val name = this.getClass.getSimpleName
   }
 
+  /**
+   * operation that can be calculated from the aggregates of a range, returns None if the interpreter
+   * should apply it to the values instead
+   */
+  trait AggregateOperation extends Operation {
+    def apply(range: AggregatedRange): Option[OperationValue]
+  }
+
   trait MultiNumericOperation extends AbstractOperation {
     def apply(args: List[OperationValue]): OperationValue = {
       if (args.size > 0) {
@@ -34,6 +34,30 @@ case class ValueRange(list: List[OperationValue]) extends OperationValue {
   override def toList: List[OperationValue] = list
 }
 
+/**
+ * range of measurements whose aggregates are kept up to date as values arrive, operations that only need
+ * an aggregate use it directly instead of folding over toList
+ */
+trait AggregatedRange extends OperationValue {
+  def count: Int
+  // aggregates are only meaningful when every value is numeric
+  def numeric: Boolean
+  def allDoubles: Boolean
+  // no value is older than the one before it
+  def ordered: Boolean
+
+  def sum: Double
+  def min: Double
+  def max: Double
+  // trapezoidal area under the values
+  def integral: Double
+
+  def firstTime: Long
+  def firstValue: Double
+  def lastTime: Long
+  def lastValue: Double
+}
+
 trait NumericValue extends OperationValue {
   def doubleValue: Double
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib.eval
+
+object ScalarInputs {
+  val DOUBLE = 0
+  val LONG = 1
+  val BOOLEAN = 2
+}
+
+/**
+ * primitive copy of the single valued inputs to a compiled formula, each variable has a slot and the
+ * value is stored in the array for its kind so nothing is boxed during evaluation.
+ */
+final class ScalarInputs(val names: Array[String]) {
+  import ScalarInputs._
+
+  val kinds = new Array[Int](names.length)
+  val doubles = new Array[Double](names.length)
+  val longs = new Array[Long](names.length)
+  val booleans = new Array[Boolean](names.length)
+
+  def setDouble(slot: Int, v: Double) {
+    kinds(slot) = DOUBLE
+    doubles(slot) = v
+  }
+
+  def setLong(slot: Int, v: Long) {
+    kinds(slot) = LONG
+    longs(slot) = v
+  }
+
+  def setBoolean(slot: Int, v: Boolean) {
+    kinds(slot) = BOOLEAN
+    booleans(slot) = v
+  }
+
+  /**
+   * @return false if the value is a range (or not a value we can use) so the formula must be interpreted
+   */
+  def set(slot: Int, v: OperationValue): Boolean = {
+    // LongValue has to be checked before NumericValue, see LongValue
+    v match {
+      case l: LongValue =>
+        setLong(slot, l.longValue)
+        true
+      case n: NumericValue =>
+        setDouble(slot, n.doubleValue)
+        true
+      case b: BooleanValue =>
+        setBoolean(slot, b.value)
+        true
+      case _ => false
+    }
+  }
+
+  /**
+   * copies every variable out of the source through forName
+   */
+  def fill(source: VariableSource): Boolean = {
+    var i = 0
+    while (i < names.length) {
+      if (!set(i, source.forName(names(i)))) return false
+      i += 1
+    }
+    true
+  }
+}
@@ -20,4 +20,10 @@ package org.totalgrid.reef.calc.lib.eval
 
 trait VariableSource {
   def forName(name: String): OperationValue
+
+  /**
+   * copies the variables a compiled formula uses into their slots, returns false if any of them isn't a
+   * single value so the caller falls back to interpreting the formula with forName
+   */
+  def fillScalars(scalars: ScalarInputs): Boolean = scalars.fill(this)
 }
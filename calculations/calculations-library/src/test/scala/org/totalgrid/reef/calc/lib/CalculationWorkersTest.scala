@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import net.agileautomata.executor4s.Strand
+import net.agileautomata.executor4s.testing.MockExecutor
+import org.totalgrid.reef.jmx.{ Metrics, MetricsContainer, MetricsSource, Tag }
+
+@RunWith(classOf[JUnitRunner])
+class CalculationWorkersTest extends FunSuite with ShouldMatchers {
+
+  test("Triggers coalesce while an evaluation is queued") {
+    val exe = new MockExecutor
+    val container = MetricsContainer()
+    val shard = new CalculationShard(Strand(exe), new ShardMetrics(Metrics(container)))
+
+    var attempts = 0
+    val evaluate = shard.evaluation(() => attempts += 1)
+
+    evaluate()
+    evaluate()
+    evaluate()
+    container.get("QueueDepth").value should equal(1)
+
+    exe.runUntilIdle()
+    attempts should equal(1)
+    container.get("QueueDepth").value should equal(0)
+
+    evaluate()
+    exe.runUntilIdle()
+    attempts should equal(2)
+  }
+
+  test("Calculations are pinned to a shard by output point") {
+    val source = new CalculationMetricsSource(new MockMetricsSource, true)
+    val workers = new CalculationWorkers(new MockExecutor, 4, source)
+
+    workers.shardFor("PointA") should be theSameInstanceAs (workers.shardFor("PointA"))
+    (0 to 100).map(i => workers.shardFor("Point" + i)).distinct.size should equal(4)
+  }
+
+  class MockMetricsSource extends MetricsSource {
+    def metrics(name: String): Metrics = Metrics(MetricsContainer())
+    def metrics(name: String, subTags: Tag): Metrics = metrics(name)
+    def metrics(name: String, subTags: List[Tag]): Metrics = metrics(name)
+  }
+}
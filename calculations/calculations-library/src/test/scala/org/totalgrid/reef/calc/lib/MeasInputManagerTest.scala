@@ -125,4 +125,39 @@ class MeasInputManagerTest extends FunSuite with ShouldMatchers {
     trigger.lastMeas should equal(Some(lastMeas))
     manager.getSnapshot should equal(Some(Map("A" -> (initialResults ::: List(lastMeas)))))
   }
+
+  def fullWindowDuringEvaluation(detach: Boolean) = {
+    val service = Mockito.mock(classOf[MeasurementService], new MockitoStubbedOnly)
+
+    val manager = new MeasInputManager(service, new MockTimeSource(0), detach)
+
+    val initialResults = (0 until 5).map { makeTraceMeas(_) }.toList
+    val subResultA = subSuccess(initialResults)
+
+    Mockito.doReturn(subResultA).when(service).subscribeToMeasurementHistoryByName("PointA", 5)
+
+    manager.initialize(makeTraceMeas(0), List(InputConfig("PointA", new LimitRangeBucket("A", 5))), None)
+
+    // evaluation takes its snapshot, a full window of new measurements arrives before it reads the values
+    val window = manager.getSnapshot.get("A")
+    val subAcceptorA = subResultA.await.mockSub.acceptor.get
+    (5 until 10).foreach { i => subAcceptorA.onEvent(Event(SubscriptionEventType.MODIFIED, makeTraceMeas(i))) }
+
+    (window, initialResults)
+  }
+
+  test("Detached window survives full window of updates during evaluation") {
+    val (window, initialResults) = fullWindowDuringEvaluation(true)
+
+    window.toList should equal(initialResults)
+    window.asInstanceOf[MeasWindow].onlyGood.toList should equal(initialResults)
+  }
+
+  test("Shared window is overwritten by full window of updates during evaluation") {
+    val (window, _) = fullWindowDuringEvaluation(false)
+
+    intercept[java.util.ConcurrentModificationException] {
+      window.toList
+    }
+  }
 }
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.totalgrid.reef.client.service.proto.Measurements.{ Quality, Measurement }
+import org.totalgrid.reef.calc.lib.eval._
+import scala.util.Random
+
+@RunWith(classOf[JUnitRunner])
+class MeasRingTest extends FunSuite with ShouldMatchers {
+
+  def doubleMeas(v: Double, time: Long, good: Boolean = true) = {
+    val validity = if (good) Quality.Validity.GOOD else Quality.Validity.INVALID
+    Measurement.newBuilder.setName("test01").setType(Measurement.Type.DOUBLE).setDoubleVal(v)
+      .setQuality(Quality.newBuilder.setValidity(validity)).setTime(time).build
+  }
+
+  def checkAggregates(window: MeasWindow, expected: Seq[Measurement]) {
+    val good = expected.filter(_.getQuality.getValidity == Quality.Validity.GOOD)
+    val values = good.map(_.getDoubleVal)
+    val a = window.aggregates
+
+    window.toList should equal(expected.toList)
+    window.onlyGood.toList should equal(good.toList)
+    a.goodCount should equal(good.size)
+    a.badCount should equal(expected.size - good.size)
+    if (good.nonEmpty) {
+      a.sum should be(values.sum plusOrMinus 1e-6)
+      a.min should equal(values.min)
+      a.max should equal(values.max)
+      a.maxTime should equal(good.map(_.getTime).max)
+      a.firstTime should equal(good.head.getTime)
+      a.lastValue should equal(good.last.getDoubleVal)
+      val pairs = good.zip(good.drop(1))
+      val ordered = pairs.forall { case (l, r) => r.getTime >= l.getTime }
+      (a.unorderedPairs == 0) should equal(ordered)
+      if (ordered) {
+        val area = pairs.map { case (l, r) => (l.getDoubleVal + r.getDoubleVal) * (r.getTime - l.getTime) / 2 }.sum
+        a.integral should be(area plusOrMinus 1e-3)
+      }
+    }
+  }
+
+  test("Aggregates track a sliding window") {
+    val rand = new Random(42)
+    val ring = new MeasRing(50)
+    val all = (0 until 500).map { i =>
+      // mostly ordered with some repeated times, out of order values and bad quality
+      val time = if (i % 37 == 0) i - 3 else i
+      doubleMeas(rand.nextDouble * 200 - 100, time, i % 11 != 0)
+    }
+    all.zipWithIndex.foreach {
+      case (m, i) =>
+        ring.add(m)
+        checkAggregates(ring.snapshot(), all.slice(math.max(0, i - 49), i + 1))
+    }
+  }
+
+  test("Removing and clearing keeps aggregates consistent") {
+    val ring = new MeasRing(100)
+    val all = (0 until 40).map { i => doubleMeas(i % 7, i * 10) }
+    all.foreach { ring.add(_) }
+    (1 to 30).foreach { i =>
+      ring.removeOldest()
+      checkAggregates(ring.snapshot(), all.drop(i))
+    }
+    ring.clear()
+    ring.size should equal(0)
+    ring.snapshot().aggregates.goodCount should equal(0)
+    ring.add(all(0))
+    checkAggregates(ring.snapshot(), List(all(0)))
+  }
+
+  test("Overwritten windows can't be read") {
+    val ring = new MeasRing(2)
+    ring.add(doubleMeas(1, 1))
+    ring.add(doubleMeas(2, 2))
+    val window = ring.snapshot()
+    ring.add(doubleMeas(3, 3))
+    ring.add(doubleMeas(4, 4))
+    intercept[java.util.ConcurrentModificationException] {
+      window(0)
+    }
+  }
+
+  test("Operations use the window aggregates") {
+    val bucket = new InputBucket.LimitRangeBucket("A", 100)
+    (0 until 150).foreach { i => bucket.onReceived(doubleMeas(i % 13, i * 1000)) }
+    val window = bucket.getSnapshot.get
+    val aggregated = new MeasurementVariableSource(Map("A" -> window))
+    val listed = new MeasurementVariableSource(Map("A" -> window.toList))
+
+    List("AVERAGE(A)", "SUM(A)", "MAX(A)", "MIN(A)", "INTEGRATE(A)").foreach { f =>
+      val expr = OperationParser.parseFormula(f)
+      val fast = Formula(expr, BasicOperations.getSource).evaluate(aggregated)
+      val slow = Formula(expr, BasicOperations.getSource).evaluate(listed)
+      (fast, slow) match {
+        case (NumericConst(l), NumericConst(r)) => l should be(r plusOrMinus 1e-6)
+        case _ => fail(f + " gave " + fast + " and " + slow)
+      }
+    }
+  }
+
+  test("Accumulated INTEGRATE continues from the previous window") {
+    val bucket = new InputBucket.NoStorageBucket("A", 100)
+    val ring = new MeasRing(100)
+    val fast = new AccumulatedFormula(NumericConst(0), Formula(OperationParser.parseFormula("INTEGRATE(A)"), BasicOperations.getSource))
+    val slow = new AccumulatedFormula(NumericConst(0), Formula(OperationParser.parseFormula("INTEGRATE(A)"), BasicOperations.getSource))
+
+    (0 until 5).foreach { batch =>
+      ring.clear()
+      (0 until 10).foreach { i =>
+        val m = doubleMeas(batch * 10 + i, (batch * 10 + i) * 100)
+        ring.add(m)
+        bucket.onReceived(m)
+      }
+      val l = fast.evaluate(new MeasurementVariableSource(Map("A" -> ring.snapshot())))
+      val r = slow.evaluate(new MeasurementVariableSource(Map("A" -> bucket.getSnapshot.get)))
+      l should equal(r)
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+import org.mockito.Mockito
+import org.totalgrid.reef.client.sapi.rpc.MeasurementService
+import org.totalgrid.reef.test.MockitoStubbedOnly
+import org.totalgrid.reef.client.sapi.client.ServiceTestHelpers._
+import org.totalgrid.reef.client.operations.scl.Event
+import org.totalgrid.reef.client.proto.Envelope.SubscriptionEventType
+import org.totalgrid.reef.calc.lib.InputBucket.{ LimitRangeBucket, SingleLatestBucket }
+import net.agileautomata.executor4s.testing.MockExecutor
+
+@RunWith(classOf[JUnitRunner])
+class SharedInputEngineTest extends FunSuite with ShouldMatchers {
+
+  import CalcLibTestHelpers._
+
+  def meas(name: String, v: Int, time: Long) = makeTraceMeas(v, time).toBuilder.setName(name).build
+
+  class RecordingTrigger(name: String, log: collection.mutable.ListBuffer[String], onHandle: Measurement => Unit = _ => ()) extends EventedTriggerStrategy {
+    def handle(m: Measurement) = {
+      log += name
+      onHandle(m)
+    }
+  }
+
+  class NullPublisher extends OutputPublisher {
+    var published = List.empty[Measurement]
+    def publish(m: Measurement) = published ::= m
+  }
+
+  test("Calculations added together share one subscription and history fetch") {
+    val service = Mockito.mock(classOf[MeasurementService], new MockitoStubbedOnly)
+    val exe = new MockExecutor
+    val engine = new SharedInputEngine(service, exe, new MockTimeSource(0))
+    val log = collection.mutable.ListBuffer.empty[String]
+
+    val currentA = meas("PointA", 1, 10)
+    val subResult = subSuccess(List(currentA, meas("PointB", 2, 10)))
+    Mockito.doReturn(subResult).when(service).subscribeToMeasurementsByNames(List("PointA", "PointB"))
+    val historyB = List(meas("PointB", 1, 5), meas("PointB", 2, 10))
+    Mockito.doReturn(success(historyB)).when(service).getMeasurementHistoryByName("PointB", 10)
+
+    val calc1 = engine.manager("Out1")
+    val calc2 = engine.manager("Out2")
+    calc1.initialize(meas("Out1", 0, 0), List(InputConfig("PointA", new SingleLatestBucket("A")), InputConfig("PointB", new LimitRangeBucket("B", 10))), Some(new RecordingTrigger("1", log)))
+    calc2.initialize(meas("Out2", 0, 0), List(InputConfig("PointB", new LimitRangeBucket("B", 10))), Some(new RecordingTrigger("2", log)))
+
+    exe.runUntilIdle()
+
+    Mockito.verify(service, Mockito.times(1)).subscribeToMeasurementsByNames(List("PointA", "PointB"))
+    Mockito.verify(service, Mockito.times(1)).getMeasurementHistoryByName("PointB", 10)
+
+    log.toList.sorted should equal(List("1", "2"))
+    calc1.getSnapshot should equal(Some(Map("A" -> List(currentA), "B" -> historyB)))
+    calc2.getSnapshot should equal(Some(Map("B" -> historyB)))
+
+    val acceptor = subResult.await.mockSub.acceptor.get
+    log.clear()
+
+    // already covered by the history, dropped
+    acceptor.onEvent(Event(SubscriptionEventType.MODIFIED, meas("PointB", 2, 10)))
+    exe.runUntilIdle()
+    log.toList should equal(Nil)
+
+    val nextB = meas("PointB", 3, 20)
+    acceptor.onEvent(Event(SubscriptionEventType.MODIFIED, nextB))
+    exe.runUntilIdle()
+
+    log.toList.sorted should equal(List("1", "2"))
+    calc2.getSnapshot should equal(Some(Map("B" -> (historyB ::: List(nextB)))))
+
+    engine.cancel()
+    subResult.await.mockSub.canceled should equal(true)
+  }
+
+  test("Chained calculations evaluate once per batch in dependency order") {
+    val service = Mockito.mock(classOf[MeasurementService], new MockitoStubbedOnly)
+    val exe = new MockExecutor
+    val engine = new SharedInputEngine(service, exe, new MockTimeSource(0))
+    val output = new NullPublisher
+    val publisher = engine.publisher(output)
+    val log = collection.mutable.ListBuffer.empty[String]
+
+    val subResult = subSuccess(List(meas("PointA", 1, 10), meas("Derived", 0, 10)))
+    Mockito.doReturn(subResult).when(service).subscribeToMeasurementsByNames(List("Derived", "PointA"))
+
+    // added downstream first so the ordering can't come from insertion order
+    val downstream = engine.manager("Final")
+    var seenDerived = Option.empty[Measurement]
+    downstream.initialize(meas("Final", 0, 0), List(InputConfig("Derived", new SingleLatestBucket("D"))),
+      Some(new RecordingTrigger("final", log, { m => seenDerived = downstream.getSnapshot.map(_("D").head) })))
+
+    val upstream = engine.manager("Derived")
+    var time = 20L
+    upstream.initialize(meas("Derived", 0, 0), List(InputConfig("PointA", new SingleLatestBucket("A"))),
+      Some(new RecordingTrigger("derived", log, { m => time += 1; publisher.publish(meas("Derived", 5, time)) })))
+
+    exe.runUntilIdle()
+    log.clear()
+
+    val acceptor = subResult.await.mockSub.acceptor.get
+    acceptor.onEvent(Event(SubscriptionEventType.MODIFIED, meas("PointA", 2, 30)))
+    acceptor.onEvent(Event(SubscriptionEventType.MODIFIED, meas("PointA", 3, 31)))
+    exe.runUntilIdle()
+
+    log.toList should equal(List("derived", "final"))
+    seenDerived.map(_.getTime) should equal(Some(time))
+    output.published.size should equal(2)
+
+    // the broker echo of the locally delivered output doesn't re-trigger the downstream calc
+    log.clear()
+    acceptor.onEvent(Event(SubscriptionEventType.MODIFIED, output.published.head))
+    exe.runUntilIdle()
+    log.toList should equal(Nil)
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.lib.eval
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+
+@RunWith(classOf[JUnitRunner])
+class FormulaCompilerTest extends FunSuite with ShouldMatchers {
+
+  def prepare(f: String) = OperationParser.parseFormula(f).prepare(BasicOperations.getSource)
+
+  def compile(f: String) = FormulaCompiler.compile(prepare(f))
+
+  // same shapes of formulas as the calculations in our configs
+  val formulas = List(
+    "A + B",
+    "A * 2.5 - B / 4",
+    "(A + B + C) / 3",
+    "SUM(A, B, C, D)",
+    "AVERAGE(A, B, 10)",
+    "MAX(A, B, C) - MIN(A, B, C)",
+    "SQRT(A ^ 2 + B ^ 2)",
+    "PRODUCT(A, B, C)",
+    "GREATER(A, B)",
+    "LESS(A * B, 100)",
+    "AND(GREATER(A, 0), LESS(B, 10))",
+    "OR(NOT(X), Y)",
+    "COUNT(X, Y, GREATER(A, B))")
+
+  val doubleInputs = Map("A" -> NumericConst(3.5), "B" -> NumericConst(-2.0), "C" -> NumericConst(7.25),
+    "D" -> NumericConst(0.0), "X" -> BooleanConst(true), "Y" -> BooleanConst(false))
+
+  val longInputs = Map("A" -> LongMeas(12, 1), "B" -> LongConst(5), "C" -> LongConst(-3),
+    "D" -> NumericMeas(1.5, 1), "X" -> BooleanMeas(false, 1), "Y" -> BooleanConst(true))
+
+  test("Scalar formulas are compiled") {
+    formulas.foreach { f =>
+      compile(f).isInstanceOf[FormulaCompiler.CompiledExpression] should equal(true)
+    }
+  }
+
+  test("Compiled formulas match the interpreter") {
+    formulas.foreach { f =>
+      List(doubleInputs, longInputs).foreach { inputs =>
+        compile(f).evaluate(new ValueMap(inputs)) should equal(prepare(f).evaluate(new ValueMap(inputs)))
+      }
+    }
+  }
+
+  test("Result types match the interpreter") {
+    compile("5 * 2").evaluate(new ValueMap(Map())) should equal(NumericConst(10.0))
+    compile("COUNT(true, false, true)").evaluate(new ValueMap(Map())) should equal(LongConst(2))
+    compile("NOT(false)").evaluate(new ValueMap(Map())) should equal(BooleanConst(true))
+  }
+
+  test("Ranges fall back to the interpreter") {
+    val inputs = Map("A" -> ValueRange(List(NumericConst(5.0), NumericConst(10.0))), "B" -> NumericConst(1.5))
+    compile("B + AVERAGE(A)").evaluate(new ValueMap(inputs)) should equal(NumericConst(9.0))
+    compile("SUBTRACT(A)").evaluate(new ValueMap(inputs)) should equal(NumericConst(-5.0))
+  }
+
+  test("Wrongly typed variables give the interpreter's errors") {
+    val inputs = Map("A" -> NumericConst(1.0), "X" -> BooleanConst(true))
+    intercept[EvalException] {
+      compile("A + X").evaluate(new ValueMap(inputs))
+    }.getMessage should include("only takes numeric values")
+    intercept[EvalException] {
+      compile("AND(X, A)").evaluate(new ValueMap(inputs))
+    }.getMessage should include("only takes boolean values")
+  }
+
+  test("Uncompilable formulas are interpreted") {
+    compile("INTEGRATE(A)").isInstanceOf[FormulaCompiler.CompiledExpression] should equal(false)
+    compile("A").isInstanceOf[FormulaCompiler.CompiledExpression] should equal(false)
+    compile("GREATER(true, 1)").isInstanceOf[FormulaCompiler.CompiledExpression] should equal(false)
+    compile("NOT(true, true)").isInstanceOf[FormulaCompiler.CompiledExpression] should equal(false)
+  }
+
+  ignore("Compiled vs interpreted throughput") {
+    val evaluations = 1000000
+    val inputs = new ValueMap(doubleInputs)
+    formulas.foreach { f =>
+      val interpreted = prepare(f)
+      val compiled = compile(f)
+      def time(expr: PreparedExpression) = {
+        val start = System.nanoTime
+        var i = 0
+        while (i < evaluations) {
+          expr.evaluate(inputs)
+          i += 1
+        }
+        (System.nanoTime - start) / evaluations
+      }
+      // warm up both before measuring
+      time(interpreted); time(compiled)
+      println(f + " interpreted: " + time(interpreted) + "ns compiled: " + time(compiled) + "ns")
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.protocol
+
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+import net.agileautomata.executor4s._
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement, MeasurementBatch }
+import org.totalgrid.reef.protocol.api.Publisher
+import org.totalgrid.reef.calc.lib.OutputPublisher
+import org.totalgrid.reef.jmx.Metrics
+import org.totalgrid.reef.util.Timing
+
+case class OutputBatchSettings(windowMs: Long, maxBatchSize: Int)
+
+class OutputBatchMetrics(metrics: Metrics) {
+
+  val batches = metrics.counter("Batches")
+
+  val batchSize = metrics.average("BatchSize")
+
+  val queueDelay = metrics.average("QueueDelay")
+}
+
+/**
+ * Collects calculation outputs into a single MeasurementBatch per endpoint. A batch is sent at most
+ * windowMs after its first measurement was published, or as soon as it reaches maxBatchSize. Full batches
+ * are sent by the publishing thread itself and batches are sent one at a time, so when the measurement
+ * processor falls behind the calculations are slowed down instead of queueing outputs without bound.
+ */
+class BatchedOutputPublisher(batchPublisher: Publisher[MeasurementBatch],
+    exe: Executor,
+    settings: OutputBatchSettings,
+    metrics: OutputBatchMetrics) extends OutputPublisher with Cancelable {
+
+  private val pending = mutable.ArrayBuffer.empty[Measurement]
+  private var oldest = Option.empty[Timing.Stopwatch]
+  private var timer = Option.empty[Timer]
+
+  private val sendLock = new Object
+
+  def publish(m: Measurement) {
+    val full = this.synchronized {
+      pending += m
+      if (pending.size == 1) {
+        oldest = Some(Timing.Stopwatch.start)
+        timer = Some(exe.schedule(settings.windowMs.milliseconds)(flush()))
+      }
+      pending.size >= settings.maxBatchSize
+    }
+    if (full) flush()
+  }
+
+  /**
+   * sends whatever has been collected so far
+   */
+  def flush() = sendLock.synchronized {
+    takeBatch().foreach {
+      case (batch, delay) =>
+        metrics.batches(1)
+        metrics.batchSize(batch.size)
+        metrics.queueDelay(delay.toInt)
+        batchPublisher.publish(MeasurementBatch.newBuilder.setWallTime(System.currentTimeMillis).addAllMeas(batch).build)
+    }
+  }
+
+  def cancel() = flush()
+
+  private def takeBatch(): Option[(List[Measurement], Long)] = this.synchronized {
+    if (pending.isEmpty) None
+    else {
+      timer.foreach(_.cancel())
+      timer = None
+      val batch = pending.toList
+      pending.clear()
+      val delay = oldest.map(_.elapsed).getOrElse(0L)
+      oldest = None
+      Some((batch, delay))
+    }
+  }
+}
@@ -22,14 +22,26 @@ import org.totalgrid.reef.client.Client
 import org.totalgrid.reef.client.service.proto.Model.ConfigFile
 import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement, MeasurementBatch }
 import org.totalgrid.reef.client.service.proto.FEP.{ EndpointConnection }
-import net.agileautomata.executor4s.Cancelable
+import net.agileautomata.executor4s.{ Executor, Cancelable }
 import org.totalgrid.reef.client.sapi.rpc.AllScadaService
 import org.totalgrid.reef.protocol.api.{ NullCommandHandler, ChannelIgnoringProtocol, Publisher }
 import org.totalgrid.reef.calc.lib.eval.BasicOperations
 import org.totalgrid.reef.calc.lib._
 import org.totalgrid.reef.jmx.MetricsManager
 
-class CalculatorProtocol extends ChannelIgnoringProtocol {
+/**
+ * @param sharedInputs multiplex the inputs of all calculations on an endpoint through one SharedInputEngine
+ *                     instead of subscribing for each input of each calculation
+ * @param workerExecutor when set calculations are evaluated on worker shards (keyed by output point) on this
+ *                       executor rather than in their subscription callbacks
+ * @param workers number of worker shards per endpoint
+ * @param outputBatching when set calculation outputs are collected into one MeasurementBatch per window
+ */
+class CalculatorProtocol(sharedInputs: Boolean = false,
+  workerExecutor: Option[Executor] = None,
+  workers: Int = 1,
+  outputBatching: Option[OutputBatchSettings] = None)
+    extends ChannelIgnoringProtocol {
   def name = "calculator"
 
   var managers = Map.empty[String, (Cancelable, Publisher[EndpointConnection.State], MetricsManager)]
@@ -46,22 +58,35 @@ class CalculatorProtocol extends ChannelIgnoringProtocol {
 
     val metricsPublisher = new CalculationMetricsSource(metricsMgr, true)
 
-    val measPublisher = new OutputPublisher {
-      def publish(m: Measurement) = {
-        val batch = MeasurementBatch.newBuilder.setWallTime(System.currentTimeMillis).addMeas(m).build
-        batchPublisher.publish(batch)
+    val batchedPublisher = outputBatching.map { settings =>
+      new BatchedOutputPublisher(batchPublisher, client.getInternal.getExecutor, settings, new OutputBatchMetrics(metricsMgr.metrics("output")))
+    }
+
+    val measPublisher = batchedPublisher.getOrElse {
+      new OutputPublisher {
+        def publish(m: Measurement) = {
+          val batch = MeasurementBatch.newBuilder.setWallTime(System.currentTimeMillis).addMeas(m).build
+          batchPublisher.publish(batch)
+        }
       }
     }
 
+    // uses the client strand so all of the calcs delivered in one subscription callback are set up together
+    val engine = if (sharedInputs) Some(new SharedInputEngine(service, client.getInternal.getExecutor, SystemTimeSource)) else None
+
+    val calcWorkers = workerExecutor.map(new CalculationWorkers(_, workers, metricsPublisher))
+
     val factory = new BasicCalculationFactory(client,
       BasicOperations.getSource,
       metricsPublisher,
       measPublisher,
-      SystemTimeSource)
+      SystemTimeSource,
+      engine,
+      calcWorkers)
 
     val manager = new CalculationManager(factory)
 
-    managers += endpointName -> (manager, endpointPublisher, metricsMgr)
+    managers += endpointName -> (new BasicCalculationFactory.MultiCancelable(manager :: engine.toList ::: batchedPublisher.toList), endpointPublisher, metricsMgr)
 
     val endpoint = service.getEndpointByName(endpointName).await
 
@@ -18,20 +18,30 @@
  */
 package org.totalgrid.reef.calc.protocol.activator
 
-import org.totalgrid.reef.osgi.ExecutorBundleActivator
+import org.totalgrid.reef.osgi.{ ExecutorBundleActivator, OsgiConfigReader }
+import org.totalgrid.reef.client.settings.util.PropertyLoading
 import com.weiglewilczek.slf4s.Logging
 import org.osgi.framework.BundleContext
 import net.agileautomata.executor4s.Executor
 import org.totalgrid.reef.protocol.api.Protocol
 
 import com.weiglewilczek.scalamodules._
-import org.totalgrid.reef.calc.protocol.CalculatorProtocol
+import org.totalgrid.reef.calc.protocol.{ CalculatorProtocol, OutputBatchSettings }
 
 class CalculatorActivator extends ExecutorBundleActivator with Logging {
 
   def start(context: BundleContext, exe: Executor) {
 
-    val protocol = new CalculatorProtocol()
+    val properties = OsgiConfigReader.load(context, "org.totalgrid.reef.calc")
+    val sharedInputs = PropertyLoading.getBoolean("org.totalgrid.reef.calc.sharedInputs", properties, false)
+
+    val workers = PropertyLoading.getInt("org.totalgrid.reef.calc.workers", properties, 0)
+
+    val batchWindow = PropertyLoading.getLong("org.totalgrid.reef.calc.outputBatchWindowMs", properties, 0)
+    val batchSize = PropertyLoading.getInt("org.totalgrid.reef.calc.outputBatchSize", properties, 1000)
+    val outputBatching = if (batchWindow > 0) Some(OutputBatchSettings(batchWindow, batchSize)) else None
+
+    val protocol = new CalculatorProtocol(sharedInputs, if (workers > 0) Some(exe) else None, workers, outputBatching)
 
     context.createService(protocol, "protocol" -> protocol.name, interface[Protocol])
   }
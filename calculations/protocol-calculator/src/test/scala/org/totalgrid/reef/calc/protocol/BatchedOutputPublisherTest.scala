@@ -0,0 +1,79 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.calc.protocol
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import scala.collection.JavaConversions._
+import net.agileautomata.executor4s._
+import net.agileautomata.executor4s.testing.MockExecutor
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement, MeasurementBatch }
+import org.totalgrid.reef.protocol.api.Publisher
+import org.totalgrid.reef.jmx.{ Metrics, MetricsContainer }
+
+@RunWith(classOf[JUnitRunner])
+class BatchedOutputPublisherTest extends FunSuite with ShouldMatchers {
+
+  class MockPublisher extends Publisher[MeasurementBatch] {
+    var batches = List.empty[MeasurementBatch]
+    def publish(batch: MeasurementBatch) = batches ::= batch
+  }
+
+  def meas(v: Int) = Measurement.newBuilder.setName("Calc").setType(Measurement.Type.INT).setIntVal(v).setTime(v).build
+
+  def fixture(window: Long, size: Int) = {
+    val exe = new MockExecutor
+    val output = new MockPublisher
+    val container = MetricsContainer()
+    val publisher = new BatchedOutputPublisher(output, exe, OutputBatchSettings(window, size), new OutputBatchMetrics(Metrics(container)))
+    (exe, output, container, publisher)
+  }
+
+  test("Outputs are collected until the window closes") {
+    val (exe, output, container, publisher) = fixture(100, 1000)
+
+    publisher.publish(meas(1))
+    publisher.publish(meas(2))
+    output.batches should equal(Nil)
+
+    exe.tick(100.milliseconds)
+
+    output.batches.size should equal(1)
+    output.batches.head.getMeasList.toList should equal(List(meas(1), meas(2)))
+    container.get("BatchSize").value should equal(2.0)
+
+    // timer doesn't fire again with nothing queued
+    exe.tick(100.milliseconds)
+    output.batches.size should equal(1)
+  }
+
+  test("Full batches are sent right away") {
+    val (exe, output, container, publisher) = fixture(100, 3)
+
+    (1 to 7).foreach(i => publisher.publish(meas(i)))
+
+    output.batches.reverse.map(_.getMeasCount) should equal(List(3, 3))
+
+    publisher.cancel()
+    output.batches.reverse.map(_.getMeasCount) should equal(List(3, 3, 1))
+    container.get("Batches").value should equal(3)
+  }
+}
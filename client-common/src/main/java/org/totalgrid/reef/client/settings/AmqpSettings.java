@@ -40,6 +40,12 @@ public class AmqpSettings
     private final int TTL_DEFAULT = 5000;
     private final int ttlMilliseconds;
 
+    private final int PUBLISH_SYNC_WINDOW_DEFAULT = 1;
+    private final int publishSyncWindow;
+
+    private final int PUBLISH_SYNC_INTERVAL_DEFAULT = 10;
+    private final int publishSyncIntervalMilliseconds;
+
     private final boolean ssl;
     private final String trustStore;
     private final String trustStorePassword;
@@ -86,6 +92,8 @@ public class AmqpSettings
         this.virtualHost = virtualHost;
         this.heartbeatTimeSeconds = heartbeatTimeSeconds;
         this.ttlMilliseconds = TTL_DEFAULT;
+        this.publishSyncWindow = PUBLISH_SYNC_WINDOW_DEFAULT;
+        this.publishSyncIntervalMilliseconds = PUBLISH_SYNC_INTERVAL_DEFAULT;
         this.ssl = ssl;
         this.trustStore = trustStore;
         this.trustStorePassword = trustStorePassword;
@@ -117,6 +125,8 @@ public class AmqpSettings
         this.virtualHost = virtualHost;
         this.heartbeatTimeSeconds = heartbeatTimeSeconds;
         this.ttlMilliseconds = ttlMilliseconds;
+        this.publishSyncWindow = PUBLISH_SYNC_WINDOW_DEFAULT;
+        this.publishSyncIntervalMilliseconds = PUBLISH_SYNC_INTERVAL_DEFAULT;
         this.ssl = ssl;
         this.trustStore = trustStore;
         this.trustStorePassword = trustStorePassword;
@@ -155,6 +165,9 @@ public class AmqpSettings
         virtualHost = PropertyLoading.getString( "org.totalgrid.reef.amqp.virtualHost", props );
         heartbeatTimeSeconds = PropertyLoading.getInt( "org.totalgrid.reef.amqp.heartbeatTimeSeconds", props );
         ttlMilliseconds = PropertyLoading.getInt( "org.totalgrid.reef.amqp.ttl", props, TTL_DEFAULT );
+        publishSyncWindow = PropertyLoading.getInt( "org.totalgrid.reef.amqp.publishSyncWindow", props, PUBLISH_SYNC_WINDOW_DEFAULT );
+        publishSyncIntervalMilliseconds = PropertyLoading.getInt( "org.totalgrid.reef.amqp.publishSyncIntervalMilliseconds", props,
+            PUBLISH_SYNC_INTERVAL_DEFAULT );
         ssl = PropertyLoading.getBoolean( "org.totalgrid.reef.amqp.ssl", props, false );
         trustStore = PropertyLoading.getString( "org.totalgrid.reef.amqp.trustStore", props, "" );
         trustStorePassword = PropertyLoading.getString( "org.totalgrid.reef.amqp.trustStorePassword", props, "" );
@@ -241,6 +254,22 @@ public class AmqpSettings
         return ttlMilliseconds;
     }
 
+    /**
+     * @return number of publishes allowed in flight before waiting on the broker, 1 syncs every publish
+     */
+    public int getPublishSyncWindow()
+    {
+        return publishSyncWindow;
+    }
+
+    /**
+     * @return longest time pipelined publishes are left unsynced when the window isn't full
+     */
+    public int getPublishSyncIntervalMilliseconds()
+    {
+        return publishSyncIntervalMilliseconds;
+    }
+
     /**
      * @return whether connection is using ssl
      */
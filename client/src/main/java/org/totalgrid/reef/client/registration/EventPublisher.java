@@ -20,6 +20,8 @@ package org.totalgrid.reef.client.registration;
 
 import org.totalgrid.reef.client.proto.Envelope;
 
+import java.util.List;
+
 /**
  * Allows implementers of services to publish subscription events when service objects are added/modified/removed.
  */
@@ -45,4 +47,16 @@ public interface EventPublisher
      * @param <T>
      */
     <T> void publishEvent( Envelope.SubscriptionEventType eventType, T eventMessage, String routingKey );
+
+    /**
+     * Publishes a group of service subscription events that share a routing key as a single broker message.
+     * Subscribers receive them as individual events, in the order they appear in the list. Clients that predate
+     * batched events only receive the first event in the list.
+     *
+     * @param eventType Event type (added/modified/removed) shared by all of the events
+     * @param eventMessages Payload messages for the events, must all be of the same type
+     * @param routingKey AMQP routing key that determines what filters the events match
+     * @param <T>
+     */
+    <T> void publishEvents( Envelope.SubscriptionEventType eventType, List<T> eventMessages, String routingKey );
 }
@@ -24,6 +24,7 @@ import org.totalgrid.reef.broker.{ BrokerMessageConsumer, BrokerMessage, BrokerS
 import org.totalgrid.reef.client.proto.Envelope
 
 import com.weiglewilczek.slf4s.Logging
+import scala.collection.JavaConversions._
 import org.totalgrid.reef.client.operations.scl.Event
 
 /**
@@ -43,11 +44,15 @@ final class DefaultSubscription[A](subscription: BrokerSubscription, executor: E
         try {
           val event = Envelope.ServiceNotification.parseFrom(msg.bytes)
           val value = deserialize(event.getPayload.toByteArray)
-          executor.execute(try {
-            callback.onEvent(Event[A](event.getEvent, value))
-          } catch {
-            case ex: Exception =>
-              logger.error("Subscription event caused exception: " + ex.getMessage, ex)
+          // batched notifications are unpacked so callbacks always see one event per payload
+          val batched = event.getBatchedPayloadsList.map { bs => deserialize(bs.toByteArray) }.toList
+          executor.execute((value :: batched).foreach { v =>
+            try {
+              callback.onEvent(Event[A](event.getEvent, v))
+            } catch {
+              case ex: Exception =>
+                logger.error("Subscription event caused exception: " + ex.getMessage, ex)
+            }
           })
         } catch {
           case ex: Exception => logger.error("Unable to deserialize incoming event: " + ex.getMessage, ex)
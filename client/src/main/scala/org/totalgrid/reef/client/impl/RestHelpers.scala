@@ -35,6 +35,12 @@ object RestHelpers {
   def getEvent[A](typ: Envelope.SubscriptionEventType, value: A, desc: TypeDescriptor[A]): Envelope.ServiceNotification =
     Envelope.ServiceNotification.newBuilder.setEvent(typ).setPayload(ByteString.copyFrom(desc.serialize(value))).build
 
+  def getEvents[A](typ: Envelope.SubscriptionEventType, values: List[A], desc: TypeDescriptor[A]): Envelope.ServiceNotification = {
+    val b = Envelope.ServiceNotification.newBuilder.setEvent(typ).setPayload(ByteString.copyFrom(desc.serialize(values.head)))
+    values.tail.foreach { v => b.addBatchedPayloads(ByteString.copyFrom(desc.serialize(v))) }
+    b.build
+  }
+
   def buildServiceRequest[A](verb: Envelope.Verb, request: A, desc: TypeDescriptor[A], uuid: String, env: RequestHeaders): Envelope.ServiceRequest = {
     val builder = Envelope.ServiceRequest.newBuilder.setVerb(verb).setId(uuid).setPayload(ByteString.copyFrom(desc.serialize(request)))
     builder.addAllHeaders(env.toEnvelopeRequestHeaders)
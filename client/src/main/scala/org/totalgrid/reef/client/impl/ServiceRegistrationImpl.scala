@@ -24,6 +24,7 @@ import org.totalgrid.reef.broker.BrokerConnection
 import org.totalgrid.reef.client.types.TypeDescriptor
 import net.agileautomata.executor4s.Executor
 import org.totalgrid.reef.client.{ ServiceRegistry, SubscriptionBinding, Routable }
+import scala.collection.JavaConversions._
 
 class EventPublisherImpl(broker: BrokerConnection, registry: ServiceRegistry) extends EventPublisher {
 
@@ -38,6 +39,15 @@ class EventPublisherImpl(broker: BrokerConnection, registry: ServiceRegistry) ex
     val event = RestHelpers.getEvent(eventType, eventMessage, desc)
     broker.publish(info.getEventExchange, routingKey, event.toByteArray)
   }
+
+  def publishEvents[A](eventType: SubscriptionEventType, eventMessages: java.util.List[A], routingKey: String) {
+    if (!eventMessages.isEmpty) {
+      val info = registry.getServiceTypeInformation(ClassLookup.get(eventMessages.get(0)))
+      val desc = info.getSubscriptionDescriptor.asInstanceOf[TypeDescriptor[A]]
+      val event = RestHelpers.getEvents(eventType, eventMessages.toList, desc)
+      broker.publish(info.getEventExchange, routingKey, event.toByteArray)
+    }
+  }
 }
 
 class ServiceRegistrationImpl(broker: BrokerConnection, registry: ServiceRegistry, exe: Executor) extends ServiceRegistration {
@@ -92,4 +92,20 @@ trait BasicClientTest extends BrokerTestFixture with FunSuite with ShouldMatcher
     }
   }
 
+  test("Batched subscription events are delivered individually and in order") {
+    fixture { (client, conn) =>
+      val eventPub = conn.getServiceRegistration.getEventPublisher
+
+      val values = List(SomeInteger(1), SomeInteger(2), SomeInteger(3))
+      val sub = client.subscribe(SomeIntegerTypeDescriptor)
+      eventPub.bindQueueByClass(sub.getId, "#", classOf[SomeInteger])
+      val events = new SynchronizedList[Event[SomeInteger]]
+      sub.onEvent(events.append(_))
+      eventPub.publishEvents(Envelope.SubscriptionEventType.MODIFIED, java.util.Arrays.asList(values: _*), "foobar")
+      events shouldBecome values.map { Event(Envelope.SubscriptionEventType.MODIFIED, _) } within 5000
+
+      sub.cancel()
+    }
+  }
+
 }
\ No newline at end of file
@@ -29,15 +29,25 @@ object JsonBridgeConstants {
   val TIMEOUT_HEADER = "TIMEOUT_MILLIS"
   val RESULT_LIMIT_HEADER = "RESULT_LIMIT"
   val RETURN_STYLE = "REEF_RETURN_STYLE"
+  val DROPPED_EVENTS_HEADER = "REEF_DROPPED_EVENTS"
+  val SUBSCRIPTION_MODE_HEADER = "REEF_SUBSCRIPTION_MODE"
 
   // GET /login parameters
   val NAME_PARAMETER = "name"
   val PASSWORD_PARAMETER = "password"
 
+  // GET /subscribe parameters
+  val WAIT_PARAMETER = "wait"
+
   // standard HTTP Headers
   val CONTENT_TYPE_HEADER = "Content-Type"
   val ACCEPT_HEADER = "Accept"
   val ORIGIN_HEADER = "Access-Control-Allow-Origin"
+  val ACCEPT_ENCODING_HEADER = "Accept-Encoding"
+  val CONTENT_ENCODING_HEADER = "Content-Encoding"
+  val VARY_HEADER = "Vary"
+
+  val GZIP_ENCODING = "gzip"
 
   // acceptable input/output formats
   val JSON_FORMAT = "application/json"
@@ -46,7 +56,9 @@ object JsonBridgeConstants {
   val VALID_FORMATS = List(JSON_FORMAT, PROTOBUF_FORMAT)
 
   val TEXT_FORMAT = "text/plain"
+  val EVENT_STREAM_FORMAT = "text/event-stream"
 
   // all custom headers (used for CORS support)
-  val CUSTOM_HEADERS = List(AUTH_HEADER, VERB_HEADER, TIMEOUT_HEADER, RESULT_LIMIT_HEADER, RETURN_STYLE, CONTENT_TYPE_HEADER)
+  val CUSTOM_HEADERS = List(AUTH_HEADER, VERB_HEADER, TIMEOUT_HEADER, RESULT_LIMIT_HEADER, RETURN_STYLE, DROPPED_EVENTS_HEADER, SUBSCRIPTION_MODE_HEADER,
+    CONTENT_TYPE_HEADER)
 }
\ No newline at end of file
@@ -57,7 +57,7 @@ class JsonBridgeActivator extends ConnectedApplicationBundleActivator {
     val login = new LoginServlet(managedConnection)
     val converter = new ConverterServlet(builderLocator)
     val apiBridge = new ApiServlet(managedConnection, new AllScadaServiceApiCallLibrary, subscriptionHandler)
-    val subHandler = new SubscriptionServlet(subscriptionHandler)
+    val subHandler = new SubscriptionServlet(subscriptionHandler, executor)
 
     registrations ::= context.createService(bridge, List("alias" -> "/rest").toMap, interface[Servlet])
     registrations ::= context.createService(login, List("alias" -> "/login").toMap, interface[Servlet])
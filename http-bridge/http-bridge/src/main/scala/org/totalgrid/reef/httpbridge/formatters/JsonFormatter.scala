@@ -20,31 +20,58 @@ package org.totalgrid.reef.httpbridge.formatters
 
 import com.googlecode.protobuf.format.JsonJacksonFormat
 import com.google.protobuf.Message
-import java.io.InputStream
-import javax.servlet.{ ServletOutputStream, ServletException }
+import java.io.{ FilterOutputStream, OutputStream, InputStream }
+import javax.servlet.ServletException
+import org.codehaus.jackson.{ JsonEncoding, JsonFactory, JsonGenerator }
 import org.totalgrid.reef.client.exception.BadRequestException
 
 import scala.collection.JavaConversions._
 import org.totalgrid.reef.httpbridge.JsonBridgeConstants
 
+object JsonFormatter {
+  // factories are thread safe and cache the generator buffers so we share one
+  private val factory = new JsonFactory
+
+  /**
+   * the proto printer flushes after every message, we don't want to pass that through to
+   * the servlet stream (that would send a chunk per message) so we let the container decide
+   */
+  private class UnflushedOutputStream(stream: OutputStream) extends FilterOutputStream(stream) {
+    override def write(b: Array[Byte], off: Int, len: Int) = stream.write(b, off, len)
+    override def flush() {}
+    override def close() {}
+  }
+
+  def createGenerator(stream: OutputStream): JsonGenerator = {
+    factory.createJsonGenerator(new UnflushedOutputStream(stream), JsonEncoding.UTF8)
+  }
+}
+
 class JsonFormatter extends SimpleFormatter {
 
   def mimeType = JsonBridgeConstants.JSON_FORMAT
 
   private val jsonFormatter = new JsonJacksonFormat
 
-  def output[A <: Message](stream: ServletOutputStream, list: List[A]) {
-    // build the json array of thre returned results
-    val result = list.map { part =>
-      jsonFormatter.printToString(part)
-    }.mkString("{\"results\":[", ",", "]}")
-    stream.print(result)
+  def output[A <: Message](stream: OutputStream, list: List[A]) {
+    // write the json array of the returned results directly to the stream
+    val generator = JsonFormatter.createGenerator(stream)
+    generator.writeStartObject()
+    generator.writeArrayFieldStart("results")
+    list.foreach { jsonFormatter.print(_, generator) }
+    generator.writeEndArray()
+    generator.writeEndObject()
+    generator.close()
   }
 
-  def outputOne[A <: Message](stream: ServletOutputStream, proto: A) {
-    stream.print(jsonFormatter.printToString(proto))
+  def outputOne[A <: Message](stream: OutputStream, proto: A) {
+    val generator = JsonFormatter.createGenerator(stream)
+    jsonFormatter.print(proto, generator)
+    generator.close()
   }
 
+  def format[A <: Message](proto: A): String = jsonFormatter.printToString(proto)
+
   def input[A <: Message.Builder](inputStream: InputStream, builder: A) {
     try {
       jsonFormatter.merge(inputStream, builder)
@@ -18,24 +18,29 @@
  */
 package org.totalgrid.reef.httpbridge.formatters
 
-import com.google.protobuf.Message
-import java.io.InputStream
+import com.google.protobuf.{ CodedOutputStream, Message }
+import java.io.{ OutputStream, InputStream }
 import org.totalgrid.reef.httpbridge.JsonBridgeConstants
-import javax.servlet.ServletOutputStream
 
 /**
  * a no-op formatter so we can input/output to standard binary proto
- * representations without special casing.
+ * representations without special casing. Lists are written length-delimited
+ * (varint size before each entry, the same as writeDelimitedTo) so they can be split up again.
  */
 class RawProtoFormatter extends SimpleFormatter {
 
   def mimeType = JsonBridgeConstants.PROTOBUF_FORMAT
 
-  def output[A <: Message](stream: ServletOutputStream, list: List[A]) {
-    list.map { proto => stream.write(proto.toByteArray) }
+  def output[A <: Message](stream: OutputStream, list: List[A]) {
+    val coded = CodedOutputStream.newInstance(stream)
+    list.foreach { proto =>
+      coded.writeRawVarint32(proto.getSerializedSize)
+      proto.writeTo(coded)
+    }
+    coded.flush()
   }
 
-  def outputOne[A <: Message](stream: ServletOutputStream, proto: A) {
+  def outputOne[A <: Message](stream: OutputStream, proto: A) {
     stream.write(proto.toByteArray)
   }
 
@@ -19,8 +19,7 @@
 package org.totalgrid.reef.httpbridge.formatters
 
 import com.google.protobuf.Message
-import java.io.InputStream
-import javax.servlet.ServletOutputStream
+import java.io.{ OutputStream, InputStream }
 
 /**
  * trait that encapsulates everything custom for each format
@@ -33,14 +32,15 @@ trait SimpleFormatter {
   def mimeType: String
 
   /**
-   * take a list of entries and return them in the specific format (including list wrapper)
+   * take a list of entries and return them in the specific format (including list wrapper). Entries
+   * are written to the stream one at a time, the whole response is never built in memory.
    */
-  def output[A <: Message](stream: ServletOutputStream, list: List[A])
+  def output[A <: Message](stream: OutputStream, list: List[A])
 
   /**
    * take a single entry and return them in the specific format (including list wrapper)
    */
-  def outputOne[A <: Message](stream: ServletOutputStream, proto: A)
+  def outputOne[A <: Message](stream: OutputStream, proto: A)
 
   /**
    * take the raw input stream and populate the passed in builder.
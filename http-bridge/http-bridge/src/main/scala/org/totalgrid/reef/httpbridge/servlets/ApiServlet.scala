@@ -65,8 +65,9 @@ class ApiServlet(connection: ManagedConnection, apiCallProvider: ApiCallProvider
         printOutput(req, resp, func(client).await)
       case SubscriptionResultApiCall(func) =>
         resp.setHeader(RETURN_STYLE, "MULTI")
+        val mode = SubscriptionMode.parse(Option(req.getHeader(SUBSCRIPTION_MODE_HEADER)))
         val subResult = func(client).await
-        val subToken = subscriptionHandler.addSubscription(subResult.getSubscription)
+        val subToken = subscriptionHandler.addSubscription(subResult.getSubscription, mode)
         // we are "tunneling" the subscription token out through one of the "simple response headers"
         // until the CORS support for expose Headers is up to snuff.
         resp.setHeader("Pragma", subToken)
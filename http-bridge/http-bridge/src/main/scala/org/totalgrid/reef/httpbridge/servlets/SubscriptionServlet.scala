@@ -19,29 +19,108 @@
 package org.totalgrid.reef.httpbridge.servlets
 
 import javax.servlet.http.{ HttpServletResponse, HttpServletRequest }
+import org.eclipse.jetty.continuation.{ Continuation, ContinuationListener, ContinuationSupport }
+import net.agileautomata.executor4s.Executor
 
 import org.totalgrid.reef.httpbridge.JsonBridgeConstants._
 import org.totalgrid.reef.httpbridge.servlets.helpers._
+import org.totalgrid.reef.client.exception.BadRequestException
 
 /**
- * "comet lite" polling based subscription manager. Clients make a GET request with the subscription
- * id to retrieve stored events. a DELETE request cancels the subscription and removes the stored events
+ * "comet" subscription manager. Clients make a GET request with the subscription id to retrieve stored
+ * events, there are three ways to do that:
+ *  - polling: returns the waiting events immediately (possibly none)
+ *  - long-polling: with the "wait" parameter the request is held until there are events or the wait expires
+ *  - streaming: with "Accept: text/event-stream" the events are pushed as Server-Sent Events
+ *
+ * Held requests are suspended using jetty continuations so they don't tie up a thread while waiting.
+ * A DELETE request cancels the subscription and removes the stored events.
  */
-class SubscriptionServlet(subscriptionManager: SimpleSubscriptionManager) extends ServletBase {
+class SubscriptionServlet(subscriptionManager: SimpleSubscriptionManager, executor: Executor) extends ServletBase {
 
   // we want to keep each individual request relatively small for better latency
   private val MAX_EVENTS_RETURNED = 100
 
+  // longest we will hold a long-poll request open
+  private val MAX_WAIT_MILLIS = 60000L
+
+  // event streams are closed after this long, the EventSource reconnects automatically
+  private val STREAM_DURATION_MILLIS = 300000L
+
+  private val HEARTBEAT_MILLIS = 15000L
+
   override def doGet(req: HttpServletRequest, resp: HttpServletResponse) = handleErrors(resp) {
 
     val id = Option(req.getPathInfo).getOrElse("").stripPrefix("/")
 
     val holder = subscriptionManager.getValueHolder(id)
 
+    val continuation = ContinuationSupport.getContinuation(req)
+
+    if (wantsEventStream(req)) streamEvents(resp, holder, continuation)
+    else pollEvents(req, resp, holder, continuation)
+  }
+
+  private def pollEvents(req: HttpServletRequest, resp: HttpServletResponse,
+    holder: SimpleSubscriptionManager#SubscriptionValueHolder[_], continuation: Continuation) {
+
     // TODO: fix subscription implementation to include event code
     val eventPayloads = holder.poll(MAX_EVENTS_RETURNED).map { _._2 }
-    printOutput(req, resp, eventPayloads)
-    resp.setStatus(200)
+
+    val waitMillis = getWaitMillis(req)
+    if (eventPayloads.isEmpty && waitMillis > 0 && continuation.isInitial) {
+      // park the request until there is data, we will be dispatched again on resume or timeout
+      continuation.setTimeout(waitMillis)
+      continuation.suspend()
+      val waiter = holder.notifyWhenReady { resume(continuation) }
+      // on a quiet subscription the poll times out, it must not leave its waiter behind
+      continuation.addContinuationListener(new ContinuationListener {
+        def onComplete(c: Continuation) = waiter.cancel()
+        def onTimeout(c: Continuation) = waiter.cancel()
+      })
+    } else {
+      resp.setHeader(DROPPED_EVENTS_HEADER, holder.takeDropped().toString)
+      printOutput(req, resp, eventPayloads)
+      resp.setStatus(200)
+    }
+  }
+
+  private def streamEvents(resp: HttpServletResponse,
+    holder: SimpleSubscriptionManager#SubscriptionValueHolder[_], continuation: Continuation) {
+
+    // when the stream times out we are dispatched again, returning ends the response
+    if (continuation.isInitial) {
+      resp.setHeader(CONTENT_TYPE_HEADER, EVENT_STREAM_FORMAT)
+      resp.setStatus(200)
+      resp.flushBuffer()
+
+      continuation.setTimeout(STREAM_DURATION_MILLIS)
+      continuation.suspend(resp)
+      new EventStreamWriter(holder, continuation, executor, MAX_EVENTS_RETURNED, HEARTBEAT_MILLIS).start()
+    }
+  }
+
+  private def resume(continuation: Continuation) {
+    try {
+      if (continuation.isSuspended) continuation.resume()
+    } catch {
+      case ise: IllegalStateException => // request already timed out and was resumed
+    }
+  }
+
+  private def wantsEventStream(req: HttpServletRequest) = {
+    Option(req.getHeader(ACCEPT_HEADER)).map { _.contains(EVENT_STREAM_FORMAT) }.getOrElse(false)
+  }
+
+  private def getWaitMillis(req: HttpServletRequest): Long = {
+    Option(req.getParameter(WAIT_PARAMETER)).map { w =>
+      try {
+        math.min(w.toLong, MAX_WAIT_MILLIS)
+      } catch {
+        case nfe: NumberFormatException =>
+          throw new BadRequestException("Couldn't parse " + WAIT_PARAMETER + " parameter: " + w)
+      }
+    }.getOrElse(0L)
   }
 
   override def doDelete(req: HttpServletRequest, resp: HttpServletResponse) = handleErrors(resp) {
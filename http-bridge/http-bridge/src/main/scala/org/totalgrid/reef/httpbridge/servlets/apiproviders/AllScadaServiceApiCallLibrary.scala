@@ -517,6 +517,7 @@ class AllScadaServiceApiCallLibrary extends ApiCallLibrary[AllScadaService] {
   // EventPublishingService
   ////////////////////
   // Can't encode publishEvent : Can't encode type: org.totalgrid.reef.client.service.proto.Events.Event
+  // Can't encode publishEvents : Can't encode type: org.totalgrid.reef.client.service.proto.Events.Event
   single("publishEvent", classOf[org.totalgrid.reef.client.service.proto.Events.Event], args => {
     val a0 = args.getString("eventType")
     val a1 = args.getString("subsystem")
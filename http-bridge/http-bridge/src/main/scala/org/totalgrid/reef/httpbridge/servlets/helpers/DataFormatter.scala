@@ -19,7 +19,8 @@
 package org.totalgrid.reef.httpbridge.servlets.helpers
 
 import com.google.protobuf.Message
-import java.io.InputStream
+import java.io.{ OutputStream, InputStream }
+import java.util.zip.GZIPOutputStream
 import org.totalgrid.reef.httpbridge.formatters._
 import javax.servlet.http.{ HttpServletResponse, HttpServletRequest }
 import org.totalgrid.reef.httpbridge.JsonBridgeConstants
@@ -27,11 +28,16 @@ import org.totalgrid.reef.httpbridge.JsonBridgeConstants
 /**
  * trait for handling input and output data. In the future these calls can be parametrized
  * with "Content-Type" and "Accept-Type" to switch between different serialization strategies.
+ * Responses are gzipped if the client includes gzip in its "Accept-Encoding" header.
  */
 trait DataFormatter extends HeaderUtils {
 
   import JsonBridgeConstants._
 
+  // formatters are stateless so we only need one of each
+  private val jsonFormatter = new JsonFormatter
+  private val protoFormatter = new RawProtoFormatter
+
   def parseInput[A <: Message.Builder](req: HttpServletRequest, inputStream: InputStream, builder: A): A = {
     getFormatter(req, true).input(inputStream, builder)
     builder
@@ -41,14 +47,26 @@ trait DataFormatter extends HeaderUtils {
     val formatter = getFormatter(req, false)
 
     resp.setHeader(CONTENT_TYPE_HEADER, formatter.mimeType)
-    formatter.output(resp.getOutputStream, list)
+    writeEncoded(req, resp) { formatter.output(_, list) }
   }
 
   def printSingleOutput[A <: Message](req: HttpServletRequest, resp: HttpServletResponse, proto: A) {
     val formatter = getFormatter(req, false)
 
     resp.setHeader(CONTENT_TYPE_HEADER, formatter.mimeType)
-    formatter.outputOne(resp.getOutputStream, proto)
+    writeEncoded(req, resp) { formatter.outputOne(_, proto) }
+  }
+
+  private def writeEncoded(req: HttpServletRequest, resp: HttpServletResponse)(write: OutputStream => Unit) {
+    if (acceptsGzip(req)) {
+      resp.setHeader(CONTENT_ENCODING_HEADER, GZIP_ENCODING)
+      resp.setHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER)
+      val gzip = new GZIPOutputStream(resp.getOutputStream)
+      write(gzip)
+      gzip.finish()
+    } else {
+      write(resp.getOutputStream)
+    }
   }
 
   private def getFormatter(req: HttpServletRequest, isInput: Boolean): SimpleFormatter = {
@@ -60,12 +78,16 @@ trait DataFormatter extends HeaderUtils {
 
     contentTypes.foreach { contentType =>
       contentType match {
-        case JSON_FORMAT => return new JsonFormatter
-        case PROTOBUF_FORMAT => return new RawProtoFormatter
+        case JSON_FORMAT => return jsonFormatter
+        case PROTOBUF_FORMAT => return protoFormatter
         case _ =>
       }
     }
-    new JsonFormatter
+    jsonFormatter
+  }
+
+  private def acceptsGzip(req: HttpServletRequest) = {
+    Option(req.getHeader(ACCEPT_ENCODING_HEADER)).map { _.split(",").exists(_.trim.startsWith(GZIP_ENCODING)) }.getOrElse(false)
   }
 
 }
\ No newline at end of file
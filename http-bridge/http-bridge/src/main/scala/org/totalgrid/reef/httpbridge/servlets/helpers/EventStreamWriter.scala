@@ -0,0 +1,123 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.httpbridge.servlets.helpers
+
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicBoolean
+import org.eclipse.jetty.continuation.{ ContinuationListener, Continuation }
+import com.weiglewilczek.slf4s.Logging
+import net.agileautomata.executor4s._
+import org.totalgrid.reef.httpbridge.formatters.JsonFormatter
+
+/**
+ * pushes the events from a subscription to a suspended response as Server-Sent Events
+ * (http://www.w3.org/TR/eventsource/). Each event is sent with the subscription event type as
+ * the event name and the json encoded value as the data. If the subscription buffer overflowed
+ * an "overflow" event with the number of dropped values is sent before the next values.
+ *
+ * All writing is done on the executor, at most one write at a time for each stream, so a slow client
+ * never holds up the thread delivering the subscription events.
+ */
+class EventStreamWriter(
+    holder: SimpleSubscriptionManager#SubscriptionValueHolder[_],
+    continuation: Continuation,
+    executor: Executor,
+    maxEvents: Int,
+    heartbeatMs: Long) extends ContinuationListener with Logging {
+
+  private val formatter = new JsonFormatter
+  private val scheduled = new AtomicBoolean(false)
+  @volatile private var running = true
+  @volatile private var heartbeat = Option.empty[Timer]
+  @volatile private var waiter = Option.empty[Cancelable]
+
+  def start() {
+    continuation.addContinuationListener(this)
+    // comment lines are ignored by the EventSource but let us notice closed connections
+    heartbeat = Some(executor.scheduleWithFixedOffset(heartbeatMs.milliseconds) { write(": heartbeat\n\n") })
+    listen()
+  }
+
+  def onComplete(c: Continuation) = stop()
+
+  def onTimeout(c: Continuation) = stop()
+
+  private def schedule() {
+    if (running && scheduled.compareAndSet(false, true)) executor.execute(drain())
+  }
+
+  private def drain() {
+    scheduled.set(false)
+    if (holder.isCanceled) close()
+    else if (running) {
+      val dropped = holder.takeDropped()
+      val events = holder.poll(maxEvents)
+
+      val sb = new StringBuilder
+      if (dropped > 0) sb.append("event: overflow\ndata: {\"dropped\":").append(dropped).append("}\n\n")
+      events.foreach {
+        case (eventType, value) =>
+          sb.append("event: ").append(eventType.name).append("\n")
+          formatter.format(value).split("\n").foreach { line => sb.append("data: ").append(line).append("\n") }
+          sb.append("\n")
+      }
+
+      if (write(sb.toString)) listen()
+    }
+  }
+
+  private def listen() {
+    val w = holder.notifyWhenReady { schedule() }
+    waiter = Some(w)
+    // the stream may have stopped while we registered
+    if (!running) w.cancel()
+  }
+
+  private def write(data: String): Boolean = synchronized {
+    if (!running) false
+    else {
+      try {
+        val response = continuation.getServletResponse
+        response.getOutputStream.write(data.getBytes("UTF-8"))
+        response.flushBuffer()
+        true
+      } catch {
+        case io: IOException =>
+          logger.info("Event stream closed by client: " + io.getMessage)
+          close()
+          false
+      }
+    }
+  }
+
+  private def close() {
+    stop()
+    try {
+      continuation.complete()
+    } catch {
+      case ise: IllegalStateException => // already completed or timed out
+    }
+  }
+
+  private def stop() {
+    running = false
+    heartbeat.foreach { _.cancel }
+    waiter.foreach { _.cancel }
+  }
+}
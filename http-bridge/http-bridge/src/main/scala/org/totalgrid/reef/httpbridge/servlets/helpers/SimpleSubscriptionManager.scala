@@ -19,53 +19,120 @@
 package org.totalgrid.reef.httpbridge.servlets.helpers
 
 import com.google.protobuf.Message
-import scala.collection.mutable
 import org.totalgrid.reef.client.proto.Envelope
 import org.totalgrid.reef.client.exception.BadRequestException
 import org.totalgrid.reef.client.{ SubscriptionEvent, SubscriptionEventAcceptor, Subscription }
 import com.weiglewilczek.slf4s.Logging
+import net.agileautomata.executor4s.Cancelable
 
 /**
  * simplest possible SubscriptionHandler that just stores all the subscription events in a buffer
- * until they are retrieved by the client.
+ * until they are retrieved by the client. The buffer is bounded, if the client isn't keeping up we
+ * drop the oldest events (and tell the client how many) rather than canceling the subscription.
+ * Measurement subscriptions can instead be conflated to the latest value per point (see SubscriptionMode).
  */
 class SimpleSubscriptionManager extends SubscriptionHandler with Logging {
 
   private val MAX_EVENT_SIZE = 1000
 
-  class SubscriptionValueHolder[A <: Message](sub: Subscription[A]) extends SubscriptionEventAcceptor[A] {
-    private val queue = mutable.Queue.empty[(Envelope.SubscriptionEventType, Message)]
+  class SubscriptionValueHolder[A <: Message](sub: Subscription[A], mode: SubscriptionMode) extends SubscriptionEventAcceptor[A] {
+    private val buffer = SubscriptionBuffer(mode, MAX_EVENT_SIZE)
+
+    // callbacks waiting for the next event (long-poll requests and event streams)
+    private var waiters = List.empty[() => Unit]
+    private var dropped = 0L
+    private var overflowing = false
+    private var canceled = false
 
     sub.start(this)
 
-    def onEvent(subEvent: SubscriptionEvent[A]) = this.synchronized {
-      queue.enqueue((subEvent.getEventType, subEvent.getValue))
-      if (queue.length > MAX_EVENT_SIZE) {
-        logger.error(sub.getId + " subscription overflowed, canceling")
-        cancel()
+    def onEvent(subEvent: SubscriptionEvent[A]) = {
+      val ready = this.synchronized {
+        if (buffer.add(subEvent.getEventType, subEvent.getValue)) {
+          dropped += 1
+          if (!overflowing) {
+            logger.warn(sub.getId + " subscription overflowed, dropping oldest events until client catches up")
+            overflowing = true
+          }
+        }
+        takeWaiters()
       }
+      ready.foreach { _() }
     }
 
     def poll(maxEvents: Int): List[(Envelope.SubscriptionEventType, Message)] = this.synchronized {
-      val ret = queue.take(maxEvents).toList
-      ret.foreach { i => queue.dequeue() }
+      val ret = buffer.poll(maxEvents)
+      if (buffer.isEmpty) overflowing = false
       ret
     }
 
-    def cancel() = this.synchronized {
-      sub.cancel()
-      queue.clear()
+    /**
+     * @return number of events that were dropped since the last call because the buffer was full
+     */
+    def takeDropped(): Long = this.synchronized {
+      val d = dropped
+      dropped = 0
+      d
+    }
+
+    /**
+     * calls fun once as soon as there are events to poll (or the subscription is canceled), if there
+     * are already events waiting it is called immediately. fun is called on the subscription thread so
+     * it should only hand off the work.
+     *
+     * @return cancels the notification, waiters that give up (timed out long-polls, closed streams) must
+     *         cancel so they aren't kept until the next event
+     */
+    def notifyWhenReady(fun: => Unit): Cancelable = {
+      val waiter = { () => fun }
+      val ready = this.synchronized {
+        if (buffer.isEmpty && !canceled) {
+          waiters ::= waiter
+          false
+        } else true
+      }
+      if (ready) waiter()
+      new Cancelable {
+        def cancel() = removeWaiter(waiter)
+      }
+    }
+
+    /**
+     * number of callbacks waiting for the next event
+     */
+    def waiterCount = this.synchronized { waiters.size }
+
+    def isCanceled = this.synchronized { canceled }
+
+    def cancel() = {
+      val ready = this.synchronized {
+        sub.cancel()
+        buffer.clear()
+        canceled = true
+        takeWaiters()
+      }
+      ready.foreach { _() }
+    }
+
+    private def removeWaiter(waiter: () => Unit) = this.synchronized {
+      waiters = waiters.filterNot { _ eq waiter }
+    }
+
+    private def takeWaiters() = {
+      val w = waiters
+      waiters = Nil
+      w
     }
   }
 
   private var subscriptionQueues = Map.empty[String, SubscriptionValueHolder[_ <: Message]]
 
-  def addSubscription[A <: Message](subscription: Subscription[A]) = this.synchronized {
+  def addSubscription[A <: Message](subscription: Subscription[A], mode: SubscriptionMode) = this.synchronized {
     // make a token for the subscription user (we'll use the one provided by qpid for now) but
     // we may change that later
     val subToken = subscription.getId
 
-    subscriptionQueues += subToken -> new SubscriptionValueHolder(subscription)
+    subscriptionQueues += subToken -> new SubscriptionValueHolder(subscription, mode)
 
     subToken
   }
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.httpbridge.servlets.helpers
+
+import com.google.protobuf.Message
+import scala.collection.mutable
+import org.totalgrid.reef.client.proto.Envelope.SubscriptionEventType
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+
+/**
+ * storage for the subscription events that haven't been retrieved by the client yet. Buffers
+ * are not thread safe, the SubscriptionValueHolder does the locking.
+ */
+trait SubscriptionBuffer {
+
+  /**
+   * @return true if an older event had to be dropped to make room
+   */
+  def add(eventType: SubscriptionEventType, value: Message): Boolean
+
+  def poll(maxEvents: Int): List[(SubscriptionEventType, Message)]
+
+  def isEmpty: Boolean
+
+  def clear()
+}
+
+object SubscriptionBuffer {
+  def apply(mode: SubscriptionMode, maxSize: Int): SubscriptionBuffer = mode match {
+    case SubscriptionMode.All => new QueueingBuffer(maxSize)
+    case SubscriptionMode.Latest => new ConflatingBuffer(false, maxSize)
+    case SubscriptionMode.LatestMinMax => new ConflatingBuffer(true, maxSize)
+  }
+}
+
+/**
+ * keeps every event in order, if there are more than maxSize waiting the oldest are dropped
+ */
+class QueueingBuffer(maxSize: Int) extends SubscriptionBuffer {
+  private val queue = mutable.Queue.empty[(SubscriptionEventType, Message)]
+
+  def add(eventType: SubscriptionEventType, value: Message) = {
+    queue.enqueue((eventType, value))
+    if (queue.length > maxSize) {
+      queue.dequeue()
+      true
+    } else false
+  }
+
+  def poll(maxEvents: Int) = {
+    val ret = queue.take(maxEvents).toList
+    ret.foreach { i => queue.dequeue() }
+    ret
+  }
+
+  def isEmpty = queue.isEmpty
+
+  def clear() = queue.clear()
+}
+
+/**
+ * keeps only the latest measurement for each point (by name) so the memory used is bounded by the
+ * number of points rather than the update rate. With keepExtremes the lowest and highest numeric
+ * values since the last poll are also kept and returned (in time order, latest value last) so spikes
+ * aren't lost, which means a point can return up to 3 measurements. maxEvents limits the measurements
+ * returned, a point is only returned once all of its values fit (unless the limit is smaller than one
+ * point's values, then its latest values are returned so polling always makes progress).
+ *
+ * Values that aren't measurements can't be conflated, they are queued like QueueingBuffer.
+ */
+class ConflatingBuffer(keepExtremes: Boolean, maxQueued: Int) extends SubscriptionBuffer {
+
+  private class ConflatedValue(var eventType: SubscriptionEventType, var latest: Measurement) {
+    var min = Option.empty[Measurement]
+    var max = Option.empty[Measurement]
+
+    def update(typ: SubscriptionEventType, m: Measurement) {
+      eventType = typ
+      latest = m
+      if (keepExtremes) numericValue(m).foreach { v =>
+        if (min.flatMap(numericValue).map(v < _).getOrElse(true)) min = Some(m)
+        if (max.flatMap(numericValue).map(v > _).getOrElse(true)) max = Some(m)
+      }
+    }
+
+    def values: List[(SubscriptionEventType, Message)] = {
+      val measurements = if (keepExtremes) (min.toList ::: max.toList ::: List(latest)).distinct.sortBy(_.getTime)
+      else List(latest)
+      measurements.map { (eventType, _) }
+    }
+  }
+
+  private val latest = mutable.LinkedHashMap.empty[String, ConflatedValue]
+  private val others = new QueueingBuffer(maxQueued)
+
+  def add(eventType: SubscriptionEventType, value: Message) = value match {
+    case m: Measurement =>
+      latest.get(m.getName) match {
+        case Some(c) => c.update(eventType, m)
+        case None =>
+          val c = new ConflatedValue(eventType, m)
+          c.update(eventType, m)
+          latest.put(m.getName, c)
+      }
+      false
+    case _ => others.add(eventType, value)
+  }
+
+  def poll(maxEvents: Int) = {
+    val conflated = mutable.ListBuffer.empty[(SubscriptionEventType, Message)]
+    val taken = mutable.ListBuffer.empty[String]
+    val iter = latest.iterator
+    var full = false
+    while (!full && iter.hasNext) {
+      val (name, c) = iter.next
+      val values = c.values
+      val fits = conflated.size + values.size <= maxEvents
+      if (fits || conflated.isEmpty) {
+        conflated ++= (if (fits) values else values.takeRight(maxEvents))
+        taken += name
+      }
+      full = !fits
+    }
+    taken.foreach { latest.remove(_) }
+    conflated.toList ::: others.poll(maxEvents - conflated.size)
+  }
+
+  def isEmpty = latest.isEmpty && others.isEmpty
+
+  def clear() {
+    latest.clear()
+    others.clear()
+  }
+
+  private def numericValue(m: Measurement): Option[Double] = m.getType match {
+    case Measurement.Type.INT => Some(m.getIntVal.toDouble)
+    case Measurement.Type.DOUBLE => Some(m.getDoubleVal)
+    case _ => None
+  }
+}
@@ -19,8 +19,31 @@
 package org.totalgrid.reef.httpbridge.servlets.helpers
 
 import org.totalgrid.reef.client.Subscription
+import org.totalgrid.reef.client.exception.BadRequestException
 import com.google.protobuf.Message
 
+/**
+ * how the subscription events are held until the client retrieves them
+ *  - All: every event is kept in order
+ *  - Latest: only the newest measurement for each point is kept
+ *  - LatestMinMax: the newest, lowest and highest measurement for each point are kept
+ */
+sealed trait SubscriptionMode
+object SubscriptionMode {
+  case object All extends SubscriptionMode
+  case object Latest extends SubscriptionMode
+  case object LatestMinMax extends SubscriptionMode
+
+  val modes = List(All, Latest, LatestMinMax)
+
+  def parse(name: Option[String]): SubscriptionMode = name match {
+    case None => All
+    case Some(n) => modes.find(_.toString.equalsIgnoreCase(n)).getOrElse {
+      throw new BadRequestException("Unknown subscription mode: " + n + ", valid modes: " + modes.mkString(", "))
+    }
+  }
+}
+
 /**
  * when a subscription is generated by the client we hand it to a handler that is responsible
  * for determining and implemening a transport to carry the subscription data
@@ -30,6 +53,6 @@ trait SubscriptionHandler {
    * add a subcription to be piped to the client
    * @return the token to give to the client
    */
-  def addSubscription[A <: Message](subscription: Subscription[A]): String
+  def addSubscription[A <: Message](subscription: Subscription[A], mode: SubscriptionMode = SubscriptionMode.All): String
 }
 
@@ -27,6 +27,7 @@ import org.totalgrid.reef.httpbridge.servlets.apiproviders.AllScadaServiceApiCal
 import org.totalgrid.reef.client.settings.util.PropertyReader
 import org.totalgrid.reef.httpbridge.servlets.helpers._
 import org.totalgrid.reef.client.settings.UserSettings
+import net.agileautomata.executor4s._
 
 object JettyLauncher {
   def main(args: Array[String]) {
@@ -63,7 +64,7 @@ object JettyLauncher {
     context.addServlet(new ServletHolder(new ConverterServlet(builderLocator)), "/convert/*")
     context.addServlet(new ServletHolder(new LoginServlet(managedConnection)), "/login/*")
     context.addServlet(new ServletHolder(new ApiServlet(managedConnection, new AllScadaServiceApiCallLibrary, subscriptionHolder)), "/api/*")
-    context.addServlet(new ServletHolder(new SubscriptionServlet(subscriptionHolder)), "/subscribe/*")
+    context.addServlet(new ServletHolder(new SubscriptionServlet(subscriptionHolder, Executors.newResizingThreadPool(5.minutes))), "/subscribe/*")
 
     server.setHandler(context)
 
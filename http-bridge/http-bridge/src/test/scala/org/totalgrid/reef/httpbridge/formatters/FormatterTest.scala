@@ -0,0 +1,102 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.httpbridge.formatters
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.FunSuite
+import java.io.{ ByteArrayInputStream, ByteArrayOutputStream }
+import java.util.zip.GZIPInputStream
+import com.google.protobuf.CodedInputStream
+import com.googlecode.protobuf.format.JsonJacksonFormat
+import org.springframework.mock.web.{ MockHttpServletResponse, MockHttpServletRequest }
+import org.totalgrid.reef.client.service.proto.Utils.Attribute
+import org.totalgrid.reef.httpbridge.JsonBridgeConstants._
+import org.totalgrid.reef.httpbridge.servlets.helpers.DataFormatter
+
+@RunWith(classOf[JUnitRunner])
+class FormatterTest extends FunSuite with ShouldMatchers {
+
+  private def attr(i: Int) = Attribute.newBuilder.setName("attr" + i).setVtype(Attribute.Type.SINT64).setValueSint64(i).build
+
+  private val attrs = (1 to 3).map { attr(_) }.toList
+
+  private def expectedJson = {
+    val printer = new JsonJacksonFormat
+    attrs.map { printer.printToString(_) }.mkString("{\"results\":[", ",", "]}")
+  }
+
+  test("Json list output") {
+    val stream = new ByteArrayOutputStream
+    new JsonFormatter().output(stream, attrs)
+    stream.toString("UTF-8") should equal(expectedJson)
+
+    val empty = new ByteArrayOutputStream
+    new JsonFormatter().output(empty, List.empty[Attribute])
+    empty.toString("UTF-8") should equal("{\"results\":[]}")
+  }
+
+  test("Json single output") {
+    val stream = new ByteArrayOutputStream
+    new JsonFormatter().outputOne(stream, attr(1))
+    stream.toString("UTF-8") should equal(new JsonJacksonFormat().printToString(attr(1)))
+  }
+
+  test("Raw proto lists are length delimited") {
+    val stream = new ByteArrayOutputStream
+    new RawProtoFormatter().output(stream, attrs)
+
+    val coded = CodedInputStream.newInstance(stream.toByteArray)
+    val parsed = attrs.map { a =>
+      val limit = coded.pushLimit(coded.readRawVarint32)
+      val p = Attribute.parseFrom(coded)
+      coded.popLimit(limit)
+      p
+    }
+    parsed should equal(attrs)
+    coded.isAtEnd should equal(true)
+  }
+
+  private def unzip(resp: MockHttpServletResponse) =
+    scala.io.Source.fromInputStream(new GZIPInputStream(new ByteArrayInputStream(resp.getContentAsByteArray)), "UTF-8").mkString
+
+  test("Gzip when accepted") {
+    val formatter = new DataFormatter {}
+
+    val req = new MockHttpServletRequest
+    req.addHeader(ACCEPT_ENCODING_HEADER, "deflate, gzip")
+    val resp = new MockHttpServletResponse
+    formatter.printOutput(req, resp, attrs)
+
+    resp.getHeader(CONTENT_ENCODING_HEADER) should equal(GZIP_ENCODING)
+    resp.getHeader(VARY_HEADER) should equal(ACCEPT_ENCODING_HEADER)
+    unzip(resp) should equal(expectedJson)
+
+    val singleResp = new MockHttpServletResponse
+    formatter.printSingleOutput(req, singleResp, attr(1))
+    singleResp.getHeader(CONTENT_ENCODING_HEADER) should equal(GZIP_ENCODING)
+    unzip(singleResp) should equal(new JsonJacksonFormat().printToString(attr(1)))
+
+    val plainResp = new MockHttpServletResponse
+    formatter.printOutput(new MockHttpServletRequest, plainResp, attrs)
+    plainResp.getHeader(CONTENT_ENCODING_HEADER) should equal(null)
+    plainResp.getContentAsString should equal(expectedJson)
+  }
+}
@@ -30,12 +30,12 @@ import org.totalgrid.reef.client.sapi.client.ServiceTestHelpers._
 import org.totalgrid.reef.client.exception.BadRequestException
 import org.totalgrid.reef.client.service.proto.Measurements
 import org.totalgrid.reef.httpbridge.servlets.apiproviders.AllScadaServiceApiCallLibrary
-import org.totalgrid.reef.httpbridge.servlets.helpers.SubscriptionHandler
+import org.totalgrid.reef.httpbridge.servlets.helpers.{ SubscriptionMode, SubscriptionHandler }
 import com.google.protobuf.Message
 import org.totalgrid.reef.client.Subscription
 
 class NullSubscriptionHandler extends SubscriptionHandler {
-  def addSubscription[A <: Message](subscription: Subscription[A]) = {
+  def addSubscription[A <: Message](subscription: Subscription[A], mode: SubscriptionMode) = {
     subscription.cancel()
     ""
   }
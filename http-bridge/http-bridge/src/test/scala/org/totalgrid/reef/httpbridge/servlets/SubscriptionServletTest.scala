@@ -0,0 +1,65 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.httpbridge.servlets
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.mockito.{ ArgumentCaptor, Mockito }
+import org.eclipse.jetty.continuation.{ Continuation, ContinuationListener }
+import net.agileautomata.executor4s.Executor
+import org.totalgrid.reef.httpbridge.JsonBridgeConstants._
+import org.totalgrid.reef.httpbridge.servlets.helpers.SimpleSubscriptionManager
+import org.totalgrid.reef.client.Subscription
+import org.totalgrid.reef.client.service.proto.Utils.Attribute
+
+@RunWith(classOf[JUnitRunner])
+class SubscriptionServletTest extends BaseServletTest {
+
+  test("Timed out long-polls don't leave waiters") {
+    val sub = Mockito.mock(classOf[Subscription[Attribute]])
+    Mockito.doReturn("sub01").when(sub).getId
+
+    val manager = new SimpleSubscriptionManager
+    val holder = manager.getValueHolder(manager.addSubscription(sub))
+    val servlet = new SubscriptionServlet(manager, Mockito.mock(classOf[Executor]))
+
+    (1 to 5).foreach { i =>
+      val continuation = Mockito.mock(classOf[Continuation])
+      Mockito.doReturn(true).when(continuation).isInitial
+      Mockito.doReturn(true).when(continuation).isSuspended
+
+      request = new org.springframework.mock.web.MockHttpServletRequest()
+      request.setAttribute(Continuation.ATTRIBUTE, continuation)
+      request.setPathInfo("/sub01")
+      request.addParameter(WAIT_PARAMETER, "1000")
+
+      servlet.doGet(request, response)
+
+      Mockito.verify(continuation).suspend()
+      holder.waiterCount should equal(1)
+
+      // nothing arrives before the wait expires
+      val listener = ArgumentCaptor.forClass(classOf[ContinuationListener])
+      Mockito.verify(continuation).addContinuationListener(listener.capture())
+      listener.getValue.onTimeout(continuation)
+
+      holder.waiterCount should equal(0)
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.httpbridge.servlets.helpers
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.FunSuite
+import org.totalgrid.reef.client.{ SubscriptionEvent, SubscriptionEventAcceptor, Subscription }
+import org.totalgrid.reef.client.proto.Envelope.SubscriptionEventType
+import org.totalgrid.reef.client.service.proto.Utils.Attribute
+import org.totalgrid.reef.client.exception.BadRequestException
+
+@RunWith(classOf[JUnitRunner])
+class SimpleSubscriptionManagerTest extends FunSuite with ShouldMatchers {
+
+  class MockSubscription(id: String) extends Subscription[Attribute] {
+    var acceptor = Option.empty[SubscriptionEventAcceptor[Attribute]]
+    var canceled = false
+
+    def start(a: SubscriptionEventAcceptor[Attribute]) = {
+      acceptor = Some(a)
+      this
+    }
+    def cancel() { canceled = true }
+    def getId = id
+
+    def push(i: Long) {
+      val value = Attribute.newBuilder.setName("attr").setVtype(Attribute.Type.SINT64).setValueSint64(i).build
+      acceptor.get.onEvent(new SubscriptionEvent[Attribute] {
+        def getValue = value
+        def getEventType = SubscriptionEventType.MODIFIED
+      })
+    }
+  }
+
+  private def values(events: List[(SubscriptionEventType, com.google.protobuf.Message)]) = {
+    events.map { _._2.asInstanceOf[Attribute].getValueSint64 }
+  }
+
+  test("Overflow drops oldest events") {
+    val manager = new SimpleSubscriptionManager
+    val sub = new MockSubscription("sub01")
+    val holder = manager.getValueHolder(manager.addSubscription(sub))
+
+    (1 to 1005).foreach { i => sub.push(i) }
+
+    sub.canceled should equal(false)
+    holder.takeDropped() should equal(5L)
+    holder.takeDropped() should equal(0L)
+
+    val first = holder.poll(100)
+    values(first).head should equal(6L)
+    first.size should equal(100)
+  }
+
+  test("Waiters notified on next event") {
+    val manager = new SimpleSubscriptionManager
+    val sub = new MockSubscription("sub01")
+    val holder = manager.getValueHolder(manager.addSubscription(sub))
+
+    var notified = 0
+    holder.notifyWhenReady { notified += 1 }
+    notified should equal(0)
+
+    sub.push(1)
+    notified should equal(1)
+
+    // only called once
+    sub.push(2)
+    notified should equal(1)
+
+    // data already waiting so called immediately
+    holder.notifyWhenReady { notified += 1 }
+    notified should equal(2)
+
+    values(holder.poll(100)) should equal(List(1L, 2L))
+  }
+
+  test("Canceled waiters are removed") {
+    val manager = new SimpleSubscriptionManager
+    val sub = new MockSubscription("sub01")
+    val holder = manager.getValueHolder(manager.addSubscription(sub))
+
+    var notified = 0
+    (1 to 10).foreach { i => holder.notifyWhenReady { notified += 1 }.cancel() }
+    holder.waiterCount should equal(0)
+
+    val waiting = holder.notifyWhenReady { notified += 1 }
+    holder.waiterCount should equal(1)
+
+    sub.push(1)
+    notified should equal(1)
+    holder.waiterCount should equal(0)
+
+    // canceling after being notified is harmless
+    waiting.cancel()
+    holder.waiterCount should equal(0)
+  }
+
+  test("Cancel wakes waiters") {
+    val manager = new SimpleSubscriptionManager
+    val sub = new MockSubscription("sub01")
+    val id = manager.addSubscription(sub)
+    val holder = manager.getValueHolder(id)
+
+    var notified = false
+    holder.notifyWhenReady { notified = true }
+
+    manager.removeValueHolder(id)
+
+    notified should equal(true)
+    sub.canceled should equal(true)
+    holder.isCanceled should equal(true)
+
+    intercept[BadRequestException] {
+      manager.getValueHolder(id)
+    }
+  }
+}
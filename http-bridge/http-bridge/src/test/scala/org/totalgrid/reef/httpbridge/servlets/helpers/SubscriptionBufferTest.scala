@@ -0,0 +1,117 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.httpbridge.servlets.helpers
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.FunSuite
+import org.totalgrid.reef.client.proto.Envelope.SubscriptionEventType
+import org.totalgrid.reef.client.service.proto.Measurements.{ Quality, Measurement }
+import org.totalgrid.reef.client.exception.BadRequestException
+
+@RunWith(classOf[JUnitRunner])
+class SubscriptionBufferTest extends FunSuite with ShouldMatchers {
+
+  private def meas(name: String, value: Double, time: Long) = {
+    Measurement.newBuilder.setName(name).setType(Measurement.Type.DOUBLE).setDoubleVal(value)
+      .setQuality(Quality.newBuilder).setTime(time).build
+  }
+
+  private def add(buffer: SubscriptionBuffer, ms: Measurement*) {
+    ms.foreach { buffer.add(SubscriptionEventType.MODIFIED, _) }
+  }
+
+  private def polled(buffer: SubscriptionBuffer, max: Int = 100) = {
+    buffer.poll(max).map { _._2.asInstanceOf[Measurement] }.map { m => (m.getName, m.getDoubleVal) }
+  }
+
+  test("Queueing keeps everything") {
+    val buffer = SubscriptionBuffer(SubscriptionMode.All, 10)
+    add(buffer, meas("a", 1, 1), meas("a", 2, 2), meas("b", 3, 3))
+
+    polled(buffer) should equal(List(("a", 1.0), ("a", 2.0), ("b", 3.0)))
+    buffer.isEmpty should equal(true)
+  }
+
+  test("Latest keeps one value per point") {
+    val buffer = SubscriptionBuffer(SubscriptionMode.Latest, 10)
+    (1 to 50).foreach { i => add(buffer, meas("a", i, i), meas("b", -i, i)) }
+
+    polled(buffer) should equal(List(("a", 50.0), ("b", -50.0)))
+    buffer.isEmpty should equal(true)
+
+    add(buffer, meas("b", 7, 100))
+    polled(buffer) should equal(List(("b", 7.0)))
+  }
+
+  test("Latest polls limited number of points") {
+    val buffer = SubscriptionBuffer(SubscriptionMode.Latest, 10)
+    add(buffer, meas("a", 1, 1), meas("b", 2, 2), meas("c", 3, 3))
+
+    polled(buffer, 2) should equal(List(("a", 1.0), ("b", 2.0)))
+    polled(buffer, 2) should equal(List(("c", 3.0)))
+  }
+
+  test("LatestMinMax keeps extremes in time order") {
+    val buffer = SubscriptionBuffer(SubscriptionMode.LatestMinMax, 10)
+    add(buffer, meas("a", 5, 1), meas("a", 9, 2), meas("a", 1, 3), meas("a", 4, 4))
+
+    polled(buffer) should equal(List(("a", 9.0), ("a", 1.0), ("a", 4.0)))
+
+    // a single value isn't repeated
+    add(buffer, meas("a", 3, 5))
+    polled(buffer) should equal(List(("a", 3.0)))
+  }
+
+  test("Latest limit counts other events") {
+    val buffer = SubscriptionBuffer(SubscriptionMode.Latest, 10)
+    add(buffer, meas("a", 1, 1), meas("b", 2, 2))
+    val other = Quality.newBuilder.build
+    (1 to 3).foreach { i => buffer.add(SubscriptionEventType.ADDED, other) }
+
+    buffer.poll(3).size should equal(3)
+    buffer.poll(3).size should equal(2)
+    buffer.isEmpty should equal(true)
+  }
+
+  test("LatestMinMax limit counts measurements not points") {
+    val buffer = SubscriptionBuffer(SubscriptionMode.LatestMinMax, 10)
+    List("a", "b", "c").foreach { n => add(buffer, meas(n, 5, 1), meas(n, 9, 2), meas(n, 1, 3), meas(n, 4, 4)) }
+
+    // each point has 3 values, the second point doesn't fit
+    polled(buffer, 5) should equal(List(("a", 9.0), ("a", 1.0), ("a", 4.0)))
+    polled(buffer, 6) should equal(List(("b", 9.0), ("b", 1.0), ("b", 4.0), ("c", 9.0), ("c", 1.0), ("c", 4.0)))
+    buffer.isEmpty should equal(true)
+
+    // a limit smaller than one point still makes progress with the latest values
+    add(buffer, meas("a", 5, 1), meas("a", 9, 2), meas("a", 1, 3), meas("a", 4, 4))
+    polled(buffer, 2) should equal(List(("a", 1.0), ("a", 4.0)))
+    buffer.isEmpty should equal(true)
+  }
+
+  test("Parse modes") {
+    SubscriptionMode.parse(None) should equal(SubscriptionMode.All)
+    SubscriptionMode.parse(Some("latest")) should equal(SubscriptionMode.Latest)
+    SubscriptionMode.parse(Some("LatestMinMax")) should equal(SubscriptionMode.LatestMinMax)
+    intercept[BadRequestException] {
+      SubscriptionMode.parse(Some("fastest"))
+    }
+  }
+}
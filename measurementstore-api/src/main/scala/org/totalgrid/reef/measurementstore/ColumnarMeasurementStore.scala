@@ -0,0 +1,446 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measurementstore
+
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas }
+
+import java.lang.{ Double => JDouble }
+import java.util.Arrays
+import java.util.concurrent.ConcurrentHashMap
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+import org.totalgrid.reef.client.settings.util.PropertyLoading
+
+object ColumnarMeasurementStore {
+
+  private val ChunkSizeProperty = "org.totalgrid.reef.mstore.columnar.chunkSize"
+  private val RetentionProperty = "org.totalgrid.reef.mstore.columnar.retention"
+
+  /**
+   * builds a store from the org.totalgrid.reef.mstore settings. columnar.chunkSize sets the chunk size,
+   * columnar.retention the number of values kept for each point (0 keeps everything) and
+   * columnar.retention.{point name} overrides the retention for a single point.
+   */
+  def fromProperties(props: java.util.Dictionary[AnyRef, AnyRef]): ColumnarMeasurementStore = {
+    def values(count: Int) = if (count > 0) count else Int.MaxValue
+
+    val chunkSize = PropertyLoading.getInt(ChunkSizeProperty, props, 1024)
+    val default = values(PropertyLoading.getInt(RetentionProperty, props, 0))
+    val prefix = RetentionProperty + "."
+    val perPoint = props.keys.toList.map { _.toString }.filter { _.startsWith(prefix) }.map { key =>
+      (key.substring(prefix.length), values(PropertyLoading.getInt(key, props)))
+    }.toMap
+
+    new ColumnarMeasurementStore(chunkSize, { name: String => perPoint.getOrElse(name, default) })
+  }
+
+  // bits in the flags column, they record which optional fields were set so the stored
+  // measurement is rebuilt exactly as it was written
+  private val HasTime = 1
+  private val HasSystemTime = 2
+  private val HasIntVal = 4
+  private val HasDoubleVal = 8
+  private val HasBoolVal = 16
+  private val BoolVal = 32
+  private val HasStringVal = 64
+
+  private val InitialCapacity = 16
+
+  /**
+   * a run of samples sorted by time stored as primitive columns. Times are int offsets from the
+   * base time of the chunk (the same delta idea as SimpleMeasEncoder but against a fixed base so
+   * we can still binary search), so a chunk can span at most Int.MaxValue milliseconds (~24 days).
+   * Everything else about a sample that isn't a value or a time (name, quality, unit, type) is
+   * stored once per point as a "shape" and referenced by index.
+   */
+  final class Chunk(maxSize: Int, var baseTime: Long) {
+
+    var size = 0
+
+    private var offsets = new Array[Int](math.min(maxSize, InitialCapacity))
+    private var systemTimes = new Array[Int](offsets.length)
+    private var values = new Array[Long](offsets.length)
+    private var flags = new Array[Byte](offsets.length)
+    private var shapes = new Array[Short](offsets.length)
+    // only allocated for points with string values or measurements we can't split into columns
+    private var strings: Array[String] = null
+    private var raw: Array[Meas] = null
+
+    def isFull = size == maxSize
+
+    def time(i: Int): Long = baseTime + offsets(i)
+
+    def lastTime = time(size - 1)
+
+    def canHold(t: Long) = t >= baseTime && t - baseTime <= Int.MaxValue
+
+    def canRebase(t: Long) = t < baseTime && lastTime - t <= Int.MaxValue
+
+    /**
+     * moves the base time earlier so a sample older than every sample in the chunk can be inserted
+     */
+    def rebase(t: Long) {
+      val shift = (baseTime - t).toInt
+      var i = 0
+      while (i < size) {
+        offsets(i) += shift
+        i += 1
+      }
+      baseTime = t
+    }
+
+    /**
+     * @return index of the first sample with time >= t (or > t when strict), size if there isn't one
+     */
+    def search(t: Long, strict: Boolean): Int = {
+      var lo = 0
+      var hi = size
+      while (lo < hi) {
+        val mid = (lo + hi) >>> 1
+        val tm = time(mid)
+        if (tm < t || (strict && tm == t)) lo = mid + 1 else hi = mid
+      }
+      lo
+    }
+
+    def insert(i: Int, t: Long, flag: Int, shape: Int, value: Long, systemTime: Int, string: String, meas: Meas) {
+      if (size == offsets.length) grow()
+      if (i < size) {
+        val moved = size - i
+        System.arraycopy(offsets, i, offsets, i + 1, moved)
+        System.arraycopy(systemTimes, i, systemTimes, i + 1, moved)
+        System.arraycopy(values, i, values, i + 1, moved)
+        System.arraycopy(flags, i, flags, i + 1, moved)
+        System.arraycopy(shapes, i, shapes, i + 1, moved)
+        if (strings != null) System.arraycopy(strings, i, strings, i + 1, moved)
+        if (raw != null) System.arraycopy(raw, i, raw, i + 1, moved)
+      }
+      offsets(i) = (t - baseTime).toInt
+      systemTimes(i) = systemTime
+      values(i) = value
+      flags(i) = flag.toByte
+      shapes(i) = shape.toShort
+      if (string != null && strings == null) strings = new Array[String](offsets.length)
+      if (strings != null) strings(i) = string
+      if (meas != null && raw == null) raw = new Array[Meas](offsets.length)
+      if (raw != null) raw(i) = meas
+      size += 1
+    }
+
+    /**
+     * moves the newer half of the samples into a new chunk
+     */
+    def split(): Chunk = {
+      val from = size / 2
+      val other = new Chunk(maxSize, time(from))
+      var i = from
+      while (i < size) {
+        other.insert(other.size, time(i), flags(i), shapes(i), values(i), systemTimes(i),
+          if (strings != null) strings(i) else null, if (raw != null) raw(i) else null)
+        i += 1
+      }
+      if (strings != null) Arrays.fill(strings.asInstanceOf[Array[AnyRef]], from, size, null)
+      if (raw != null) Arrays.fill(raw.asInstanceOf[Array[AnyRef]], from, size, null)
+      size = from
+      other
+    }
+
+    def get(i: Int, shapeList: IndexedSeq[Meas]): Meas = {
+      if (raw != null && raw(i) != null) raw(i)
+      else {
+        val f = flags(i)
+        val b = shapeList(shapes(i)).toBuilder
+        if ((f & HasTime) != 0) b.setTime(time(i))
+        if ((f & HasSystemTime) != 0) b.setSystemTime(time(i) + systemTimes(i))
+        if ((f & HasIntVal) != 0) b.setIntVal(values(i))
+        if ((f & HasDoubleVal) != 0) b.setDoubleVal(JDouble.longBitsToDouble(values(i)))
+        if ((f & HasBoolVal) != 0) b.setBoolVal((f & BoolVal) != 0)
+        if ((f & HasStringVal) != 0) b.setStringVal(strings(i))
+        b.build
+      }
+    }
+
+    /**
+     * approximate number of bytes used by the columns
+     */
+    def bytes: Long = {
+      val refs = (if (strings != null) 8 else 0) + (if (raw != null) 8 else 0)
+      offsets.length.toLong * (4 + 4 + 8 + 1 + 2 + refs)
+    }
+
+    private def grow() {
+      val capacity = math.min(maxSize, offsets.length * 2)
+      offsets = Arrays.copyOf(offsets, capacity)
+      systemTimes = Arrays.copyOf(systemTimes, capacity)
+      values = Arrays.copyOf(values, capacity)
+      flags = Arrays.copyOf(flags, capacity)
+      shapes = Arrays.copyOf(shapes, capacity)
+      if (strings != null) {
+        val s = new Array[String](capacity)
+        System.arraycopy(strings, 0, s, 0, size)
+        strings = s
+      }
+      if (raw != null) {
+        val r = new Array[Meas](capacity)
+        System.arraycopy(raw, 0, r, 0, size)
+        raw = r
+      }
+    }
+  }
+
+  /**
+   * history of a single point as a list of non-overlapping chunks sorted by time. Not thread safe,
+   * the store synchronizes on the history for reads and writes except for the current value.
+   *
+   * @param maxSamples retention limit, the oldest chunk is only dropped once the point has
+   *                   maxSamples values without it so a point keeps up to maxSamples + chunkSize values.
+   *                   The newest chunk is always kept.
+   */
+  final class PointHistory(chunkSize: Int, maxSamples: Int, first: Meas) {
+
+    @volatile var current = first
+
+    var numValues = 0
+
+    private val chunks = mutable.ArrayBuffer.empty[Chunk]
+    private val shapeList = mutable.ArrayBuffer.empty[Meas]
+    private val shapeIndex = mutable.Map.empty[Meas, Int]
+
+    def add(meas: Meas) {
+      current = meas
+      encode(meas)
+      numValues += 1
+      while (chunks.size > 1 && numValues - chunks(0).size >= maxSamples) {
+        numValues -= chunks(0).size
+        chunks.remove(0)
+      }
+    }
+
+    def getInRange(begin: Long, end: Long, max: Int, ascending: Boolean): List[Meas] = {
+      val (fromChunk, fromIndex) = seek(begin, false)
+      val (toChunk, toIndex) = seek(end, true)
+      val results = mutable.ListBuffer.empty[Meas]
+      var count = 0
+      if (ascending) {
+        var c = fromChunk
+        var i = fromIndex
+        while (count < max && (c < toChunk || (c == toChunk && i < toIndex))) {
+          if (i < chunks(c).size) {
+            results += chunks(c).get(i, shapeList)
+            count += 1
+            i += 1
+          } else {
+            c += 1
+            i = 0
+          }
+        }
+      } else {
+        var c = toChunk
+        var i = toIndex - 1
+        while (count < max && (c > fromChunk || (c == fromChunk && i >= fromIndex))) {
+          if (i >= 0) {
+            results += chunks(c).get(i, shapeList)
+            count += 1
+            i -= 1
+          } else {
+            c -= 1
+            i = chunks(c).size - 1
+          }
+        }
+      }
+      results.toList
+    }
+
+    def foreachInRange(begin: Long, end: Long)(fun: Meas => Unit) {
+      val (fromChunk, fromIndex) = seek(begin, false)
+      val (toChunk, toIndex) = seek(end, true)
+      var c = fromChunk
+      var i = fromIndex
+      while (c < toChunk || (c == toChunk && i < toIndex)) {
+        if (i < chunks(c).size) {
+          fun(chunks(c).get(i, shapeList))
+          i += 1
+        } else {
+          c += 1
+          i = 0
+        }
+      }
+    }
+
+    def bytes: Long = chunks.foldLeft(0L) { _ + _.bytes }
+
+    private def encode(meas: Meas) {
+      val t = meas.getTime
+      val systemTime = meas.getSystemTime - t
+
+      var flag = 0
+      var value = 0L
+      var string: String = null
+      if (meas.hasTime) flag |= HasTime
+      if (meas.hasSystemTime) flag |= HasSystemTime
+      if (meas.hasIntVal) {
+        flag |= HasIntVal
+        value = meas.getIntVal
+      }
+      if (meas.hasDoubleVal) {
+        flag |= HasDoubleVal
+        value = JDouble.doubleToLongBits(meas.getDoubleVal)
+      }
+      if (meas.hasBoolVal) flag |= (if (meas.getBoolVal) HasBoolVal | BoolVal else HasBoolVal)
+      if (meas.hasStringVal) {
+        flag |= HasStringVal
+        string = meas.getStringVal
+      }
+
+      // measurements with both an int and a double or a system time far from the measurement
+      // time don't fit in the columns, they are kept whole
+      val fitsColumns = !(meas.hasIntVal && meas.hasDoubleVal) &&
+        (!meas.hasSystemTime || (systemTime >= Int.MinValue && systemTime <= Int.MaxValue))
+      val shape = if (fitsColumns) shapeOf(meas) else -1
+
+      if (shape < 0) place(t, 0, 0, 0, 0, null, meas)
+      else place(t, flag, shape, value, systemTime.toInt, string, null)
+    }
+
+    private def shapeOf(meas: Meas): Int = {
+      val shape = meas.toBuilder.clearTime.clearSystemTime.clearIntVal.clearDoubleVal.clearBoolVal.clearStringVal.build
+      shapeIndex.get(shape) match {
+        case Some(i) => i
+        case None if shapeList.size <= Short.MaxValue =>
+          shapeIndex.put(shape, shapeList.size)
+          shapeList += shape
+          shapeList.size - 1
+        case None => -1
+      }
+    }
+
+    private def place(t: Long, flag: Int, shape: Int, value: Long, systemTime: Int, string: String, meas: Meas) {
+      def insertAt(c: Int, i: Int) = chunks(c).insert(i, t, flag, shape, value, systemTime, string, meas)
+      def newChunk(c: Int) = {
+        chunks.insert(c, new Chunk(chunkSize, t))
+        insertAt(c, 0)
+      }
+
+      if (chunks.isEmpty) newChunk(0)
+      else {
+        val lastChunk = chunks.size - 1
+        val last = chunks(lastChunk)
+        if (t >= last.lastTime) {
+          // usual case, measurements arrive in time order
+          if (!last.isFull && last.canHold(t)) insertAt(lastChunk, last.size)
+          else newChunk(chunks.size)
+        } else {
+          // goes after any samples with the same time so they stay in the order they were written
+          val (c, i) = seek(t, true)
+          val chunk = chunks(c)
+          if (i == 0 && c > 0 && !chunks(c - 1).isFull && chunks(c - 1).canHold(t)) insertAt(c - 1, chunks(c - 1).size)
+          else if (chunk.isFull) {
+            chunks.insert(c + 1, chunk.split())
+            place(t, flag, shape, value, systemTime, string, meas)
+          } else if (chunk.canHold(t)) insertAt(c, i)
+          else if (chunk.canRebase(t)) {
+            chunk.rebase(t)
+            insertAt(c, 0)
+          } else newChunk(c)
+        }
+      }
+    }
+
+    /**
+     * @return (chunk, index) of the first sample with time >= t (or > t when strict), (chunks.size, 0)
+     *         if there isn't one
+     */
+    private def seek(t: Long, strict: Boolean): (Int, Int) = {
+      var lo = 0
+      var hi = chunks.size
+      while (lo < hi) {
+        val mid = (lo + hi) >>> 1
+        val last = chunks(mid).lastTime
+        if (last < t || (strict && last == t)) lo = mid + 1 else hi = mid
+      }
+      if (lo == chunks.size) (lo, 0) else (lo, chunks(lo).search(t, strict))
+    }
+  }
+}
+
+/**
+ * in memory historian that stores each point's history in primitive columns rather than as protobuf
+ * objects, a sample costs ~20 bytes instead of a full Measurement and range reads binary search
+ * the time column.
+ *
+ * Like InMemoryMeasurementStore the current value is the most recently written measurement, it is
+ * read without locking. Writes and history reads lock only the point they touch.
+ *
+ * @param chunkSize maximum number of samples in each column chunk
+ * @param retention maximum number of values to keep for a point (by name)
+ */
+class ColumnarMeasurementStore(chunkSize: Int = 1024, retention: String => Int = { name: String => Int.MaxValue }) extends MeasurementStore {
+
+  import ColumnarMeasurementStore._
+
+  require(chunkSize >= 2, "chunkSize must be at least 2")
+
+  private val histories = new ConcurrentHashMap[String, PointHistory]()
+
+  def get(names: Seq[String]): Map[String, Meas] = {
+    names.flatMap { name => Option(histories.get(name)).map { h => name -> h.current } }.toMap
+  }
+
+  def set(meas: Seq[Meas]): Unit = {
+    meas.foreach { m =>
+      val history = histories.get(m.getName) match {
+        case null =>
+          val created = new PointHistory(chunkSize, retention(m.getName), m)
+          Option(histories.putIfAbsent(m.getName, created)).getOrElse(created)
+        case existing => existing
+      }
+      history.synchronized(history.add(m))
+    }
+  }
+
+  def getInRange(name: String, begin: Long, end: Long, max: Int, ascending: Boolean): Seq[Meas] = {
+    Option(histories.get(name)).map { h => h.synchronized(h.getInRange(begin, end, max, ascending)) }.getOrElse(Nil)
+  }
+
+  override def foreachInRange(name: String, begin: Long, end: Long)(fun: Meas => Unit) {
+    Option(histories.get(name)).foreach { h => h.synchronized(h.foreachInRange(begin, end)(fun)) }
+  }
+
+  def numValues(name: String): Int = {
+    Option(histories.get(name)).map { h => h.synchronized(h.numValues) }.getOrElse(0)
+  }
+
+  def remove(names: Seq[String]): Unit = names.foreach { histories.remove(_) }
+
+  def numPoints(): Int = histories.size
+
+  def allCurrent(): Seq[Meas] = histories.values.map { _.current }.toList
+
+  override def points(): List[String] = histories.keySet.toList
+
+  override def dbSize(): Option[Long] = Some(histories.values.foldLeft(0L) { (sum, h) => sum + h.synchronized(h.bytes) })
+
+  override def reset(): Boolean = {
+    histories.clear()
+    true
+  }
+
+  def connect() = {}
+  def disconnect() = {}
+}
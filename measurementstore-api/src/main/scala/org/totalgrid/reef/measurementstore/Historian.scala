@@ -18,7 +18,7 @@
  */
 package org.totalgrid.reef.measurementstore
 
-import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas }
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas, MeasurementHistory }
 
 /// A wide interface for reading/writing historical data
 trait Historian {
@@ -46,8 +46,38 @@ trait Historian {
    */
   def remove(names: Seq[String]): Unit
 
+  /**
+   *   Visits every value within a range in ascending time order, stores should override this to avoid
+   *   loading the whole range into memory at once
+   *     @param name The name of measurement
+   *     @param begin Beginning of the time range (inclusive)
+   *     @param end End of the time range (inclusive)
+   */
+  def foreachInRange(name: String, begin: Long, end: Long)(fun: Meas => Unit) {
+    getInRange(name, begin, end, Int.MaxValue, true).foreach(fun)
+  }
+
   /* -----  composed helper functions ------- */
 
+  /**
+   *   Returns a downsampled view of the values within a range, the range between the first and
+   *   last stored values is split into [buckets] equal time buckets which are each reduced by [sampling]
+   *     @param name The name of measurement
+   *     @param begin Beginning of the time range (inclusive)
+   *     @param end End of the time range (inclusive)
+   *     @param buckets Number of time buckets to reduce the range to
+   *     @param sampling How each bucket is reduced, see MeasurementSampler
+   */
+  def getSampled(name: String, begin: Long, end: Long, buckets: Int, sampling: MeasurementHistory.Sampling): Seq[Meas] = {
+    (getOldestInRange(name, begin, end, 1), getNewestInRange(name, begin, end, 1)) match {
+      case (Seq(first), Seq(last)) =>
+        val sampler = MeasurementSampler(sampling, first.getTime, last.getTime, buckets)
+        foreachInRange(name, first.getTime, last.getTime)(sampler.add)
+        sampler.result()
+      case _ => Nil
+    }
+  }
+
   /**
    *   Returns the most recent values within a range up to [max]
    *     @param name The name of measurement
@@ -20,80 +20,101 @@ package org.totalgrid.reef.measurementstore
 
 import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas }
 
+import java.util.concurrent.ConcurrentHashMap
+import scala.collection.JavaConversions._
 import scala.collection.mutable.ListBuffer
 import scala.collection.immutable.TreeMap
-import scala.collection.mutable
 
-class MeasStorage(var startingValue: Meas, currentValueOnly: Boolean) {
-  var historicValues = TreeMap.empty[Long, ListBuffer[Meas]]
-  var lastWrittenValue = startingValue
+/**
+ * history and current value of a single point. History is only read and written while holding
+ * the storage's lock, the current value is volatile so it can be read without locking.
+ */
+class MeasStorage(startingValue: Meas, currentValueOnly: Boolean) {
+  private var historicValues = TreeMap.empty[Long, ListBuffer[Meas]]
+  @volatile private var lastWritten = startingValue
 
   addMeas(startingValue)
 
-  def addMeas(meas: Meas) {
-    if (currentValueOnly) historicValues = TreeMap.empty[Long, ListBuffer[Meas]]
-    historicValues.get(meas.getTime) match {
-      case Some(l) => l += meas
-      case None => historicValues += (meas.getTime -> ListBuffer(meas))
+  def lastWrittenValue = lastWritten
+
+  def addMeas(meas: Meas): Unit = synchronized {
+    if (!currentValueOnly) {
+      historicValues.get(meas.getTime) match {
+        case Some(l) => l += meas
+        case None => historicValues += (meas.getTime -> ListBuffer(meas))
+      }
     }
-    lastWrittenValue = meas
+    lastWritten = meas
   }
 
-  def getInRange(begin: Long, end: Long, max: Int, ascending: Boolean): Seq[Meas] = {
+  def getInRange(begin: Long, end: Long, max: Int, ascending: Boolean): Seq[Meas] = synchronized {
     val rend = if (end == Long.MaxValue) end else end + 1
     val entries = historicValues.range(begin, rend).map { _._2 }.flatten
     val rentries = if (!ascending) entries.toList.reverse else entries.toList
     rentries.slice(0, max)
   }
 
-  def numValues(): Int = {
+  def foreachInRange(begin: Long, end: Long)(fun: Meas => Unit): Unit = synchronized {
+    val rend = if (end == Long.MaxValue) end else end + 1
+    historicValues.range(begin, rend).foreach { _._2.foreach(fun) }
+  }
+
+  def numValues(): Int = synchronized {
     historicValues.foldLeft(0) { (sum, x) => sum + x._2.size }
   }
 }
 
+/**
+ * points are kept in a concurrent map and each point is locked separately so writers to different
+ * points and current value readers never contend with each other.
+ */
 class InMemoryMeasurementStore(currentValueOnly: Boolean = false) extends MeasurementStore {
 
-  var values = mutable.Map.empty[String, MeasStorage]
+  private val values = new ConcurrentHashMap[String, MeasStorage]()
 
-  def get(names: Seq[String]): Map[String, Meas] = this.synchronized {
-    values.filterKeys(names.contains).map { x => x._1 -> x._2.lastWrittenValue }.toMap
+  def get(names: Seq[String]): Map[String, Meas] = {
+    names.flatMap { name => Option(values.get(name)).map { s => name -> s.lastWrittenValue } }.toMap
   }
+
   def set(meas: Seq[Meas]): Unit = {
     meas.foreach { m =>
-      val storage = this.synchronized {
-        values.get(m.getName) match {
-          case Some(hist) => Some(hist)
-          case None =>
-            values.put(m.getName, new MeasStorage(m, currentValueOnly))
-            None
-        }
+      values.get(m.getName) match {
+        case null =>
+          // the new storage already holds the measurement, only add it if another thread won the race
+          val existing = values.putIfAbsent(m.getName, new MeasStorage(m, currentValueOnly))
+          if (existing != null) existing.addMeas(m)
+        case storage => storage.addMeas(m)
       }
-      storage.foreach { _.addMeas(m) }
     }
   }
 
-  def getInRange(name: String, begin: Long, end: Long, max: Int, ascending: Boolean): Seq[Meas] = this.synchronized {
+  def getInRange(name: String, begin: Long, end: Long, max: Int, ascending: Boolean): Seq[Meas] = {
+    checkHistorian
+    Option(values.get(name)).map { _.getInRange(begin, end, max, ascending) }.getOrElse(Nil)
+  }
+
+  override def foreachInRange(name: String, begin: Long, end: Long)(fun: Meas => Unit) {
     checkHistorian
-    values.get(name).map { _.getInRange(begin, end, max, ascending) }.getOrElse(Nil)
+    Option(values.get(name)).foreach { _.foreachInRange(begin, end)(fun) }
   }
 
-  def numValues(name: String): Int = this.synchronized {
+  def numValues(name: String): Int = {
     checkHistorian
-    values.get(name).map { _.numValues }.getOrElse(0)
+    Option(values.get(name)).map { _.numValues }.getOrElse(0)
   }
 
-  def remove(names: Seq[String]): Unit = this.synchronized {
+  def remove(names: Seq[String]): Unit = {
     names.foreach { name =>
       values.remove(name)
     }
   }
 
-  def numPoints(): Int = this.synchronized {
+  def numPoints(): Int = {
     values.size
   }
 
-  def allCurrent(): Seq[Meas] = this.synchronized {
-    values.map { x => x._2.lastWrittenValue }.toList
+  def allCurrent(): Seq[Meas] = {
+    values.values.map { _.lastWrittenValue }.toList
   }
 
   def connect() = {}
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measurementstore
+
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas, MeasurementHistory }
+import MeasurementHistory.Sampling
+
+import scala.collection.mutable
+
+object MeasurementSampler {
+
+  /**
+   * @param begin time of the oldest measurement that will be added
+   * @param end time of the newest measurement that will be added
+   */
+  def apply(sampling: Sampling, begin: Long, end: Long, buckets: Int): MeasurementSampler = sampling match {
+    case Sampling.EXTREMES => new ExtremesSampler(begin, end, buckets)
+    case Sampling.AVERAGE => new AverageSampler(begin, end, buckets)
+    case Sampling.LTTB => new LttbSampler(begin, end, buckets)
+    case Sampling.NONE => throw new IllegalArgumentException("Can't sample with sampling NONE")
+  }
+
+  /**
+   * value used for comparing and averaging, bools are 0 or 1, strings and empty measurements have no value
+   */
+  def numericValue(m: Meas): Option[Double] = m.getType match {
+    case Meas.Type.INT => Some(m.getIntVal.toDouble)
+    case Meas.Type.DOUBLE => Some(m.getDoubleVal)
+    case Meas.Type.BOOL => Some(if (m.getBoolVal) 1.0 else 0.0)
+    case _ => None
+  }
+}
+
+/**
+ * reduces a stream of measurements (added in ascending time order) to a handful of representative
+ * values per time bucket without holding on to the rest. The range between begin and end is split
+ * into equal time buckets.
+ */
+abstract class MeasurementSampler(begin: Long, end: Long, buckets: Int) {
+
+  require(buckets > 0, "Need at least one bucket")
+
+  private val span = (end - begin + 1).toDouble
+
+  protected val results = mutable.ListBuffer.empty[Meas]
+
+  def add(m: Meas)
+
+  /**
+   * @return the sampled measurements in ascending time order
+   */
+  def result(): List[Meas]
+
+  protected def bucketOf(time: Long): Int = {
+    val bucket = ((time - begin) / span * buckets).toInt
+    if (bucket < 0) 0 else if (bucket >= buckets) buckets - 1 else bucket
+  }
+}
+
+/**
+ * keeps the smallest and largest value in each bucket (once if they are the same measurement) in time
+ * order, buckets without numeric values keep their first measurement.
+ */
+class ExtremesSampler(begin: Long, end: Long, buckets: Int) extends MeasurementSampler(begin, end, buckets) {
+
+  import MeasurementSampler._
+
+  private var bucket = -1
+  private var first: Meas = null
+  private var min: Meas = null
+  private var max: Meas = null
+  private var minValue = 0.0
+  private var maxValue = 0.0
+
+  def add(m: Meas) {
+    val b = bucketOf(m.getTime)
+    if (b != bucket) {
+      flush()
+      bucket = b
+      first = m
+    }
+    numericValue(m).foreach { v =>
+      if (min == null || v < minValue) {
+        min = m
+        minValue = v
+      }
+      if (max == null || v > maxValue) {
+        max = m
+        maxValue = v
+      }
+    }
+  }
+
+  def result() = {
+    flush()
+    results.toList
+  }
+
+  private def flush() {
+    if (min == null) {
+      if (first != null) results += first
+    } else if (min eq max) results += min
+    else if (min.getTime <= max.getTime) results += (min, max)
+    else results += (max, min)
+    first = null
+    min = null
+    max = null
+  }
+}
+
+/**
+ * replaces the measurements in each bucket with a single DOUBLE measurement at the mean time with the
+ * mean value and the quality of the last measurement in the bucket. Buckets without numeric values
+ * keep their first measurement.
+ */
+class AverageSampler(begin: Long, end: Long, buckets: Int) extends MeasurementSampler(begin, end, buckets) {
+
+  import MeasurementSampler._
+
+  private var bucket = -1
+  private var first: Meas = null
+  private var last: Meas = null
+  private var count = 0
+  private var valueSum = 0.0
+  private var timeSum = 0.0
+
+  def add(m: Meas) {
+    val b = bucketOf(m.getTime)
+    if (b != bucket) {
+      flush()
+      bucket = b
+      first = m
+    }
+    numericValue(m).foreach { v =>
+      count += 1
+      valueSum += v
+      timeSum += (m.getTime - begin)
+      last = m
+    }
+  }
+
+  def result() = {
+    flush()
+    results.toList
+  }
+
+  private def flush() {
+    if (count == 1) results += last
+    else if (count > 1) {
+      val b = last.toBuilder.clearIntVal.clearBoolVal.setType(Meas.Type.DOUBLE).setDoubleVal(valueSum / count)
+      b.setTime(begin + (timeSum / count).toLong)
+      results += b.build
+    } else if (first != null) results += first
+    first = null
+    last = null
+    count = 0
+    valueSum = 0
+    timeSum = 0
+  }
+}
+
+/**
+ * Largest-Triangle-Three-Buckets visual downsampling: keeps the first and last measurement and from each
+ * of the buckets - 2 buckets in between the measurement that makes the largest triangle with the previously
+ * kept measurement and the average of the next bucket. Only two buckets of measurements are held at a time.
+ */
+class LttbSampler(begin: Long, end: Long, buckets: Int) extends MeasurementSampler(begin, end, math.max(buckets - 2, 1)) {
+
+  private val keepInterior = buckets > 2
+
+  import MeasurementSampler._
+
+  private class Bucket(val index: Int) {
+    val meas = mutable.ArrayBuffer.empty[Meas]
+    var timeSum = 0.0
+    var valueSum = 0.0
+
+    def add(m: Meas) {
+      meas += m
+      timeSum += x(m)
+      valueSum += y(m)
+    }
+
+    def average = (timeSum / meas.size, valueSum / meas.size)
+  }
+
+  private var first: Meas = null
+  private var last: Meas = null
+  private var previous = (0.0, 0.0)
+  private var pending: Option[Bucket] = None
+  private var filling: Option[Bucket] = None
+
+  private def x(m: Meas) = (m.getTime - begin).toDouble
+  private def y(m: Meas) = numericValue(m).getOrElse(0.0)
+
+  def add(m: Meas) {
+    if (first == null) {
+      first = m
+      previous = (x(m), y(m))
+      results += m
+    } else {
+      // the newest measurement is held back since it is always kept
+      if (last != null && keepInterior) addToBucket(last)
+      last = m
+    }
+  }
+
+  def result() = {
+    pending.foreach { p => select(p, filling.map { _.average }.getOrElse((x(last), y(last)))) }
+    filling.foreach { f => select(f, (x(last), y(last))) }
+    pending = None
+    filling = None
+    if (last != null) results += last
+    last = null
+    results.toList
+  }
+
+  private def addToBucket(m: Meas) {
+    val b = bucketOf(m.getTime)
+    filling match {
+      case Some(f) if f.index == b => f.add(m)
+      case _ =>
+        // the filling bucket is complete so the one before it can pick its measurement
+        pending.foreach { p => select(p, filling.get.average) }
+        pending = filling
+        val next = new Bucket(b)
+        next.add(m)
+        filling = Some(next)
+    }
+  }
+
+  private def select(bucket: Bucket, next: (Double, Double)) {
+    val (ax, ay) = previous
+    val (nx, ny) = next
+    var best = bucket.meas.head
+    var bestArea = -1.0
+    bucket.meas.foreach { m =>
+      val area = math.abs((ax - nx) * (y(m) - ay) - (ax - x(m)) * (ny - ay))
+      if (area > bestArea) {
+        best = m
+        bestArea = area
+      }
+    }
+    results += best
+    previous = (x(best), y(best))
+  }
+}
@@ -18,7 +18,7 @@
  */
 package org.totalgrid.reef.measurementstore
 
-import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas }
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas, MeasurementHistory }
 import org.totalgrid.reef.jmx.Metrics
 
 class MeasSinkMetrics(sink: MeasSink, metrics: Metrics) extends MeasSink {
@@ -51,6 +51,9 @@ class HistorianMetrics(db: Historian, metrics: Metrics) extends Historian {
   val entriesRetrieved = metrics.counter("entriesRetrieved")
   val getTime = metrics.timer("getTime")
 
+  val samples = metrics.counter("sampleOps")
+  val sampleTime = metrics.timer("sampleTime")
+
   val counts = metrics.counter("countOps")
   val countTime = metrics.timer("countTime")
   val removes = metrics.counter("removeOps")
@@ -63,6 +66,20 @@ class HistorianMetrics(db: Historian, metrics: Metrics) extends Historian {
     result
   }
 
+  override def foreachInRange(name: String, begin: Long, end: Long)(fun: Meas => Unit) {
+    gets(1)
+    var count = 0
+    getTime(db.foreachInRange(name, begin, end) { m => count += 1; fun(m) })
+    entriesRetrieved(count)
+  }
+
+  override def getSampled(name: String, begin: Long, end: Long, buckets: Int, sampling: MeasurementHistory.Sampling): Seq[Meas] = {
+    samples(1)
+    val result = sampleTime(db.getSampled(name, begin, end, buckets, sampling))
+    entriesRetrieved(result.size)
+    result
+  }
+
   def numValues(name: String): Int = {
     counts(1)
     countTime(db.numValues(name))
@@ -18,7 +18,7 @@
  */
 package org.totalgrid.reef.measurementstore
 
-import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement, MeasurementHistory }
 import net.agileautomata.executor4s._
 
 /**
@@ -96,6 +96,14 @@ class MixedMeasurementStore(exeSource: => ExecutorService, historian: Measuremen
     historian.getInRange(name, begin, end, max, ascending)
   }
 
+  override def foreachInRange(name: String, begin: Long, end: Long)(fun: Measurement => Unit) {
+    historian.foreachInRange(name, begin, end)(fun)
+  }
+
+  override def getSampled(name: String, begin: Long, end: Long, buckets: Int, sampling: MeasurementHistory.Sampling) = {
+    historian.getSampled(name, begin, end, buckets, sampling)
+  }
+
   def numValues(name: String) = historian.numValues(name)
 
   override def archive(name: String, end: Long) = historian.archive(name, end)
@@ -20,7 +20,8 @@ package org.totalgrid.reef.measurementstore.activator
 
 import org.osgi.framework.{ BundleContext, BundleActivator }
 import com.weiglewilczek.scalamodules._
-import org.totalgrid.reef.measurementstore.{ MeasurementStoreProvider, InMemoryMeasurementStore }
+import org.totalgrid.reef.measurementstore.{ ColumnarMeasurementStore, MeasurementStoreProvider, InMemoryMeasurementStore }
+import org.totalgrid.reef.osgi.OsgiConfigReader
 
 class InMemoryMeasurementStoreActivator extends BundleActivator {
   def start(context: BundleContext) {
@@ -35,6 +36,10 @@ class InMemoryMeasurementStoreActivator extends BundleActivator {
     context.createService(MeasurementStoreProvider(historianMeasurementStore), historianOptions, interface[MeasurementStoreProvider])
     context.createService(MeasurementStoreProvider(realtimeMeasurementStore), realtimeOptions, interface[MeasurementStoreProvider])
 
+    val columnarOptions = Map[String, Any]("impl" -> "memory-columnar", "realtime" -> true, "historian" -> true)
+    val columnarStore = ColumnarMeasurementStore.fromProperties(OsgiConfigReader.load(context, "org.totalgrid.reef.mstore"))
+    context.createService(MeasurementStoreProvider(columnarStore), columnarOptions, interface[MeasurementStoreProvider])
+
   }
 
   def stop(context: BundleContext) {}
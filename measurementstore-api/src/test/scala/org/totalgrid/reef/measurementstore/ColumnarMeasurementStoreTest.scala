@@ -0,0 +1,163 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measurementstore
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+
+import scala.util.Random
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas, Quality, DetailQual }
+import org.totalgrid.reef.util.Timing
+
+@RunWith(classOf[JUnitRunner])
+class ColumnarMeasurementStoreTest extends FunSuite with ShouldMatchers {
+
+  def intMeas(name: String, time: Long, value: Long) = {
+    Meas.newBuilder.setName(name).setType(Meas.Type.INT).setIntVal(value)
+      .setQuality(Quality.newBuilder).setTime(time).build
+  }
+
+  test("Round trips every field") {
+    val name = "RoundTrip"
+    val badQuality = Quality.newBuilder.setValidity(Quality.Validity.INVALID).setDetailQual(DetailQual.newBuilder.setOldData(true))
+    def meas = Meas.newBuilder.setName(name).setQuality(Quality.newBuilder).setUnit("V")
+
+    val written = List(
+      meas.setType(Meas.Type.DOUBLE).setDoubleVal(1.5).setTime(1).setSystemTime(11).build,
+      meas.setType(Meas.Type.BOOL).setBoolVal(true).setTime(2).setIsDeviceTime(true).build,
+      meas.setType(Meas.Type.BOOL).setBoolVal(false).setTime(3).setQuality(badQuality).build,
+      meas.setType(Meas.Type.STRING).setStringVal("text").setTime(4).build,
+      meas.setType(Meas.Type.NONE).setTime(5).build,
+      // both values set and system time too far from the measurement time to store as an offset
+      meas.setType(Meas.Type.INT).setIntVal(-7).setDoubleVal(3.0).setTime(6).build,
+      meas.setType(Meas.Type.INT).setIntVal(Long.MinValue).setTime(7).setSystemTime(Long.MaxValue).build,
+      meas.setType(Meas.Type.INT).setIntVal(8).build)
+
+    val cm = new ColumnarMeasurementStore()
+    cm.set(written)
+
+    cm.getOldest(name, 100) should equal(written.sortBy(_.getTime))
+    cm.get(name) should equal(Some(written.last))
+    cm.numValues(name) should equal(written.size)
+  }
+
+  test("Out of order inserts match the reference store") {
+    val rand = new Random(42)
+    val name = "OutOfOrder"
+
+    val cm = new ColumnarMeasurementStore(4)
+    val reference = new InMemoryMeasurementStore()
+
+    (1 to 500).foreach { i =>
+      // mostly increasing times with some late arrivals and repeated times
+      val time = if (rand.nextInt(4) == 0) rand.nextInt(i * 10) else i * 10 + rand.nextInt(3)
+      val m = intMeas(name, time, i)
+      cm.set(m :: Nil)
+      reference.set(m :: Nil)
+    }
+
+    cm.numValues(name) should equal(reference.numValues(name))
+    (1 to 100).foreach { i =>
+      val begin = rand.nextInt(5000) - 10
+      val end = begin + rand.nextInt(1000)
+      val max = rand.nextInt(200)
+      cm.getInRange(name, begin, end, max, true) should equal(reference.getInRange(name, begin, end, max, true))
+      cm.getInRange(name, begin, end, max, false) should equal(reference.getInRange(name, begin, end, max, false))
+    }
+  }
+
+  test("Large gaps between measurements") {
+    val name = "Gaps"
+    val day = 24 * 60 * 60 * 1000L
+    val times = List(0L, 100 * day, 50 * day, 100 * day + 1, 1, 25 * day)
+
+    val cm = new ColumnarMeasurementStore(4)
+    cm.set(times.zipWithIndex.map { case (t, i) => intMeas(name, t, i) })
+
+    cm.getOldest(name, 100).map { _.getTime } should equal(times.sorted)
+    cm.getInRange(name, 1, 50 * day, 100, false).map { _.getTime } should equal(List(50 * day, 25 * day, 1))
+  }
+
+  test("Retention drops oldest chunks per point") {
+    val cm = new ColumnarMeasurementStore(10, { name: String => if (name == "Short") 20 else Int.MaxValue })
+
+    cm.set((1 to 100).map { i => intMeas("Short", i, i) })
+    cm.set((1 to 100).map { i => intMeas("Long", i, i) })
+
+    // trimmed a chunk at a time so between 20 and 30 values are kept
+    cm.numValues("Short") should equal(20)
+    cm.getOldest("Short").get.getTime should equal(81)
+    cm.getNewest("Short").get.getTime should equal(100)
+
+    cm.numValues("Long") should equal(100)
+  }
+
+  test("Chunk size and retention read from properties") {
+    val props = new java.util.Properties
+    props.put("org.totalgrid.reef.mstore.columnar.chunkSize", "10")
+    props.put("org.totalgrid.reef.mstore.columnar.retention", "50")
+    props.put("org.totalgrid.reef.mstore.columnar.retention.Short", "20")
+    props.put("org.totalgrid.reef.mstore.columnar.retention.Long", "0")
+    val cm = ColumnarMeasurementStore.fromProperties(props)
+
+    List("Short", "Default", "Long").foreach { name => cm.set((1 to 100).map { i => intMeas(name, i, i) }) }
+
+    cm.numValues("Short") should equal(20)
+    cm.numValues("Default") should equal(50)
+    cm.numValues("Long") should equal(100)
+  }
+
+  ignore("Memory and throughput compared to InMemoryMeasurementStore") {
+    val points = 100
+    val samples = 2000
+    val queries = 1000
+    val rand = new Random()
+
+    def usedMemory = {
+      (1 to 3).foreach { i => System.gc() }
+      Runtime.getRuntime.totalMemory - Runtime.getRuntime.freeMemory
+    }
+
+    def measure(storeName: String, store: MeasurementStore) {
+      val baseline = usedMemory
+      val writeTime = Timing.benchmark {
+        (1 to samples).foreach { t =>
+          store.set((1 to points).map { p => intMeas("Point" + p, t, rand.nextInt(1000)) })
+        }
+      }
+      val bytes = usedMemory - baseline
+
+      val readTime = Timing.benchmark {
+        (1 to queries).foreach { i =>
+          val begin = rand.nextInt(samples) + 1
+          store.getInRange("Point" + (rand.nextInt(points) + 1), begin, begin + 100, 100, false).size should equal(math.min(101, samples - begin + 1))
+        }
+      }
+
+      val total = points * samples
+      println(storeName + ": " + (bytes / total) + " bytes/sample, " + (total * 1000L / math.max(writeTime, 1)) +
+        " writes/s, " + (queries * 1000L / math.max(readTime, 1)) + " range reads/s")
+    }
+
+    measure("InMemoryMeasurementStore", new InMemoryMeasurementStore())
+    measure("ColumnarMeasurementStore", new ColumnarMeasurementStore())
+  }
+}
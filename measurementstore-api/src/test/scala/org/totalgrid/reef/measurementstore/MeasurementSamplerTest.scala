@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measurementstore
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas, MeasurementHistory, Quality }
+import MeasurementHistory.Sampling
+
+@RunWith(classOf[JUnitRunner])
+class MeasurementSamplerTest extends FunSuite with ShouldMatchers {
+
+  def intMeas(time: Long, value: Long) = {
+    Meas.newBuilder.setName("Sampled").setType(Meas.Type.INT).setIntVal(value)
+      .setQuality(Quality.newBuilder).setTime(time).build
+  }
+
+  def stringMeas(time: Long, value: String) = {
+    Meas.newBuilder.setName("Sampled").setType(Meas.Type.STRING).setStringVal(value)
+      .setQuality(Quality.newBuilder).setTime(time).build
+  }
+
+  def sample(sampling: Sampling, buckets: Int, meas: Seq[Meas]) = {
+    val sampler = MeasurementSampler(sampling, meas.head.getTime, meas.last.getTime, buckets)
+    meas.foreach { sampler.add(_) }
+    sampler.result()
+  }
+
+  // two buckets [0, 50) and [50, 99]
+  val sawtooth = (0 until 100).map { i => intMeas(i, if (i % 10 == 3) -i else i) }
+
+  test("Extremes keeps min and max of each bucket in time order") {
+    val result = sample(Sampling.EXTREMES, 2, sawtooth)
+    result.map { m => (m.getTime, m.getIntVal) } should equal(List((43, -43), (49, 49), (93, -93), (99, 99)))
+  }
+
+  test("Extremes keeps a single value once") {
+    sample(Sampling.EXTREMES, 10, List(intMeas(5, 1))) should equal(List(intMeas(5, 1)))
+  }
+
+  test("Average replaces each bucket with its mean") {
+    val result = sample(Sampling.AVERAGE, 2, (0 until 100).map { i => intMeas(i, i) })
+    result.map { m => (m.getType, m.getTime, m.getDoubleVal) } should equal(
+      List((Meas.Type.DOUBLE, 24, 24.5), (Meas.Type.DOUBLE, 74, 74.5)))
+    result.foreach { _.hasIntVal should equal(false) }
+  }
+
+  test("Non numeric buckets keep their first value") {
+    val meas = List(stringMeas(0, "a"), stringMeas(1, "b"), stringMeas(10, "c"), stringMeas(11, "d"))
+    sample(Sampling.EXTREMES, 2, meas).map { _.getStringVal } should equal(List("a", "c"))
+    sample(Sampling.AVERAGE, 2, meas).map { _.getStringVal } should equal(List("a", "c"))
+  }
+
+  test("Lttb keeps endpoints and the spike in each bucket") {
+    // the first and last measurement are buckets of their own, the spikes are in the two buckets between them
+    val flat = (0 until 100).map { i => intMeas(i, if (i == 30) 1000 else if (i == 70) -1000 else 0) }
+    val result = sample(Sampling.LTTB, 4, flat)
+    result.map { _.getTime } should equal(List(0, 30, 70, 99))
+  }
+
+  test("Lttb returns one value per bucket") {
+    val result = sample(Sampling.LTTB, 10, sawtooth)
+    result.size should equal(10)
+    result.map { _.getTime } should equal(result.map { _.getTime }.sorted)
+    result.head should equal(sawtooth.head)
+    result.last should equal(sawtooth.last)
+  }
+
+  test("Lttb with two buckets keeps only the endpoints") {
+    sample(Sampling.LTTB, 2, sawtooth) should equal(List(sawtooth.head, sawtooth.last))
+  }
+}
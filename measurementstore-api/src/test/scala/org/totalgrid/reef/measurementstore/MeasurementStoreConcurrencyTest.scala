@@ -0,0 +1,137 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measurementstore
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+import com.weiglewilczek.slf4s.Logging
+
+import java.util.concurrent.{ CountDownLatch, TimeUnit }
+import java.util.concurrent.atomic.{ AtomicBoolean, AtomicLong }
+import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas, Quality }
+
+@RunWith(classOf[JUnitRunner])
+class InMemoryMeasurementStoreConcurrencyTest extends MeasurementStoreConcurrencyTest {
+  def store = new InMemoryMeasurementStore()
+}
+
+@RunWith(classOf[JUnitRunner])
+class ColumnarMeasurementStoreConcurrencyTest extends MeasurementStoreConcurrencyTest {
+  def store = new ColumnarMeasurementStore()
+}
+
+/**
+ * hammers a store with writer and reader threads. Each point is written by a single writer with
+ * increasing values so a reader must never see a point's current value go backwards.
+ */
+abstract class MeasurementStoreConcurrencyTest extends FunSuite with Logging with ShouldMatchers {
+
+  def store: MeasurementStore
+
+  val writers = 4
+  val readers = 4
+  val pointsPerWriter = 25
+  val updates = 2000
+
+  def meas(name: String, value: Long) = {
+    Meas.newBuilder.setName(name).setType(Meas.Type.INT).setIntVal(value)
+      .setQuality(Quality.newBuilder).setTime(value).build
+  }
+
+  def pointName(writer: Int, point: Int) = "Writer" + writer + "Point" + point
+
+  private def runThreads(count: Int)(fun: Int => Unit): List[Thread] = {
+    (0 until count).map { i =>
+      val t = new Thread(new Runnable { def run() = fun(i) })
+      t.start()
+      t
+    }.toList
+  }
+
+  test("Current values never go backwards under concurrent reads and writes") {
+    val cm = store
+    val allNames = for (w <- 0 until writers; p <- 0 until pointsPerWriter) yield pointName(w, p)
+
+    val start = new CountDownLatch(1)
+    val writing = new AtomicBoolean(true)
+    val failures = new AtomicLong(0)
+    val reads = new AtomicLong(0)
+
+    val writerThreads = runThreads(writers) { w =>
+      start.await()
+      val names = (0 until pointsPerWriter).map { pointName(w, _) }
+      (1 to updates).foreach { v =>
+        cm.set(names.map { meas(_, v) })
+      }
+    }
+
+    val readerThreads = runThreads(readers) { r =>
+      start.await()
+      val lastSeen = scala.collection.mutable.Map.empty[String, Long]
+      while (writing.get) {
+        cm.get(allNames).foreach {
+          case (name, m) =>
+            if (m.getIntVal < lastSeen.getOrElse(name, 0L)) failures.incrementAndGet()
+            lastSeen.put(name, m.getIntVal)
+        }
+        // history reads run alongside the current value reads
+        val name = allNames(r % allNames.size)
+        val history = cm.getNewest(name, 10)
+        if (history.map { _.getTime } != history.map { _.getTime }.sortWith(_ > _)) failures.incrementAndGet()
+        reads.incrementAndGet()
+      }
+    }
+
+    val began = System.nanoTime
+    start.countDown()
+    writerThreads.foreach { _.join(TimeUnit.SECONDS.toMillis(60)) }
+    val elapsed = math.max(System.nanoTime - began, 1)
+    writing.set(false)
+    readerThreads.foreach { _.join(TimeUnit.SECONDS.toMillis(60)) }
+
+    logger.info(getClass.getSimpleName + ": " + (writers * pointsPerWriter * updates * 1000000000L / elapsed) +
+      " writes/s, " + (reads.get * 1000000000L / elapsed) + " read rounds/s")
+
+    failures.get should equal(0)
+    reads.get should be > (0L)
+    val current = cm.get(allNames)
+    current.size should equal(allNames.size)
+    current.values.foreach { _.getIntVal should equal(updates) }
+    allNames.foreach { cm.numValues(_) should equal(updates) }
+  }
+
+  test("Concurrent writers to the same point keep every value") {
+    val cm = store
+    val name = "SharedPoint"
+    val start = new CountDownLatch(1)
+
+    val threads = runThreads(writers) { w =>
+      start.await()
+      (1 to updates).foreach { v => cm.set(meas(name, w * updates + v) :: Nil) }
+    }
+    start.countDown()
+    threads.foreach { _.join(TimeUnit.SECONDS.toMillis(60)) }
+
+    cm.numValues(name) should equal(writers * updates)
+    val newest = cm.get(name).get.getIntVal
+    (1 to writers).map { _.toLong * updates } should contain(newest)
+  }
+}
@@ -31,6 +31,11 @@ class InMemoryMeasurementStoreTest extends MeasurementStoreTest {
   val cm = new InMemoryMeasurementStore()
 }
 
+@RunWith(classOf[JUnitRunner])
+class ColumnarMemoryMeasurementStoreTest extends MeasurementStoreTest {
+  val cm = new ColumnarMeasurementStore()
+}
+
 @RunWith(classOf[JUnitRunner])
 class MixedMemoryMeasStoreTest extends MeasurementStoreTest {
   val currentMeas = new InMemoryMeasurementStore(true)
@@ -145,6 +150,22 @@ abstract class MeasurementStoreTest extends FunSuite with ShouldMatchers with Be
     // cm.getNewest(name) should equal(None)
   }
 
+  test("HistorianStreamAndSample") {
+    val name = "SampledMeas"
+    val meas = for (i <- 1 to 100) yield getMeas(name, i, if (i % 10 == 3) -i else i)
+    cm.set(meas)
+    cm.archive(name, Long.MaxValue)
+
+    val streamed = scala.collection.mutable.ListBuffer.empty[Measurements.Measurement]
+    cm.foreachInRange(name, 20, 29) { streamed += _ }
+    streamed.toList should equal(meas.slice(19, 29))
+
+    // two buckets [1, 50] and [51, 100]
+    cm.getSampled(name, 0, Long.MaxValue, 2, Measurements.MeasurementHistory.Sampling.EXTREMES).map { _.getTime } should equal(List(43, 50, 93, 100))
+    cm.getSampled(name, 51, 99, 1, Measurements.MeasurementHistory.Sampling.EXTREMES).map { _.getTime } should equal(List(93, 99))
+    cm.getSampled("UnknownSampledMeas", 0, Long.MaxValue, 2, Measurements.MeasurementHistory.Sampling.AVERAGE) should equal(Nil)
+  }
+
   test("RTDbWriteReadRemove") {
     val basename = "MeasWithRows"
 
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measurementstore.squeryl
+
+import java.sql.{ Connection, SQLException }
+import java.util.concurrent.ConcurrentSkipListSet
+import scala.collection.JavaConversions._
+import scala.collection.mutable
+
+object HistoryPartitions {
+
+  private val Prefix = "Measurement_p"
+
+  def tableName(index: Long) = Prefix + index
+
+  def countsTableName(index: Long) = tableName(index) + "_counts"
+
+  /**
+   * @return the indexes of all of the partition tables in the database, oldest first
+   */
+  def existing(conn: Connection): List[Long] = {
+    // joined by name so it also works before the history table has been created
+    val names = query(conn, "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+      "join pg_class p on p.oid = i.inhparent where p.relname = 'Measurement'") { _.getString(1) }
+    names.filter { _.startsWith(Prefix) }.map { _.substring(Prefix.length).toLong }.sorted
+  }
+
+  /**
+   * drops every partition table, needed before the parent table can be dropped
+   */
+  def dropAll(conn: Connection) {
+    existing(conn).foreach { i =>
+      execute(conn, "drop table \"" + tableName(i) + "\"")
+      execute(conn, "drop table if exists \"" + countsTableName(i) + "\"")
+    }
+  }
+
+  /**
+   * removes the points from the counts table of every partition, their rows are deleted separately
+   */
+  def removePoints(conn: Connection, pointIds: List[Long]) {
+    if (pointIds.nonEmpty) {
+      existing(conn).foreach { i =>
+        execute(conn, "delete from \"" + countsTableName(i) + "\" where \"pointId\" in (" + pointIds.mkString(", ") + ")")
+      }
+    }
+  }
+
+  /**
+   * size in bytes of the history table and all of its partitions
+   */
+  def historySize(conn: Connection): Long = {
+    query(conn, "select pg_total_relation_size('\"Measurement\"'::regclass) + coalesce((select " +
+      "sum(pg_total_relation_size(inhrelid)) from pg_inherits where inhparent = '\"Measurement\"'::regclass), 0)") {
+      _.getLong(1)
+    }.head
+  }
+
+  def execute(conn: Connection, sql: String) {
+    val stmt = conn.createStatement()
+    try {
+      stmt.execute(sql)
+    } finally {
+      stmt.close()
+    }
+  }
+
+  def query[A](conn: Connection, sql: String)(fun: java.sql.ResultSet => A): List[A] = {
+    val stmt = conn.createStatement()
+    try {
+      val rs = stmt.executeQuery(sql)
+      val results = mutable.ListBuffer.empty[A]
+      while (rs.next()) results += fun(rs)
+      results.toList
+    } finally {
+      stmt.close()
+    }
+  }
+}
+
+/**
+ * splits history into child tables of "Measurement" that each hold one period of measTime so old
+ * history is removed by dropping whole tables rather than deleting rows. Queries against the parent
+ * table read the children as well and postgres skips the children whose check constraint rules
+ * out the requested measTime range (constraint_exclusion = partition, the default).
+ *
+ * Partition tables are created on demand by the writers. Each partition has a small counts table with the
+ * number of rows it holds for each point, kept up to date by the writers, so sizing and dropping a
+ * partition never has to scan it. Measurements stamped more than maxFutureMillis
+ * ahead of now are not written to history, a bogus time would otherwise create a far future table for
+ * every distinct value.
+ *
+ * @param periodMillis span of measTime covered by each partition table
+ * @param maxFutureMillis how far ahead of now a measurement time can be and still be stored
+ * @param now clock used to find the partition currently being written
+ */
+class HistoryPartitions(val periodMillis: Long, maxFutureMillis: Long, now: () => Long = () => System.currentTimeMillis) {
+
+  def this(periodMillis: Long) = this(periodMillis, periodMillis)
+
+  import HistoryPartitions._
+
+  require(periodMillis > 0, "partition period must be positive")
+
+  private val known = new ConcurrentSkipListSet[java.lang.Long]()
+  @volatile private var loaded = false
+
+  def index(time: Long): Long = if (time >= 0) time / periodMillis else (time + 1) / periodMillis - 1
+
+  /**
+   * @return index of the partition that covers the current time
+   */
+  def current: Long = index(now())
+
+  /**
+   * @return true if a measurement with this time should be written to history
+   */
+  def accepts(time: Long): Boolean = time <= now() + maxFutureMillis
+
+  /**
+   * @return name of the partition table with this index, creating it if necessary
+   */
+  def tableFor(conn: Connection, i: Long): String = {
+    load(conn)
+    if (!known.contains(i)) create(conn, i)
+    tableName(i)
+  }
+
+  /**
+   * @return partition indexes, oldest first
+   */
+  def partitions(conn: Connection): List[Long] = {
+    load(conn)
+    known.toList.map { _.longValue }
+  }
+
+  /**
+   * forget the partitions we know about and reload them from the database next time, used when a
+   * transaction that created partitions was rolled back or another store dropped them
+   */
+  def forget() {
+    loaded = false
+  }
+
+  /**
+   * @return number of rows in the partition, from its counts table
+   */
+  def rows(conn: Connection, index: Long): Long = {
+    query(conn, "select coalesce(sum(\"numValues\"), 0) from \"" + countsTableName(index) + "\"") { _.getLong(1) }.head
+  }
+
+  /**
+   * @return number of rows for each point in the partition, from its counts table
+   */
+  def pointCounts(conn: Connection, index: Long): List[(Long, Long)] = {
+    query(conn, "select \"pointId\", \"numValues\" from \"" + countsTableName(index) + "\"") { rs =>
+      (rs.getLong(1), rs.getLong(2))
+    }
+  }
+
+  /**
+   * adds the number of rows just inserted for each point to the counts table of the partition. Rows are
+   * updated in point id order, the same as the MeasName counters, so writers can't deadlock on them.
+   */
+  def addCounts(conn: Connection, index: Long, counts: List[(Long, Long)]) {
+    val table = countsTableName(index)
+    val missing = updateCounts(conn, table, counts.sortBy { _._1 })
+    if (missing.nonEmpty) {
+      val savepoint = conn.setSavepoint()
+      try {
+        insertCounts(conn, table, missing)
+        conn.releaseSavepoint(savepoint)
+      } catch {
+        case ex: SQLException =>
+          // another writer added some of the points first, they can be updated now
+          conn.rollback(savepoint)
+          insertCounts(conn, table, updateCounts(conn, table, missing))
+      }
+    }
+  }
+
+  def drop(conn: Connection, index: Long) {
+    execute(conn, "drop table \"" + tableName(index) + "\"")
+    execute(conn, "drop table if exists \"" + countsTableName(index) + "\"")
+    known.remove(index)
+  }
+
+  /**
+   * @return the counts for points that don't have a row in the counts table yet
+   */
+  private def updateCounts(conn: Connection, table: String, counts: List[(Long, Long)]): List[(Long, Long)] = {
+    if (counts.isEmpty) Nil
+    else {
+      val stmt = conn.prepareStatement("update \"" + table + "\" set \"numValues\" = \"numValues\" + ? where \"pointId\" = ?")
+      try {
+        counts.foreach {
+          case (id, count) =>
+            stmt.setLong(1, count)
+            stmt.setLong(2, id)
+            stmt.addBatch()
+        }
+        counts.zip(stmt.executeBatch()).filter { _._2 == 0 }.map { _._1 }
+      } finally {
+        stmt.close()
+      }
+    }
+  }
+
+  private def insertCounts(conn: Connection, table: String, counts: List[(Long, Long)]) {
+    if (counts.nonEmpty) {
+      val stmt = conn.prepareStatement("insert into \"" + table + "\" (\"pointId\", \"numValues\") values (?, ?)")
+      try {
+        counts.foreach {
+          case (id, count) =>
+            stmt.setLong(1, id)
+            stmt.setLong(2, count)
+            stmt.addBatch()
+        }
+        stmt.executeBatch()
+      } finally {
+        stmt.close()
+      }
+    }
+  }
+
+  private def load(conn: Connection) {
+    if (!loaded) {
+      known.clear()
+      existing(conn).foreach { known.add(_) }
+      loaded = true
+    }
+  }
+
+  private def create(conn: Connection, i: Long) {
+    val name = tableName(i)
+    val savepoint = conn.setSavepoint()
+    try {
+      execute(conn, "create table \"" + name + "\" (check (\"measTime\" >= " + (i * periodMillis) +
+        " and \"measTime\" < " + ((i + 1) * periodMillis) + ")) inherits (\"Measurement\")")
+      execute(conn, "create index \"" + name + "_idx\" on \"" + name + "\" (\"pointId\", \"measTime\")")
+      execute(conn, "create table \"" + countsTableName(i) + "\" (\"pointId\" int8 primary key, \"numValues\" int8 not null)")
+      conn.releaseSavepoint(savepoint)
+    } catch {
+      case ex: SQLException =>
+        // another writer may have created it first
+        conn.rollback(savepoint)
+        if (!existing(conn).contains(i)) throw ex
+    }
+    known.add(i)
+  }
+}
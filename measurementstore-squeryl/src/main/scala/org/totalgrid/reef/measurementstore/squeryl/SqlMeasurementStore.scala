@@ -24,17 +24,37 @@ import org.totalgrid.reef.measurementstore.MeasurementStore
 
 import org.totalgrid.reef.client.exception.InternalServiceException
 import org.totalgrid.reef.persistence.squeryl.DbConnection
+import org.squeryl.Session
+import java.util.concurrent.ConcurrentLinkedQueue
+import scala.collection.mutable
 
 /**
  * implementation of measurement store that uses SqlMeasurementStoreOperations functions,
  * handles sync/async, opening/closing database transaction and error message generation
+ *
+ * @param groupCommit when true, set calls made concurrently from different threads are written in a
+ *                    single transaction by whichever caller gets to the database first
+ * @param partitionPeriodMillis when greater than 0 history is stored in partition tables that each cover
+ *                              this much measurement time and trimming drops whole partitions
  */
-class SqlMeasurementStore(connectFunction: () => DbConnection, includeHistory: Boolean = true) extends MeasurementStore {
+class SqlMeasurementStore(connectFunction: () => DbConnection, includeHistory: Boolean = true, groupCommit: Boolean = true,
+    partitionPeriodMillis: Long = 0) extends MeasurementStore {
 
   override val supportsTrim = true
 
   private var dbConnectionOpt = Option.empty[DbConnection]
 
+  private val pointIds = new PointIdCache
+
+  private val partitions = if (partitionPeriodMillis > 0) Some(new HistoryPartitions(partitionPeriodMillis)) else None
+
+  private class PendingSet(val meas: Seq[Meas]) {
+    var done = false
+    var error = Option.empty[Exception]
+  }
+  private val pending = new ConcurrentLinkedQueue[PendingSet]()
+  private val writeLock = new Object
+
   override def connect() = dbConnectionOpt = Some(connectFunction())
 
   override def disconnect() = {
@@ -43,17 +63,53 @@ class SqlMeasurementStore(connectFunction: () => DbConnection, includeHistory: B
     dbConnectionOpt = None
   }
 
-  override def reset(): Boolean = attempt("Couldn't reset database")(SqlMeasurementStoreOperations.reset)
+  override def reset(): Boolean = {
+    pointIds.clear()
+    partitions.foreach { _.forget() }
+    attempt("Couldn't reset database")(SqlMeasurementStoreOperations.reset)
+  }
 
   override def trim(numPoints: Long): Long =
-    attempt("Couldn't trim database")(SqlMeasurementStoreOperations.trim(numPoints))
+    attempt("Couldn't trim database")(SqlMeasurementStoreOperations.trim(numPoints, partitions))
+
+  override def dbSize(): Option[Long] = Some(attempt("Couldn't get database size")(SqlMeasurementStoreOperations.dbSize))
 
   override def points(): List[String] = attempt("Couldn't get list of points")(SqlMeasurementStoreOperations.points)
 
-  def set(meas: Seq[Meas]) =
-    if (meas.nonEmpty) attempt("Couldn't store measurements in measurement store") {
-      SqlMeasurementStoreOperations.set(meas, includeHistory)
+  def set(meas: Seq[Meas]) = if (meas.nonEmpty) {
+    // a caller already in a transaction has to write in its own transaction
+    if (!groupCommit || Session.hasCurrentSession) write(meas)
+    else {
+      val entry = new PendingSet(meas)
+      pending.add(entry)
+      writeLock.synchronized {
+        // while we waited for the lock another caller may have written our measurements
+        if (!entry.done) {
+          val batch = mutable.ArrayBuffer.empty[PendingSet]
+          var next = pending.poll()
+          while (next != null) {
+            batch += next
+            next = pending.poll()
+          }
+          val error = try {
+            write(batch.flatMap { _.meas })
+            None
+          } catch {
+            case ex: Exception => Some(ex)
+          }
+          batch.foreach { e =>
+            e.error = error
+            e.done = true
+          }
+        }
+        entry.error.foreach { throw _ }
+      }
     }
+  }
+
+  private def write(meas: Seq[Meas]) = attempt("Couldn't store measurements in measurement store") {
+    SqlMeasurementStoreOperations.set(meas, includeHistory, pointIds, partitions)
+  }
 
   def get(names: Seq[String]): Map[String, Meas] = {
     if (names.size == 0) Map.empty[String, Meas]
@@ -63,12 +119,17 @@ class SqlMeasurementStore(connectFunction: () => DbConnection, includeHistory: B
   def numValues(meas_name: String): Int =
     attempt("Error retrieving number of values")(SqlMeasurementStoreOperations.numValues(meas_name))
 
-  def remove(names: Seq[String]): Unit =
+  def remove(names: Seq[String]): Unit = {
     attempt("Couldn't remove points: " + names)(SqlMeasurementStoreOperations.remove(names))
+    pointIds.remove(names)
+  }
 
   def getInRange(meas_name: String, begin: Long, end: Long, max: Int, ascending: Boolean): Seq[Meas] =
     attempt("Error retrieving history")(SqlMeasurementStoreOperations.getInRange(meas_name, begin, end, max, ascending))
 
+  override def foreachInRange(meas_name: String, begin: Long, end: Long)(fun: Meas => Unit) =
+    attempt("Error retrieving history")(SqlMeasurementStoreOperations.foreachInRange(meas_name, begin, end)(fun))
+
   private def attempt[A](msg: String)(f: => A): A = {
     try {
       val dbConnection = dbConnectionOpt.getOrElse(throw new InternalServiceException("Not connected to measurement store database"))
@@ -20,85 +20,279 @@ package org.totalgrid.reef.measurementstore.squeryl
 
 import org.totalgrid.reef.client.service.proto.Measurements.{ Measurement => Meas }
 import org.squeryl.PrimitiveTypeMode._
+import org.squeryl.Session
+import java.util.concurrent.ConcurrentHashMap
 import scala.collection.mutable
+import com.weiglewilczek.slf4s.Logging
 
 /**
- * operations on the SqlMeasurementStoreSchema that implement the MeasurementStore interface. All operations
- * assume they are being run from inside a database transaction.
+ * cache of measurement name to point id, entries must be removed when the point is removed
  */
-trait SqlMeasurementStoreOperations {
+class PointIdCache {
+  private val ids = new ConcurrentHashMap[String, java.lang.Long]()
 
-  case class MeasId(var pointId: Long, meas: Meas)
+  def get(name: String): Option[Long] = Option(ids.get(name)).map { _.longValue }
 
-  private def makeUpdate(m: Meas, pNameMap: mutable.Map[String, MeasId]): Measurement = {
-    new Measurement(pNameMap.get(m.getName).get.pointId, m.getTime, m.toByteString.toByteArray)
-  }
+  def put(name: String, id: Long): Unit = ids.put(name, id)
 
-  private def makeCurrentValue(measId: MeasId): CurrentValue = {
-    new CurrentValue(measId.pointId, measId.meas.toByteString.toByteArray)
-  }
+  def remove(names: Seq[String]): Unit = names.foreach { ids.remove(_) }
+
+  def clear(): Unit = ids.clear()
+}
+
+/**
+ * operations on the SqlMeasurementStoreSchema that implement the MeasurementStore interface. All operations
+ * assume they are being run from inside a database transaction.
+ */
+trait SqlMeasurementStoreOperations extends Logging {
+
+  private def connection = Session.currentSession.connection
 
   def reset(): Boolean = {
+    // the partition tables depend on the history table so they have to go first
+    HistoryPartitions.dropAll(connection)
     SqlMeasurementStoreSchema.reset
     true
   }
 
+  /**
+   * total number of history rows, summed from the per point counters
+   */
   def totalValues(): Long = {
-    from(SqlMeasurementStoreSchema.updates)(u => compute(count(u.id)))
+    HistoryPartitions.query(connection, "select coalesce(sum(\"numValues\"), 0) from \"MeasName\"") { _.getLong(1) }.head
   }
 
-  def trim(numPoints: Long): Long = {
+  /**
+   * size of the history tables in bytes
+   */
+  def dbSize(): Long = HistoryPartitions.historySize(connection)
+
+  def trim(numPoints: Long): Long = trim(numPoints, None)
+
+  /**
+   * with partitions the oldest partitions are dropped as long as that leaves at least numPoints
+   * values, otherwise the oldest rows are deleted to leave exactly numPoints. History written
+   * before partitioning was turned on stays in the parent table, it is older than any partition
+   * so those rows are deleted first.
+   */
+  def trim(numPoints: Long, partitions: Option[HistoryPartitions]): Long = {
+    partitions match {
+      case Some(p) => trimPartitions(numPoints, p)
+      case None => trimRows(numPoints)
+    }
+  }
+
+  private def trimRows(numPoints: Long): Long = {
     val counts = totalValues()
     if (numPoints < counts) {
       // to trim to a specific # of points we can take advantage of the ID column being an auto-incremented value
       // we use the currentValue table to get the most recently updated point (which should have highest id value)
       val mostRecentUpdate = from(SqlMeasurementStoreSchema.updates)(n => select(n) orderBy (n.id.desc)).page(0, 1).head
+      val cutoff = mostRecentUpdate.id - numPoints
+      // keep the counters in step with the rows we are about to delete
+      val removed = HistoryPartitions.query(connection, "select \"pointId\", count(*) from \"Measurement\" where \"id\" <= " +
+        cutoff + " group by \"pointId\"") { rs => (rs.getLong(1), rs.getLong(2)) }
       // then delete all records with id less than the most recent update - numpoints we want in system
-      SqlMeasurementStoreSchema.updates.deleteWhere(u => u.id.~ <= mostRecentUpdate.id - numPoints)
-      counts - numPoints
+      SqlMeasurementStoreSchema.updates.deleteWhere(u => u.id.~ <= cutoff)
+      updateCounts(removed.map { case (id, count) => (id, -count) })
+      removed.foldLeft(0L) { _ + _._2 }
     } else {
       0
     }
   }
 
+  private def trimPartitions(numPoints: Long, partitions: HistoryPartitions): Long = {
+    val sizes = partitions.partitions(connection).map { p => (p, partitions.rows(connection, p)) }
+    var total = unpartitionedValues() + sizes.foldLeft(0L) { _ + _._2 }
+    var removed = 0L
+    if (total > numPoints) {
+      val trimmed = trimUnpartitioned(total - numPoints)
+      total -= trimmed
+      removed += trimmed
+    }
+    // never drop the partition covering now (or anything newer), it is the one being written to
+    val current = partitions.current
+    var candidates = sizes.filter { _._1 < current }
+    while (candidates.nonEmpty && total - candidates.head._2 >= numPoints) {
+      val counts = partitions.pointCounts(connection, candidates.head._1)
+      partitions.drop(connection, candidates.head._1)
+      updateCounts(counts.map { case (id, count) => (id, -count) })
+
+      val dropped = counts.foldLeft(0L) { _ + _._2 }
+      total -= dropped
+      removed += dropped
+      candidates = candidates.tail
+    }
+    removed
+  }
+
+  /**
+   * number of history rows in the parent table itself, not in any of the partitions
+   */
+  private def unpartitionedValues(): Long = {
+    HistoryPartitions.query(connection, "select count(*) from only \"Measurement\"") { _.getLong(1) }.head
+  }
+
+  /**
+   * deletes up to max of the oldest rows from the parent table
+   */
+  private def trimUnpartitioned(max: Long): Long = {
+    val cutoff = HistoryPartitions.query(connection, "select \"id\" from only \"Measurement\" order by \"id\" offset " +
+      (max - 1) + " limit 1") { _.getLong(1) }.headOption
+    val condition = cutoff.map { " where \"id\" <= " + _ }.getOrElse("")
+    val removed = HistoryPartitions.query(connection, "select \"pointId\", count(*) from only \"Measurement\"" + condition +
+      " group by \"pointId\"") { rs => (rs.getLong(1), rs.getLong(2)) }
+    if (removed.nonEmpty) {
+      HistoryPartitions.execute(connection, "delete from only \"Measurement\"" + condition)
+      updateCounts(removed.map { case (id, count) => (id, -count) })
+    }
+    removed.foldLeft(0L) { _ + _._2 }
+  }
+
   def points(): List[String] = {
     SqlMeasurementStoreSchema.names.where(t => true === true).toList.map { _.name }
   }
 
   def set(meas: Seq[Meas], includeHistory: Boolean) {
-    // setup list of all the points we are trying to find ids for
-    val measToInsert = mutable.Map.empty[String, MeasId]
-    meas.foreach { m => measToInsert.put(m.getName, MeasId(-1, m)) }
+    set(meas, includeHistory, new PointIdCache, None)
+  }
+
+  /**
+   * writes the measurements using batched prepared statements, point ids are looked up in the cache
+   * first so the names table is only queried for points we haven't seen before
+   */
+  def set(meas: Seq[Meas], includeHistory: Boolean, pointIds: PointIdCache, partitions: Option[HistoryPartitions]) {
+    // only the last measurement for each point becomes the current value
+    val current = mutable.LinkedHashMap.empty[String, Meas]
+    meas.foreach { m => current.put(m.getName, m) }
 
-    // ask db for points it has, update the map with those ids
-    val pNames = SqlMeasurementStoreSchema.names.where(n => n.name in measToInsert.keys).toList
-    pNames.foreach { p => measToInsert.get(p.name).get.pointId = p.id }
+    val (cached, uncached) = current.keys.toList.partition(pointIds.get(_).isDefined)
 
-    val (newMeas, updates) = measToInsert.partition(e => e._2.pointId == -1)
+    // a point removed (by another store) since we cached its id no longer has a current value row
+    val stale = updateCurrentValues(cached.map { n => (n, pointIds.get(n).get, current(n)) })
+    pointIds.remove(stale)
+
+    val lookup = uncached ::: stale
+    if (lookup.nonEmpty) {
+      SqlMeasurementStoreSchema.names.where(n => n.name in lookup).toList.foreach { p => pointIds.put(p.name, p.id) }
+      val (known, created) = lookup.partition(pointIds.get(_).isDefined)
 
-    if (newMeas.nonEmpty) {
       // if we have new measNames to add do so, then read them back out to get the ids
-      SqlMeasurementStoreSchema.names.insert(newMeas.keys.map { new MeasName(_) })
-      val addedNames = SqlMeasurementStoreSchema.names.where(n => n.name in newMeas.keys).toList
-      addedNames.foreach { p => measToInsert.get(p.name).get.pointId = p.id }
+      if (created.nonEmpty) {
+        SqlMeasurementStoreSchema.names.insert(created.map { new MeasName(_) })
+        SqlMeasurementStoreSchema.names.where(n => n.name in created).toList.foreach { p => pointIds.put(p.name, p.id) }
+      }
 
-      val addedCurrentValues = newMeas.map { case (name, measId) => makeCurrentValue(measId) }.toList
-      SqlMeasurementStoreSchema.currentValues.insert(addedCurrentValues)
+      val missingValues = updateCurrentValues(known.map { n => (n, pointIds.get(n).get, current(n)) })
+      val addedCurrentValues = (created ::: missingValues).map { n => new CurrentValue(pointIds.get(n).get, current(n).toByteArray) }
+      if (addedCurrentValues.nonEmpty) SqlMeasurementStoreSchema.currentValues.insert(addedCurrentValues)
     }
 
     if (includeHistory) {
-      // create the list of measurements to upload
-      val toInsert = meas.map { makeUpdate(_, measToInsert) }.toList
-      SqlMeasurementStoreSchema.updates.insert(toInsert)
+      val all = meas.map { m => (pointIds.get(m.getName).get, m) }
+      val rows = partitions match {
+        case Some(p) =>
+          val (accepted, rejected) = all.partition { case (id, m) => p.accepts(m.getTime) }
+          if (rejected.nonEmpty) {
+            logger.warn("Not storing history for " + rejected.size + " measurement(s) too far in the future, first: " +
+              rejected.head._2.getName + " time: " + rejected.head._2.getTime)
+          }
+          accepted
+        case None => all
+      }
+      insertHistory(rows, partitions)
+
+      val counts = mutable.Map.empty[Long, Long]
+      rows.foreach { case (id, m) => counts.put(id, counts.getOrElse(id, 0L) + 1) }
+      updateCounts(counts.toList)
     }
+  }
 
-    // something odd occurs with parellel writes and we get batch update exceptions
-    // when inserting and updating in the same transaction so we manually update and insert
-    // if inserting any new values. Should go away when we implement "add" for measusment store and
-    // eliminate the "lazy" adding we are doing now.
-    // TODO: refactor MeasurementStore to not allow "lazy adding of measurements"
-    val toUpdate = updates.map { case (name, measId) => makeCurrentValue(measId) }.toList
-    SqlMeasurementStoreSchema.currentValues.forceUpdate(toUpdate)
+  /**
+   * adjusts the numValues counters for each point in a single batch. Rows are updated in id order so
+   * concurrent writers with overlapping points lock them in the same order and can't deadlock.
+   */
+  private def updateCounts(changes: List[(Long, Long)]) {
+    if (changes.nonEmpty) {
+      val stmt = connection.prepareStatement("update \"MeasName\" set \"numValues\" = \"numValues\" + ? where \"id\" = ?")
+      try {
+        changes.sortBy { _._1 }.foreach {
+          case (id, change) =>
+            stmt.setLong(1, change)
+            stmt.setLong(2, id)
+            stmt.addBatch()
+        }
+        stmt.executeBatch()
+      } finally {
+        stmt.close()
+      }
+    }
+  }
+
+  /**
+   * updates all of the current values in a single batch, in id order for the same reason as updateCounts
+   * @return names of the points that had no current value row
+   */
+  private def updateCurrentValues(unsorted: List[(String, Long, Meas)]): List[String] = {
+    val values = unsorted.sortBy { _._2 }
+    if (values.isEmpty) Nil
+    else {
+      val stmt = connection.prepareStatement(
+        "update \"CurrentValue\" set \"proto\" = ? where \"id\" = ?")
+      try {
+        values.foreach {
+          case (name, id, m) =>
+            stmt.setBytes(1, m.toByteArray)
+            stmt.setLong(2, id)
+            stmt.addBatch()
+        }
+        val counts = stmt.executeBatch()
+        values.zip(counts).filter { _._2 == 0 }.map { _._1._1 }
+      } finally {
+        stmt.close()
+      }
+    }
+  }
+
+  /**
+   * inserts the history rows in one batch per table, with partitions each row goes straight into
+   * the partition table that covers its measTime and the partition's counts are updated
+   */
+  private def insertHistory(values: Seq[(Long, Meas)], partitions: Option[HistoryPartitions]) {
+    val conn = connection
+    try {
+      partitions match {
+        case Some(p) =>
+          values.groupBy { case (id, m) => p.index(m.getTime) }.foreach {
+            case (i, rows) =>
+              insertRows(p.tableFor(conn, i), rows)
+              p.addCounts(conn, i, rows.groupBy { _._1 }.map { case (id, r) => (id, r.size.toLong) }.toList)
+          }
+        case None => insertRows("Measurement", values)
+      }
+    } catch {
+      case ex: java.sql.SQLException =>
+        // a partition we think exists may have been dropped or rolled back
+        partitions.foreach { _.forget() }
+        throw ex
+    }
+  }
+
+  private def insertRows(table: String, rows: Seq[(Long, Meas)]) {
+    val stmt = connection.prepareStatement("insert into \"" + table + "\" (\"id\", \"pointId\", \"measTime\", \"proto\") " +
+      "values (nextval('\"s_Measurement_id\"'), ?, ?, ?)")
+    try {
+      rows.foreach {
+        case (id, m) =>
+          stmt.setLong(1, id)
+          stmt.setLong(2, m.getTime)
+          stmt.setBytes(3, m.toByteArray)
+          stmt.addBatch()
+      }
+      stmt.executeBatch()
+    } finally {
+      stmt.close()
+    }
   }
 
   def get(names: Seq[String]): Map[String, Meas] = {
@@ -108,17 +302,14 @@ trait SqlMeasurementStoreOperations {
   }
 
   def numValues(meas_name: String): Int = {
-    val m = from(SqlMeasurementStoreSchema.updates, SqlMeasurementStoreSchema.names)(
-      (u, n) => where(u.pointId === n.id and n.name === meas_name) compute (count(u.id)))
-    val q = m.head.measures
-
-    q.toInt
+    SqlMeasurementStoreSchema.names.where(n => n.name === meas_name).headOption.map { _.numValues.toInt }.getOrElse(0)
   }
 
   def remove(names: Seq[String]): Unit = {
     val nameRows = SqlMeasurementStoreSchema.names.where(u => u.name in names).toList.map { _.id }
     if (nameRows.nonEmpty) {
       SqlMeasurementStoreSchema.updates.deleteWhere(u => u.pointId in nameRows)
+      HistoryPartitions.removePoints(connection, nameRows)
       SqlMeasurementStoreSchema.names.deleteWhere(n => n.id in nameRows)
       SqlMeasurementStoreSchema.currentValues.deleteWhere(u => u.pointId in nameRows)
     }
@@ -131,6 +322,28 @@ trait SqlMeasurementStoreOperations {
     list
   }
 
+  /**
+   * streams the history rows through a cursor so sampling a long range doesn't hold every value in memory,
+   * postgres only honors the fetch size while inside a transaction.
+   */
+  def foreachInRange(meas_name: String, begin: Long, end: Long)(fun: Meas => Unit) {
+    SqlMeasurementStoreSchema.names.where(n => n.name === meas_name).headOption.foreach { name =>
+      val stmt = connection.prepareStatement("select \"proto\" from \"Measurement\" where \"pointId\" = ? " +
+        "and \"measTime\" >= ? and \"measTime\" <= ? order by \"measTime\", \"id\"")
+      try {
+        stmt.setFetchSize(1000)
+        stmt.setLong(1, name.id)
+        stmt.setLong(2, begin)
+        stmt.setLong(3, end)
+        val rs = stmt.executeQuery()
+        while (rs.next()) fun(Meas.parseFrom(rs.getBytes(1)))
+        rs.close()
+      } finally {
+        stmt.close()
+      }
+    }
+  }
+
   private def getHistory(meas_name: String, begin: Long, end: Long, max: Int, ascending: Boolean): Seq[Measurement] = {
     // make start/end arguments optional
     val beginO = if (begin == 0) None else Some(begin)
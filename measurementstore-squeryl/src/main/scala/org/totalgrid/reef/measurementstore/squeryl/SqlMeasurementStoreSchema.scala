@@ -31,6 +31,8 @@ case class Measurement(
 case class MeasName(
     val name: String) extends KeyedEntity[Long] {
   var id: Long = 0
+  // number of history rows for the point, maintained by the writers so we never need to count them
+  var numValues: Long = 0
 }
 
 case class CurrentValue(
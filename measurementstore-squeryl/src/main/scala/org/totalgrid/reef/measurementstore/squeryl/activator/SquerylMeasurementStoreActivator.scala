@@ -24,6 +24,7 @@ import org.totalgrid.reef.measurementstore.MeasurementStoreProvider
 import org.totalgrid.reef.measurementstore.squeryl.SqlMeasurementStore
 import org.totalgrid.reef.osgi.OsgiConfigReader
 import org.totalgrid.reef.persistence.squeryl.{ DbInfo, DbConnector }
+import org.totalgrid.reef.client.settings.util.PropertyLoading
 
 class SquerylMeasurementStoreActivator extends BundleActivator {
 
@@ -34,7 +35,11 @@ class SquerylMeasurementStoreActivator extends BundleActivator {
       val sql = new DbInfo(OsgiConfigReader.load(context, "org.totalgrid.reef.sql"))
       DbConnector.connect(sql, context)
     }
-    val historianMeasurementStore = MeasurementStoreProvider(new SqlMeasurementStore(connectFunction _, true))
+    val mstoreConfig = OsgiConfigReader.load(context, "org.totalgrid.reef.mstore")
+    val partitionPeriodHours = PropertyLoading.getLong("org.totalgrid.reef.mstore.partitionPeriodHours", mstoreConfig, 0)
+    val partitionPeriodMillis = partitionPeriodHours * 60 * 60 * 1000
+
+    val historianMeasurementStore = MeasurementStoreProvider(new SqlMeasurementStore(connectFunction _, true, true, partitionPeriodMillis))
     val realtimeMeasurementStore = MeasurementStoreProvider(new SqlMeasurementStore(connectFunction _, false))
 
     val commonOptions = Map[String, Any]("impl" -> "squeryl", "realtime" -> true)
@@ -24,15 +24,18 @@ import org.junit.runner.RunWith
 import org.totalgrid.reef.persistence.squeryl._
 import net.agileautomata.executor4s.testing._
 import org.totalgrid.reef.measurementstore._
+import org.totalgrid.reef.client.service.proto.Measurements
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
 
 trait SqlMeasStoreTestFixture {
-  def connect(includeHistory: Boolean) = {
+  def connect(includeHistory: Boolean, partitionPeriodMillis: Long = 0, reset: Boolean = true) = {
     val store = new SqlMeasurementStore({ () =>
       val conn_info = DbInfo.loadInfo("../org.totalgrid.reef.test.cfg")
       DbConnector.connect(conn_info)
-    }, includeHistory)
+    }, includeHistory, partitionPeriodMillis = partitionPeriodMillis)
     store.connect()
-    store.reset()
+    if (reset) store.reset()
     store
   }
 }
@@ -59,3 +62,132 @@ class SqlMixedMeasTest extends MeasurementStoreTest with SqlMeasStoreTestFixture
     c
   }
 }
+
+@RunWith(classOf[JUnitRunner])
+class SqlMeasConcurrencyTest extends MeasurementStoreConcurrencyTest with SqlMeasStoreTestFixture {
+
+  // every set is a database write so keep the volume down
+  override val updates = 100
+
+  def store = connect(true)
+}
+
+@RunWith(classOf[JUnitRunner])
+class SqlMeasPointIdCacheTest extends FunSuite with ShouldMatchers with SqlMeasStoreTestFixture {
+
+  def meas(name: String, time: Long) = {
+    Measurements.Measurement.newBuilder.setName(name).setType(Measurements.Measurement.Type.INT).setIntVal(time)
+      .setQuality(Measurements.Quality.newBuilder).setTime(time).build
+  }
+
+  test("Point removed by another store is recreated") {
+    val name = "RemovedElsewhere"
+    val writer = connect(true)
+    val other = connect(true)
+
+    writer.set(meas(name, 1) :: Nil)
+    other.remove(name :: Nil)
+    other.get(name) should equal(None)
+
+    // writer still has the old id cached
+    writer.set(meas(name, 2) :: meas(name, 3) :: Nil)
+
+    other.get(name) should equal(Some(meas(name, 3)))
+    other.numValues(name) should equal(2)
+    other.getOldest(name).get.getTime should equal(2)
+  }
+}
+
+@RunWith(classOf[JUnitRunner])
+class SqlPartitionedHistoryTest extends FunSuite with ShouldMatchers with SqlMeasStoreTestFixture {
+
+  def meas(name: String, time: Long) = {
+    Measurements.Measurement.newBuilder.setName(name).setType(Measurements.Measurement.Type.INT).setIntVal(time)
+      .setQuality(Measurements.Quality.newBuilder).setTime(time).build
+  }
+
+  test("History spread over partitions reads back in order") {
+    val name = "Partitioned"
+    // 10ms partitions so the 100 measurements land in 11 tables
+    val cm = connect(true, 10)
+
+    cm.set((1 to 100).map { i => meas(name, i) })
+
+    cm.numValues(name) should equal(100)
+    cm.getInRange(name, 15, 34, 100, true).map { _.getTime } should equal((15 to 34).map { _.toLong }.toList)
+    cm.getNewest(name, 5).map { _.getTime } should equal(List(100L, 99L, 98L, 97L, 96L))
+    cm.getOldest(name).get.getTime should equal(1)
+    cm.dbSize.get should be > (0L)
+
+    // late measurements go into the older partitions
+    cm.set(meas(name, 5) :: Nil)
+    cm.getInRange(name, 5, 5, 100, true).size should equal(2)
+    cm.numValues(name) should equal(101)
+  }
+
+  test("Trim drops whole partitions") {
+    val name = "PartitionTrim"
+    val cm = connect(true, 10)
+
+    cm.set((1 to 100).map { i => meas(name, i) })
+
+    // partition 0 has 9 values, 1 to 9 have 10 and the newest has 1, dropping partition 5 would leave less than 45
+    cm.trim(45) should equal(49)
+    cm.numValues(name) should equal(51)
+    cm.getOldest(name).get.getTime should equal(50)
+    cm.getNewest(name).get.getTime should equal(100)
+
+    cm.trim(45) should equal(0)
+  }
+
+  test("Trim deletes history from before partitioning first") {
+    val name = "PartitionUpgrade"
+    // history written before partitioning was turned on stays in the parent table
+    val unpartitioned = connect(true)
+    unpartitioned.set((1 to 30).map { i => meas(name, i) })
+
+    val cm = connect(true, 10, false)
+    cm.set((31 to 100).map { i => meas(name, i) })
+    cm.numValues(name) should equal(100)
+
+    // only unpartitioned rows are needed to get down to 80
+    cm.trim(80) should equal(20)
+    cm.numValues(name) should equal(80)
+    cm.getOldest(name).get.getTime should equal(21)
+
+    // the last 10 unpartitioned rows go, then partitions 3 (9 values) and 4 but not 5
+    cm.trim(45) should equal(29)
+    cm.numValues(name) should equal(51)
+    cm.getOldest(name).get.getTime should equal(50)
+    cm.getNewest(name).get.getTime should equal(100)
+  }
+
+  test("Removed points don't count towards trim") {
+    val cm = connect(true, 10)
+
+    cm.set((1 to 100).flatMap { i => List(meas("PartitionKept", i), meas("PartitionRemoved", i)) })
+    cm.remove("PartitionRemoved" :: Nil)
+
+    // same as a single point, the removed point's partition counts are gone too
+    cm.trim(45) should equal(49)
+    cm.numValues("PartitionKept") should equal(51)
+    cm.getOldest("PartitionKept").get.getTime should equal(50)
+  }
+
+  test("Far future measurements don't create partitions") {
+    val name = "PartitionFuture"
+    val cm = connect(true, 10)
+
+    val future = System.currentTimeMillis + 24 * 60 * 60 * 1000
+    cm.set((1 to 20).map { i => meas(name, i) } ::: List(meas(name, future)))
+
+    // the bogus time is still the current value but stays out of history
+    cm.get(List(name))(name).getTime should equal(future)
+    cm.numValues(name) should equal(20)
+
+    // every partition is older than now so all of them can be dropped
+    cm.trim(0) should equal(20)
+    cm.numValues(name) should equal(0)
+    cm.getNewest(name) should equal(None)
+  }
+}
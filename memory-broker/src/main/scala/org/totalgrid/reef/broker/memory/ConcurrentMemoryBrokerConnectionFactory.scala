@@ -0,0 +1,154 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.broker.memory
+
+import java.util.concurrent.ConcurrentHashMap
+import collection.immutable.{ Queue => ScalaQueue }
+import net.agileautomata.executor4s._
+import org.totalgrid.reef.broker._
+
+object ConcurrentMemoryBrokerConnectionFactory {
+
+  /**
+   * publishers read the bindings without taking any locks, only changes to the same exchange
+   * contend with each other.
+   */
+  final class Exchange(val name: String, val typ: String, matchCacheSize: Int) {
+    private val bindings = new TopicMatcher[String](matchCacheSize)
+
+    def getMatches(key: String): Set[String] = bindings.matches(key)
+
+    def bindQueue(queue: String, key: String): Unit = bindings.bind(key, queue)
+
+    def unbindQueue(queue: String, key: String): Unit = bindings.unbind(key, queue)
+  }
+
+  /**
+   * each queue is locked independently, messages are handed to the queue's strand while holding
+   * the lock so they arrive in the order they were published. The exchange bindings are changed under
+   * the same lock so a bind racing a drop can't leave the dropped queue bound.
+   */
+  final class Queue(val name: String, exe: Strand) {
+    private var unread = ScalaQueue.empty[BrokerMessage]
+    private var consumers = List.empty[BrokerMessageConsumer]
+    // (exchange, key) pairs so dropping the queue only touches its own bindings
+    private var bound = Set.empty[(String, String)]
+    private var dropped = false
+
+    def bind(exchange: Exchange, key: String): Unit = synchronized {
+      if (dropped) throw new Exception("Queue not declared: " + name)
+      exchange.bindQueue(name, key)
+      bound += ((exchange.name, key))
+    }
+
+    def unbind(exchange: Exchange, key: String): Unit = synchronized {
+      exchange.unbindQueue(name, key)
+      bound -= ((exchange.name, key))
+    }
+
+    def drop(exchanges: String => Option[Exchange]): Unit = synchronized {
+      dropped = true
+      bound.foreach { case (exchange, key) => exchanges(exchange).foreach { _.unbindQueue(name, key) } }
+      bound = Set.empty
+    }
+
+    def publish(msg: BrokerMessage): Unit = synchronized {
+      consumers match {
+        case Nil =>
+          unread = unread.enqueue(msg)
+        case next :: tail =>
+          exe.execute(next.onMessage(msg))
+          consumers = tail ::: List(next) //moves x to end of the list
+      }
+    }
+
+    def addConsumer(mc: BrokerMessageConsumer): Unit = synchronized {
+      if (consumers.isEmpty) {
+        unread.foreach(msg => exe.execute(mc.onMessage(msg)))
+        unread = ScalaQueue.empty[BrokerMessage]
+      }
+      consumers = mc :: consumers
+    }
+  }
+}
+
+/**
+ * in-memory broker for high fan-out deployments. Exchanges and queues live in concurrent maps and
+ * are locked individually so publishes to different queues never contend, and routing keys are
+ * matched against a precompiled binding trie rather than every binding.
+ *
+ * @param matchCacheSize number of routing keys per exchange to cache the matching queues for, 0 disables
+ */
+final class ConcurrentMemoryBrokerConnectionFactory(exe: Executor, matchCacheSize: Int = 0) extends BrokerConnectionFactory with MemoryBrokerOperations {
+
+  import ConcurrentMemoryBrokerConnectionFactory._
+
+  private val exchanges = new ConcurrentHashMap[String, Exchange]
+  private val queues = new ConcurrentHashMap[String, Queue]
+
+  private def getQueue(name: String): Queue = {
+    val q = queues.get(name)
+    if (q == null) throw new Exception("Queue not declared: " + name)
+    q
+  }
+
+  private def getExchange(name: String): Exchange = {
+    val ex = exchanges.get(name)
+    if (ex == null) throw new Exception("Exchange not declared: " + name)
+    ex
+  }
+
+  def declareQueue(queue: String, exe: Executor) {
+    if (!queues.containsKey(queue)) queues.putIfAbsent(queue, new Queue(queue, Strand(exe)))
+  }
+
+  def declareExchange(exchange: String, typ: String) {
+    val existing = exchanges.putIfAbsent(exchange, new Exchange(exchange, typ, matchCacheSize))
+    if (existing != null && existing.typ != typ) throw new Exception("Exchange already declared with type: " + existing.typ)
+  }
+
+  def bindQueue(queue: String, exchange: String, key: String, unbindFirst: Boolean) {
+    getQueue(queue).bind(getExchange(exchange), key)
+  }
+
+  def unbindQueue(queue: String, exchange: String, key: String) {
+    getQueue(queue).unbind(getExchange(exchange), key)
+  }
+
+  def publish(exchange: String, key: String, msg: BrokerMessage) {
+    getExchange(exchange).getMatches(key).foreach { name =>
+      // queue may have been dropped since the bindings were read
+      val q = queues.get(name)
+      if (q != null) q.publish(msg)
+    }
+  }
+
+  def listen(queue: String, consumer: BrokerMessageConsumer) {
+    getQueue(queue).addConsumer(consumer)
+  }
+
+  def dropQueue(queue: String) {
+    val q = queues.remove(queue)
+    if (q != null) q.drop(name => Option(exchanges.get(name)))
+  }
+
+  def connect = new MemoryBrokerConnection(this, exe)
+
+  override def toString() = "concurrent-in-memory-broker"
+}
@@ -24,14 +24,13 @@ import net.agileautomata.executor4s.Executor
 
 import collection.immutable.Set
 import org.totalgrid.reef.client.exception.ServiceIOException
-import org.totalgrid.reef.broker.memory.MemoryBrokerState.SideEffectHolder
 
-class MemoryBrokerConnection(factory: MemoryBrokerConnectionFactory, exe: Executor) extends BrokerConnection {
+class MemoryBrokerConnection(factory: MemoryBrokerOperations, exe: Executor) extends BrokerConnection {
 
   private var state = ConnectionState(Some(factory), Set.empty[String])
   private def update(modify: ConnectionState => ConnectionState) = mutex.synchronized(state = modify(state))
 
-  case class ConnectionState(fac: Option[MemoryBrokerConnectionFactory], queues: Set[String]) {
+  case class ConnectionState(fac: Option[MemoryBrokerOperations], queues: Set[String]) {
 
     def factory = fac match {
       case Some(x) => x
@@ -39,13 +38,13 @@ class MemoryBrokerConnection(factory: MemoryBrokerConnectionFactory, exe: Execut
     }
 
     def declareQueue(name: String): ConnectionState = {
-      factory.update(s => s.declareQueue(name, exe))
+      factory.declareQueue(name, exe)
       this.copy(queues = queues + name)
     }
 
     def disconnect: ConnectionState = fac match {
       case Some(f) =>
-        f.update(s => queues.foldLeft(s)((old, q) => old.dropQueue(q)))
+        queues.foreach(f.dropQueue(_))
         onDisconnect(true)
         ConnectionState(None, Set.empty[String])
       case None =>
@@ -66,31 +65,28 @@ class MemoryBrokerConnection(factory: MemoryBrokerConnectionFactory, exe: Execut
   }
 
   def declareExchange(name: String, typ: String = "topic") =
-    state.factory.update(_.declareExchange(name, typ))
+    state.factory.declareExchange(name, typ)
 
   def bindQueue(queue: String, exchange: String, key: String = "#", unbindFirst: Boolean = false) =
-    state.factory.update(_.bindQueue(queue, exchange, key, unbindFirst))
+    state.factory.bindQueue(queue, exchange, key, unbindFirst)
 
   def unbindQueue(queue: String, exchange: String, key: String = "#") =
-    state.factory.update(_.unbindQueue(queue, exchange, key))
+    state.factory.unbindQueue(queue, exchange, key)
 
-  def publish(exchange: String, key: String, b: Array[Byte], replyTo: Option[BrokerDestination] = None) = {
-    val sideEffects = new SideEffectHolder
-    state.factory.update(state => state.publish(exchange, key, BrokerMessage(b, replyTo), sideEffects))
-    sideEffects.execute()
-  }
+  def publish(exchange: String, key: String, b: Array[Byte], replyTo: Option[BrokerDestination] = None) =
+    state.factory.publish(exchange, key, BrokerMessage(b, replyTo))
 
   class Subscription(queue: String) extends BrokerSubscription {
-    def close() = factory.update(_.dropQueue(queue))
+    def close() = factory.dropQueue(queue)
     def start(consumer: BrokerMessageConsumer): BrokerSubscription = {
-      state.factory.update(_.listen(queue, consumer))
+      state.factory.listen(queue, consumer)
       this
     }
     def getQueue: String = queue
   }
 
   def listen(queue: String): BrokerSubscription = {
-    state.factory.update(_.declareQueue(queue, exe))
+    state.factory.declareQueue(queue, exe)
     new Subscription(queue)
 
   }
@@ -19,9 +19,26 @@
 package org.totalgrid.reef.broker.memory
 
 import net.agileautomata.executor4s.Executor
-import org.totalgrid.reef.broker.BrokerConnectionFactory
+import org.totalgrid.reef.broker.{ BrokerMessageConsumer, BrokerMessage, BrokerConnectionFactory }
 
-final class MemoryBrokerConnectionFactory(exe: Executor) extends BrokerConnectionFactory {
+/**
+ * operations the in-memory broker connections perform on the shared broker state
+ */
+trait MemoryBrokerOperations {
+  def declareQueue(queue: String, exe: Executor)
+  def declareExchange(exchange: String, typ: String)
+  def bindQueue(queue: String, exchange: String, key: String, unbindFirst: Boolean)
+  def unbindQueue(queue: String, exchange: String, key: String)
+  def publish(exchange: String, key: String, msg: BrokerMessage)
+  def listen(queue: String, consumer: BrokerMessageConsumer)
+  def dropQueue(queue: String)
+}
+
+/**
+ * reference in-memory broker, every operation swaps in a new immutable state under a single lock.
+ * See ConcurrentMemoryBrokerConnectionFactory for an implementation that scales under load.
+ */
+final class MemoryBrokerConnectionFactory(exe: Executor) extends BrokerConnectionFactory with MemoryBrokerOperations {
 
   import MemoryBrokerState._
   private var state = State()
@@ -39,6 +56,25 @@ final class MemoryBrokerConnectionFactory(exe: Executor) extends BrokerConnectio
 
   //def getState: MemoryBrokerState.State = state
 
+  def declareQueue(queue: String, exe: Executor) = update(_.declareQueue(queue, exe))
+
+  def declareExchange(exchange: String, typ: String) = update(_.declareExchange(exchange, typ))
+
+  def bindQueue(queue: String, exchange: String, key: String, unbindFirst: Boolean) =
+    update(_.bindQueue(queue, exchange, key, unbindFirst))
+
+  def unbindQueue(queue: String, exchange: String, key: String) = update(_.unbindQueue(queue, exchange, key))
+
+  def publish(exchange: String, key: String, msg: BrokerMessage) = {
+    val sideEffects = new SideEffectHolder
+    update(_.publish(exchange, key, msg, sideEffects))
+    sideEffects.execute()
+  }
+
+  def listen(queue: String, consumer: BrokerMessageConsumer) = update(_.listen(queue, consumer))
+
+  def dropQueue(queue: String) = update(_.dropQueue(queue))
+
   def connect = new MemoryBrokerConnection(this, exe)
 
   override def toString() = "in-memory-broker"
@@ -53,7 +53,7 @@ object MemoryBrokerState {
     //once we find a section with a '#' the rest of the key doesn't matter
     val removed_hashes = b.takeWhile(!_.contains("#"))
     val nh = removed_hashes.zip(r)
-    nh.forall(tuple => tuple._2.matches(tuple._1.replaceAll("\\*", ".*")))
+    nh.forall(tuple => TopicTrie.segmentMatches(tuple._1, tuple._2))
   }
 
   case class State(
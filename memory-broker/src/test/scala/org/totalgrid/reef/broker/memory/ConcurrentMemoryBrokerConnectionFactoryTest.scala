@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.broker.memory
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import net.agileautomata.executor4s.testing.InstantExecutor
+import org.totalgrid.reef.broker._
+
+@RunWith(classOf[JUnitRunner])
+class ConcurrentMemoryBrokerConnectionFactoryTest extends FunSuite with ShouldMatchers {
+
+  private def thread(start: CountDownLatch)(f: => Unit) = {
+    val t = new Thread(new Runnable {
+      def run() {
+        start.await()
+        f
+      }
+    })
+    t.start()
+    t
+  }
+
+  test("Binding a queue while it is dropped leaves no binding behind") {
+    val exe = new InstantExecutor
+    val factory = new ConcurrentMemoryBrokerConnectionFactory(exe)
+    factory.declareExchange("ex", "topic")
+
+    (1 to 500).foreach { i =>
+      factory.declareQueue("q", exe)
+
+      val start = new CountDownLatch(1)
+      val binder = thread(start) {
+        // the queue may already be gone, that is fine as long as it isn't left bound
+        try factory.bindQueue("q", "ex", "key", false) catch { case ex: Exception => }
+      }
+      val dropper = thread(start)(factory.dropQueue("q"))
+      start.countDown()
+      binder.join()
+      dropper.join()
+
+      // a stale binding would deliver to the freshly declared queue of the same name
+      val received = new AtomicInteger(0)
+      factory.declareQueue("q", exe)
+      factory.listen("q", new BrokerMessageConsumer {
+        def onMessage(msg: BrokerMessage) { received.incrementAndGet() }
+      })
+      factory.publish("ex", "key", BrokerMessage("test".getBytes, None))
+      received.get should equal(0)
+
+      factory.dropQueue("q")
+    }
+  }
+}
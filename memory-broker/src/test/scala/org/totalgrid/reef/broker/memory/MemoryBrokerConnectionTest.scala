@@ -36,4 +36,19 @@ class MemoryBrokerConnectionTest extends BrokerConnectionTestBase {
     }
   }
 
+}
+
+@RunWith(classOf[JUnitRunner])
+class ConcurrentMemoryBrokerConnectionTest extends BrokerConnectionTestBase {
+
+  def testConnection(test: BrokerConnection => Unit) = {
+    val exe = Executors.newScheduledSingleThread()
+    val factory = new ConcurrentMemoryBrokerConnectionFactory(exe)
+    try {
+      test(factory.connect)
+    } finally {
+      exe.terminate()
+    }
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.broker.memory
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.scalatest.junit.JUnitRunner
+import org.junit.runner.RunWith
+
+import scala.util.Random
+import org.totalgrid.reef.broker.{ LruCache, TopicMatcher, TopicTrie }
+
+@RunWith(classOf[JUnitRunner])
+class TopicMatcherTest extends FunSuite with ShouldMatchers {
+
+  // regex metacharacters are included to check both matchers compare them literally
+  private val segments = List("a", "b", "abc", "ab", "bc", "a+", "(b)", "a|b", "*", "a*", "*c", "a+*", "#", "")
+
+  private def randomKey(rand: Random, parts: List[String], maxLength: Int) = {
+    val length = rand.nextInt(maxLength) + 1
+    (1 to length).map { i => parts(rand.nextInt(parts.size)) }.mkString(".")
+  }
+
+  private def bruteForce(bindings: List[(String, Int)], routingKey: String) = {
+    bindings.filter { case (key, _) => MemoryBrokerState.matches(routingKey, key) }.map { _._2 }.toSet
+  }
+
+  test("Trie agrees with brute force matching") {
+    val rand = new Random(42)
+    val literals = segments.filterNot(s => s.contains("*") || s.contains("#"))
+
+    (1 to 20).foreach { round =>
+      val bindings = (0 until 50).map { i => (randomKey(rand, segments, 4), i) }.toList
+      val trie = bindings.foldLeft(TopicTrie.empty[Int]) { case (t, (key, i)) => t.bind(key, i) }
+
+      (1 to 200).foreach { i =>
+        val routingKey = randomKey(rand, literals, 5)
+        trie.matches(routingKey) should equal(bruteForce(bindings, routingKey))
+      }
+    }
+  }
+
+  test("Trie agrees with brute force matching after unbinding") {
+    val rand = new Random(7)
+    val literals = segments.filterNot(s => s.contains("*") || s.contains("#"))
+
+    val bindings = (0 until 100).map { i => (randomKey(rand, segments, 4), i) }.toList
+    val (removed, kept) = bindings.partition { _._2 % 3 == 0 }
+
+    val full = bindings.foldLeft(TopicTrie.empty[Int]) { case (t, (key, i)) => t.bind(key, i) }
+    val trie = removed.foldLeft(full) { case (t, (key, i)) => t.unbind(key, i) }
+
+    (1 to 500).foreach { i =>
+      val routingKey = randomKey(rand, literals, 5)
+      trie.matches(routingKey) should equal(bruteForce(kept, routingKey))
+    }
+
+    kept.foldLeft(trie) { case (t, (key, i)) => t.unbind(key, i) }.isEmpty should equal(true)
+  }
+
+  test("Standard topic examples") {
+    val trie = List("measurement.*", "measurement.#", "*.abc", "#", "a.b.c").zipWithIndex.foldLeft(TopicTrie.empty[Int]) {
+      case (t, (key, i)) => t.bind(key, i)
+    }
+
+    trie.matches("measurement.abc") should equal(Set(0, 1, 2, 3))
+    trie.matches("measurement.a.b") should equal(Set(1, 3))
+    trie.matches("a.b.c") should equal(Set(3, 4))
+    trie.matches("b.abc") should equal(Set(2, 3))
+  }
+
+  test("Segments are matched literally") {
+    val trie = List("a+.b", "a.*", "(b)*.c", "a|b").zipWithIndex.foldLeft(TopicTrie.empty[Int]) {
+      case (t, (key, i)) => t.bind(key, i)
+    }
+
+    trie.matches("a+.b") should equal(Set(0))
+    trie.matches("aa.b") should equal(Set())
+    trie.matches("a.b") should equal(Set(1))
+    trie.matches("(b)x.c") should equal(Set(2))
+    trie.matches("bx.c") should equal(Set())
+    trie.matches("a|b") should equal(Set(3))
+    trie.matches("a") should equal(Set())
+
+    MemoryBrokerState.matches("a+.b", "a+.b") should equal(true)
+    MemoryBrokerState.matches("aa.b", "a+.b") should equal(false)
+    MemoryBrokerState.matches("(b)x.c", "(b)*.c") should equal(true)
+    MemoryBrokerState.matches("a", "a|b") should equal(false)
+  }
+
+  test("Cached matcher is cleared when bindings change") {
+    val matcher = new TopicMatcher[String](10)
+
+    matcher.bind("a.*", "q1")
+    matcher.matches("a.b") should equal(Set("q1"))
+
+    matcher.bind("a.b", "q2")
+    matcher.matches("a.b") should equal(Set("q1", "q2"))
+
+    matcher.unbind("a.*", "q1")
+    matcher.matches("a.b") should equal(Set("q2"))
+    matcher.matches("a.c") should equal(Set())
+
+    matcher.unbind("a.b", "q2")
+    matcher.isEmpty should equal(true)
+    matcher.matches("a.b") should equal(Set())
+  }
+
+  test("Cached matcher agrees with uncached matcher") {
+    val rand = new Random(11)
+    val literals = segments.filterNot(s => s.contains("*") || s.contains("#"))
+
+    val cached = new TopicMatcher[Int](16)
+    val uncached = new TopicMatcher[Int]()
+    (0 until 50).foreach { i =>
+      val key = randomKey(rand, segments, 4)
+      cached.bind(key, i)
+      uncached.bind(key, i)
+    }
+
+    (1 to 1000).foreach { i =>
+      val routingKey = randomKey(rand, literals, 3)
+      cached.matches(routingKey) should equal(uncached.matches(routingKey))
+    }
+  }
+
+  test("Lru cache evicts least recently used keys") {
+    val cache = new LruCache[String, Int](2)
+    var computed = 0
+    def value(v: Int) = { computed += 1; v }
+
+    cache.getOrElseUpdate("a", value(1)) should equal(1)
+    cache.getOrElseUpdate("b", value(2)) should equal(2)
+    cache.getOrElseUpdate("a", value(-1)) should equal(1)
+    cache.getOrElseUpdate("c", value(3)) should equal(3)
+    cache.size should equal(2)
+    computed should equal(3)
+
+    // "b" was the least recently used so it was evicted
+    cache.getOrElseUpdate("b", value(4)) should equal(4)
+    cache.getOrElseUpdate("a", value(-1)) should equal(-1)
+    computed should equal(5)
+  }
+}
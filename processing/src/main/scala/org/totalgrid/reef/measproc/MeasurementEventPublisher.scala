@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measproc
+
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+import org.totalgrid.reef.client.registration.EventPublisher
+import org.totalgrid.reef.client.proto.Envelope
+import com.weiglewilczek.slf4s.Logging
+import scala.collection.mutable
+import scala.collection.JavaConversions._
+
+/**
+ * publishes processed measurements as subscription events. Measurement subscriptions bind on the point name
+ * so the measurements are grouped by point, when batchPayloads is set every update to a point in the batch
+ * (SOE bursts, buffered protocol data) goes out as one notification using batched_payloads. Clients built
+ * before batched_payloads was added only see the first value of such a notification, so batching should only
+ * be turned on once every subscriber has been updated.
+ *
+ * A failed publish is logged and doesn't stop the rest of the batch from being published.
+ */
+class MeasurementEventPublisher(eventPub: EventPublisher, batchPayloads: Boolean) extends Logging {
+
+  def publish(meas: Seq[Measurement]) {
+    if (batchPayloads) {
+      val byKey = mutable.LinkedHashMap.empty[String, mutable.ListBuffer[Measurement]]
+      meas.foreach { m => byKey.getOrElseUpdate(m.getName, mutable.ListBuffer.empty[Measurement]) += m }
+      byKey.foreach { case (key, group) => publishGroup(key, group.toList) }
+    } else {
+      meas.foreach { m => publishGroup(m.getName, List(m)) }
+    }
+  }
+
+  private def publishGroup(key: String, group: List[Measurement]) {
+    try {
+      group match {
+        case List(m) => eventPub.publishEvent(Envelope.SubscriptionEventType.MODIFIED, m, key)
+        case _ => eventPub.publishEvents(Envelope.SubscriptionEventType.MODIFIED, seqAsJavaList(group), key)
+      }
+    } catch {
+      case ex: Exception =>
+        logger.warn("Couldn't publish " + group.size + " measurement(s) for: " + key + " message: " + ex.getMessage, ex)
+    }
+  }
+}
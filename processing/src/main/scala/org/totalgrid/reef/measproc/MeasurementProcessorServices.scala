@@ -44,14 +44,22 @@ trait MeasurementProcessorServices extends AllScadaServiceImpl {
 
   def publishIndividualMeasurementAsEvent(meas: Measurement)
 
+  /**
+   * publishes a batch of processed measurements, see MeasurementEventPublisher for when updates to the
+   * same point are sent as one batched subscription event
+   */
+  def publishMeasurementsAsEvents(meas: Seq[Measurement])
+
   def bindMeasurementProcessingNode(handler: MeasBatchProcessor, conn: MeasurementProcessingConnection): Promise[SubscriptionBinding]
 
   def setMeasurementProcessingConnectionReadyTime(conn: MeasurementProcessingConnection, time: Long): Promise[MeasurementProcessingConnection]
 }
 
-class MeasurementProcessorServicesImpl(client: Client, eventPub: EventPublisher)
+class MeasurementProcessorServicesImpl(client: Client, eventPub: EventPublisher, batchPayloads: Boolean = false)
     extends ServiceOperationsProvider(client) with MeasurementProcessorServices {
 
+  private val measPublisher = new MeasurementEventPublisher(eventPub, batchPayloads)
+
   override def subscribeToConnectionsForMeasurementProcessor(measProc: ApplicationConfig) = {
     ops.subscription(Descriptors.measurementProcessingConnection, "Couldn't subscribe for endpoints assigned to: " + measProc.getInstanceName) { (sub, client) =>
       client.get(MeasurementProcessingConnection.newBuilder.setMeasProc(measProc).build, sub).map { _.many }
@@ -93,6 +101,10 @@ class MeasurementProcessorServicesImpl(client: Client, eventPub: EventPublisher)
     eventPub.publishEvent(Envelope.SubscriptionEventType.MODIFIED, meas, meas.getName)
   }
 
+  override def publishMeasurementsAsEvents(meas: Seq[Measurement]) {
+    measPublisher.publish(meas)
+  }
+
   override def setMeasurementProcessingConnectionReadyTime(conn: MeasurementProcessingConnection, time: Long) = {
     ops.operation("Failed updating measproc: " + conn.getMeasProc.getUuid + " readyTime: " + time) {
       _.put(conn.toBuilder.setReadyTime(time).build).map { _.one }
@@ -38,21 +38,24 @@ class MeasurementStreamProcessingNode(
   connection: MeasurementProcessingConnection)
     extends Logging {
 
-  def publishEvent(event: Event.Builder) = try {
-    event.setUserId("system")
-    event.setSubsystem("measproc")
-    client.publishEvent(event.build)
+  def publishEvents(events: Seq[Event.Builder]) = try {
+    val built = events.map { event =>
+      event.setUserId("system")
+      event.setSubsystem("measproc")
+      event.build
+    }
+    client.publishEvents(built.toList)
   } catch {
     case rse: ReefServiceException =>
-      logger.warn("Couldn't publish event: " + rse.getMessage, rse)
+      logger.warn("Couldn't publish batch of " + events.size + " events: " + rse.getMessage, rse)
   }
 
-  def measSink(meas: Measurement) {
+  def measSink(meas: Seq[Measurement]) {
     try {
-      client.publishIndividualMeasurementAsEvent(meas)
+      client.publishMeasurementsAsEvents(meas)
     } catch {
       case rse: ReefServiceException =>
-        logger.warn("Couldn't publish measurement: " + meas.getName + " message: " + rse.getMessage, rse)
+        logger.warn("Couldn't publish batch of " + meas.size + " measurements, message: " + rse.getMessage, rse)
     }
   }
 
@@ -60,7 +63,7 @@ class MeasurementStreamProcessingNode(
   val expectedPoints = endpoint.getOwnerships.getPointsList.toList
   val points = client.getPointsByNames(expectedPoints).await
 
-  val processingPipeline = new MeasProcessingPipeline(caches, measSink _, publishEvent _, points, endpoint.getName)
+  val processingPipeline = new MeasProcessingPipeline(caches, measSink _, publishEvents _, points, endpoint.getName)
 
   val connectionWatcher = new EndpointConnectionWatcher(client, endpoint.getUuid, processingPipeline.lastCacheManager, processingPipeline.measWhiteList)
 
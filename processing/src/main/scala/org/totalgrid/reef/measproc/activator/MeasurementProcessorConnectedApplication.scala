@@ -26,7 +26,7 @@ import org.totalgrid.reef.measproc.{ ProcessingNodeMap, MeasStreamConnector, Mea
 import com.weiglewilczek.slf4s.Logging
 import org.totalgrid.reef.client.registration.EventPublisher
 
-class MeasurementProcessorConnectedApplication(measStore: MeasurementStore) extends ConnectedApplication with Logging {
+class MeasurementProcessorConnectedApplication(measStore: MeasurementStore, batchPayloads: Boolean = false) extends ConnectedApplication with Logging {
 
   var measProc = Option.empty[FullProcessor]
 
@@ -52,7 +52,7 @@ class MeasurementProcessorConnectedApplication(measStore: MeasurementStore) exte
     client.setHeaders(client.getHeaders.setResultLimit(10000))
 
     def perStreamService = {
-      new MeasurementProcessorServicesImpl(client.spawn(), eventPub)
+      new MeasurementProcessorServicesImpl(client.spawn(), eventPub, batchPayloads)
     }
 
     measStore.connect()
@@ -60,7 +60,7 @@ class MeasurementProcessorConnectedApplication(measStore: MeasurementStore) exte
     val connector = new MeasStreamConnector(perStreamService, measStore, appConfig.getInstanceName)
     val connectionHandler = new ProcessingNodeMap(connector)
 
-    val services = new MeasurementProcessorServicesImpl(client, eventPub)
+    val services = new MeasurementProcessorServicesImpl(client, eventPub, batchPayloads)
     new FullProcessor(services, connectionHandler, appConfig, client.getInternal.getExecutor)
   }
 }
\ No newline at end of file
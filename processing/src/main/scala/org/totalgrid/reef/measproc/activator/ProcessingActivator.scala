@@ -24,12 +24,18 @@ import org.totalgrid.reef.measurementstore.MeasurementStoreFinder
 import org.totalgrid.reef.app.whiteboard.ConnectedApplicationBundleActivator
 import org.totalgrid.reef.app.{ ConnectedApplicationManager, ConnectionProvider }
 import net.agileautomata.executor4s.Executor
+import org.totalgrid.reef.osgi.OsgiConfigReader
+import org.totalgrid.reef.client.settings.util.PropertyLoading
 
 class ProcessingActivator extends ConnectedApplicationBundleActivator {
 
   def addApplication(context: BundleContext, connectionManager: ConnectionProvider, appManager: ConnectedApplicationManager, executor: Executor) = {
     val measStore = MeasurementStoreFinder.getInstance(context)
-    val app = new MeasurementProcessorConnectedApplication(measStore)
+
+    val properties = OsgiConfigReader.load(context, "org.totalgrid.reef.measproc")
+    val batchPayloads = PropertyLoading.getBoolean("org.totalgrid.reef.measproc.batchedMeasurementEvents", properties, false)
+
+    val app = new MeasurementProcessorConnectedApplication(measStore, batchPayloads)
 
     appManager.addConnectedApplication(app)
   }
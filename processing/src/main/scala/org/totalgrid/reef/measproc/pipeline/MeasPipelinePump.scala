@@ -22,21 +22,26 @@ import com.weiglewilczek.slf4s.Logging
 import org.totalgrid.reef.client.service.proto.Measurements.{ MeasurementBatch, Measurement }
 import org.totalgrid.reef.jmx.Metrics
 
-class MeasPipelinePump(procFun: Measurement => Unit, flushCache: () => Unit, metrics: Metrics)
+/**
+ * drives each measurement in a batch through the processing function. The measurements are handed
+ * over as they were decoded along with the time stamps to apply if they are missing, this lets the
+ * first stage of the pipeline do all of its modifications with a single builder.
+ */
+class MeasPipelinePump(procFun: (Measurement, Long, Long) => Unit, flushCache: () => Unit, metrics: Metrics)
     extends Logging {
 
-  private val measProcessingTime = metrics.timer("measProcessingTime")
+  private val measProcessingTime = metrics.timer("measProcessingTime", true)
   private val measProcessed = metrics.counter("measProcessed")
 
-  private val batchProcessingTime = metrics.timer("batchesProcessingTime")
+  private val batchProcessingTime = metrics.timer("batchesProcessingTime", true)
   private val batchProcessed = metrics.counter("batchesProcessed")
   private val batchSize = metrics.average("batchSize")
 
   def process(b: MeasurementBatch) {
     batchProcessingTime[Unit] {
-      deBatch(b) { meas =>
+      deBatch(b) { (meas, systemTime, wallTime) =>
         logger.debug("Processing: " + meas)
-        measProcessingTime(procFun(meas))
+        measProcessingTime(procFun(meas, systemTime, wallTime))
       }
       flushCache()
     }
@@ -45,15 +50,14 @@ class MeasPipelinePump(procFun: Measurement => Unit, flushCache: () => Unit, met
     batchProcessed(1)
   }
 
-  private def deBatch[A](batch: MeasurementBatch)(f: Measurement => A) {
-    import scala.collection.JavaConversions._
-
+  private def deBatch[A](batch: MeasurementBatch)(f: (Measurement, Long, Long) => A) {
     val now = System.currentTimeMillis()
-    batch.getMeasList.toList.foreach { m =>
-      val b = m.toBuilder
-      if (!m.hasSystemTime) b.setSystemTime(now)
-      if (!m.hasTime) b.setTime(batch.getWallTime)
-      f(b.build)
+    val wallTime = batch.getWallTime
+    val count = batch.getMeasCount
+    var i = 0
+    while (i < count) {
+      f(batch.getMeas(i), now, wallTime)
+      i += 1
     }
   }
 }
\ No newline at end of file
@@ -26,8 +26,8 @@ import org.totalgrid.reef.jmx.MetricsManager
 
 class MeasProcessingPipeline(
     caches: MeasProcObjectCaches,
-    publish: Measurement => Unit,
-    eventSink: Events.Event.Builder => Unit,
+    publish: Seq[Measurement] => Unit,
+    eventSink: Seq[Events.Event.Builder] => Unit,
     points: List[Point],
     endpointName: String) extends MeasBatchProcessor {
 
@@ -46,7 +46,7 @@ class MeasProcessingPipeline(
   val measWhiteList = new processing.MeasurementWhiteList(overProc.process, points, metricsMgr.metrics("WhiteList"))
 
   // start the pipeline
-  val processor = new MeasPipelinePump(measWhiteList.process, batchOutput.flushCache, metricsMgr.metrics("Pipeline"))
+  val processor = new MeasPipelinePump(measWhiteList.process(_, _, _), batchOutput.flushCache, metricsMgr.metrics("Pipeline"))
 
   metricsMgr.register()
 
@@ -22,36 +22,41 @@ import org.totalgrid.reef.client.service.proto.Measurements.Measurement
 import org.totalgrid.reef.client.service.proto.Events
 import org.totalgrid.reef.persistence.ObjectCache
 import org.totalgrid.reef.persistence.KeyValue
+import scala.collection.mutable.ArrayBuffer
 
 class ProcessedMeasBatchOutputCache(
-    measPublish: Measurement => Unit,
-    eventSink: Events.Event.Builder => Unit,
+    measPublish: Seq[Measurement] => Unit,
+    eventSink: Seq[Events.Event.Builder] => Unit,
     measCache: ObjectCache[Measurement]) {
 
-  // List of measurements that get built during a batch process
-  var list: List[Measurement] = Nil
-  var eventList: List[Events.Event.Builder] = Nil
+  // measurements and events that get built during a batch process, buffers are reused between batches
+  private val measurements = new ArrayBuffer[Measurement]
+  private val events = new ArrayBuffer[Events.Event.Builder]
 
   def delayedEventSink(e: Events.Event.Builder) {
     e.setTime(System.currentTimeMillis)
-    eventList = e :: eventList
+    events += e
   }
 
   // function that builds the list and publishes to the bus
   def pubMeas(m: Measurement) = {
-    list = m :: list
+    measurements += m
   }
 
   // flushes the list to the measurement cache
   def flushCache() = {
-    val measurements = list.reverse
-    val measurementCacheUpdates = measurements.map { m => KeyValue(m.getName, m) }
-    val pubEvents = eventList.reverse
-    eventList = Nil
-    list = Nil
-    measCache.put(measurementCacheUpdates)
-    measurements.foreach(measPublish(_))
-    pubEvents.foreach(eventSink(_))
+    try {
+      if (!measurements.isEmpty) {
+        val measurementCacheUpdates = measurements.foldRight(List.empty[KeyValue[Measurement]]) { (m, l) => KeyValue(m.getName, m) :: l }
+        measCache.put(measurementCacheUpdates)
+        measPublish(measurements.toList)
+      }
+      // all of the events generated by a batch are published in a single request
+      if (!events.isEmpty) eventSink(events.toList)
+    } finally {
+      measurements.clear()
+      events.clear()
+    }
   }
 
-}
\ No newline at end of file
+}
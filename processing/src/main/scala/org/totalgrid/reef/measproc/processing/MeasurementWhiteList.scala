@@ -37,15 +37,44 @@ class MeasurementWhiteList(protected val next: Measurement => Unit, expectedPoin
 
   def process(meas: Measurement) {
     allowedPointNamesLookup.get(meas.getName) match {
-      case Some(p) => next(meas.toBuilder.setPointUuid(p.getUuid).build)
-      case None =>
-        ignoredMeasurements(1)
-        ignored.get(meas.getName) match {
-          case Some(_) =>
-          case None =>
-            ignored += meas.getName -> false
-            logger.info("Ignoring unexpected measurement: " + meas.getName)
+      case Some(p) =>
+        if (meas.hasPointUuid && meas.getPointUuid == p.getUuid) next(meas)
+        else next(meas.toBuilder.setPointUuid(p.getUuid).build)
+      case None => ignore(meas)
+    }
+  }
+
+  /**
+   * whitelist check for measurements straight off of a batch, the point uuid and any missing
+   * time fields are all stamped with one builder so each measurement is only copied once on
+   * its way into the pipeline (or not at all if it already has everything set).
+   *
+   * @param systemTime time the batch was received by the processor
+   * @param wallTime measurement time to use if the protocol didn't provide one
+   */
+  def process(meas: Measurement, systemTime: Long, wallTime: Long) {
+    allowedPointNamesLookup.get(meas.getName) match {
+      case Some(p) =>
+        val needsUuid = !meas.hasPointUuid || meas.getPointUuid != p.getUuid
+        if (!needsUuid && meas.hasSystemTime && meas.hasTime) next(meas)
+        else {
+          val b = meas.toBuilder
+          if (needsUuid) b.setPointUuid(p.getUuid)
+          if (!meas.hasSystemTime) b.setSystemTime(systemTime)
+          if (!meas.hasTime) b.setTime(wallTime)
+          next(b.build)
         }
+      case None => ignore(meas)
+    }
+  }
+
+  private def ignore(meas: Measurement) {
+    ignoredMeasurements(1)
+    ignored.get(meas.getName) match {
+      case Some(_) =>
+      case None =>
+        ignored += meas.getName -> false
+        logger.info("Ignoring unexpected measurement: " + meas.getName)
     }
   }
 
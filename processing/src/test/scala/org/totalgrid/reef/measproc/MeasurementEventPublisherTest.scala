@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.measproc
+
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.totalgrid.reef.client.registration.EventPublisher
+import org.totalgrid.reef.client.proto.Envelope
+import org.totalgrid.reef.client.service.proto.Measurements.Measurement
+import scala.collection.JavaConversions._
+
+@RunWith(classOf[JUnitRunner])
+class MeasurementEventPublisherTest extends FunSuite with ShouldMatchers {
+  import ProtoHelper._
+
+  class CountingEventPublisher(failingKey: Option[String] = None) extends EventPublisher {
+    var publishes = List.empty[(String, List[Measurement])]
+
+    def bindQueueByClass[A](subQueue: String, key: String, klass: Class[A]) {}
+
+    def publishEvent[A](typ: Envelope.SubscriptionEventType, value: A, key: String) {
+      publishEvents(typ, java.util.Collections.singletonList(value), key)
+    }
+
+    def publishEvents[A](typ: Envelope.SubscriptionEventType, values: java.util.List[A], key: String) {
+      if (failingKey == Some(key)) throw new RuntimeException("publish failed")
+      publishes = publishes ::: List((key, values.toList.map(_.asInstanceOf[Measurement])))
+    }
+  }
+
+  val batch = List(makeAnalog("meas01", 1.0), makeAnalog("meas02", 2.0), makeAnalog("meas01", 3.0),
+    makeAnalog("meas01", 4.0), makeAnalog("meas02", 5.0))
+
+  test("Unbatched publishes each measurement") {
+    val eventPub = new CountingEventPublisher
+    new MeasurementEventPublisher(eventPub, false).publish(batch)
+
+    eventPub.publishes should equal(batch.map { m => (m.getName, List(m)) })
+  }
+
+  test("Batched publishes once per point") {
+    val eventPub = new CountingEventPublisher
+    new MeasurementEventPublisher(eventPub, true).publish(batch)
+
+    eventPub.publishes.size should equal(2)
+    eventPub.publishes should equal(List(
+      ("meas01", List(batch(0), batch(2), batch(3))),
+      ("meas02", List(batch(1), batch(4)))))
+  }
+
+  test("Failed publish doesn't stop the batch") {
+    val eventPub = new CountingEventPublisher(Some("meas01"))
+    new MeasurementEventPublisher(eventPub, true).publish(batch)
+
+    eventPub.publishes should equal(List(("meas02", List(batch(1), batch(4)))))
+  }
+}
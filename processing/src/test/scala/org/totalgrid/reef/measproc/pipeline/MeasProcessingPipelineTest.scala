@@ -45,8 +45,8 @@ class MeasProcessingPipelineTest extends Suite with ShouldMatchers {
 
     val proc = new MeasProcessingPipeline(
       MeasProcObjectCaches(measCache, overCache, stateCache),
-      measQueue.enqueue(_),
-      { b => eventQueue.enqueue(b.build) },
+      { ms => measQueue.enqueue(ms: _*) },
+      { bs => bs.foreach(b => eventQueue.enqueue(b.build)) },
       List(makePoint("meas01")), "endpoint01")
 
     def process(m: Measurement) {
@@ -50,4 +50,27 @@ class WhitelistTest extends FunSuite with ShouldMatchers {
 
     queue.toList should equal(List("ok1", "ok2", "ok1"))
   }
-}
\ No newline at end of file
+
+  test("Stamps uuid and missing times with one copy") {
+    val queue = mutable.Queue.empty[Measurement]
+    val metrics = Metrics(MetricsContainer())
+
+    def makePoint(name: String) = Point.newBuilder.setName(name).setUuid(ReefUUID.newBuilder.setValue(name)).build
+    val filter = new MeasurementWhiteList(queue.enqueue(_), List(makePoint("ok1")), metrics)
+
+    val raw = makeAnalog("ok1", 100).toBuilder.clearTime.clearSystemTime.build
+    filter.process(raw, 5, 10)
+
+    val stamped = queue.dequeue
+    stamped.getPointUuid.getValue should equal("ok1")
+    stamped.getSystemTime should equal(5)
+    stamped.getTime should equal(10)
+
+    // already complete measurements are passed through without being rebuilt
+    filter.process(stamped, 20, 30)
+    queue.dequeue should be theSameInstanceAs (stamped)
+
+    filter.process(makeAnalog("bad1", 100), 5, 10)
+    queue.isEmpty should equal(true)
+  }
+}
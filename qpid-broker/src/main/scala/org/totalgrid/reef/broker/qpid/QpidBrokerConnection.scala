@@ -22,13 +22,37 @@ import org.totalgrid.reef.broker._
 import org.apache.qpid.transport._
 import com.weiglewilczek.slf4s.Logging
 import org.totalgrid.reef.client.exception.ServiceIOException
+import org.totalgrid.reef.jmx.MetricsManager
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+import scala.{ Option => ScalaOption }
 
-final class QpidBrokerConnection(conn: Connection, ttlMilliseconds: Int) extends QpidBrokerChannelPool with ConnectionListener with Logging {
+object QpidBrokerConnection {
+  private val connectionCount = new AtomicInteger(0)
+}
+
+/**
+ * @param publishSyncWindow number of publishes that may be in flight before we wait for the broker
+ *                          to catch up, 1 syncs every publish
+ * @param publishSyncIntervalMilliseconds how long pipelined publishes may go unsynced when the
+ *                                        window isn't filling up
+ */
+final class QpidBrokerConnection(conn: Connection, ttlMilliseconds: Int, publishSyncWindow: Int = 1, publishSyncIntervalMilliseconds: Long = 10)
+    extends QpidBrokerChannelPool with ConnectionListener with Logging {
 
   private var disconnected = false
   private var closed = false
   private var sessions = Set.empty[Session]
 
+  private val pipelining = publishSyncWindow > 1
+  private var pipelinedPublisher: ScalaOption[QpidPipelinedPublisher] = None
+  // window each thread last published in, checked on its next publish or flush
+  private val lastWindow = new ThreadLocal[PublishConfirm]
+  private lazy val metricsMgr = MetricsManager("org.totalgrid.reef.broker.qpid", "connection" + QpidBrokerConnection.connectionCount.incrementAndGet)
+  // created on first pipelined publish so non-pipelining connections don't register an mbean
+  private lazy val publisherMetrics = metricsMgr.metrics("Publisher")
+  private var metricsRegistered = false
+
   conn.addConnectionListener(this)
 
   override def isConnected() = !disconnected
@@ -38,6 +62,7 @@ final class QpidBrokerConnection(conn: Connection, ttlMilliseconds: Int) extends
   override def disconnect(): Boolean = mutex.synchronized {
     if (!disconnected) {
       disconnected = true
+      closePublisher()
       closeSessions()
       conn.close()
     }
@@ -45,6 +70,72 @@ final class QpidBrokerConnection(conn: Connection, ttlMilliseconds: Int) extends
     true
   }
 
+  override def publish(exchange: String, key: String, bytes: Array[Byte], replyTo: ScalaOption[BrokerDestination]) = {
+    if (pipelining) {
+      // an earlier message from this thread was lost, tell the caller before it publishes anything else
+      reportFailedWindow()
+      lastWindow.set(publisher().publish(exchange, key, bytes, replyTo))
+      reportFailedWindow()
+    } else super.publish(exchange, key, bytes, replyTo)
+  }
+
+  override def flush() {
+    if (pipelining) {
+      publisher().flush()
+      reportFailedWindow()
+    }
+  }
+
+  private def reportFailedWindow() {
+    val window = lastWindow.get
+    if (window != null && window.isDone) {
+      lastWindow.remove()
+      window.failure.foreach { throw _ }
+    }
+  }
+
+  /**
+   * future that completes once all messages published on this connection so far have been accepted
+   * by the broker. Without pipelining every publish is already synced so it is always complete.
+   */
+  def confirm(): Future[java.lang.Boolean] = {
+    if (pipelining) publisher().confirm()
+    else {
+      val c = new PublishConfirm
+      c.confirmed()
+      c
+    }
+  }
+
+  private def publisher(): QpidPipelinedPublisher = mutex.synchronized {
+    pipelinedPublisher match {
+      case Some(p) if p.isOpen => p
+      case _ =>
+        // replace the publisher if the broker closed its session out from under us
+        pipelinedPublisher.foreach { _.close() }
+        val p = new QpidPipelinedPublisher(getSession(), ttlMilliseconds, publishSyncWindow, publishSyncIntervalMilliseconds, publisherMetrics)
+        pipelinedPublisher = Some(p)
+        // closePublisher unregisters the mbean, a reopened publisher needs it back
+        if (!metricsRegistered) {
+          metricsMgr.register()
+          metricsRegistered = true
+        }
+        p
+    }
+  }
+
+  private def closePublisher() = {
+    mutex.synchronized {
+      val p = pipelinedPublisher
+      pipelinedPublisher = None
+      if (metricsRegistered) {
+        metricsMgr.unregister()
+        metricsRegistered = false
+      }
+      p
+    }.foreach { _.close() }
+  }
+
   def listen(): BrokerSubscription = {
     val session = getSession()
     val q = QpidChannelOperations.declareQueue(session, "*", true, true)
@@ -75,6 +166,8 @@ final class QpidBrokerConnection(conn: Connection, ttlMilliseconds: Int) extends
       temp
     }
 
+    closePublisher()
+
     try {
       this.onDisconnect(expected)
     } catch {
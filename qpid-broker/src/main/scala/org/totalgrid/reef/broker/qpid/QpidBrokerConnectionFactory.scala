@@ -78,7 +78,7 @@ class QpidBrokerConnectionFactory(config: AmqpSettings) extends BrokerConnection
       val settings = makeSettings
       QpidBrokerConnectionFactory.loadssl(config, settings)
       val conn = new Connection
-      val broker = new QpidBrokerConnection(conn, config.getTtlMilliseconds())
+      val broker = new QpidBrokerConnection(conn, config.getTtlMilliseconds(), config.getPublishSyncWindow(), config.getPublishSyncIntervalMilliseconds())
       conn.connect(settings)
       broker
     } catch {
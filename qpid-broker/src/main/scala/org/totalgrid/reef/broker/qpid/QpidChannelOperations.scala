@@ -99,6 +99,15 @@ object QpidChannelOperations extends Logging {
   }
 
   def publish(session: Session, exchange: String, key: String, b: Array[Byte], replyTo: ScalaOption[BrokerDestination], ttlMilliseconds: Int) = {
+    transfer(session, exchange, key, b, replyTo, ttlMilliseconds)
+    sync(session)
+  }
+
+  /**
+   * sends the message without waiting for the broker to complete the transfer, the caller is
+   * responsible for syncing the session before relying on delivery
+   */
+  def transfer(session: Session, exchange: String, key: String, b: Array[Byte], replyTo: ScalaOption[BrokerDestination], ttlMilliseconds: Int) = {
     rewrap("publishing to exchange: " + exchange + " key: " + key + " replyTo: " + replyTo) {
       if (session.isClosing) throw new ChannelClosedException
       val dev_props = new DeliveryProperties
@@ -108,6 +117,12 @@ object QpidChannelOperations extends Logging {
       replyTo.foreach(r => msg_props.setReplyTo(new ReplyTo(r.exchange, r.key)))
       val hdr = new Header(dev_props, msg_props)
       session.messageTransfer(exchange, MessageAcceptMode.NONE, MessageAcquireMode.PRE_ACQUIRED, hdr, b)
+    }
+  }
+
+  def sync(session: Session) = {
+    rewrap("syncing session") {
+      if (session.isClosing) throw new ChannelClosedException
       session.sync()
     }
   }
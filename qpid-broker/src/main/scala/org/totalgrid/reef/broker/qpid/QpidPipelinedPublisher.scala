@@ -0,0 +1,176 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.broker.qpid
+
+import scala.{ Option => ScalaOption }
+import java.util.concurrent.{ Callable, FutureTask, Executors, ScheduledExecutorService, ThreadFactory, TimeUnit }
+
+import org.apache.qpid.transport._
+import com.weiglewilczek.slf4s.Logging
+
+import org.totalgrid.reef.broker.BrokerDestination
+import org.totalgrid.reef.jmx.Metrics
+
+/**
+ * future handed to publishers that need to know when the broker has accepted everything they
+ * have published so far, completed by the next window sync.
+ */
+final class PublishConfirm extends FutureTask[java.lang.Boolean](new Callable[java.lang.Boolean] { def call: java.lang.Boolean = true }) {
+  @volatile private var error: ScalaOption[Throwable] = None
+
+  def confirmed() = set(true)
+  def failed(ex: Throwable) = {
+    error = Some(ex)
+    setException(ex)
+  }
+
+  def failure: ScalaOption[Throwable] = error
+}
+
+/**
+ * Publishes on a dedicated session without waiting for the broker to complete each transfer. The
+ * session is synced once syncWindow messages are in flight or every syncIntervalMilliseconds,
+ * whichever comes first, so publishers pay one broker round trip per window rather than per message.
+ * The round trip itself runs outside the publisher lock so other publishers can keep transferring
+ * while a sync is waiting on the broker.
+ *
+ * A failed sync doesn't throw into whichever publish happened to trigger it, it fails the window that
+ * was being synced. publish returns that window so each caller can find out if its own message was lost.
+ */
+final class QpidPipelinedPublisher(session: Session, ttlMilliseconds: Int, syncWindow: Int, syncIntervalMilliseconds: Long, metrics: Metrics)
+    extends Logging {
+
+  private var inFlight = 0
+  private var syncing = false
+  private var confirms = List.empty[PublishConfirm]
+  // completed by the sync that covers everything published since the last one
+  private var window = new PublishConfirm
+
+  // only one thread waits on the broker at a time, publishers never take this lock
+  private val syncLock = new Object
+
+  private val publishInFlight = metrics.gauge("publishInFlight")
+  private val publishSyncs = metrics.counter("publishSyncs")
+  private val publishWindowSize = metrics.average("publishWindowSize")
+  private val publishSyncTime = metrics.timer("publishSyncTime")
+
+  session.setAutoSync(false)
+
+  private val syncTimer: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+    def newThread(r: Runnable) = {
+      val t = new Thread(r, "qpid-publish-sync")
+      t.setDaemon(true)
+      t
+    }
+  })
+
+  syncTimer.scheduleWithFixedDelay(new Runnable {
+    def run() {
+      try {
+        if (!session.isClosing) sync()
+      } catch {
+        case ex: Exception => logger.warn("Error syncing pipelined publishes: " + ex.getMessage, ex)
+      }
+    }
+  }, syncIntervalMilliseconds, syncIntervalMilliseconds, TimeUnit.MILLISECONDS)
+
+  def isOpen = !session.isClosing
+
+  /**
+   * returns the window the message was published in, it fails if the sync covering it fails
+   */
+  def publish(exchange: String, key: String, b: Array[Byte], replyTo: ScalaOption[BrokerDestination]): PublishConfirm = {
+    val (published, windowFull) = synchronized {
+      QpidChannelOperations.transfer(session, exchange, key, b, replyTo, ttlMilliseconds)
+      inFlight += 1
+      publishInFlight(inFlight)
+      (window, inFlight >= syncWindow)
+    }
+    if (windowFull) sync()
+    published
+  }
+
+  /**
+   * returns a future that completes once everything published before this call has been accepted
+   * by the broker, does not block the caller
+   */
+  def confirm(): PublishConfirm = synchronized {
+    val c = new PublishConfirm
+    if (inFlight == 0 && !syncing) c.confirmed()
+    else confirms ::= c
+    c
+  }
+
+  /**
+   * blocks until everything published so far has been synced, failures are reported through the
+   * windows and confirms
+   */
+  def flush(): Unit = sync()
+
+  private def sync(): Unit = syncLock.synchronized {
+    // snapshot the window under the lock, the broker round trip happens without it
+    val (count, pending) = synchronized {
+      val snapshot = (inFlight, window :: confirms)
+      if (inFlight > 0) {
+        window = new PublishConfirm
+        confirms = Nil
+        inFlight = 0
+        syncing = true
+      }
+      snapshot
+    }
+    if (count > 0) {
+      publishWindowSize(count)
+      try {
+        publishSyncTime(QpidChannelOperations.sync(session))
+        publishSyncs(1)
+        (pending ::: finishSync()).foreach { _.confirmed() }
+      } catch {
+        case ex: Exception =>
+          logger.warn("Error syncing " + count + " pipelined publishes: " + ex.getMessage, ex)
+          (pending ::: finishSync()).foreach { _.failed(ex) }
+      }
+    }
+  }
+
+  /**
+   * confirms requested while the sync was running are covered by it unless more messages
+   * were published in the meantime, those wait for the next sync
+   */
+  private def finishSync(): List[PublishConfirm] = synchronized {
+    syncing = false
+    publishInFlight(inFlight)
+    if (inFlight == 0) {
+      val c = confirms
+      confirms = Nil
+      c
+    } else Nil
+  }
+
+  def close() {
+    syncTimer.shutdown()
+    val pending = synchronized {
+      val p = if (inFlight > 0) window :: confirms else confirms
+      confirms = Nil
+      p
+    }
+    pending.foreach { _.failed(new ChannelClosedException) }
+    QpidChannelOperations.close(session)
+  }
+}
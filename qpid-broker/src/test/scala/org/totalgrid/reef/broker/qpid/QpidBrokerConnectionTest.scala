@@ -110,5 +110,31 @@ class QpidBrokerConnectionTest extends BrokerConnectionTestBase {
       sub.close()
     }
   }
-}
 
+  test("Pipelined publishes are delivered and confirmed") {
+    val props = PropertyReader.readFromFile("../org.totalgrid.reef.test.cfg")
+    props.put("org.totalgrid.reef.amqp.publishSyncWindow", "50")
+    props.put("org.totalgrid.reef.amqp.publishSyncIntervalMilliseconds", "5")
+    val broker = new QpidBrokerConnectionFactory(new AmqpSettings(props)).connect.asInstanceOf[QpidBrokerConnection]
+    try {
+      val list = new SynchronizedList[Int]
+      val consumer = new BrokerMessageConsumer {
+        def onMessage(msg: BrokerMessage) = list.append(new String(msg.bytes).toInt)
+      }
+      val sub = broker.listen().start(consumer)
+      broker.declareExchange("test")
+      broker.bindQueue(sub.getQueue, "test", "pipelined", false)
+
+      // more messages than the window so we exercise both the count and timer syncs
+      val values = (1 to 120).toList
+      values.foreach { i => broker.publish("test", "pipelined", i.toString.getBytes, None) }
+      broker.confirm().get(defaultTimeout, java.util.concurrent.TimeUnit.MILLISECONDS) should equal(true)
+      broker.flush()
+
+      list shouldBecome values within (defaultTimeout)
+      sub.close()
+    } finally {
+      broker.disconnect()
+    }
+  }
+}
\ No newline at end of file
@@ -47,6 +47,14 @@ public interface EventPublishingService
      */
     Event publishEvent( Event event ) throws ReefServiceException;
 
+    /**
+     * publish a batch of custom built Event protos in a single request. The events are processed in one transaction
+     * with the same rules as publishEvent(Event), this is much cheaper than publishing them one at a time.
+     * @param events list of fully constructed event protos
+     * @return created Events in the same order as the request
+     */
+    List<Event> publishEvents( List<Event> events ) throws ReefServiceException;
+
     /**
      * publish the simplest type of event which has no interesting details
      * @param eventType string name of the event type, must match an EventConfig entry
@@ -131,6 +131,14 @@
  * }
  * 
  * 
+ * // Use EventBatch to publish many events in one request. All of the events are created in
+ * // a single transaction and the response contains the created events in the same order.
+ * //
+ * message EventBatch {
+ *   repeated Event  events  = 1 ;
+ * }
+ * 
+ * 
  * // Log level
  * //
  * enum Level {
@@ -142,9 +142,15 @@
  *     // if the limit stops us from getting all measurements we will keep
  *     // the newest measurements instead of the oldest ones.
  *     optional bool        keep_newest  = 5 [default = true]; 
+ *     // when sampling the range is split into limit time buckets (limit / 2 for EXTREMES)
  *     enum Sampling{
  *       NONE = 0;
+ *       // smallest and largest value in each bucket
  *       EXTREMES = 1;
+ *       // single measurement with the mean value and time of each bucket
+ *       AVERAGE = 2;
+ *       // largest-triangle-three-buckets, one representative measurement per bucket
+ *       LTTB = 3;
  *     }
  *     optional Sampling    sampling     = 6 [default = NONE];
  *     
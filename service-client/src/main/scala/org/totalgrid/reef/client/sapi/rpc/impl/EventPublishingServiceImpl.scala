@@ -18,11 +18,11 @@
  */
 package org.totalgrid.reef.client.sapi.rpc.impl
 
-import org.totalgrid.reef.client.service.proto.Events.Event
+import org.totalgrid.reef.client.service.proto.Events.{ Event, EventBatch }
 import org.totalgrid.reef.client.service.proto.Model.{ Entity, ReefUUID }
 import org.totalgrid.reef.client.operations.RestOperations
 
-//import scala.collection.JavaConversions._
+import scala.collection.JavaConversions._
 
 import org.totalgrid.reef.client.service.proto.Utils.{ AttributeList, Attribute }
 
@@ -36,6 +36,10 @@ trait EventPublishingServiceImpl extends UsesServiceOperations with EventPublish
     _.put(event).map(_.one)
   }
 
+  override def publishEvents(events: List[Event]) = ops.operation("Couldn't publish batch of " + events.size + " events") {
+    _.put(EventBatch.newBuilder.addAllEvents(events).build).map(_.one.map(_.getEventsList.toList))
+  }
+
   override def publishEvent(eventType: String, subsystem: String) = {
     ops.operation("Couldn't publish event with type: " + eventType) {
       makeNewEvent(_, eventType, subsystem, None, None, None)
@@ -40,6 +40,7 @@ object ReefServicesList {
 
     getEntry(Descriptors.event),
     getEntry(Descriptors.eventList),
+    getEntry(Descriptors.eventBatch),
     getEntry(Descriptors.eventConfig),
     getEntry(Descriptors.alarm),
     getEntry(Descriptors.alarmList),
@@ -208,6 +208,12 @@ object Descriptors {
     def getKlass = classOf[org.totalgrid.reef.client.service.proto.Events.EventList]
     def id = "event_list"
   }
+  def eventBatch() = new TypeDescriptor[org.totalgrid.reef.client.service.proto.Events.EventBatch] {
+    def serialize(typ: org.totalgrid.reef.client.service.proto.Events.EventBatch): Array[Byte] = typ.toByteArray
+    def deserialize(bytes: Array[Byte]) = org.totalgrid.reef.client.service.proto.Events.EventBatch.parseFrom(bytes)
+    def getKlass = classOf[org.totalgrid.reef.client.service.proto.Events.EventBatch]
+    def id = "event_batch"
+  }
   def log() = new TypeDescriptor[org.totalgrid.reef.client.service.proto.Events.Log] {
     def serialize(typ: org.totalgrid.reef.client.service.proto.Events.Log): Array[Byte] = typ.toByteArray
     def deserialize(bytes: Array[Byte]) = org.totalgrid.reef.client.service.proto.Events.Log.parseFrom(bytes)
@@ -251,6 +251,10 @@ object OptionalProtos {
     val select = new OptEventsEventSelect(optionally(_.hasSelect, _.getSelect))
     val events = optionally(_.getEventsList.toList.map { i => new OptEventsEvent(Some(i)) })
   }
+  implicit def proto2OptEventsEventBatch(a: org.totalgrid.reef.client.service.proto.Events.EventBatch): OptEventsEventBatch = new OptEventsEventBatch(Some(a))
+  class OptEventsEventBatch(real: Option[org.totalgrid.reef.client.service.proto.Events.EventBatch]) extends OptionalStruct(real) {
+    val events = optionally(_.getEventsList.toList.map { i => new OptEventsEvent(Some(i)) })
+  }
   implicit def proto2OptEventsLog(a: org.totalgrid.reef.client.service.proto.Events.Log): OptEventsLog = new OptEventsLog(Some(a))
   class OptEventsLog(real: Option[org.totalgrid.reef.client.service.proto.Events.Log]) extends OptionalStruct(real) {
     val time = optionally(_.getTime)
@@ -30,6 +30,7 @@ import org.totalgrid.reef.procstatus.ProcessHeartbeatActor
 import org.totalgrid.reef.client.sapi.rpc.AllScadaService
 import org.totalgrid.reef.persistence.squeryl.DbConnection
 import org.totalgrid.reef.client.Connection
+import org.totalgrid.reef.models.EntityGraphCache
 
 /**
  * gets other modules used by the services so can implemented via OSGI or directly
@@ -56,11 +57,13 @@ object ServiceFactory {
 
         measStore.connect()
 
+        EntityGraphCache.maxAgeMs = serviceOptions.entityGraphCacheMs
+
         val client = connection.createClient(authToken)
         val services = client.getService(classOf[AllScadaService])
         val heartbeater = new ProcessHeartbeatActor(services, appConfig.getHeartbeatCfg, exe)
         val providers = new ServiceProviders(dbConnection, connection, measStore, serviceOptions,
-          new SqlAuthzService(), authToken, exe)
+          new SqlAuthzService(serviceOptions.authTokenCacheMs), authToken, exe)
 
         val serviceContext = new ServiceContext(connection, exe)
 
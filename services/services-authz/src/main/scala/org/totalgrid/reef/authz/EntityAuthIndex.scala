@@ -0,0 +1,123 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.authz
+
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.totalgrid.reef.models.ApplicationSchema
+import org.squeryl.PrimitiveTypeMode._
+import org.squeryl.Session
+
+/**
+ * what the resource selectors need to know about an entity: its name, its types and the names of all of
+ * the entities that own it (directly or indirectly)
+ */
+case class EntityAuthInfo(name: String, types: Set[String], owners: Set[String], loadedAt: Long)
+
+object AuthzEntityIndex extends EntityAuthIndex(60000)
+
+/**
+ * In-process index of the entity data used by the resource dependent selectors so checking a large request
+ * is a hash lookup per uuid rather than a query per selector. Entities are loaded on first use, in batches,
+ * and dropped again by the entity and edge models whenever they change. Entries are also reloaded after
+ * maxAgeMs so changes made through other service nodes are picked up.
+ *
+ * A transaction that has modified entities or edges can see rows nobody else can yet, and might still roll
+ * back, so its lookups go straight to the database and are not cached.
+ */
+class EntityAuthIndex(maxAgeMs: Long) {
+
+  private val entries = new ConcurrentHashMap[UUID, EntityAuthInfo]
+  private val generation = new AtomicLong(0)
+
+  private val modifyingSession = new ThreadLocal[AnyRef]
+
+  // keep the "in" clauses to a size every database handles well
+  private val batchSize = 1000
+
+  /**
+   * returns the info for every uuid that is an entity, must be called inside a transaction if any of them
+   * need to be loaded
+   */
+  def lookup(uuids: Seq[UUID]): Map[UUID, EntityAuthInfo] = {
+    val now = System.currentTimeMillis
+    if (Session.hasCurrentSession && (modifyingSession.get eq Session.currentSession)) return load(uuids.distinct.toList, now, false)
+
+    val cached = uuids.distinct.map(u => u -> Option(entries.get(u)).filter(now - _.loadedAt < maxAgeMs))
+    val missing = cached.filter(_._2.isEmpty).map(_._1)
+
+    val found = cached.flatMap { case (u, info) => info.map(u -> _) }.toMap
+
+    if (missing.isEmpty) found else found ++ load(missing.toList, now, true)
+  }
+
+  def get(uuid: UUID): Option[EntityAuthInfo] = lookup(List(uuid)).get(uuid)
+
+  /**
+   * drops the entities, must be called whenever an entity, its types or its edges change
+   */
+  def invalidate(uuids: List[UUID]) {
+    if (Session.hasCurrentSession) modifyingSession.set(Session.currentSession)
+    generation.incrementAndGet()
+    uuids.foreach(entries.remove(_))
+  }
+
+  def invalidateAll() {
+    generation.incrementAndGet()
+    entries.clear()
+  }
+
+  def size = entries.size
+
+  private def load(uuids: List[UUID], now: Long, cache: Boolean): Map[UUID, EntityAuthInfo] = {
+    val startGeneration = generation.get
+
+    val loaded = uuids.grouped(batchSize).map { batch =>
+
+      val names = from(ApplicationSchema.entities)(sql =>
+        where(sql.id in batch)
+          select (sql.id, sql.name)).toList
+
+      val types = from(ApplicationSchema.entityTypes)(sql =>
+        where(sql.entityId in batch)
+          select (sql.entityId, sql.entType)).toList.groupBy(_._1)
+
+      val owners = from(ApplicationSchema.entities, ApplicationSchema.edges)((parent, edge) =>
+        where((edge.childId in batch) and (parent.id === edge.parentId) and (edge.relationship === "owns"))
+          select (edge.childId, parent.name)).toList.groupBy(_._1)
+
+      names.map {
+        case (uuid, name) =>
+          uuid -> EntityAuthInfo(name,
+            types.get(uuid).map(_.map(_._2).toSet).getOrElse(Set.empty),
+            owners.get(uuid).map(_.map(_._2).toSet).getOrElse(Set.empty),
+            now)
+      }
+    }.flatten.toMap
+
+    if (cache) {
+      loaded.foreach { case (uuid, info) => entries.put(uuid, info) }
+      // an entity changed while we were loading, we can't tell which of ours are stale
+      if (generation.get != startGeneration) loaded.keys.foreach(entries.remove(_))
+    }
+
+    loaded
+  }
+}
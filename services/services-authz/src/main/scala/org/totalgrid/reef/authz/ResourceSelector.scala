@@ -49,22 +49,31 @@ class WildcardMatcher extends ResourceSelector {
   }
 }
 
-class EntityTypeIncludes(types: List[String]) extends ResourceSelector {
+/**
+ * the resource dependent selectors check entities against the EntityAuthIndex so each uuid is a hash lookup
+ */
+abstract class IndexedSelector(index: EntityAuthIndex) extends ResourceSelector {
   val allow = true
   val resourceDependent = true
 
-  def includes(uuids: List[UUID]): List[Option[Boolean]] = {
-    val entitiesWithType = from(ApplicationSchema.entityTypes)(sql =>
-      where((sql.entType in types) and (sql.entityId in uuids))
-        select (sql.entityId)).toList
+  protected def matches(info: EntityAuthInfo): Boolean
 
+  def includes(uuids: List[UUID]): List[Option[Boolean]] = {
+    val infos = index.lookup(uuids)
     uuids.map { x =>
-      entitiesWithType.find(_ == x) match {
-        case Some(ent) => Some(true)
-        case None => None
+      infos.get(x) match {
+        case Some(info) if matches(info) => Some(true)
+        case _ => None
       }
     }
   }
+}
+
+class EntityTypeIncludes(types: List[String], index: EntityAuthIndex = AuthzEntityIndex) extends IndexedSelector(index) {
+
+  private val typeSet = types.toSet
+
+  protected def matches(info: EntityAuthInfo) = info.types.exists(typeSet.contains(_))
   override def toString() = "entity.types include " + types.mkString("(", ",", ")")
 
   override def selector() = {
@@ -74,22 +83,11 @@ class EntityTypeIncludes(types: List[String]) extends ResourceSelector {
   }
 }
 
-class EntityHasName(names: List[String]) extends ResourceSelector {
-  val allow = true
-  val resourceDependent = true
+class EntityHasName(names: List[String], index: EntityAuthIndex = AuthzEntityIndex) extends IndexedSelector(index) {
 
-  def includes(uuids: List[UUID]) = {
-    val entityWithName = from(ApplicationSchema.entities)(sql =>
-      where((sql.name in names) and (sql.id in uuids))
-        select (sql.id)).toList
+  private val nameSet = names.toSet
 
-    uuids.map { x =>
-      entityWithName.find(_ == x) match {
-        case Some(ent) => Some(true)
-        case None => None
-      }
-    }
-  }
+  protected def matches(info: EntityAuthInfo) = nameSet.contains(info.name)
 
   override def toString() = "entity.name is " + names.mkString("(", ",", ")")
 
@@ -100,27 +98,12 @@ class EntityHasName(names: List[String]) extends ResourceSelector {
   }
 }
 
-class EntityParentIncludes(parentNames: List[String]) extends ResourceSelector {
-  val allow = true
-  val resourceDependent = true
+class EntityParentIncludes(parentNames: List[String], index: EntityAuthIndex = AuthzEntityIndex) extends IndexedSelector(index) {
 
-  def includes(uuids: List[UUID]): List[Option[Boolean]] = {
-    val matching = from(ApplicationSchema.entities, ApplicationSchema.edges, ApplicationSchema.entities)((parent, edge, child) =>
-      where(
-        (parent.name in parentNames) and (child.id in uuids)
-          and ((child.name in parentNames)
-            or ((parent.id === edge.parentId)
-              and (child.id === edge.childId)
-              and (edge.relationship === "owns"))))
-        select (child.id)).toList
+  private val parentSet = parentNames.toSet
 
-    uuids.map { x =>
-      matching.find(_ == x) match {
-        case Some(ent) => Some(true)
-        case None => None
-      }
-    }
-  }
+  // an entity is considered its own parent, same as the selector query
+  protected def matches(info: EntityAuthInfo) = parentSet.contains(info.name) || info.owners.exists(parentSet.contains(_))
   override def toString() = "entity.parents include " + parentNames.mkString("(", ",", ")")
 
   override def selector() = {
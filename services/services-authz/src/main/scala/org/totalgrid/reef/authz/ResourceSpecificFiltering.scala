@@ -33,6 +33,9 @@ object ResourceSpecificFilter extends ResourceSpecificFiltering {
   def resourceSpecificFiltering[A](applicablePermissions: List[Permission], service: String, action: String, pairs: List[(A, List[UUID])]): List[FilteredResult[A]] = {
     val originalStates = pairs.map { case (payload, uuids) => SelectState[A](payload, uuids, None) }
 
+    // load any entities we haven't seen in one pass rather than as each selector asks for them
+    if (applicablePermissions.exists(_.resourceDependent)) AuthzEntityIndex.lookup(pairs.map { _._2 }.flatten)
+
     val finalStates = applicablePermissions.foldLeft(originalStates) {
       case (states, permission) =>
         permission.checkMatches(states)
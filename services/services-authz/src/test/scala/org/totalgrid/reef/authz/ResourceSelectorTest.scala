@@ -138,6 +138,59 @@ class ResourceSelectorTest extends AuthzTestBase {
     checkSelector(matcher3, uuids, List(None, None, None, None))
   }
 
+  test("Index picks up new parents after invalidate") {
+    val uuids = defineEntities(List(TestEntity("parent", Nil), TestEntity("child", List("Point"))))
+    val index = new EntityAuthIndex(60000)
+
+    val matcher = new EntityParentIncludes(List("parent"), index)
+    matcher.includes(uuids) should equal(List(Some(true), None))
+
+    defineEdges(List(new EntityEdge(uuids(0), uuids(1), "owns", 1)))
+
+    // still the stale answer until the models tell the index
+    matcher.includes(uuids) should equal(List(Some(true), None))
+
+    index.invalidate(List(uuids(1)))
+    matcher.includes(uuids) should equal(List(Some(true), Some(true)))
+  }
+
+  test("Index doesn't cache lookups from a transaction that changed entities") {
+    val uuids = defineEntities(List(TestEntity("parent", Nil), TestEntity("child", List("Point"))))
+    val index = new EntityAuthIndex(60000)
+    val matcher = new EntityParentIncludes(List("parent"), index)
+
+    // the models invalidate the entities they change, this transaction might still roll back
+    defineEdges(List(new EntityEdge(uuids(0), uuids(1), "owns", 1)))
+    index.invalidate(List(uuids(1)))
+
+    matcher.includes(uuids) should equal(List(Some(true), Some(true)))
+    index.size should equal(0)
+  }
+
+  ignore("Filter 10k entities") {
+    val parents = defineEntities((1 to 100).map { i => TestEntity("Equipment" + i, List("Equipment")) }.toList)
+    val children = parents.zipWithIndex.map {
+      case (parent, p) =>
+        val uuids = defineEntities((1 to 100).map { i => TestEntity("Point" + p + "_" + i, List("Point")) }.toList)
+        defineEdges(uuids.map { new EntityEdge(parent, _, "owns", 1) })
+        uuids
+    }.flatten
+
+    val permissions = List(
+      new Permission(true, List("*"), List("read"), new EntityParentIncludes((1 to 50).map { "Equipment" + _ }.toList)),
+      new Permission(true, List("*"), List("read"), new EntityTypeIncludes(List("Equipment"))))
+
+    val pairs = children.map { u => (u, List(u)) }
+
+    (1 to 5).foreach { run =>
+      val start = System.nanoTime
+      val results = ResourceSpecificFilter.resourceSpecificFiltering(permissions, "point", "read", pairs)
+      val elapsed = (System.nanoTime - start) / 1000000
+      results.count(_.isAllowed) should equal(5000)
+      println("Run " + run + " filtered " + pairs.size + " entities in " + elapsed + "ms")
+    }
+  }
+
   import org.squeryl.PrimitiveTypeMode._
   private def checkSelector(matcher: ResourceSelector, uuids: List[UUID], expected: List[Option[Boolean]]) = {
 
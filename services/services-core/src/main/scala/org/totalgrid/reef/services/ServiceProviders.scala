@@ -34,6 +34,7 @@ import org.totalgrid.reef.client.Connection
 import org.totalgrid.reef.persistence.squeryl.DbConnection
 import net.agileautomata.executor4s.Executor
 import org.totalgrid.reef.jmx.MetricsManager
+import org.totalgrid.reef.models.EventIngestCache
 
 /**
  * list of all of the service providers in the system
@@ -56,7 +57,7 @@ class ServiceProviders(
 
   private val contextSource = new DependenciesSource(dependencies)
 
-  private val modelFac = new ModelFactories(cm, contextSource)
+  private val modelFac = new ModelFactories(cm, contextSource, serviceConfiguration.batchedEventNotifications)
 
   // we have to fill in the event model after constructing the event service to break the circular
   // dependency on ServiceDepenedencies, should clear up once we OSGI the services
@@ -65,6 +66,9 @@ class ServiceProviders(
   private val wrappedDb = new RTDatabaseMetrics(cm, metricsMgr.metrics("RTDatabase"))
   private val wrappedHistorian = new HistorianMetrics(cm, metricsMgr.metrics("Historian"))
 
+  EventIngestCache.maxAgeMs = serviceConfiguration.eventConfigCacheMs
+  EventIngestCache.listener = Some(new EventIngestCacheMetrics(metricsMgr.metrics("EventIngestCache")))
+
   private val serviceProviders: List[ServiceEntryPoint[_ <: AnyRef]] = List(
     new SimpleAuthRequestService(modelFac.authTokens),
     new AuthTokenService(modelFac.authTokens),
@@ -102,6 +106,7 @@ class ServiceProviders(
     new EventConfigService(modelFac.eventConfig),
     new CalculationConfigService(modelFac.calculations),
     new EventService(modelFac.events),
+    new EventBatchService(modelFac.events),
     new AlarmService(modelFac.alarms),
     new AuthFilterService,
     new CommandHandlerBindingService,
@@ -100,6 +100,7 @@ class AgentServiceModel
     val passwordResults = if (changingPassword) {
       context.auth.authorize(context, "agent_password", "update", List(existing.entityId))
       validatePassword(req.getPassword)
+      invalidateTokens(context, existing)
       update(context, existing.copyWithUpdatedPassword(req.getPassword), existing)
     } else {
       (existing, false)
@@ -108,6 +109,8 @@ class AgentServiceModel
       context.auth.authorize(context, "agent_roles", "update", List(existing.entityId))
       added.foreach { p => ApplicationSchema.agentSetJoins.insert(new AgentPermissionSetJoin(p.id, existing.id)) }
       ApplicationSchema.agentSetJoins.deleteWhere(join => join.permissionSetId in removed.map { _.id } and join.agentId === existing.id)
+      // cached token lookups still carry the old permission sets
+      invalidateTokens(context, existing)
 
       onUpdated(context, existing)
       (existing, true)
@@ -124,9 +127,14 @@ class AgentServiceModel
 
     if (entry.authTokens.value.size > 0) {
       ApplicationSchema.authTokens.deleteWhere(at => at.id in entry.authTokens.value.map(_.id))
+      invalidateTokens(context, entry)
     }
   }
 
+  private def invalidateTokens(context: RequestContext, agent: AgentModel) {
+    agent.authTokens.value.foreach(t => context.auth.invalidateTokenCache(context, Some(t.token)))
+  }
+
   override def postDelete(context: RequestContext, entry: AgentModel) {
     entityModel.delete(context, entry.entity.value)
   }
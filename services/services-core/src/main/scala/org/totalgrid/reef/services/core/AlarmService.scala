@@ -106,6 +106,22 @@ class AlarmServiceModel
     create(context, alarm)
   }
 
+  /**
+   * creates the alarms for a batch of already inserted events, the rows are written in a single batch
+   * and the notifications are grouped by routing key
+   */
+  def createAlarmsForEvents(context: RequestContext, events: List[(EventStore, Int)]): List[AlarmModel] = {
+    val alarms = events.map {
+      case (eventStore, alarmState) =>
+        val alarm = new AlarmModel(alarmState, eventStore.id)
+        alarm.event.value = eventStore
+        alarm
+    }
+    EventBatchInserts.insertAlarms(alarms)
+    queueCreatedEvents(context, alarms)
+    alarms
+  }
+
   // Update an Alarm. Currently, only the state can be updated.
   // Enforce valid state transitions.
   //
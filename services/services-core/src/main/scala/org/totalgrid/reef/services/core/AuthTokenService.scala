@@ -197,6 +197,8 @@ class AuthTokenServiceModel
     entry.expirationTime = -1
     table.update(entry)
 
+    context.auth.invalidateTokenCache(context, Some(entry.token))
+
     postSystemEvent(context, EventType.System.UserLogout, userId = Some(entry.agent.value.entityName))
 
     onUpdated(context, entry)
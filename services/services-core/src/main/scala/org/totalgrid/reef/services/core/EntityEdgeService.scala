@@ -163,8 +163,15 @@ class EntityEdgeServiceModel
     false
   }
 
+  // every derived edge is created and deleted through the model so this catches all of the affected entities
+  override protected def postCreate(context: RequestContext, entry: EntityEdge) {
+    EntityService.invalidateCaches(context, List(entry.parentId, entry.childId))
+  }
+
   override protected def postDelete(context: RequestContext, previous: EntityEdge) {
 
+    EntityService.invalidateCaches(context, List(previous.parentId, previous.childId))
+
     val derivedIds = ApplicationSchema.derivedEdges.where(_.edgeId === previous.id).map(_.parentEdgeId)
 
     ApplicationSchema.derivedEdges.deleteWhere(_.edgeId === previous.id)
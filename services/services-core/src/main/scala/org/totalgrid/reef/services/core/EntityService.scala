@@ -30,6 +30,7 @@ import org.totalgrid.reef.models._
 import org.totalgrid.reef.client.exception.{ ReefServiceException, BadRequestException }
 import org.squeryl.dsl.ast.{ RightHandSideOfIn, BinaryOperatorNodeLogicalBoolean, ExpressionNode }
 import org.totalgrid.reef.client.operations.scl.ScalaRequestHeaders._
+import org.totalgrid.reef.authz.AuthzEntityIndex
 
 object EntityService {
   def seed() {
@@ -60,6 +61,19 @@ object EntityService {
   val wellKnownTypes = List("Site", "Region", "Equipment", "EquipmentGroup", "Root")
 
   val allKnownTypes = builtInTypes ::: wellKnownTypes
+
+  /**
+   * drop the entities from the authz index and graph cache now and again once the transaction is committed
+   * so a concurrent request can't cache the pre-commit types or edges
+   */
+  def invalidateCaches(context: RequestContext, ids: List[UUID]) {
+    AuthzEntityIndex.invalidate(ids)
+    EntityGraphCache.invalidate(ids)
+    context.operationBuffer.queuePostTransaction {
+      AuthzEntityIndex.invalidate(ids)
+      EntityGraphCache.invalidate(ids)
+    }
+  }
 }
 
 class EntityService(protected val model: EntityServiceModel)
@@ -109,6 +123,7 @@ class EntityServiceModel
 
     if (!removeTypes.isEmpty) {
       val ent = removeTypesFromEntity(entity, removeTypes)
+      EntityService.invalidateCaches(context, List(ent.id))
       onUpdated(context, ent)
       ent
     } else {
@@ -121,6 +136,7 @@ class EntityServiceModel
 
     if (!additionalTypes.isEmpty) {
       val ent = addTypesToEntity(entity, additionalTypes)
+      EntityService.invalidateCaches(context, List(ent.id))
       onUpdated(context, ent)
       ent
     } else {
@@ -205,6 +221,7 @@ class EntityServiceModel
 
     if (!additionalTypes.isEmpty) {
       val ent = addTypesToEntity(existing, additionalTypes)
+      EntityService.invalidateCaches(context, List(ent.id))
       onUpdated(context, ent)
       (ent, true)
     } else {
@@ -283,5 +300,6 @@ class EntityServiceModel
 
     ApplicationSchema.entityAttributes.deleteWhere(et => et.entityId === previous.id)
     ApplicationSchema.entityTypes.deleteWhere(et => et.entityId === previous.id)
+    EntityService.invalidateCaches(context, List(previous.id))
   }
 }
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.services.core
+
+import org.totalgrid.reef.services.framework.SimpleServiceBehaviors.SimplePut
+import org.totalgrid.reef.services.framework.{ RequestContext, ServiceEntryPoint }
+import org.totalgrid.reef.client.types.TypeDescriptor
+import org.totalgrid.reef.client.service.proto.Events.EventBatch
+import org.totalgrid.reef.client.service.proto.Descriptors
+import org.totalgrid.reef.client.exception.BadRequestException
+
+import scala.collection.JavaConversions._
+
+/**
+ * accepts many events in a single request, they are processed in one transaction using the same
+ * configuration rules as the EventService and the created events are returned in request order.
+ */
+class EventBatchService(model: EventServiceModel) extends ServiceEntryPoint[EventBatch] with SimplePut {
+
+  val descriptor: TypeDescriptor[EventBatch] = Descriptors.eventBatch
+
+  def doPut(context: RequestContext, req: EventBatch): EventBatch = {
+
+    if (req.getEventsCount == 0) throw new BadRequestException("Must include at least one event")
+
+    val now = System.currentTimeMillis
+    // same as EventService.preCreate, clear any user given userId so we apply the auth token name
+    val events = req.getEventsList.toList.map { _.toBuilder.clearUserId().setTime(now).build }
+
+    val created = model.createFromProtos(context, events)
+
+    context.auth.authorize(context, Descriptors.event.id, "create", model.relatedEntities(created))
+
+    EventBatch.newBuilder.addAllEvents(created.map(model.convertToProto(_))).build
+  }
+}
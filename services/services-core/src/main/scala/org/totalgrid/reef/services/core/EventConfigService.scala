@@ -31,7 +31,7 @@ import org.totalgrid.reef.client.exception.BadRequestException
 import org.totalgrid.reef.client.sapi.client.BasicRequestHeaders
 import org.squeryl.Query
 import java.util.UUID
-import org.totalgrid.reef.models.{ Command, ApplicationSchema, EventConfigStore }
+import org.totalgrid.reef.models.{ Command, ApplicationSchema, EventConfigStore, EventIngestCache, EventTypeProperties }
 import org.totalgrid.reef.authz.VisibilityMap
 
 // implicit proto properties
@@ -87,6 +87,7 @@ object EventConfigService {
     val toInsert = needed.map { eventConfigs(_) }.toList
 
     ApplicationSchema.eventConfigs.insert(toInsert)
+    EventIngestCache.invalidateAll()
   }
 }
 
@@ -142,6 +143,36 @@ class EventConfigServiceModel
     result.headOption getOrElse (1, EventConfig.Designation.ALARM.getNumber, Alarm.State.UNACK_SILENT.getNumber, "")
   }
 
+  /**
+   * same as getProperties but answered from the EventIngestCache when we have looked the type up recently
+   */
+  def getCachedProperties(eventType: String): EventTypeProperties = {
+    EventIngestCache.properties(eventType) {
+      val (severity, designation, alarmState, resource) = getProperties(eventType)
+      EventTypeProperties(severity, designation, alarmState, resource)
+    }
+  }
+
+  override protected def postCreate(context: RequestContext, entry: EventConfigStore) {
+    invalidateCache(context, entry.eventType)
+  }
+
+  override protected def postUpdate(context: RequestContext, entry: EventConfigStore, previous: EventConfigStore) {
+    invalidateCache(context, entry.eventType)
+  }
+
+  override protected def postDelete(context: RequestContext, previous: EventConfigStore) {
+    invalidateCache(context, previous.eventType)
+  }
+
+  // drop it again once the transaction is done in case another request reloaded the old row in the meantime
+  private def invalidateCache(context: RequestContext, eventType: String) {
+    EventIngestCache.invalidate(eventType)
+    context.operationBuffer.queuePostTransaction {
+      EventIngestCache.invalidate(eventType)
+    }
+  }
+
   override def updateModelEntry(context: RequestContext, proto: EventConfig, existing: EventConfigStore): EventConfigStore = {
     createModelEntry(context, proto, existing.builtIn)
   }
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.services.core
+
+import org.totalgrid.reef.jmx.Metrics
+import org.totalgrid.reef.models.EventIngestCacheListener
+
+/**
+ * publishes the EventIngestCache hit and miss counts, the HitRate values are the percentage of hits over
+ * the recent lookups
+ */
+class EventIngestCacheMetrics(metrics: Metrics) extends EventIngestCacheListener {
+  private val configHits = metrics.counter("ConfigHits")
+  private val configMisses = metrics.counter("ConfigMisses")
+  private val configHitRate = metrics.average("ConfigHitRate")
+  private val routingHits = metrics.counter("RoutingHits")
+  private val routingMisses = metrics.counter("RoutingMisses")
+  private val routingHitRate = metrics.average("RoutingHitRate")
+
+  def configLookup(hit: Boolean) {
+    if (hit) configHits(1) else configMisses(1)
+    configHitRate(if (hit) 100 else 0)
+  }
+
+  def routingLookup(hit: Boolean) {
+    if (hit) routingHits(1) else routingMisses(1)
+    routingHitRate(if (hit) 100 else 0)
+  }
+}
@@ -23,6 +23,7 @@ import org.totalgrid.reef.client.service.proto.Events._
 import org.totalgrid.reef.services.framework._
 
 import org.totalgrid.reef.client.service.proto.Utils.{ AttributeList => AttributeListProto }
+import org.totalgrid.reef.client.service.proto.Model.{ Entity => EntityProto }
 import org.squeryl.dsl.QueryYield
 import org.squeryl.dsl.ast.OrderByArg
 import org.squeryl.dsl.fsm.{ SelectState }
@@ -103,9 +104,7 @@ class EventServiceModel(eventConfig: EventConfigServiceModel, alarmServiceModel:
         // to the user that the message wasn't saved to the database
         (createModelEntry(request, false, severity, entity, renderedMessage, userId), None)
 
-      case _ =>
-        throw new BadRequestException("Unknown designation (i.e. ALARM, EVENT, LOG): '" + designation + "' for EventType: '" + request.getEventType +
-          "'", Envelope.Status.INTERNAL_ERROR)
+      case _ => throw unknownDesignation(designation, request)
     }
     // we log all events regardless of designation
     log(eventStore)
@@ -113,6 +112,11 @@ class EventServiceModel(eventConfig: EventConfigServiceModel, alarmServiceModel:
     (eventStore, alarm)
   }
 
+  private def unknownDesignation(designation: Int, request: Event) = {
+    new BadRequestException("Unknown designation (i.e. ALARM, EVENT, LOG): '" + designation + "' for EventType: '" + request.getEventType +
+      "'", Envelope.Status.INTERNAL_ERROR)
+  }
+
   def validateEventProto(request: Event) {
     if (!request.hasEventType) throw new BadRequestException("invalid event: " + request + ", EventType must be set")
     if (!request.hasTime) throw new BadRequestException("invalid event: " + request + ", Time must be set")
@@ -131,16 +135,65 @@ class EventServiceModel(eventConfig: EventConfigServiceModel, alarmServiceModel:
       request.getUserId
     }
 
-    val (severity, designation, alarmState, resource) = eventConfig.getProperties(request.getEventType)
-    val renderedMessage = renderEventMessage(request, resource)
+    val props = eventConfig.getCachedProperties(request.getEventType)
+    val renderedMessage = renderEventMessage(request, props.resource)
 
     // if the raw event had the entity filled out try to find that entity
-    val entity = request.entity.map(EntityQuery.findEntity(_)).getOrElse(None)
+    val entity = request.entity.map(findEventEntity(_)).getOrElse(None)
 
-    val (eventStore, alarmOption) = makeEvent(context, designation, request, severity, entity, renderedMessage, userId, alarmState)
+    val (eventStore, alarmOption) = makeEvent(context, props.designation, request, props.severity, entity, renderedMessage, userId, props.alarmState)
     eventStore
   }
 
+  /**
+   * Processes a batch of raw events in one pass, the same way as createFromProto, but the events and alarms are
+   * inserted with one batched statement each and the notifications are published grouped by routing key.
+   * Returns the stored (or for LOGs unsaved) events in request order.
+   */
+  def createFromProtos(context: RequestContext, requests: List[Event]): List[EventStore] = {
+
+    requests.foreach(validateEventProto(_))
+
+    lazy val agentName = context.agent.entityName
+
+    val entries = requests.map { request =>
+      val userId = if (!request.hasUserId) agentName else request.getUserId
+
+      val props = eventConfig.getCachedProperties(request.getEventType)
+      val renderedMessage = renderEventMessage(request, props.resource)
+      val entity = request.entity.map(findEventEntity(_)).getOrElse(None)
+
+      val isAlarm = props.designation match {
+        case EventConfigStore.ALARM => true
+        case EventConfigStore.EVENT | EventConfigStore.LOG => false
+        case _ => throw unknownDesignation(props.designation, request)
+      }
+
+      (createModelEntry(request, isAlarm, props.severity, entity, renderedMessage, userId), props)
+    }
+
+    val stored = entries.filter(_._2.designation != EventConfigStore.LOG).map(_._1)
+    EventBatchInserts.insertEvents(stored)
+    queueCreatedEvents(context, stored)
+
+    val alarms = entries.filter(_._2.designation == EventConfigStore.ALARM).map { case (e, props) => (e, props.alarmState) }
+    alarmServiceModel.createAlarmsForEvents(context, alarms)
+
+    // we log all events regardless of designation
+    entries.foreach { case (e, _) => log(e) }
+
+    entries.map(_._1)
+  }
+
+  private def findEventEntity(proto: EntityProto): Option[Entity] = {
+    if (proto.hasUuid && EntityGraphCache.usable) {
+      val id = UUID.fromString(proto.getUuid.getValue)
+      EntityGraphCache.entities(List(id)).get(id).map(_.toEntity)
+    } else {
+      EntityQuery.findEntity(proto)
+    }
+  }
+
   def log(event: EventStore) {
     val eventStringParts = "severity: " :: event.severity ::
       ", type: " :: event.eventType ::
@@ -203,9 +256,11 @@ trait EventConversion
     val proto = convertToProto(event)
     var simpleKey = getRoutingKey(proto) :: Nil
 
+    val (groups, equipments) = EventIngestCache.routingEntities(event)
+
     // publish the simple key last
-    val keys = event.groups.value.map { x => getRoutingKey(proto, x) } :::
-      event.equipments.value.map { x => getRoutingKey(proto, x) } ::: simpleKey
+    val keys = groups.map { x => getRoutingKey(proto, x) } :::
+      equipments.map { x => getRoutingKey(proto, x) } ::: simpleKey
 
     (proto, keys)
   }
@@ -68,15 +68,25 @@ class MeasurementHistoryService(cm: Historian)
     val keepNewest = req.getKeepNewest()
     val begin = req.getStartTime()
     val end = if (req.getEndTime() == 0) Long.MaxValue else req.getEndTime()
-    val limit = if (req.getSampling() == MeasurementHistory.Sampling.NONE) {
-      if (req.getLimit() == 0) HISTORY_LIMIT else req.getLimit()
-    } else {
-      HISTORY_LIMIT
-    }
+    val limit = if (req.getLimit() == 0) HISTORY_LIMIT else req.getLimit()
 
     if (limit > HISTORY_LIMIT)
       throw new BadRequestException("Maximum number of measurements available through this interface is " + HISTORY_LIMIT + ". Reduce limit parameter.")
 
+    val history = req.getSampling() match {
+      case MeasurementHistory.Sampling.NONE => readHistory(pointName, begin, end, limit, keepNewest)
+      case sampling => readSampled(pointName, begin, end, limit, sampling)
+    }
+
+    val b = MeasurementHistory.newBuilder(req)
+    history.foreach { m => b.addMeasurements(m) }
+    // allways set point_name (was required field before 0.4.8), remove in 0.5.0
+    b.setPointName(pointName)
+
+    b.build
+  }
+
+  private def readHistory(pointName: String, begin: Long, end: Long, limit: Int, keepNewest: Boolean): Seq[Measurement] = {
     // read values out of the historian
     var history = cm.getInRange(pointName, begin, end, limit, !keepNewest)
 
@@ -89,25 +99,21 @@ class MeasurementHistoryService(cm: Historian)
       }
     }
 
-    req.getSampling() match {
-      case MeasurementHistory.Sampling.NONE =>
-      case MeasurementHistory.Sampling.EXTREMES =>
-        history = sampleExtremes(history)
-    }
-
     // we need to flip the data, since we always return the data in ascending order
-    history = if (keepNewest) history.reverse else history
-
-    val b = MeasurementHistory.newBuilder(req)
-    history.foreach { m => b.addMeasurements(m) }
-    // allways set point_name (was required field before 0.4.8), remove in 0.5.0
-    b.setPointName(pointName)
-
-    b.build
+    if (keepNewest) history.reverse else history
   }
 
-  private def sampleExtremes(meases: Seq[Measurement]): Seq[Measurement] = {
-    // TODO: implement sampling routine
-    meases
+  /**
+   * the historian reduces the whole range to limit values (two per bucket for EXTREMES) so the
+   * result covers the full time range rather than just the newest or oldest part of it.
+   */
+  private def readSampled(pointName: String, begin: Long, end: Long, limit: Int, sampling: MeasurementHistory.Sampling): Seq[Measurement] = {
+    val buckets = if (sampling == MeasurementHistory.Sampling.EXTREMES) math.max(limit / 2, 1) else limit
+    val sampled = cm.getSampled(pointName, begin, end, buckets, sampling)
+
+    // include the value that was current at the start of the range
+    if (begin != 0 && sampled.size < limit) {
+      cm.getInRange(pointName, 0, begin - 1, 1, false).toList ::: sampled.toList
+    } else sampled
   }
-}
\ No newline at end of file
+}
@@ -23,7 +23,11 @@ import org.totalgrid.reef.services.coordinators.{ SingleThreadedMeasurementStrea
 import org.totalgrid.reef.services.{ DependenciesSource, ServiceDependencies }
 import org.totalgrid.reef.measurementstore.MeasurementStore
 
-class ModelFactories(measurementStore: MeasurementStore, contextSource: RequestContextSource) {
+/**
+ * @param batchedEventNotifications publish the events and alarms created by a single batch request that share
+ *                                  a routing key as one notification
+ */
+class ModelFactories(measurementStore: MeasurementStore, contextSource: RequestContextSource, batchedEventNotifications: Boolean = false) {
 
   def this(deps: ServiceDependencies) = this(deps.measurementStore, new DependenciesSource(deps))
 
@@ -64,6 +68,8 @@ class ModelFactories(measurementStore: MeasurementStore, contextSource: RequestC
   val eventConfig = new EventConfigServiceModel
   val events = new EventServiceModel(eventConfig, alarms)
   alarms.eventModel = Some(events)
+  alarms.batchCreatedEvents = batchedEventNotifications
+  events.batchCreatedEvents = batchedEventNotifications
 
   val authTokens = new AuthTokenServiceModel
   val agents = new AgentServiceModel
@@ -77,6 +77,7 @@ class PermissionSetServiceModel
     val previousProto = existing.proto
 
     if (previousProto != req) {
+      context.auth.invalidateTokenCache(context, None)
       update(context, existing.copy(protoData = req.toByteArray), existing)
     } else {
       (existing, false)
@@ -88,6 +89,7 @@ class PermissionSetServiceModel
   }
 
   override def postDelete(context: RequestContext, existing: PermissionSet) {
+    context.auth.invalidateTokenCache(context, None)
     entityModel.delete(context, existing.entity.value)
   }
 
@@ -44,14 +44,30 @@ import org.totalgrid.reef.client.service.proto.Utils
  */
 
 import org.totalgrid.reef.event.AttributeList
+import java.util.concurrent.ConcurrentHashMap
 
 object MessageFormatter {
 
+  // every event renders its resource string so we keep the parsed form of the ones we have seen,
+  // the same string always parses the same way so these never need to be invalidated
+  private val parsed = new ConcurrentHashMap[String, List[ResourceSegment]]
+  private val maxParsed = 1000
+
   /**
    * Render the resource string using the AttributeList.
    */
   def format(resource: String, alist: AttributeList): String =
-    parseResource(resource).map(_.apply(alist)).mkString("")
+    segments(resource).map(_.apply(alist)).mkString("")
+
+  private def segments(resource: String): List[ResourceSegment] = {
+    val cached = parsed.get(resource)
+    if (cached != null) cached
+    else {
+      val segs = parseResource(resource)
+      if (parsed.size < maxParsed) parsed.put(resource, segs)
+      segs
+    }
+  }
 
   /**
    * Return a list of ResourceSegment
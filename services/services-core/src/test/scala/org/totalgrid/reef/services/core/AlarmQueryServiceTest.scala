@@ -106,6 +106,8 @@ class AlarmQueryServiceTest extends DatabaseUsingTestBase with SyncServicesTestH
         ApplicationSchema.eventConfigs.deleteWhere(e => true === true)
         ecs.foreach(ApplicationSchema.eventConfigs.insert(_))
       }
+      // inserted without the model so it doesn't know to drop what it has cached
+      EventIngestCache.invalidateAll()
     }
 
     def seedMessages() {
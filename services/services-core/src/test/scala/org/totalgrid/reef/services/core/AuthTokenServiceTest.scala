@@ -354,22 +354,21 @@ class AuthTokenQueryingTest extends AuthSystemTestBase {
 @RunWith(classOf[JUnitRunner])
 class AuthTokenVerifierTest extends AuthSystemTestBase {
 
-  class AuthRequestContext extends RequestContext with HeadersContext {
+  class AuthRequestContext(val auth: SqlAuthzService) extends RequestContext with HeadersContext {
 
     def client = throw new Exception
     def serviceRegistration = throw new Exception
     def eventSink = throw new Exception
     def operationBuffer = throw new Exception
     def eventPublisher = throw new Exception
-    val auth = new SqlAuthzService()
   }
 
-  class AuthTester extends ServiceTypeIs[Verb] {
+  class AuthTester(auth: => SqlAuthzService = new SqlAuthzService()) extends ServiceTypeIs[Verb] {
 
     val componentId = "auth_tester"
 
     def request(verb: Verb, authToken: Option[String]) = {
-      val context = new AuthRequestContext
+      val context = new AuthRequestContext(auth)
       authToken.map { token => context.modifyHeaders { _.setAuthToken(token) } }
       context.auth.prepare(context)
       verb match {
@@ -429,6 +428,60 @@ class AuthTokenVerifierTest extends AuthSystemTestBase {
     }
   }
 
+  test("Cached token lookups are reused until invalidated") {
+    val fix = new AuthFixture
+    val auth = new SqlAuthzService(60000)
+    val tester = new AuthTester(auth)
+
+    val authToken = fix.login("guest", "guest")
+    tester.request(Verb.GET, Some(authToken.getToken))
+    auth.tokenCache.size should equal(1)
+
+    // revoked through services that aren't sharing this cache so the cached lookup is still used
+    fix.authService.delete(authToken).expectOne()
+    tester.request(Verb.GET, Some(authToken.getToken))
+
+    auth.tokenCache.invalidate(authToken.getToken)
+    intercept[UnauthorizedException] {
+      tester.request(Verb.GET, Some(authToken.getToken))
+    }
+  }
+
+  test("Changing an agent's permission sets invalidates its cached tokens") {
+    val fix = new AuthFixture
+    val auth = new SqlAuthzService(60000)
+    fix.contextSource.forwardTokenInvalidations(auth)
+    val tester = new AuthTester(auth)
+
+    def agent(permissionSet: String) = Agent.newBuilder.setName("Revoked").setPassword("password")
+      .addPermissionSets(PermissionSet.newBuilder.setName(permissionSet)).build
+
+    fix.agentService.put(agent("all")).expectOne()
+    val authToken = fix.login("Revoked", "password")
+    tester.request(Verb.PUT, Some(authToken.getToken))
+    auth.tokenCache.size should equal(1)
+
+    fix.agentService.put(agent("read_only")).expectOne()
+    auth.tokenCache.size should equal(0)
+    intercept[UnauthorizedException] {
+      tester.request(Verb.PUT, Some(authToken.getToken))
+    }
+  }
+
+  test("Changing an agent's password invalidates its cached tokens") {
+    val fix = new AuthFixture
+    val auth = new SqlAuthzService(60000)
+    fix.contextSource.forwardTokenInvalidations(auth)
+    val tester = new AuthTester(auth)
+
+    val authToken = fix.login("guest", "guest")
+    tester.request(Verb.GET, Some(authToken.getToken))
+    auth.tokenCache.size should equal(1)
+
+    fix.agentService.put(Agent.newBuilder.setName("guest").setPassword("newPassword").build).expectOne()
+    auth.tokenCache.size should equal(0)
+  }
+
   // TODO: re-enable multiple auth tokens?
   //  test("Put w/ Access => OK") {
   //    val fix = new AuthFixture
@@ -31,7 +31,7 @@ import org.totalgrid.reef.client.service.entity.EntityRelation
 import org.totalgrid.reef.client.sapi.rpc.impl.builders.EntityRequestBuilders
 import org.totalgrid.reef.services.SilentRequestContext
 import org.totalgrid.reef.models._
-import org.squeryl.dsl.ast.ExpressionNode
+import org.squeryl.dsl.ast.{ ExpressionNode, BinaryOperatorNodeLogicalBoolean, RightHandSideOfIn }
 
 object EntityTestSeed {
 
@@ -604,6 +604,113 @@ class EntityQueriesTest extends DatabaseUsingTestNotTransactionSafe with RunTest
     }
   }*/
 
+  def withGraphCache[A](maxAgeMs: Long)(fun: => A): A = {
+    val original = EntityGraphCache.maxAgeMs
+    EntityGraphCache.maxAgeMs = maxAgeMs
+    try {
+      fun
+    } finally {
+      EntityGraphCache.maxAgeMs = original
+    }
+  }
+
+  def deepQuery = EntityProto.newBuilder
+    .setName("RegA")
+    .addRelations(
+      Relationship.newBuilder
+        .setRelationship("owns")
+        .setDescendantOf(true)
+        .setDistance(1)
+        .addEntities(
+          EntityProto.newBuilder
+            .addTypes("Substation")
+            .addRelations(Relationship.newBuilder
+              .setRelationship("owns")
+              .setDescendantOf(true)
+              .addEntities(EntityProto.newBuilder.addTypes("Point")))
+            .addRelations(Relationship.newBuilder
+              .setDescendantOf(true)
+              .setDistance(1)
+              .addEntities(EntityProto.newBuilder.addTypes("Breaker")
+                .addRelations(Relationship.newBuilder
+                  .setRelationship("refs")
+                  .setDescendantOf(true)))))).build
+
+  test("Graph cache gives same tree as database") {
+    val fromDb = withGraphCache(0) { protoTreeQuery(deepQuery).flatMap(parseResults(_)) }
+    val fromCache = withGraphCache(60000) {
+      // second query is answered entirely from the cache
+      protoTreeQuery(deepQuery)
+      protoTreeQuery(deepQuery).flatMap(parseResults(_))
+    }
+
+    fromDb.size should equal(18)
+    checkResults(fromCache, fromDb)
+  }
+
+  test("Graph cache applies selector to whole subtree") {
+    val hidden = from(ApplicationSchema.entities)(e => where(e.name === "RegA-SubA") select (e.id))
+    val selector = { uuid: ExpressionNode => new BinaryOperatorNodeLogicalBoolean(uuid, new RightHandSideOfIn(hidden), "not in", true) }
+
+    val fromDb = withGraphCache(0) { protoTreeQuery(deepQuery, selector).flatMap(parseResults(_)) }
+    val fromCache = withGraphCache(60000) { protoTreeQuery(deepQuery, selector).flatMap(parseResults(_)) }
+
+    fromDb.size should equal(9)
+    checkResults(fromCache, fromDb)
+  }
+
+  test("Graph cache sees new edges in same transaction") {
+    withGraphCache(60000) {
+      val req = EntityProto.newBuilder.setName("RegA-SubB-DeviceA")
+        .addRelations(Relationship.newBuilder.setRelationship("owns").setDescendantOf(true).setDistance(1)).build
+
+      protoTreeQuery(req).flatMap(parseResults(_)).size should equal(2)
+
+      val point = EntityTestSeed.addEntity("RegA-SubB-DeviceA-PointD", "Point")
+      val device = EntityQuery.findEntity(EntityProto.newBuilder.setName("RegA-SubB-DeviceA").build).get
+      EntityTestSeed.edgeModel.addEdge(EntityTestSeed.context, device, point, "owns")
+
+      protoTreeQuery(req).flatMap(parseResults(_)).size should equal(3)
+    }
+  }
+
+  ignore("Deep tree query performance") {
+    // edges are inserted directly (with their derived edges) since going through the model would
+    // keep this transaction from using the cache
+    def addOwned(parents: List[Entity], name: String, typ: String) = {
+      val ent = EntityTestSeed.addEntity(name, typ)
+      ApplicationSchema.edges.insert(parents.zipWithIndex.map { case (p, i) => new EntityEdge(p.id, ent.id, "owns", parents.size - i) })
+      ent
+    }
+    val root = EntityTestSeed.addEntity("PerfRoot", "Root")
+    (1 to 20).foreach { s =>
+      val sub = addOwned(List(root), "PerfSub" + s, "Substation")
+      (1 to 50).foreach { d =>
+        val dev = addOwned(List(root, sub), "PerfSub" + s + "Dev" + d, "Equipment")
+        (1 to 20).foreach { p =>
+          addOwned(List(root, sub, dev), "PerfSub" + s + "Dev" + d + "Point" + p, "Point")
+        }
+      }
+    }
+
+    def owns(types: String*) = Relationship.newBuilder.setRelationship("owns").setDescendantOf(true).setDistance(1)
+      .addEntities(EntityProto.newBuilder.addAllTypes(types.toList))
+    val req = EntityProto.newBuilder.setName("PerfRoot")
+      .addRelations(Relationship.newBuilder.setRelationship("owns").setDescendantOf(true).setDistance(1)
+        .addEntities(EntityProto.newBuilder.addTypes("Substation")
+          .addRelations(Relationship.newBuilder.setRelationship("owns").setDescendantOf(true).setDistance(1)
+            .addEntities(EntityProto.newBuilder.addTypes("Equipment").addRelations(owns("Point")))))).build
+
+    // first cached run loads the graph, the second is answered from memory
+    List(0L, 60000L, 60000L).foreach { cacheMs =>
+      val start = System.nanoTime
+      val count = withGraphCache(cacheMs) { protoTreeQuery(req).flatMap(_.flatIds()).size }
+      println("Cache: " + cacheMs + " returned " + count + " entities in " + (System.nanoTime - start) / 1000000 + "ms")
+    }
+    // everything we loaded is about to be rolled back
+    EntityGraphCache.invalidateAll()
+  }
+
   test("Shortcircuit query, no roots") {
 
     val relations = (0 to 50).map { i => new EntityRelation("owns", true, 1) }.toList
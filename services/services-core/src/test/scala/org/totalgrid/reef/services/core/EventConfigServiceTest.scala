@@ -115,6 +115,22 @@ class EventConfigServiceTest extends DatabaseUsingTestBase with SyncServicesTest
     service.get(gotten).expectOne.getResource should equal(defaultText)
   }
 
+  test("Cached properties follow config changes") {
+    val model = new EventConfigServiceModel
+
+    // unknown types are treated as alarms
+    model.getCachedProperties("Custom.Cached").designation should equal(EventConfigStore.ALARM)
+
+    val created = service.put(makeEc(Some("Custom.Cached"), Some(4), Some(Designation.EVENT), Some("first"))).expectOne
+    model.getCachedProperties("Custom.Cached") should equal(EventTypeProperties(4, EventConfigStore.EVENT, -1, "first"))
+
+    service.put(created.toBuilder.setResource("second").build).expectOne
+    model.getCachedProperties("Custom.Cached").resource should equal("second")
+
+    service.delete(created).expectOne(Envelope.Status.DELETED)
+    model.getCachedProperties("Custom.Cached").designation should equal(EventConfigStore.ALARM)
+  }
+
   ////////////////////////////////////////////////////////
   // Utilities
 
@@ -22,28 +22,51 @@ import org.scalatest.junit.JUnitRunner
 import org.junit.runner.RunWith
 import org.totalgrid.reef.models.DatabaseUsingTestBase
 
-import org.totalgrid.reef.client.service.proto.Events.{ Event => EventProto }
+import org.totalgrid.reef.client.service.proto.Events.{ Event => EventProto, EventBatch }
 import org.totalgrid.reef.client.service.proto.Alarms._
 import org.totalgrid.reef.client.service.proto.OptionalProtos._
 
-import org.totalgrid.reef.services.framework.SystemEventCreator
+import org.totalgrid.reef.services.framework.{ SilentServiceSubscriptionHandler, SystemEventCreator }
+import org.totalgrid.reef.client.registration.EventPublisher
+import org.totalgrid.reef.client.proto.Envelope.SubscriptionEventType
 import org.totalgrid.reef.client.sapi.client.BasicRequestHeaders
 import org.totalgrid.reef.services.ServiceDependencies
 import org.totalgrid.reef.client.exception.{ ReefServiceException, BadRequestException }
 
 import org.totalgrid.reef.client.sapi.client.Expectations._
+import scala.collection.JavaConversions._
 
 @RunWith(classOf[JUnitRunner])
 class EventServiceTest extends DatabaseUsingTestBase with SystemEventCreator {
 
-  class Fixture {
-    val dependencies = new ServiceDependenciesDefaults(dbConnection)
+  /**
+   * records how many payloads each published notification carried
+   */
+  class NotificationRecorder extends EventPublisher {
+    var notifications = List.empty[(Class[_], Int)]
+
+    def publishEvent[A](typ: SubscriptionEventType, value: A, key: String) {
+      notifications ::= (value.asInstanceOf[AnyRef].getClass, 1)
+    }
+    def publishEvents[A](typ: SubscriptionEventType, values: java.util.List[A], key: String) {
+      notifications ::= (values.get(0).asInstanceOf[AnyRef].getClass, values.size)
+    }
+    def bindQueueByClass[A](subQueue: String, key: String, klass: Class[A]) {}
+
+    def payloadsOf(klass: Class[_]) = notifications.reverse.filter { _._1 == klass }.map { _._2 }
+  }
+
+  class Fixture(pubs: EventPublisher = new SilentServiceSubscriptionHandler, batched: Boolean = false) {
+    val dependencies = new ServiceDependenciesDefaults(dbConnection, pubs = pubs)
     val factories = new ModelFactories(dependencies)
+    factories.events.batchCreatedEvents = batched
+    factories.alarms.batchCreatedEvents = batched
     val contextSource = new MockRequestContextSource(dependencies, "user")
 
     val eventService = new SyncService(new EventService(factories.events), contextSource)
     val eventConfigService = new SyncService(new EventConfigService(factories.eventConfig), contextSource)
     val alarmService = new SyncService(new AlarmService(factories.alarms), contextSource)
+    val batchService = new SyncService(new EventBatchService(factories.events), contextSource)
 
     def publishEvent(evt: EventProto): EventProto = {
       eventService.put(evt).expectOne
@@ -112,6 +135,61 @@ class EventServiceTest extends DatabaseUsingTestBase with SystemEventCreator {
 
   }
 
+  test("Create Batch of events") {
+    val fix = new Fixture
+
+    fix.createConfig(makeEc(Some("Test.Event"), Some(7), Some(EventConfig.Designation.EVENT), Some("Test Event")))
+    fix.createConfig(makeEc(Some("Test.Alarm"), Some(3), Some(EventConfig.Designation.ALARM), Some("Test Alarm"), Some(Alarm.State.UNACK_AUDIBLE)))
+    fix.createConfig(makeEc(Some("Test.Log"), Some(5), Some(EventConfig.Designation.LOG), Some("Test Log")))
+
+    val types = List("Test.Event", "Test.Alarm", "Test.Log", "Test.Alarm", "Test.Event")
+    val batch = EventBatch.newBuilder
+    types.foreach { t => batch.addEvents(createSystemEvent(t, "FEP")) }
+
+    val events = fix.batchService.put(batch.build).expectOne.getEventsList.toList
+    events.map { _.eventType.get } should equal(types)
+    events.map { _.alarm.get } should equal(List(false, true, false, true, false))
+    events.foreach { _.userId.get should equal("user") }
+
+    // logs aren't stored so they don't get an id
+    val stored = events.filter(_.eventType.get != "Test.Log")
+    stored.map { _.id.value.get }.distinct.size should equal(4)
+    stored.foreach { e => fix.eventService.get(EventProto.newBuilder.setId(e.getId).build).expectOne }
+
+    events.filter(_.alarm.get).foreach { e =>
+      fix.alarmService.get(makeAlarm(e)).expectOne.state.get should equal(Alarm.State.UNACK_AUDIBLE)
+    }
+  }
+
+  test("Batch of events publishes one notification per event by default") {
+    val recorder = new NotificationRecorder
+    val fix = new Fixture(recorder)
+
+    fix.createConfig(makeEc(Some("Test.Alarm"), Some(3), Some(EventConfig.Designation.ALARM), Some("Test Alarm"), Some(Alarm.State.UNACK_AUDIBLE)))
+
+    val batch = EventBatch.newBuilder
+    (1 to 3).foreach { i => batch.addEvents(createSystemEvent("Test.Alarm", "FEP")) }
+    fix.batchService.put(batch.build).expectOne
+
+    recorder.payloadsOf(classOf[EventProto]) should equal(List(1, 1, 1))
+    recorder.payloadsOf(classOf[Alarm]) should equal(List(1, 1, 1))
+  }
+
+  test("Batch of events shares notifications when batching is enabled") {
+    val recorder = new NotificationRecorder
+    val fix = new Fixture(recorder, true)
+
+    fix.createConfig(makeEc(Some("Test.Alarm"), Some(3), Some(EventConfig.Designation.ALARM), Some("Test Alarm"), Some(Alarm.State.UNACK_AUDIBLE)))
+
+    val batch = EventBatch.newBuilder
+    (1 to 3).foreach { i => batch.addEvents(createSystemEvent("Test.Alarm", "FEP")) }
+    fix.batchService.put(batch.build).expectOne
+
+    recorder.payloadsOf(classOf[EventProto]) should equal(List(3))
+    // alarm routing keys include the alarm id so they are never shared
+    recorder.payloadsOf(classOf[Alarm]) should equal(List(1, 1, 1))
+  }
+
   test("Create Alarm Directly") {
     val fix = new Fixture
 
@@ -31,6 +31,7 @@ import org.totalgrid.reef.client.service.proto.Model.{ PointType, Point }
 import org.totalgrid.reef.client.exception.BadRequestException
 
 import org.totalgrid.reef.client.sapi.client.Expectations._
+import scala.collection.JavaConversions._
 
 class FakeHistorian(measStore: Historian) extends Historian {
   var begin: Long = -1
@@ -156,4 +157,26 @@ class MeasurementHistoryServiceTest extends DatabaseUsingTestBase with SyncServi
     getMeas1.getMeasurements(0).getIntVal should equal(111)
 
   }
-}
\ No newline at end of file
+
+  test("History Service sampled history covers whole range") {
+    val f = new Fixture
+
+    val extremes = f.service.get(MeasurementHistory.newBuilder.setPointName("meas3")
+      .setSampling(MeasurementHistory.Sampling.EXTREMES).setLimit(2).build).expectOne()
+    extremes.getMeasurementsList.toList.map { _.getIntVal } should equal(List(88, 111))
+
+    val average = f.service.get(MeasurementHistory.newBuilder.setPointName("meas2")
+      .setSampling(MeasurementHistory.Sampling.AVERAGE).setLimit(1).build).expectOne()
+    average.getMeasurementsCount() should equal(1)
+    average.getMeasurements(0).getDoubleVal should equal(2.0)
+    average.getMeasurements(0).getTime should equal(200)
+  }
+
+  test("History Service sampled history adds previous point") {
+    val f = new Fixture
+
+    val getMeas2 = f.service.get(MeasurementHistory.newBuilder.setPointName("meas2").setStartTime(150)
+      .setSampling(MeasurementHistory.Sampling.LTTB).setLimit(10).build).expectOne()
+    getMeas2.getMeasurementsList.toList.map { _.getTime } should equal(List(100, 200, 300))
+  }
+}
@@ -75,6 +75,11 @@ object SubscriptionTools {
       received ::= SubEvent(typ, value.asInstanceOf[AnyRef], key)
     }
 
+    def publishEvents[A](typ: SubscriptionEventType, values: java.util.List[A], key: String) {
+      import scala.collection.JavaConversions._
+      values.foreach { publishEvent(typ, _, key) }
+    }
+
     def bindQueueByClass[A](subQueue: String, key: String, klass: Class[A]) {}
   }
 
@@ -98,6 +103,8 @@ object SubscriptionTools {
 
     def enableFilter() { auth.filterOn = true }
 
+    def forwardTokenInvalidations(to: AuthzService) { auth.tokenCache = Some(to) }
+
     def authQueue = auth.queue
     def filterRequests = auth.filterRequestQueue
     def filterResponses = auth.filterResponseQueue
@@ -123,6 +130,9 @@ object SubscriptionTools {
 
     var filterOn = false
 
+    // real authz service whose token cache should see the invalidations made by the services under test
+    var tokenCache = Option.empty[AuthzService]
+
     // called by (actual) services
     def filter[A](context: RequestContext, componentId: String, action: String, payload: List[A], uuids: => List[List[UUID]]): List[FilteredResult[A]] = {
       if (filterOn) {
@@ -153,6 +163,10 @@ object SubscriptionTools {
       context.set(AuthzService.filterService, this)
     }
 
+    def invalidateTokenCache(context: RequestContext, token: Option[String]) {
+      tokenCache.foreach { _.invalidateTokenCache(context, token) }
+    }
+
   }
 
 }
\ No newline at end of file
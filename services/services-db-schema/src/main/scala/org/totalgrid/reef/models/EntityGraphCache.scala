@@ -0,0 +1,174 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.models
+
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.squeryl.Session
+import org.squeryl.PrimitiveTypeMode._
+
+/**
+ * one edge as seen from one of its ends, childOfThis is true when otherId is the child
+ */
+case class GraphEdge(otherId: UUID, relationship: String, distance: Int, childOfThis: Boolean)
+
+case class GraphEntity(id: UUID, name: String, types: List[String]) {
+  /**
+   * we hand out a new Entity every time since the result nodes are attached to it
+   */
+  def toEntity = {
+    val e = new Entity(name)
+    e.id = id
+    e.types.value = types
+    e
+  }
+}
+
+object EntityGraphCache extends EntityGraphCache(60000)
+
+/**
+ * Keeps the entity names, types and edges (including the derived edges) that the tree queries walk so a multi
+ * level query can be answered from memory. Entities are loaded from the database the first time they are
+ * reached, a level at a time, and are dropped by the entity and edge models when they are modified. Entries
+ * also expire after maxAgeMs so changes made by other service nodes are eventually picked up, setting it to 0
+ * turns the cache off.
+ *
+ * A transaction that has modified the graph can see rows nobody else can yet, and might still roll back, so
+ * it bypasses the cache for the rest of the transaction.
+ */
+class EntityGraphCache(@volatile var maxAgeMs: Long) {
+
+  private case class Entry[A](value: A, loadedAt: Long)
+
+  private val entityEntries = new ConcurrentHashMap[UUID, Entry[GraphEntity]]
+  private val edgeEntries = new ConcurrentHashMap[UUID, Entry[List[GraphEdge]]]
+  private val generation = new AtomicLong(0)
+
+  private val modifyingSession = new ThreadLocal[AnyRef]
+
+  private val batchSize = 1000
+
+  /**
+   * true if tree queries in the current transaction can use the cache
+   */
+  def usable = maxAgeMs > 0 && !(Session.hasCurrentSession && (modifyingSession.get eq Session.currentSession))
+
+  /**
+   * drops the entities and their edges, must be called whenever an entity, its types or its edges change
+   */
+  def invalidate(ids: List[UUID]) {
+    if (Session.hasCurrentSession) modifyingSession.set(Session.currentSession)
+    generation.incrementAndGet()
+    ids.foreach { id =>
+      entityEntries.remove(id)
+      edgeEntries.remove(id)
+    }
+  }
+
+  def invalidateAll() {
+    generation.incrementAndGet()
+    entityEntries.clear()
+    edgeEntries.clear()
+  }
+
+  def size = entityEntries.size
+
+  /**
+   * true if the edges of the entity are already in memory
+   */
+  def hasEdges(id: UUID) = Option(edgeEntries.get(id)).exists(System.currentTimeMillis - _.loadedAt < maxAgeMs)
+
+  /**
+   * all of the parents of the entity over relation at any distance, like EntityQuery.getParentOfType
+   * without the type filter
+   */
+  def parents(id: UUID, relation: String): List[GraphEntity] = {
+    val parentIds = edges(List(id)).getOrElse(id, Nil).filter(e => !e.childOfThis && e.relationship == relation).map(_.otherId)
+    val found = entities(parentIds)
+    parentIds.distinct.flatMap(found.get(_))
+  }
+
+  /**
+   * all of the edges touching each of the ids, loading any we don't have in one pass
+   */
+  def edges(ids: List[UUID]): Map[UUID, List[GraphEdge]] = {
+    val now = System.currentTimeMillis
+    val (cached, missing) = partition(edgeEntries, ids.distinct, now)
+
+    if (missing.isEmpty) cached
+    else cached ++ store(edgeEntries, loadEdges(missing), now)
+  }
+
+  /**
+   * name and types of each entity, ids that are not entities are left out
+   */
+  def entities(ids: List[UUID]): Map[UUID, GraphEntity] = {
+    val now = System.currentTimeMillis
+    val (cached, missing) = partition(entityEntries, ids.distinct, now)
+
+    if (missing.isEmpty) cached
+    else cached ++ store(entityEntries, loadEntities(missing), now)
+  }
+
+  private def partition[A](map: ConcurrentHashMap[UUID, Entry[A]], ids: List[UUID], now: Long): (Map[UUID, A], List[UUID]) = {
+    val lookups = ids.map { id => id -> Option(map.get(id)).filter(now - _.loadedAt < maxAgeMs) }
+    val cached = lookups.flatMap { case (id, entry) => entry.map(id -> _.value) }.toMap
+    (cached, lookups.filter(_._2.isEmpty).map(_._1))
+  }
+
+  private def store[A](map: ConcurrentHashMap[UUID, Entry[A]], loaded: (Long, Map[UUID, A]), now: Long): Map[UUID, A] = {
+    val (startGeneration, values) = loaded
+    // don't keep what we read if the graph changed while we were reading it
+    if (generation.get == startGeneration && usable) {
+      values.foreach { case (id, v) => map.put(id, Entry(v, now)) }
+    }
+    values
+  }
+
+  private def loadEdges(ids: List[UUID]): (Long, Map[UUID, List[GraphEdge]]) = {
+    val startGeneration = generation.get
+
+    val found = ids.grouped(batchSize).map { batch =>
+      val asParent = from(ApplicationSchema.edges)(e => where(e.parentId in batch) select (e)).toList
+      val asChild = from(ApplicationSchema.edges)(e => where(e.childId in batch) select (e)).toList
+
+      asParent.map { e => e.parentId -> GraphEdge(e.childId, e.relationship, e.distance, true) } :::
+        asChild.map { e => e.childId -> GraphEdge(e.parentId, e.relationship, e.distance, false) }
+    }.flatten.toList.groupBy(_._1)
+
+    (startGeneration, ids.map { id => id -> found.get(id).map(_.map(_._2)).getOrElse(Nil) }.toMap)
+  }
+
+  private def loadEntities(ids: List[UUID]): (Long, Map[UUID, GraphEntity]) = {
+    val startGeneration = generation.get
+
+    val found = ids.grouped(batchSize).map { batch =>
+      val names = from(ApplicationSchema.entities)(e => where(e.id in batch) select (e.id, e.name)).toList
+      val types = from(ApplicationSchema.entityTypes)(t => where(t.entityId in batch) select (t.entityId, t.entType)).toList.groupBy(_._1)
+
+      names.map {
+        case (id, name) =>
+          id -> GraphEntity(id, name, types.get(id).map(_.map(_._2).sorted).getOrElse(Nil))
+      }
+    }.flatten.toMap
+
+    (startGeneration, found)
+  }
+}
@@ -31,6 +31,7 @@ import org.totalgrid.reef.client.exception.BadRequestException
 
 import org.totalgrid.reef.client.sapi.types.Optional._
 import scala.collection.JavaConversions._
+import scala.collection.mutable.ListBuffer
 
 object EntityTreeQuery {
   /**
@@ -138,8 +139,17 @@ object EntityTreeQuery {
       subs += (rel -> (node :: (subs.get(rel) getOrElse Nil)))
     }
 
+    /**
+     * nodes found in the graph cache are only checked against the selector once the whole tree is
+     * known, invisible nodes are left out of the results along with everything below them
+     */
+    var visible = true
+
     def id = ent.id
-    def build: ResultNode = ResultNode(ent, subs.mapValues(_.map(_.build)))
+    def build: ResultNode = {
+      val visibleSubs = subs.map { case (rel, nodes) => rel -> nodes.filter(_.visible).map(_.build) }
+      ResultNode(ent, visibleSubs.filter(!_._2.isEmpty))
+    }
   }
 
   /**
@@ -187,6 +197,42 @@ object EntityTreeQuery {
       subQueries.foreach(sub => sub.fillChildren(entsOnlyQuery, nodes))
     }
 
+    /**
+     * Same as fillChildren but walks the edges held by the graph cache, only going to the database
+     * for entities it hasn't seen. The selector isn't applied here, every node found is added to found
+     * so they can all be checked with a single query.
+     */
+    def fillFromGraph(upperNodes: List[ResultNodeBuilder], graph: EntityGraphCache, found: ListBuffer[(ResultNodeBuilder, ExpressionNode => LogicalBoolean)]) {
+
+      if (upperNodes.isEmpty) return
+
+      val edgeMap = graph.edges(upperNodes.map(_.id))
+      val candidates = upperNodes.flatMap { upper =>
+        edgeMap.getOrElse(upper.id, Nil).filter(edgeMatches(_)).map(upper -> _)
+      }
+      val lowerEntities = graph.entities(candidates.map(_._2.otherId))
+
+      val nodes = candidates.flatMap {
+        case (upper, edge) =>
+          lowerEntities.get(edge.otherId).filter(entityMatches(_)).map { lower =>
+            val node = new ResultNodeBuilder(lower.toEntity)
+            upper.addSubNode(Relate(edge.relationship, edge.childOfThis, edge.distance), node)
+            node
+          }
+      }
+      nodes.foreach { n => found += ((n, selector)) }
+
+      subQueries.foreach(sub => sub.fillFromGraph(nodes, graph, found))
+    }
+
+    private def edgeMatches(edge: GraphEdge) = {
+      descendantOf.forall(_ == edge.childOfThis) && rel.forall(_ == edge.relationship) && dist.forall(_ == edge.distance)
+    }
+
+    private def entityMatches(ent: GraphEntity) = {
+      name.forall(_ == ent.name) && (types.isEmpty || ent.types.exists(types.contains(_)))
+    }
+
     protected def lowerQuery(upperIds: List[UUID]) = {
       from(entities, edges)((lowEnt, edge) =>
         where(expressionForThisNode(lowEnt, edge, upperIds))
@@ -237,8 +283,32 @@ object EntityTreeQuery {
    */
   def resultsForQuery(queries: List[QueryNode], rootSet: List[Entity], rootSelect: Query[Entity]): List[ResultNode] = {
     val results = rootSet.map(new ResultNodeBuilder(_)).toList
-    queries.foreach(_.fillChildren(rootSelect, results))
-    results.map(_.build)
+
+    if (EntityGraphCache.usable) {
+      val found = new ListBuffer[(ResultNodeBuilder, ExpressionNode => LogicalBoolean)]
+      queries.foreach(_.fillFromGraph(results, EntityGraphCache, found))
+      hideInvisible(found.toList)
+      results.map(_.build)
+    } else {
+      queries.foreach(_.fillChildren(rootSelect, results))
+      val built = results.map(_.build)
+      // load all of the types at once rather than as each node is rendered
+      built.flatMap(_.flatEntites()).grouped(1000).foreach(Entity.preloadEntityTypes(_))
+      built
+    }
+  }
+
+  private def hideInvisible(found: List[(ResultNodeBuilder, ExpressionNode => LogicalBoolean)]) {
+    found.groupBy(_._2).foreach {
+      case (selector, nodes) =>
+        if (!(selector eq allEntitySelector)) {
+          val ids = nodes.map(_._1.id).distinct
+          val visible = ids.grouped(1000).map { batch =>
+            from(entities)(ent => where((ent.id in batch) and selector(ent.id)) select (ent.id)).toList
+          }.flatten.toSet
+          nodes.foreach { case (node, _) => node.visible = visible.contains(node.id) }
+        }
+    }
   }
 
   /**
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.models
+
+import org.squeryl.Session
+
+/**
+ * Inserts a group of events or alarms with one batched statement per table. Squeryl's batch insert doesn't
+ * hand back the generated ids, and we need them for the alarms and notifications, so the ids are taken from
+ * the table sequences first and written with the rows. Postgres only, like the rest of the schema.
+ */
+object EventBatchInserts {
+
+  /**
+   * inserts all of the events in one batch, filling in their ids
+   */
+  def insertEvents(events: List[EventStore]) {
+    if (!events.isEmpty) {
+      nextIds("s_EventStore_id", events.size).zip(events).foreach { case (id, e) => e.id = id }
+
+      val stmt = connection.prepareStatement("insert into \"EventStore\" (\"id\", \"eventType\", \"alarm\", \"time\", " +
+        "\"deviceTime\", \"severity\", \"subsystem\", \"userId\", \"entityId\", \"args\", \"rendered\") " +
+        "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")
+      try {
+        events.foreach { e =>
+          stmt.setLong(1, e.id)
+          stmt.setString(2, e.eventType)
+          stmt.setBoolean(3, e.alarm)
+          stmt.setLong(4, e.time)
+          e.deviceTime match {
+            case Some(t) => stmt.setLong(5, t)
+            case None => stmt.setNull(5, java.sql.Types.BIGINT)
+          }
+          stmt.setInt(6, e.severity)
+          stmt.setString(7, e.subsystem)
+          stmt.setString(8, e.userId)
+          e.entityId match {
+            case Some(id) => stmt.setObject(9, id)
+            case None => stmt.setNull(9, java.sql.Types.OTHER)
+          }
+          stmt.setBytes(10, e.args)
+          stmt.setString(11, e.rendered)
+          stmt.addBatch()
+        }
+        stmt.executeBatch()
+      } finally {
+        stmt.close()
+      }
+    }
+  }
+
+  /**
+   * inserts all of the alarms in one batch, filling in their ids, the events must already be inserted
+   */
+  def insertAlarms(alarms: List[AlarmModel]) {
+    if (!alarms.isEmpty) {
+      nextIds("s_AlarmModel_id", alarms.size).zip(alarms).foreach { case (id, a) => a.id = id }
+
+      val stmt = connection.prepareStatement("insert into \"AlarmModel\" (\"id\", \"state\", \"eventId\") values (?, ?, ?)")
+      try {
+        alarms.foreach { a =>
+          stmt.setLong(1, a.id)
+          stmt.setInt(2, a.state)
+          stmt.setLong(3, a.eventId)
+          stmt.addBatch()
+        }
+        stmt.executeBatch()
+      } finally {
+        stmt.close()
+      }
+    }
+  }
+
+  private def connection = Session.currentSession.connection
+
+  private def nextIds(sequence: String, count: Int): List[Long] = {
+    val stmt = connection.prepareStatement("select nextval('\"" + sequence + "\"') from generate_series(1, ?)")
+    try {
+      stmt.setInt(1, count)
+      val rs = stmt.executeQuery()
+      var ids = List.empty[Long]
+      while (rs.next()) ids ::= rs.getLong(1)
+      ids.sorted
+    } finally {
+      stmt.close()
+    }
+  }
+}
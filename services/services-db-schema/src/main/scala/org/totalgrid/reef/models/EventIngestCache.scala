@@ -0,0 +1,111 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.models
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.squeryl.Session
+
+/**
+ * severity, designation, initial alarm state and resource string configured for one event type
+ */
+case class EventTypeProperties(severity: Int, designation: Int, alarmState: Int, resource: String)
+
+/**
+ * told about every lookup so the hit rates can be published
+ */
+trait EventIngestCacheListener {
+  def configLookup(hit: Boolean)
+  def routingLookup(hit: Boolean)
+}
+
+object EventIngestCache extends EventIngestCache(60000)
+
+/**
+ * Keeps what every incoming event needs so an event storm doesn't turn into a storm of identical queries:
+ * the event config properties for each event type, and the Equipment and EquipmentGroup parents used to make
+ * the routing keys, which come from the EntityGraphCache.
+ *
+ * Event configs are dropped when the event config model changes them and otherwise expire after maxAgeMs so
+ * changes made on other service nodes are picked up, setting it to 0 always uses the database. Like the graph
+ * cache a transaction that has changed a config bypasses the cache since it might still roll back.
+ */
+class EventIngestCache(@volatile var maxAgeMs: Long) {
+
+  private case class Entry(props: EventTypeProperties, loadedAt: Long)
+
+  private val configs = new ConcurrentHashMap[String, Entry]
+  private val generation = new AtomicLong(0)
+
+  private val modifyingSession = new ThreadLocal[AnyRef]
+
+  @volatile var listener: Option[EventIngestCacheListener] = None
+
+  private def usable = maxAgeMs > 0 && !(Session.hasCurrentSession && (modifyingSession.get eq Session.currentSession))
+
+  /**
+   * properties for the event type, load is only called if we don't have an unexpired copy
+   */
+  def properties(eventType: String)(load: => EventTypeProperties): EventTypeProperties = {
+    if (!usable) load
+    else {
+      val now = System.currentTimeMillis
+      val cached = Option(configs.get(eventType)).filter(now - _.loadedAt < maxAgeMs)
+
+      listener.foreach(_.configLookup(cached.isDefined))
+      cached.map(_.props).getOrElse {
+        val startGeneration = generation.get
+        val props = load
+        // don't keep what we read if a config changed while we were reading it
+        if (generation.get == startGeneration) configs.put(eventType, Entry(props, now))
+        props
+      }
+    }
+  }
+
+  /**
+   * must be called whenever the config for an event type is created, changed or deleted
+   */
+  def invalidate(eventType: String) {
+    if (Session.hasCurrentSession) modifyingSession.set(Session.currentSession)
+    generation.incrementAndGet()
+    configs.remove(eventType)
+  }
+
+  def invalidateAll() {
+    generation.incrementAndGet()
+    configs.clear()
+  }
+
+  /**
+   * EquipmentGroup and Equipment parents of the event's entity, read from the entity graph cache unless the
+   * current transaction has modified the graph
+   */
+  def routingEntities(event: EventStore): (List[Entity], List[Entity]) = {
+    event.entityId match {
+      case Some(id) if EntityGraphCache.usable =>
+        listener.foreach(_.routingLookup(EntityGraphCache.hasEdges(id)))
+        val parents = EntityGraphCache.parents(id, "owns")
+        def ofType(typ: String) = parents.filter(_.types.contains(typ)).map(_.toEntity)
+        (ofType("EquipmentGroup"), ofType("Equipment"))
+      case _ =>
+        (event.groups.value, event.equipments.value)
+    }
+  }
+}
@@ -45,6 +45,9 @@ abstract class DatabaseUsingTestBaseNoTransaction extends FunSuite with ShouldMa
   protected def alwaysReset = true
 
   override def beforeAll() {
+    // entities from earlier suites may have been changed without going through the models
+    EntityGraphCache.invalidateAll()
+    EventIngestCache.invalidateAll()
     if (ConnectionStorage.dbNeedsReset || alwaysReset) {
       val prepareTime = Timing.benchmark {
         CoreServicesSchema.prepareDatabase(dbConnection, true, false)
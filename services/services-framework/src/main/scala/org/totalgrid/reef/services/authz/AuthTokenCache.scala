@@ -0,0 +1,80 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the GNU Affero General Public License
+ * Version 3.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.services.authz
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.totalgrid.reef.authz.Permission
+import org.totalgrid.reef.models.Agent
+
+object AuthTokenCache {
+  case class CachedAuth(agent: Agent, permissions: List[Permission], validUntil: Long)
+}
+
+/**
+ * Remembers the agent and compiled permissions for recently used auth tokens so we don't need to join the
+ * token and permission set tables and reparse the permission protos on every request. An entry is kept for
+ * at most ttlMs and never past the expiration time of the token. Services that revoke tokens or change
+ * permission sets call invalidate so changes made through this node are seen immediately, the ttl bounds
+ * how long changes made through other nodes can go unnoticed.
+ */
+class AuthTokenCache(ttlMs: Long, maxEntries: Int = 10000) {
+  import AuthTokenCache._
+
+  private val entries = new ConcurrentHashMap[String, CachedAuth]
+  private val generation = new AtomicLong(0)
+
+  /**
+   * returns the cached lookup (and true) or the result of load (and false), load should return
+   * the expiration time of the token as validUntil
+   */
+  def lookup(token: String)(load: => Option[CachedAuth]): (Option[CachedAuth], Boolean) = {
+    val now = System.currentTimeMillis
+    Option(entries.get(token)) match {
+      case Some(cached) if cached.validUntil > now => (Some(cached), true)
+      case expired =>
+        expired.foreach(entries.remove(token, _))
+        val startGeneration = generation.get
+        val loaded = load
+        loaded.foreach { auth =>
+          if (ttlMs > 0) {
+            // crude bound on the size, a full cache is cheaper to refill than to track usage
+            if (entries.size >= maxEntries) entries.clear()
+            val entry = auth.copy(validUntil = math.min(auth.validUntil, now + ttlMs))
+            entries.put(token, entry)
+            // an invalidation raced with our load, we may have stored stale data
+            if (generation.get != startGeneration) entries.remove(token, entry)
+          }
+        }
+        (loaded, false)
+    }
+  }
+
+  def invalidate(token: String) {
+    generation.incrementAndGet()
+    entries.remove(token)
+  }
+
+  def invalidateAll() {
+    generation.incrementAndGet()
+    entries.clear()
+  }
+
+  def size = entries.size
+}
@@ -33,6 +33,7 @@ object AuthzService {
   def permissions = "permissions"
   def filterService = "filterService"
   def authError = "auth_error"
+  def tokenCacheHit = "token_cache_hit"
 }
 trait AuthzService {
 
@@ -44,6 +45,9 @@ trait AuthzService {
 
   // load up the permissions sets
   def prepare(context: RequestContext)
+
+  // forget cached token lookups after a token (or every token if None) has been revoked or permissions changed
+  def invalidateTokenCache(context: RequestContext, token: Option[String])
 }
 
 class NullAuthzService extends AuthzService {
@@ -53,12 +57,13 @@ class NullAuthzService extends AuthzService {
   def authorize(context: RequestContext, componentId: String, action: String, uuids: => List[UUID]) {}
   def visibilityMap(context: RequestContext) = VisibilityMap.empty
   def prepare(context: RequestContext) {}
+  def invalidateTokenCache(context: RequestContext, token: Option[String]) {}
 }
 
 object SqlAuthzService {
   import org.squeryl.PrimitiveTypeMode._
 
-  case class AuthLookup(agent: Agent, permissionSets: List[PermissionSet])
+  case class AuthLookup(agent: Agent, permissionSets: List[PermissionSet], expirationTime: Long)
 
   def lookupTokens(tokenList: List[String]): Option[AuthLookup] = {
     val now = System.currentTimeMillis
@@ -75,17 +80,21 @@ object SqlAuthzService {
     if (!results.isEmpty) {
       val agent = results.head._1.agent.value
       val permissions = results.flatMap(_._2.map(p => p.proto))
-      Some(AuthLookup(agent, permissions))
+      Some(AuthLookup(agent, permissions, results.head._1.expirationTime))
     } else {
       None
     }
   }
 }
 
-class SqlAuthzService(filteringService: AuthzFilteringService) extends AuthzService with Logging {
+class SqlAuthzService(filteringService: AuthzFilteringService, tokenCacheMs: Long) extends AuthzService with Logging {
   import SqlAuthzService._
+  import AuthTokenCache._
+
+  def this() = this(AuthzFilter, 0)
+  def this(tokenCacheMs: Long) = this(AuthzFilter, tokenCacheMs)
 
-  def this() = this(AuthzFilter)
+  val tokenCache = new AuthTokenCache(tokenCacheMs)
 
   private def getContextPermissions(context: RequestContext) = {
     context.get[List[Permission]](AuthzService.permissions)
@@ -131,13 +140,39 @@ class SqlAuthzService(filteringService: AuthzFilteringService) extends AuthzServ
       context.set(AuthzService.authError, "No auth tokens in envelope header")
     } else {
 
-      lookupTokens(List(context.getHeaders.getAuthToken)) match {
+      val (lookup, hit) = tokenCache.lookup(context.getHeaders.getAuthToken) {
+        lookupTokens(List(context.getHeaders.getAuthToken)).map {
+          case AuthLookup(agent, permSets, expirationTime) =>
+            CachedAuth(agent, permSets.flatMap { Permission.fromProto(_, agent.entityName) }, expirationTime)
+        }
+      }
+      context.set(AuthzService.tokenCacheHit, java.lang.Boolean.valueOf(hit))
+
+      lookup match {
         case None => context.set(AuthzService.authError, "All tokens unknown or expired")
-        case Some(AuthLookup(agent, permSets)) =>
-          context.set(AuthzService.agent, agent)
-          context.set(AuthzService.permissions, permSets.flatMap { Permission.fromProto(_, agent.entityName) })
+        case Some(CachedAuth(agent, permissions, _)) =>
+          context.set(AuthzService.agent, if (hit) copyAgent(agent) else agent)
+          context.set(AuthzService.permissions, permissions)
       }
     }
   }
 
+  def invalidateTokenCache(context: RequestContext, token: Option[String]) {
+    def drop() = token match {
+      case Some(t) => tokenCache.invalidate(t)
+      case None => tokenCache.invalidateAll()
+    }
+    drop()
+    // requests running alongside this transaction can still read the old rows, drop them again after commit
+    context.operationBuffer.queuePostTransaction(drop())
+  }
+
+  // each request gets its own agent so lazily loaded relations aren't shared between transactions
+  private def copyAgent(agent: Agent) = {
+    val copy = new Agent(agent.entityId, agent.digest, agent.salt)
+    copy.id = agent.id
+    copy.entity.value = agent.entity.value
+    copy
+  }
+
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ package org.totalgrid.reef.services.framework
 
 import com.google.protobuf.GeneratedMessage
 import org.totalgrid.reef.client.proto.Envelope.SubscriptionEventType
+import scala.collection.mutable.{ LinkedHashMap, ListBuffer }
 
 trait SubscribeFunctions[ServiceType <: GeneratedMessage] {
 
@@ -58,6 +59,15 @@ trait EventQueueingObserver[ServiceType <: GeneratedMessage, A]
 
   protected def publishEvent(context: RequestContext, event: SubscriptionEventType, resp: ServiceType, key: String): Unit
 
+  protected def publishEvents(context: RequestContext, event: SubscriptionEventType, resps: List[ServiceType], key: String): Unit
+
+  /**
+   * when true queueCreatedEvents publishes the entries that share a routing key as one notification using
+   * batched_payloads. Clients built before batched_payloads was added only see the first entry of those
+   * notifications so it is off by default.
+   */
+  var batchCreatedEvents = false
+
   protected def onCreated(context: RequestContext, entry: A): Unit = {
     queueEvent(context, SubscriptionEventType.ADDED, entry, false)
   }
@@ -88,6 +98,26 @@ trait EventQueueingObserver[ServiceType <: GeneratedMessage, A]
       }
   }
 
+  /**
+   * Queue the ADDED notifications for a group of entries created together (without going through create),
+   * with batchCreatedEvents the notifications that share a routing key are published as one message in the
+   * order of the entries, otherwise each entry is published on its own.
+   */
+  def queueCreatedEvents(context: RequestContext, entries: List[A]) = {
+    if (!batchCreatedEvents) entries.foreach { queueEvent(context, SubscriptionEventType.ADDED, _, false) }
+    else context.operationBuffer.queueInTransaction {
+      val byKey = LinkedHashMap.empty[String, ListBuffer[ServiceType]]
+      entries.foreach { entry =>
+        val (proto, keys) = getEventProtoAndKey(entry)
+        keys.foreach { byKey.getOrElseUpdate(_, ListBuffer.empty[ServiceType]) += proto }
+      }
+      byKey.foreach {
+        case (key, protos) =>
+          context.operationBuffer.queuePostTransaction { publishEvents(context, SubscriptionEventType.ADDED, protos.toList, key) }
+      }
+    }
+  }
+
   /**
    * once we have "rendered" the event we still need to hold onto it after we close the SQL transaction
    * that way if the reciever of a subscription update immediatley asks for the object he should find it.
@@ -146,6 +146,12 @@ trait ServiceEventPublishing[MessageType <: GeneratedMessage] {
   protected def publishEvent(context: RequestContext, event: Envelope.SubscriptionEventType, resp: MessageType, key: String): Unit = {
     context.eventPublisher.publishEvent(event, resp, key)
   }
+
+  protected def publishEvents(context: RequestContext, event: Envelope.SubscriptionEventType, resps: List[MessageType], key: String): Unit = {
+    val list = new java.util.ArrayList[MessageType](resps.size)
+    resps.foreach(list.add(_))
+    context.eventPublisher.publishEvents(event, list, key)
+  }
 }
 
 /**
@@ -72,4 +72,17 @@ object SimpleServiceBehaviors {
     def doPost(context: RequestContext, req: ServiceType): ServiceType
   }
 
+  trait SimplePut extends HasServiceType with AsyncContextRestPut {
+
+    override def putAsync(source: RequestContextSource, req: ServiceType)(callback: (Response[ServiceType]) => Unit) {
+      val response = source.transaction { context =>
+        val result = doPut(context, req)
+        ScalaResponse.success(Envelope.Status.CREATED, result)
+      }
+      callback(response)
+    }
+
+    def doPut(context: RequestContext, req: ServiceType): ServiceType
+  }
+
 }
\ No newline at end of file
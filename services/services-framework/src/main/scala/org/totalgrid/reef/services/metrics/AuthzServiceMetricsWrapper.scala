@@ -30,6 +30,8 @@ class AuthzServiceMetricsWrapper(authz: AuthzService, metrics: Metrics) extends
   private val authTime = metrics.timer("AuthTime")
   private val filterCount = metrics.counter("FilterCount")
   private val filterTime = metrics.timer("FilterTime")
+  private val tokenCacheHits = metrics.counter("TokenCacheHits")
+  private val tokenCacheMisses = metrics.counter("TokenCacheMisses")
 
   override def filter[A](context: RequestContext, componentId: String, action: String, payload: List[A], uuids: => List[List[UUID]]) = {
     filterCount(1)
@@ -52,5 +54,10 @@ class AuthzServiceMetricsWrapper(authz: AuthzService, metrics: Metrics) extends
     prepareTime {
       authz.prepare(context)
     }
+    context.get[java.lang.Boolean](AuthzService.tokenCacheHit).foreach { hit =>
+      if (hit.booleanValue) tokenCacheHits(1) else tokenCacheMisses(1)
+    }
   }
+
+  def invalidateTokenCache(context: RequestContext, token: Option[String]) = authz.invalidateTokenCache(context, token)
 }
\ No newline at end of file
@@ -27,8 +27,8 @@ class ServiceVerbHooks(source: Metrics) {
   val count = source.counter("Count")
   /// errors counted
   val errors = source.counter("Errors")
-  /// time of service requests
-  val timer = source.average("Time")
+  /// time of service requests, with percentiles
+  val timer = source.histogram("Time")
   /// number of database actions
   val actions = source.average("Actions")
 }
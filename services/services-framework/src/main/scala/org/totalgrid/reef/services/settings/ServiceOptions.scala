@@ -36,7 +36,15 @@ case class ServiceOptions(
     /// maximum # of measurements to allow in the history table
     maxMeasurements: Long,
     /// how often to clean excess measurements from history table
-    trimPeriodMinutes: Long) {
+    trimPeriodMinutes: Long,
+    /// how long a token lookup can be reused before rechecking the database (0 disables caching)
+    authTokenCacheMs: Long = 0,
+    /// how long entities and edges are kept in memory for tree queries (0 disables caching)
+    entityGraphCacheMs: Long = 60000,
+    /// how long event configurations are kept in memory for incoming events (0 disables caching)
+    eventConfigCacheMs: Long = 60000,
+    /// publish events and alarms from one batch request that share a routing key as one notification
+    batchedEventNotifications: Boolean = false) {
 
   def this(props: Dictionary[Object, Object]) = this(
     PropertyLoading.getBoolean("org.totalgrid.reef.services.metrics", props),
@@ -45,6 +53,10 @@ case class ServiceOptions(
     PropertyLoading.getInt("org.totalgrid.reef.services.slowQueryThresholdMs", props),
     PropertyLoading.getInt("org.totalgrid.reef.services.chattyTransactionThreshold", props, 100),
     PropertyLoading.getLong("org.totalgrid.reef.services.maxMeasurements", props),
-    PropertyLoading.getInt("org.totalgrid.reef.services.trimPeriodMinutes", props))
+    PropertyLoading.getInt("org.totalgrid.reef.services.trimPeriodMinutes", props),
+    PropertyLoading.getLong("org.totalgrid.reef.services.authTokenCacheMs", props, 30000),
+    PropertyLoading.getLong("org.totalgrid.reef.services.entityGraphCacheMs", props, 60000),
+    PropertyLoading.getLong("org.totalgrid.reef.services.eventConfigCacheMs", props, 60000),
+    PropertyLoading.getBoolean("org.totalgrid.reef.services.batchedEventNotifications", props, false))
 }
 
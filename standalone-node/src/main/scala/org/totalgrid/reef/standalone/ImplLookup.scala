@@ -25,7 +25,7 @@ import org.totalgrid.reef.protocol.api.{ ChannelAlwaysOnline, EndpointAlwaysOnli
 import org.totalgrid.reef.client.settings.util.PropertyLoading
 import org.totalgrid.reef.broker.qpid.QpidBrokerConnectionFactory
 import org.totalgrid.reef.client.settings.AmqpSettings
-import org.totalgrid.reef.broker.memory.MemoryBrokerConnectionFactory
+import org.totalgrid.reef.broker.memory.{ ConcurrentMemoryBrokerConnectionFactory, MemoryBrokerConnectionFactory }
 import org.totalgrid.reef.measurementstore._
 import java.util.Properties
 import net.agileautomata.executor4s.{ Executor, Cancelable }
@@ -62,6 +62,9 @@ object ImplLookup extends Logging {
     brokerType match {
       case "qpid" => new QpidBrokerConnectionFactory(new AmqpSettings(properties))
       case "memory" => new MemoryBrokerConnectionFactory(exe)
+      case "memory-concurrent" =>
+        val matchCacheSize = PropertyLoading.getInt("org.totalgrid.reef.amqp.memory.matchCacheSize", properties, 0)
+        new ConcurrentMemoryBrokerConnectionFactory(exe, matchCacheSize)
     }
   }
 
@@ -71,8 +74,11 @@ object ImplLookup extends Logging {
     val currentValueType = PropertyLoading.getString("org.totalgrid.reef.mstore.currentValueImpl", properties)
 
     def getMeasImpl(typ: String) = typ match {
-      case "squeryl" => new SqlMeasurementStore({ () => DbConnector.connect(new DbInfo(properties)) })
+      case "squeryl" =>
+        val partitionPeriodHours = PropertyLoading.getLong("org.totalgrid.reef.mstore.partitionPeriodHours", properties, 0)
+        new SqlMeasurementStore({ () => DbConnector.connect(new DbInfo(properties)) }, partitionPeriodMillis = partitionPeriodHours * 60 * 60 * 1000)
       case "memory" => new InMemoryMeasurementStore()
+      case "memory-columnar" => ColumnarMeasurementStore.fromProperties(properties)
     }
     logger.info("MeasStore historian: " + historianType + " realtime: " + currentValueType)
     if (historianType == currentValueType) {
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.jmx
+
+import java.util.concurrent.atomic.{ AtomicLong, AtomicLongArray }
+
+object Histogram {
+
+  // values below this are counted exactly, above it each power of two is split into subBuckets
+  private val linearLimit = 64
+  private val subBuckets = 32
+  private val subBits = 5
+
+  // enough buckets to cover every non negative Int
+  val bucketCount = bucketFor(Int.MaxValue) + 1
+
+  // one set of counters per core (power of two so a thread picks its stripe with a mask), capped since
+  // each set is a few KB and there is a histogram per service verb
+  val stripeCount = {
+    val cores = math.min(Runtime.getRuntime.availableProcessors, 16)
+    Integer.highestOneBit(math.max(cores * 2 - 1, 1))
+  }
+
+  def bucketFor(value: Long): Int = {
+    if (value < linearLimit) value.toInt
+    else {
+      val shift = 63 - java.lang.Long.numberOfLeadingZeros(value) - subBits
+      linearLimit + (shift - 1) * subBuckets + (value >> shift).toInt - subBuckets
+    }
+  }
+
+  /**
+   * largest value that would have been counted in the bucket
+   */
+  def highestValue(bucket: Int): Long = {
+    if (bucket < linearLimit) bucket
+    else {
+      val i = bucket - linearLimit
+      val shift = i / subBuckets + 1
+      ((i % subBuckets + subBuckets + 1).toLong << shift) - 1
+    }
+  }
+}
+
+/**
+ * distribution of the values recorded in one interval, count is the number of values and sum their total
+ */
+case class HistogramSnapshot(counts: Array[Long], count: Long, sum: Long, max: Long, elapsedMs: Long) {
+
+  def mean: Double = if (count == 0) 0 else sum.toDouble / count
+
+  /**
+   * values per second over the interval
+   */
+  def rate: Double = if (elapsedMs <= 0) 0 else count * 1000.0 / elapsedMs
+
+  /**
+   * smallest value that percent of the recorded values are less than or equal to, accurate to the
+   * width of the bucket it falls in (about 3%)
+   */
+  def percentile(percent: Double): Long = {
+    if (count == 0) 0
+    else {
+      val target = math.max(1L, math.ceil(count * percent / 100.0).toLong)
+      var seen = 0L
+      var bucket = 0
+      while (bucket < counts.length && seen + counts(bucket) < target) {
+        seen += counts(bucket)
+        bucket += 1
+      }
+      math.min(Histogram.highestValue(bucket), max)
+    }
+  }
+}
+
+/**
+ * Log-linear histogram in the style of HdrHistogram for latencies and other non negative values. Values
+ * are recorded into a fixed set of striped counters, each thread picks a stripe by its id so threads on
+ * different cores rarely touch the same counters and recording is a couple of uncontended atomic adds.
+ * The number of stripes doesn't depend on how many threads have ever recorded, so pools that retire and
+ * replace idle threads don't grow the histogram. Readers sum the stripes when they take a snapshot and
+ * each snapshot covers the values recorded since the previous one.
+ */
+class Histogram {
+
+  import Histogram._
+
+  private class Recorder {
+    val counts = new AtomicLongArray(bucketCount)
+    val sum = new AtomicLong(0)
+    val max = new AtomicLong(0)
+
+    def record(value: Long) {
+      counts.incrementAndGet(bucketFor(value))
+      sum.addAndGet(value)
+      // CAS so a concurrent reset by snapshot can't be overwritten by a stale max
+      var current = max.get
+      while (value > current && !max.compareAndSet(current, value)) current = max.get
+    }
+  }
+
+  private val recorders = Array.fill(stripeCount)(new Recorder)
+
+  private def stripe: Recorder = {
+    val id = Thread.currentThread.getId
+    recorders((id ^ (id >>> 16)).toInt & (stripeCount - 1))
+  }
+
+  private var lastCounts = new Array[Long](bucketCount)
+  private var lastSum = 0L
+  private var lastTime = System.currentTimeMillis
+
+  def record(value: Int) {
+    stripe.record(if (value < 0) 0 else value)
+  }
+
+  /**
+   * distribution of the values recorded since the last snapshot
+   */
+  def snapshot(): HistogramSnapshot = synchronized {
+    val now = System.currentTimeMillis
+    val totals = new Array[Long](bucketCount)
+    var sum = 0L
+    var max = 0L
+    recorders.foreach { r =>
+      var i = 0
+      while (i < bucketCount) {
+        totals(i) += r.counts.get(i)
+        i += 1
+      }
+      sum += r.sum.get
+      max = math.max(max, r.max.getAndSet(0))
+    }
+
+    val interval = new Array[Long](bucketCount)
+    var count = 0L
+    var i = 0
+    while (i < bucketCount) {
+      interval(i) = totals(i) - lastCounts(i)
+      count += interval(i)
+      i += 1
+    }
+
+    val result = HistogramSnapshot(interval, count, sum - lastSum, max, now - lastTime)
+    lastCounts = totals
+    lastSum = sum
+    lastTime = now
+    result
+  }
+}
@@ -95,4 +95,54 @@ object MetricValue {
     }
   }
 
+  /**
+   * records every update into a Histogram, the value is the mean of the last interval and the
+   * percentiles are published as separate views. Snapshots are taken when the values are read, at most
+   * once per intervalMs, so all of the attributes read together describe the same interval.
+   *
+   * @param scale values are divided by this when reported (timers record microseconds and report ms)
+   */
+  class HistogramMetric(scale: Double, intervalMs: Long) extends MetricValue {
+
+    private val histogram = new Histogram
+    private var current = histogram.snapshot()
+    private var taken = System.currentTimeMillis
+
+    def update(i: Int) {
+      histogram.record(i)
+    }
+
+    def reset() {
+      synchronized {
+        current = histogram.snapshot()
+        taken = System.currentTimeMillis
+      }
+    }
+
+    def snapshot: HistogramSnapshot = synchronized {
+      val now = System.currentTimeMillis
+      if (now - taken >= intervalMs) {
+        current = histogram.snapshot()
+        taken = now
+      }
+      current
+    }
+
+    def value = (snapshot.mean / scale).asInstanceOf[AnyRef]
+
+    def views: List[(String, MetricValue)] = List(
+      "p50" -> new HistogramView(s => s.percentile(50) / scale),
+      "p90" -> new HistogramView(s => s.percentile(90) / scale),
+      "p99" -> new HistogramView(s => s.percentile(99) / scale),
+      "p999" -> new HistogramView(s => s.percentile(99.9) / scale),
+      "max" -> new HistogramView(s => s.max / scale),
+      "rate" -> new HistogramView(_.rate))
+
+    class HistogramView(fun: HistogramSnapshot => Double) extends MetricValue {
+      def update(i: Int) {}
+      def reset() {}
+      def value = fun(snapshot).asInstanceOf[AnyRef]
+    }
+  }
+
 }
@@ -57,6 +57,17 @@ trait Metrics {
   def counter(name: String): (Int) => Unit
   def average(name: String): (Int) => Unit
   def timer(name: String): Timer
+
+  /**
+   * records the values into a histogram, name is the mean of the last interval and name.p50, .p90, .p99,
+   * .p999, .max and .rate are published alongside it
+   */
+  def histogram(name: String): (Int) => Unit
+
+  /**
+   * @param percentiles use a histogram (in microseconds, reported as ms) rather than the windowed average
+   */
+  def timer(name: String, percentiles: Boolean): Timer
 }
 
 object Metrics {
@@ -69,6 +80,18 @@ object Metrics {
     }
   }
 
+  class HistogramTimer(metric: MetricValue.HistogramMetric) extends Timer {
+    def apply[A](f: => A) = {
+      val start = System.nanoTime
+      val ret = f
+      metric.update(((System.nanoTime - start) / 1000).toInt)
+      ret
+    }
+  }
+
+  // how long each set of published percentiles covers
+  val histogramIntervalMs = 10000L
+
   class DefaultMetrics(container: MetricsContainer) extends Metrics {
 
     private def register(name: String, v: MetricValue) = {
@@ -96,6 +119,22 @@ object Metrics {
       container.add(name, metric)
       new DefaultTimer(metric)
     }
+
+    def timer(name: String, percentiles: Boolean) = {
+      if (percentiles) new HistogramTimer(addHistogram(name, 1000.0))
+      else timer(name)
+    }
+
+    def histogram(name: String) = {
+      addHistogram(name, 1.0).update(_)
+    }
+
+    private def addHistogram(name: String, scale: Double) = {
+      val metric = new MetricValue.HistogramMetric(scale, histogramIntervalMs)
+      container.add(name, metric)
+      metric.views.foreach { case (suffix, view) => container.add(name + "." + suffix, view) }
+      metric
+    }
   }
 }
 
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.totalgrid.reef.jmx
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.FunSuite
+import org.scalatest.matchers.ShouldMatchers
+
+@RunWith(classOf[JUnitRunner])
+class TestHistogram extends FunSuite with ShouldMatchers {
+
+  test("Buckets cover every value") {
+    Histogram.bucketFor(0) should equal(0)
+    Histogram.bucketFor(63) should equal(63)
+    Histogram.bucketFor(Int.MaxValue) should equal(Histogram.bucketCount - 1)
+
+    List(1, 64, 65, 100, 1000, 123456, Int.MaxValue).foreach { v =>
+      val bucket = Histogram.bucketFor(v)
+      Histogram.highestValue(bucket) should (be >= (v.toLong))
+      if (bucket > 0) Histogram.highestValue(bucket - 1) should (be < (v.toLong))
+    }
+  }
+
+  test("Percentiles within bucket precision") {
+    val histogram = new Histogram
+    (1 to 10000).foreach { histogram.record(_) }
+
+    val snap = histogram.snapshot()
+    snap.count should equal(10000)
+    snap.max should equal(10000)
+    snap.mean should equal(5000.5)
+    snap.percentile(50) should (be >= (5000L) and be <= (5000L * 103 / 100))
+    snap.percentile(99) should (be >= (9900L) and be <= (10000L))
+    snap.percentile(100) should equal(10000)
+  }
+
+  test("Snapshots cover one interval") {
+    val histogram = new Histogram
+    histogram.record(500)
+    histogram.snapshot().count should equal(1)
+
+    val empty = histogram.snapshot()
+    empty.count should equal(0)
+    empty.max should equal(0)
+    empty.percentile(99) should equal(0)
+  }
+
+  test("Values from many threads") {
+    val histogram = new Histogram
+    val threads = (1 to 4).map { i =>
+      new Thread(new Runnable {
+        def run() { (1 to 1000).foreach(_ => histogram.record(i)) }
+      })
+    }
+    threads.foreach(_.start)
+    threads.foreach(_.join)
+
+    val snap = histogram.snapshot()
+    snap.count should equal(4000)
+    snap.sum should equal(10000)
+    snap.max should equal(4)
+  }
+
+  test("Short lived threads share the stripes") {
+    val histogram = new Histogram
+    (1 to 50).foreach { i =>
+      val t = new Thread(new Runnable {
+        def run() { histogram.record(i) }
+      })
+      t.start()
+      t.join()
+    }
+
+    val snap = histogram.snapshot()
+    snap.count should equal(50)
+    snap.sum should equal((1 to 50).sum)
+    snap.max should equal(50)
+  }
+
+  test("Max covers one interval") {
+    val histogram = new Histogram
+    histogram.record(10)
+    histogram.snapshot().max should equal(10)
+
+    histogram.record(5)
+    histogram.snapshot().max should equal(5)
+  }
+
+  test("Metrics publish percentiles") {
+    val container = MetricsContainer()
+    val metrics = new Metrics.DefaultMetrics(container)
+
+    metrics.histogram("Time")
+    container.getAll.map { _._1 }.sorted should equal(
+      List("Time", "Time.max", "Time.p50", "Time.p90", "Time.p99", "Time.p999", "Time.rate"))
+  }
+
+  test("Timer values are scaled") {
+    // zero interval so each read takes a new snapshot
+    val metric = new MetricValue.HistogramMetric(1000.0, 0)
+    val p50 = metric.views.toMap.apply("p50")
+
+    (1 to 99).foreach { i => metric.update(50) }
+    metric.update(5000)
+    p50.value should equal(0.05)
+  }
+}